@@ -0,0 +1,635 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.oce.tools.cpn;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.opennms.oce.tools.cpn.model.EventRecord;
+import org.opennms.oce.tools.cpn.model.EventSeverity;
+import org.opennms.oce.tools.cpn.model.TicketRecord;
+import org.opennms.oce.tools.cpn.model.TrapRecord;
+
+/**
+ * Reads and writes CPN datasets using a compact binary format, so that the same
+ * .csv exports don't need to be parsed over and over again.
+ *
+ * The records are stored column by column. All of the strings are stored once in a
+ * shared dictionary and referenced by index, times are stored as milliseconds since
+ * the epoch and numeric IDs are stored as ints.
+ *
+ * The header holds the number of records in each section along with the offset of every
+ * column and of the dictionary, which is stored last. Records are streamed to one spool
+ * file per column while they are written and the spools are then copied into the snapshot,
+ * so that writing doesn't need to hold the dataset in memory. When read, the columns are
+ * memory mapped in chunks and the records are decoded one at a time.
+ */
+public class CpnDatasetSnapshot {
+
+    private static final int MAGIC = 0x43504E53; // "CPNS"
+    private static final int VERSION = 2;
+
+    private static final int NULL_REF = -1;
+    private static final long NULL_TIME = Long.MIN_VALUE;
+    private static final byte NULL_BYTE = -1;
+
+    private static final int TICKET_COLUMNS = 13;
+    private static final int EVENT_COLUMNS = 12;
+    private static final int TRAP_COLUMNS = EVENT_COLUMNS + 5;
+    private static final int[] SECTION_COLUMNS = {TICKET_COLUMNS, EVENT_COLUMNS, EVENT_COLUMNS, TRAP_COLUMNS};
+
+    private static final int DEFAULT_CHUNK_SIZE = 1 << 30;
+    private static final int SPOOL_BUFFER_SIZE = 64 * 1024;
+
+    private static final EventSeverity[] SEVERITIES = EventSeverity.values();
+
+    public static void write(CpnDataset dataset, File file) throws IOException {
+        try (Writer writer = newWriter(file)) {
+            dataset.getTickets().forEach(writer::handleTicket);
+            dataset.getServiceEvents().forEach(writer::handleServiceEvent);
+            dataset.getSyslogEvents().forEach(writer::handleSyslogEvent);
+            dataset.getTraps().forEach(writer::handleTrap);
+            writer.finish();
+        }
+    }
+
+    /**
+     * Creates a writer that accepts the records as they are streamed. The snapshot is only
+     * written to the given file once {@link Writer#finish()} is called.
+     */
+    public static Writer newWriter(File file) throws IOException {
+        return new Writer(file);
+    }
+
+    public static CsvBackedCpnDataset read(File file) throws IOException {
+        return read(file, DEFAULT_CHUNK_SIZE);
+    }
+
+    static CsvBackedCpnDataset read(File file, int chunkSize) throws IOException {
+        final List<TicketRecord> tickets = new ArrayList<>();
+        final List<EventRecord> serviceEvents = new ArrayList<>();
+        final List<EventRecord> syslogEvents = new ArrayList<>();
+        final List<TrapRecord> traps = new ArrayList<>();
+        stream(file, new CpnRecordHandler() {
+            @Override
+            public void handleTicket(TicketRecord ticket) {
+                tickets.add(ticket);
+            }
+
+            @Override
+            public void handleServiceEvent(EventRecord serviceEvent) {
+                serviceEvents.add(serviceEvent);
+            }
+
+            @Override
+            public void handleSyslogEvent(EventRecord syslogEvent) {
+                syslogEvents.add(syslogEvent);
+            }
+
+            @Override
+            public void handleTrap(TrapRecord trap) {
+                traps.add(trap);
+            }
+        }, chunkSize);
+        return new CsvBackedCpnDataset(tickets, serviceEvents, syslogEvents, traps);
+    }
+
+    /**
+     * Decodes the records in the snapshot and hands them to the handler one at a time, without retaining them.
+     *
+     * Tickets are streamed first, followed by the service events, syslog events and traps.
+     */
+    public static void stream(File file, CpnRecordHandler handler) throws IOException {
+        stream(file, handler, DEFAULT_CHUNK_SIZE);
+    }
+
+    private static void stream(File file, CpnRecordHandler handler, int chunkSize) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long fileSize = channel.size();
+            // Don't close the stream, it would close the channel
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            if (fileSize < Integer.BYTES || in.readInt() != MAGIC) {
+                throw new IOException("Not a CPN dataset snapshot: " + file);
+            }
+            final int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException(String.format("Unsupported snapshot version %d in: %s", version, file));
+            }
+            final long dictionaryOffset = in.readLong();
+            final int numStrings = in.readInt();
+            final int[] sizes = new int[SECTION_COLUMNS.length];
+            final long[][] offsets = new long[SECTION_COLUMNS.length][];
+            for (int section = 0; section < SECTION_COLUMNS.length; section++) {
+                sizes[section] = in.readInt();
+                if (sizes[section] < 0 || in.readInt() != SECTION_COLUMNS[section]) {
+                    throw new IOException("Corrupt snapshot header: " + file);
+                }
+                offsets[section] = new long[SECTION_COLUMNS[section]];
+                for (int column = 0; column < offsets[section].length; column++) {
+                    offsets[section][column] = in.readLong();
+                }
+            }
+            if (dictionaryOffset > fileSize) {
+                throw new IOException("Truncated snapshot: " + file);
+            }
+
+            channel.position(dictionaryOffset);
+            final DataInputStream dictionaryIn = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            final String[] strings = new String[numStrings];
+            for (int i = 0; i < strings.length; i++) {
+                final byte[] bytes = new byte[dictionaryIn.readInt()];
+                dictionaryIn.readFully(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            // Each column ends where the next one starts, the last one ends where the dictionary starts
+            final MappedColumn[][] columns = new MappedColumn[SECTION_COLUMNS.length][];
+            long end = dictionaryOffset;
+            for (int section = SECTION_COLUMNS.length - 1; section >= 0; section--) {
+                columns[section] = new MappedColumn[SECTION_COLUMNS[section]];
+                for (int column = columns[section].length - 1; column >= 0; column--) {
+                    final long start = offsets[section][column];
+                    if (start < 0 || start > end) {
+                        throw new IOException("Corrupt snapshot header: " + file);
+                    }
+                    columns[section][column] = new MappedColumn(channel, start, end - start, chunkSize);
+                    end = start;
+                }
+            }
+
+            final RecordReader tickets = new RecordReader(columns[0], strings);
+            for (int i = 0; i < sizes[0]; i++) {
+                handler.handleTicket(readTicket(tickets.seek(i)));
+            }
+            final RecordReader serviceEvents = new RecordReader(columns[1], strings);
+            for (int i = 0; i < sizes[1]; i++) {
+                handler.handleServiceEvent(readEvent(serviceEvents.seek(i)));
+            }
+            final RecordReader syslogEvents = new RecordReader(columns[2], strings);
+            for (int i = 0; i < sizes[2]; i++) {
+                handler.handleSyslogEvent(readEvent(syslogEvents.seek(i)));
+            }
+            final RecordReader traps = new RecordReader(columns[3], strings);
+            for (int i = 0; i < sizes[3]; i++) {
+                handler.handleTrap(readTrap(traps.seek(i)));
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Truncated or corrupt snapshot: " + file, e);
+        }
+    }
+
+    private static void writeTicket(RecordWriter writer, TicketRecord ticket) throws IOException {
+        writer.writeSeverity(ticket.getSeverity());
+        writer.writeId(ticket.getTicketId());
+        writer.writeTime(ticket.getLastModificationTime());
+        writer.writeTime(ticket.getRootEventTime());
+        writer.writeString(ticket.getDescription());
+        writer.writeString(ticket.getLocation());
+        writer.writeBoolean(ticket.getAcknowledged());
+        writer.writeTime(ticket.getCreationTime());
+        writer.writeInt(ticket.getEventCount());
+        writer.writeString(ticket.getAffectedDevicesCount());
+        writer.writeString(ticket.getDuplicationCount());
+        writer.writeString(ticket.getReductionCount());
+        writer.writeString(ticket.getAlarmCount());
+    }
+
+    private static TicketRecord readTicket(RecordReader reader) {
+        return new TicketRecord(reader.readSeverity(), reader.readId(), reader.readTime(), reader.readTime(),
+                reader.readString(), reader.readString(), reader.readBoolean(), reader.readTime(), reader.readInt(),
+                reader.readString(), reader.readString(), reader.readString(), reader.readString());
+    }
+
+    private static void writeEvent(RecordWriter writer, EventRecord event) throws IOException {
+        writer.writeString(event.getSource());
+        writer.writeSeverity(event.getSeverity());
+        writer.writeId(event.getEventId());
+        writer.writeTime(event.getTime());
+        writer.writeString(event.getDescription());
+        // Traps override the detailed description, so make sure we store the actual field
+        writer.writeString(event instanceof TrapRecord ? ((TrapRecord)event).getEventDetailedDescription() : event.getDetailedDescription());
+        writer.writeString(event.getLocation());
+        writer.writeId(event.getAlarmId());
+        writer.writeId(event.getTicketId());
+        writer.writeId(event.getCausingEventId());
+        writer.writeInt(event.getDuplicationCount());
+        writer.writeInt(event.getReductionCount());
+    }
+
+    private static EventRecord readEvent(RecordReader reader) {
+        return new EventRecord(reader.readString(), reader.readSeverity(), reader.readId(), reader.readTime(),
+                reader.readString(), reader.readString(), reader.readString(), reader.readId(), reader.readId(),
+                reader.readId(), reader.readInt(), reader.readInt());
+    }
+
+    private static void writeTrap(RecordWriter writer, TrapRecord trap) throws IOException {
+        writeEvent(writer, trap);
+        writer.writeString(trap.getTrapType());
+        writer.writeString(trap.getLongDescription());
+        writer.writeString(trap.getTranslatedEnterprise());
+        writer.writeString(trap.getEnterprise());
+        writer.writeString(trap.getTrapTypeOid());
+    }
+
+    private static TrapRecord readTrap(RecordReader reader) {
+        final EventRecord event = readEvent(reader);
+        return new TrapRecord(event, reader.readString(), reader.readString(), reader.readString(),
+                reader.readString(), reader.readString());
+    }
+
+
+    /**
+     * Streams records into a snapshot.
+     *
+     * Records of any given type must be handed over from a single thread, but different
+     * types of records can be handed over concurrently.
+     */
+    public static class Writer implements CpnRecordHandler, Closeable {
+        private final File file;
+        private final Dictionary dictionary = new Dictionary();
+        private final List<RecordWriter> sections = new ArrayList<>(SECTION_COLUMNS.length);
+
+        private Writer(File file) throws IOException {
+            this.file = file;
+            try {
+                for (int numColumns : SECTION_COLUMNS) {
+                    sections.add(new RecordWriter(file, numColumns, dictionary));
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        public void handleTicket(TicketRecord ticket) {
+            final RecordWriter writer = sections.get(0);
+            try {
+                writeTicket(writer, ticket);
+                writer.endRecord();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public void handleServiceEvent(EventRecord serviceEvent) {
+            addEvent(sections.get(1), serviceEvent);
+        }
+
+        @Override
+        public void handleSyslogEvent(EventRecord syslogEvent) {
+            addEvent(sections.get(2), syslogEvent);
+        }
+
+        @Override
+        public void handleTrap(TrapRecord trap) {
+            final RecordWriter writer = sections.get(3);
+            try {
+                writeTrap(writer, trap);
+                writer.endRecord();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private static void addEvent(RecordWriter writer, EventRecord event) {
+            try {
+                writeEvent(writer, event);
+                writer.endRecord();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        /**
+         * Writes the snapshot once all of the records have been handed over.
+         */
+        public void finish() throws IOException {
+            for (RecordWriter section : sections) {
+                section.flush();
+            }
+
+            long headerSize = 2 * Integer.BYTES + Long.BYTES + Integer.BYTES;
+            for (int numColumns : SECTION_COLUMNS) {
+                headerSize += 2 * Integer.BYTES + (long)numColumns * Long.BYTES;
+            }
+            final ByteBuffer header = ByteBuffer.allocate((int)headerSize);
+            header.position(2 * Integer.BYTES + Long.BYTES + Integer.BYTES);
+
+            try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                // Copy the spooled columns right after the header
+                long position = headerSize;
+                for (RecordWriter section : sections) {
+                    header.putInt(section.size);
+                    header.putInt(section.spools.length);
+                    for (File spool : section.spools) {
+                        header.putLong(position);
+                        position += transfer(spool, out, position);
+                    }
+                }
+
+                final long dictionaryOffset = position;
+                out.position(dictionaryOffset);
+                // Don't close the stream, it would close the channel
+                final DataOutputStream dictionaryOut = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(out)));
+                for (String str : dictionary.strings) {
+                    final byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+                    dictionaryOut.writeInt(bytes.length);
+                    dictionaryOut.write(bytes);
+                }
+                dictionaryOut.flush();
+
+                header.putInt(0, MAGIC);
+                header.putInt(Integer.BYTES, VERSION);
+                header.putLong(2 * Integer.BYTES, dictionaryOffset);
+                header.putInt(2 * Integer.BYTES + Long.BYTES, dictionary.strings.size());
+                header.flip();
+                while (header.hasRemaining()) {
+                    out.write(header, header.position());
+                }
+            }
+        }
+
+        private static long transfer(File spool, FileChannel out, long position) throws IOException {
+            try (FileChannel in = FileChannel.open(spool.toPath(), StandardOpenOption.READ)) {
+                final long size = in.size();
+                // The header is written last, so the position can be past the end of the file
+                out.position(position);
+                long transferred = 0;
+                while (transferred < size) {
+                    transferred += in.transferTo(transferred, size - transferred, out);
+                }
+                return size;
+            }
+        }
+
+        /**
+         * Deletes the spooled columns. The snapshot is left untouched if {@link #finish()} wasn't called.
+         */
+        @Override
+        public void close() throws IOException {
+            IOException failure = null;
+            for (RecordWriter section : sections) {
+                try {
+                    section.close();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private static class Dictionary {
+        private final Map<String, Integer> refsByString = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+
+        private synchronized int getRef(String str) {
+            if (str == null) {
+                return NULL_REF;
+            }
+            return refsByString.computeIfAbsent(str, s -> {
+                strings.add(s);
+                return strings.size() - 1;
+            });
+        }
+    }
+
+    /**
+     * Appends the fields of a record to the spool of the corresponding column, one field at a time.
+     */
+    private static class RecordWriter implements Closeable {
+        private final File[] spools;
+        private final DataOutputStream[] columns;
+        private final Dictionary dictionary;
+        private int column;
+        private int size;
+
+        private RecordWriter(File file, int numColumns, Dictionary dictionary) throws IOException {
+            this.spools = new File[numColumns];
+            this.columns = new DataOutputStream[numColumns];
+            this.dictionary = dictionary;
+            try {
+                for (int i = 0; i < numColumns; i++) {
+                    spools[i] = File.createTempFile(file.getName() + ".", ".column", file.getAbsoluteFile().getParentFile());
+                    columns[i] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spools[i]), SPOOL_BUFFER_SIZE));
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        private DataOutputStream next() {
+            return columns[column++];
+        }
+
+        private void endRecord() {
+            if (column != columns.length) {
+                throw new IllegalStateException(String.format("Wrote %d columns instead of %d.", column, columns.length));
+            }
+            column = 0;
+            size++;
+        }
+
+        private void writeString(String value) throws IOException {
+            next().writeInt(dictionary.getRef(value));
+        }
+
+        /**
+         * IDs that are plain numbers are stored as is, anything else is stored
+         * as a negative reference to the dictionary.
+         */
+        private void writeId(String id) throws IOException {
+            final int numericId = toNumericId(id);
+            next().writeInt(numericId >= 0 ? numericId : -2 - dictionary.getRef(id));
+        }
+
+        private void writeTime(Date time) throws IOException {
+            next().writeLong(time != null ? time.getTime() : NULL_TIME);
+        }
+
+        private void writeInt(int value) throws IOException {
+            next().writeInt(value);
+        }
+
+        private void writeSeverity(EventSeverity severity) throws IOException {
+            next().writeByte(severity != null ? severity.ordinal() : NULL_BYTE);
+        }
+
+        private void writeBoolean(Boolean value) throws IOException {
+            next().writeByte(value != null ? (value ? 1 : 0) : NULL_BYTE);
+        }
+
+        private void flush() throws IOException {
+            for (DataOutputStream out : columns) {
+                out.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i] != null) {
+                    columns[i].close();
+                }
+                if (spools[i] != null && !spools[i].delete() && spools[i].exists()) {
+                    throw new IOException("Failed to delete spool: " + spools[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * A column mapped in chunks, so that it isn't limited to the 2GB that can be addressed by a single buffer.
+     * The chunk size is a multiple of the width of the values, so values never span two chunks.
+     */
+    private static class MappedColumn {
+        private final ByteBuffer[] chunks;
+        private final int chunkSize;
+
+        private MappedColumn(FileChannel channel, long offset, long length, int chunkSize) throws IOException {
+            this.chunkSize = chunkSize;
+            this.chunks = new ByteBuffer[(int)((length + chunkSize - 1) / chunkSize)];
+            for (int i = 0; i < chunks.length; i++) {
+                final long chunkOffset = (long)i * chunkSize;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset + chunkOffset, Math.min(chunkSize, length - chunkOffset));
+            }
+        }
+
+        private byte getByte(long index) {
+            return chunks[(int)(index / chunkSize)].get((int)(index % chunkSize));
+        }
+
+        private int getInt(long index) {
+            final long position = index * Integer.BYTES;
+            return chunks[(int)(position / chunkSize)].getInt((int)(position % chunkSize));
+        }
+
+        private long getLong(long index) {
+            final long position = index * Long.BYTES;
+            return chunks[(int)(position / chunkSize)].getLong((int)(position % chunkSize));
+        }
+    }
+
+    /**
+     * Reads the fields of a record from the corresponding columns, one field at a time.
+     */
+    private static class RecordReader {
+        private final MappedColumn[] columns;
+        private final String[] strings;
+        private int index;
+        private int column;
+
+        private RecordReader(MappedColumn[] columns, String[] strings) {
+            this.columns = columns;
+            this.strings = strings;
+        }
+
+        private RecordReader seek(int index) {
+            this.index = index;
+            this.column = 0;
+            return this;
+        }
+
+        private MappedColumn next() {
+            return columns[column++];
+        }
+
+        private String readString() {
+            final int ref = next().getInt(index);
+            return ref != NULL_REF ? strings[ref] : null;
+        }
+
+        private String readId() {
+            final int id = next().getInt(index);
+            if (id >= 0) {
+                return Integer.toString(id);
+            }
+            final int ref = -2 - id;
+            return ref != NULL_REF ? strings[ref] : null;
+        }
+
+        private Date readTime() {
+            final long time = next().getLong(index);
+            return time != NULL_TIME ? new Date(time) : null;
+        }
+
+        private int readInt() {
+            return next().getInt(index);
+        }
+
+        private EventSeverity readSeverity() {
+            final byte ordinal = next().getByte(index);
+            return ordinal != NULL_BYTE ? SEVERITIES[ordinal] : null;
+        }
+
+        private Boolean readBoolean() {
+            final byte value = next().getByte(index);
+            return value != NULL_BYTE ? Boolean.valueOf(value == 1) : null;
+        }
+    }
+
+    /**
+     * @return the ID as an int if it can be converted back to the exact same string, -1 otherwise
+     */
+    private static int toNumericId(String id) {
+        if (id == null || id.isEmpty() || id.length() > 10 || (id.length() > 1 && id.charAt(0) == '0')) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < id.length(); i++) {
+            final char c = id.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value <= Integer.MAX_VALUE ? (int)value : -1;
+    }
+}
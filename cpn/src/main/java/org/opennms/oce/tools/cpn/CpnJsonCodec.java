@@ -0,0 +1,318 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.tools.cpn;
+
+import java.io.IOException;
+import java.util.Date;
+
+import org.opennms.oce.tools.cpn.model.EventRecord;
+import org.opennms.oce.tools.cpn.model.EventSeverity;
+import org.opennms.oce.tools.cpn.model.TicketRecord;
+import org.opennms.oce.tools.cpn.model.TrapRecord;
+import org.opennms.oce.tools.es.JsonCodec;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Codec for the CPN records stored in Elasticsearch.
+ *
+ * The records are read using hand-written adapters that call their constructors directly
+ * instead of populating the final fields through reflection. They are written using
+ * Gson's default reflective adapters, so the documents keep their existing layout.
+ */
+public class CpnJsonCodec {
+
+    private static final JsonCodec CODEC = JsonCodec.newBuilder()
+            .registerTypeAdapterFactory(new RecordAdapterFactory())
+            .build();
+
+    private CpnJsonCodec() {
+    }
+
+    public static JsonCodec getCodec() {
+        return CODEC;
+    }
+
+    public static Gson getGson() {
+        return CODEC.getGson();
+    }
+
+    private static class RecordAdapterFactory implements TypeAdapterFactory {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            final Class<? super T> rawType = type.getRawType();
+            final TypeAdapter<T> delegate = gson.getDelegateAdapter(this, type);
+            if (rawType == EventRecord.class) {
+                return (TypeAdapter<T>) new EventRecordAdapter(gson, (TypeAdapter<EventRecord>) delegate);
+            } else if (rawType == TrapRecord.class) {
+                return (TypeAdapter<T>) new TrapRecordAdapter(gson, (TypeAdapter<TrapRecord>) delegate);
+            } else if (rawType == TicketRecord.class) {
+                return (TypeAdapter<T>) new TicketRecordAdapter(gson, (TypeAdapter<TicketRecord>) delegate);
+            }
+            return null;
+        }
+    }
+
+    private static abstract class RecordAdapter<T> extends TypeAdapter<T> {
+        private final TypeAdapter<T> delegate;
+        protected final TypeAdapter<String> stringAdapter;
+        protected final TypeAdapter<Date> dateAdapter;
+        protected final TypeAdapter<Integer> intAdapter;
+        protected final TypeAdapter<Boolean> booleanAdapter;
+        protected final TypeAdapter<EventSeverity> severityAdapter;
+
+        private RecordAdapter(Gson gson, TypeAdapter<T> delegate) {
+            this.delegate = delegate;
+            stringAdapter = gson.getAdapter(String.class);
+            dateAdapter = gson.getAdapter(Date.class);
+            intAdapter = gson.getAdapter(Integer.class);
+            booleanAdapter = gson.getAdapter(Boolean.class);
+            severityAdapter = gson.getAdapter(EventSeverity.class);
+        }
+
+        @Override
+        public void write(JsonWriter out, T value) throws IOException {
+            delegate.write(out, value);
+        }
+
+        protected int readInt(JsonReader in) throws IOException {
+            final Integer value = intAdapter.read(in);
+            return value != null ? value : 0;
+        }
+    }
+
+    /**
+     * Accumulates the fields shared by syslog and trap records.
+     */
+    private static class EventFields {
+        private String source;
+        private EventSeverity severity;
+        private String eventId;
+        private Date time;
+        private String description;
+        private String detailedDescription;
+        private String location;
+        private String alarmId;
+        private String ticketId;
+        private String causingEventId;
+        private int duplicationCount;
+        private int reductionCount;
+
+        private boolean read(String name, JsonReader in, RecordAdapter<?> adapter) throws IOException {
+            switch (name) {
+                case "source":
+                    source = adapter.stringAdapter.read(in);
+                    return true;
+                case "severity":
+                    severity = adapter.severityAdapter.read(in);
+                    return true;
+                case "eventId":
+                    eventId = adapter.stringAdapter.read(in);
+                    return true;
+                case "time":
+                    time = adapter.dateAdapter.read(in);
+                    return true;
+                case "description":
+                    description = adapter.stringAdapter.read(in);
+                    return true;
+                case "detailedDescription":
+                    detailedDescription = adapter.stringAdapter.read(in);
+                    return true;
+                case "location":
+                    location = adapter.stringAdapter.read(in);
+                    return true;
+                case "alarmId":
+                    alarmId = adapter.stringAdapter.read(in);
+                    return true;
+                case "ticketId":
+                    ticketId = adapter.stringAdapter.read(in);
+                    return true;
+                case "causingEventId":
+                    causingEventId = adapter.stringAdapter.read(in);
+                    return true;
+                case "duplicationCount":
+                    duplicationCount = adapter.readInt(in);
+                    return true;
+                case "reductionCount":
+                    reductionCount = adapter.readInt(in);
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        private EventRecord toEventRecord() {
+            return new EventRecord(source, severity, eventId, time, description, detailedDescription, location,
+                    alarmId, ticketId, causingEventId, duplicationCount, reductionCount);
+        }
+    }
+
+    private static class EventRecordAdapter extends RecordAdapter<EventRecord> {
+        private EventRecordAdapter(Gson gson, TypeAdapter<EventRecord> delegate) {
+            super(gson, delegate);
+        }
+
+        @Override
+        public EventRecord read(JsonReader in) throws IOException {
+            final EventFields fields = new EventFields();
+            in.beginObject();
+            while (in.hasNext()) {
+                if (!fields.read(in.nextName(), in, this)) {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return fields.toEventRecord();
+        }
+    }
+
+    private static class TrapRecordAdapter extends RecordAdapter<TrapRecord> {
+        private TrapRecordAdapter(Gson gson, TypeAdapter<TrapRecord> delegate) {
+            super(gson, delegate);
+        }
+
+        @Override
+        public TrapRecord read(JsonReader in) throws IOException {
+            final EventFields fields = new EventFields();
+            String trapType = null;
+            String longDescription = null;
+            String translatedEnterprise = null;
+            String enterprise = null;
+            String trapTypeOid = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                final String name = in.nextName();
+                if (fields.read(name, in, this)) {
+                    continue;
+                }
+                switch (name) {
+                    case "trapType":
+                        trapType = stringAdapter.read(in);
+                        break;
+                    case "longDescription":
+                        longDescription = stringAdapter.read(in);
+                        break;
+                    case "translatedEnterprise":
+                        translatedEnterprise = stringAdapter.read(in);
+                        break;
+                    case "enterprise":
+                        enterprise = stringAdapter.read(in);
+                        break;
+                    case "trapTypeOid":
+                        trapTypeOid = stringAdapter.read(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return new TrapRecord(fields.toEventRecord(), trapType, longDescription, translatedEnterprise,
+                    enterprise, trapTypeOid);
+        }
+    }
+
+    private static class TicketRecordAdapter extends RecordAdapter<TicketRecord> {
+        private TicketRecordAdapter(Gson gson, TypeAdapter<TicketRecord> delegate) {
+            super(gson, delegate);
+        }
+
+        @Override
+        public TicketRecord read(JsonReader in) throws IOException {
+            EventSeverity severity = null;
+            String ticketId = null;
+            Date lastModificationTime = null;
+            Date rootEventTime = null;
+            String description = null;
+            String location = null;
+            Boolean acknowledged = null;
+            Date creationTime = null;
+            int eventCount = 0;
+            String affectedDevicesCount = null;
+            String duplicationCount = null;
+            String reductionCount = null;
+            String alarmCount = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "severity":
+                        severity = severityAdapter.read(in);
+                        break;
+                    case "ticketId":
+                        ticketId = stringAdapter.read(in);
+                        break;
+                    case "lastModificationTime":
+                        lastModificationTime = dateAdapter.read(in);
+                        break;
+                    case "rootEventTime":
+                        rootEventTime = dateAdapter.read(in);
+                        break;
+                    case "description":
+                        description = stringAdapter.read(in);
+                        break;
+                    case "location":
+                        location = stringAdapter.read(in);
+                        break;
+                    case "acknowledged":
+                        acknowledged = booleanAdapter.read(in);
+                        break;
+                    case "creationTime":
+                        creationTime = dateAdapter.read(in);
+                        break;
+                    case "eventCount":
+                        eventCount = readInt(in);
+                        break;
+                    case "affectedDevicesCount":
+                        affectedDevicesCount = stringAdapter.read(in);
+                        break;
+                    case "duplicationCount":
+                        duplicationCount = stringAdapter.read(in);
+                        break;
+                    case "reductionCount":
+                        reductionCount = stringAdapter.read(in);
+                        break;
+                    case "alarmCount":
+                        alarmCount = stringAdapter.read(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return new TicketRecord(severity, ticketId, lastModificationTime, rootEventTime, description, location,
+                    acknowledged, creationTime, eventCount, affectedDevicesCount, duplicationCount, reductionCount,
+                    alarmCount);
+        }
+    }
+}
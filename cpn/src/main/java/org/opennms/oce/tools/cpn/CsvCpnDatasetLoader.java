@@ -35,8 +35,16 @@ import java.io.Reader;
 import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
 import org.opennms.oce.tools.cpn.model.EventRecord;
 import org.opennms.oce.tools.cpn.model.TicketRecord;
@@ -44,123 +52,266 @@ import org.opennms.oce.tools.cpn.model.TrapRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 public class CsvCpnDatasetLoader {
 
     private static final Logger LOG = LoggerFactory.getLogger(CsvCpnDatasetLoader.class);
 
     public static CpnDataset loadDataset(File sourceFolder, ZoneId timeZone) throws IOException {
-        if (!sourceFolder.isDirectory()) {
-            throw new IOException(sourceFolder + " is not a directory!");
-        }
-        List<File> ticketCsvFiles = new ArrayList<>();
-        List<File> serviceCsvFiles = new ArrayList<>();
-        List<File> syslogCsvFiles = new ArrayList<>();
-        List<File> trapCsvFiles = new ArrayList<>();
-        for (String fileName : sourceFolder.list((dir, name) -> name.toLowerCase().endsWith(".csv"))) {
-            final String fileNameLower = fileName.toLowerCase();
-            final File targetFile = new File(sourceFolder, fileName);
-            if (fileNameLower.contains("ticket")) {
-                ticketCsvFiles.add(targetFile);
-            } else if (fileNameLower.contains("service")) {
-                serviceCsvFiles.add(targetFile);
-            } else if (fileNameLower.contains("syslog")) {
-                syslogCsvFiles.add(targetFile);
-            } else if (fileNameLower.contains("trap")) {
-                trapCsvFiles.add(targetFile);
-            }
-        }
-        return loadDataset(ticketCsvFiles, serviceCsvFiles, syslogCsvFiles, trapCsvFiles, timeZone);
+        return loadDataset(sourceFolder, timeZone, 1);
+    }
+
+    public static CpnDataset loadDataset(File sourceFolder, ZoneId timeZone, int numThreads) throws IOException {
+        final CsvFiles files = CsvFiles.fromFolder(sourceFolder);
+        return loadDataset(files.ticketCsvFiles, files.serviceCsvFiles, files.syslogCsvFiles, files.trapCsvFiles, timeZone, numThreads);
     }
 
     public static CpnDataset loadDataset(List<File> ticketCsvFiles, List<File> serviceCsvFiles, List<File> syslogCsvFiles, List<File> trapCsvFiles, ZoneId timeZone) throws IOException {
+        return loadDataset(ticketCsvFiles, serviceCsvFiles, syslogCsvFiles, trapCsvFiles, timeZone, 1);
+    }
+
+    /**
+     * Loads the dataset from the given files.
+     *
+     * When more than one thread is used, the files are parsed concurrently and the
+     * results are merged in the same order as when they are parsed one after another.
+     */
+    public static CpnDataset loadDataset(List<File> ticketCsvFiles, List<File> serviceCsvFiles, List<File> syslogCsvFiles, List<File> trapCsvFiles, ZoneId timeZone, int numThreads) throws IOException {
         final DateHandler dateHandler = new DateHandler(timeZone);
-        final List<File> allFiles = new ArrayList<>();
-        allFiles.addAll(ticketCsvFiles);
-        allFiles.addAll(serviceCsvFiles);
-        allFiles.addAll(syslogCsvFiles);
-        allFiles.addAll(trapCsvFiles);
-        LOG.debug("Loading data from files: {}", allFiles);
+        LOG.debug("Loading data from files using {} threads: {}", numThreads, getAllFiles(ticketCsvFiles, serviceCsvFiles, syslogCsvFiles, trapCsvFiles));
 
-        final List<TicketRecord> tickets = new ArrayList<>();
-        for (File csvFile : ticketCsvFiles) {
-            tickets.addAll(getTickets(csvFile, dateHandler));
-        }
+        final ExecutorService executor = newExecutor(numThreads);
+        try {
+            // Submit one task per file, in the order the files would be parsed sequentially
+            final List<Future<List<TicketRecord>>> ticketFutures = submitAll(executor, ticketCsvFiles,
+                    f -> parse(f, record -> new TicketRecord(record, dateHandler)));
+            final List<Future<List<EventRecord>>> serviceFutures = submitAll(executor, serviceCsvFiles,
+                    f -> parse(f, record -> new EventRecord("service", record, dateHandler)));
+            final List<Future<List<EventRecord>>> syslogFutures = submitAll(executor, syslogCsvFiles,
+                    f -> parse(f, record -> new EventRecord("syslog", record, dateHandler)));
+            final List<Future<List<TrapRecord>>> trapFutures = submitAll(executor, trapCsvFiles,
+                    f -> parseTraps(f, dateHandler));
 
-        final List<EventRecord> serviceEvents = new ArrayList<>();
-        for (File csvFile : serviceCsvFiles) {
-            serviceEvents.addAll(getEvents(csvFile, "service", dateHandler));
+            final List<TicketRecord> tickets = getAll(ticketFutures);
+            final List<EventRecord> serviceEvents = getAll(serviceFutures);
+            final List<EventRecord> syslogEvents = getAll(syslogFutures);
+            final List<TrapRecord> traps = getAll(trapFutures);
+            LOG.debug("Done loading files.");
+            return new CsvBackedCpnDataset(tickets, serviceEvents, syslogEvents, traps);
+        } finally {
+            executor.shutdownNow();
         }
+    }
 
-        final List<EventRecord> syslogEvents = new ArrayList<>();
-        for (File csvFile : syslogCsvFiles) {
-            syslogEvents.addAll(getEvents(csvFile, "syslog", dateHandler));
-        }
+    /**
+     * Parses the .csv files in the given folder and hands the records to the handler one at
+     * a time, without retaining them.
+     *
+     * Tickets are streamed first, followed by the service events, syslog events and traps.
+     */
+    public static void streamDataset(File sourceFolder, ZoneId timeZone, CpnRecordHandler handler) throws IOException {
+        streamDataset(sourceFolder, timeZone, handler, 1);
+    }
 
-        final List<TrapRecord> traps = new ArrayList<>();
-        for (File csvFile : trapCsvFiles) {
+    /**
+     * Parses the .csv files in the given folder and hands the records to the handler one at
+     * a time, without retaining them.
+     *
+     * When more than one thread is used, the tickets, service events, syslog events and traps
+     * are streamed concurrently. Records of any given type are always handed over from a single
+     * thread, in the same order as when they are streamed sequentially.
+     */
+    public static void streamDataset(File sourceFolder, ZoneId timeZone, CpnRecordHandler handler, int numThreads) throws IOException {
+        final CsvFiles files = CsvFiles.fromFolder(sourceFolder);
+        streamDataset(files.ticketCsvFiles, files.serviceCsvFiles, files.syslogCsvFiles, files.trapCsvFiles, timeZone, handler, numThreads);
+    }
+
+    public static void streamDataset(List<File> ticketCsvFiles, List<File> serviceCsvFiles, List<File> syslogCsvFiles, List<File> trapCsvFiles, ZoneId timeZone, CpnRecordHandler handler) throws IOException {
+        streamDataset(ticketCsvFiles, serviceCsvFiles, syslogCsvFiles, trapCsvFiles, timeZone, handler, 1);
+    }
+
+    public static void streamDataset(List<File> ticketCsvFiles, List<File> serviceCsvFiles, List<File> syslogCsvFiles, List<File> trapCsvFiles, ZoneId timeZone, CpnRecordHandler handler, int numThreads) throws IOException {
+        final DateHandler dateHandler = new DateHandler(timeZone);
+        LOG.debug("Streaming data from files using {} threads: {}", numThreads, getAllFiles(ticketCsvFiles, serviceCsvFiles, syslogCsvFiles, trapCsvFiles));
+
+        final List<Callable<Void>> streams = new ArrayList<>(4);
+        streams.add(() -> {
+            for (File csvFile : ticketCsvFiles) {
+                forEachRecord(csvFile, record -> handler.handleTicket(new TicketRecord(record, dateHandler)));
+            }
+            return null;
+        });
+        streams.add(() -> {
+            for (File csvFile : serviceCsvFiles) {
+                forEachRecord(csvFile, record -> handler.handleServiceEvent(new EventRecord("service", record, dateHandler)));
+            }
+            return null;
+        });
+        streams.add(() -> {
+            for (File csvFile : syslogCsvFiles) {
+                forEachRecord(csvFile, record -> handler.handleSyslogEvent(new EventRecord("syslog", record, dateHandler)));
+            }
+            return null;
+        });
+        streams.add(() -> {
+            for (File csvFile : trapCsvFiles) {
+                forEachTrap(csvFile, dateHandler, handler::handleTrap);
+            }
+            return null;
+        });
+
+        if (numThreads <= 1) {
+            for (Callable<Void> stream : streams) {
+                call(stream);
+            }
+        } else {
+            final ExecutorService executor = newExecutor(Math.min(numThreads, streams.size()));
             try {
-                traps.addAll(getTraps(csvFile, dateHandler));
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to parse traps in: " + csvFile, e);
+                final List<Future<Void>> futures = new ArrayList<>(streams.size());
+                for (Callable<Void> stream : streams) {
+                    futures.add(executor.submit(stream));
+                }
+                for (Future<Void> future : futures) {
+                    get(future);
+                }
+            } finally {
+                executor.shutdownNow();
             }
         }
         LOG.debug("Done loading files.");
+    }
+
+    private static <T> List<T> parse(File csvFile, Function<CSVRecord, T> parser) throws IOException {
+        final List<T> records = new ArrayList<>();
+        forEachRecord(csvFile, record -> records.add(parser.apply(record)));
+        return records;
+    }
 
-        return new CsvBackedCpnDataset(tickets, serviceEvents, syslogEvents, traps);
-    }
-
-    private static List<TicketRecord> getTickets(File csvFile, DateHandler dateHandler) throws IOException {
-        final Reader in = new FileReader(csvFile);
-        final Iterable<CSVRecord> records = CSVFormat.DEFAULT
-                .withFirstRecordAsHeader()
-                .parse(in);
-        boolean first = true;
-        final List<TicketRecord> tickets = new ArrayList<>();
-        for (CSVRecord record : records) {
-            if (first) {
-                // Skip the header
-                first = false;
-                continue;
+    private static List<TrapRecord> parseTraps(File csvFile, DateHandler dateHandler) throws IOException {
+        final List<TrapRecord> traps = new ArrayList<>();
+        forEachTrap(csvFile, dateHandler, traps::add);
+        return traps;
+    }
+
+    private static void forEachTrap(File csvFile, DateHandler dateHandler, Consumer<TrapRecord> consumer) {
+        try {
+            forEachRecord(csvFile, record -> consumer.accept(new TrapRecord(record, dateHandler)));
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to parse traps in: " + csvFile, e);
+        }
+    }
+
+    private static void forEachRecord(File csvFile, Consumer<CSVRecord> consumer) throws IOException {
+        try (Reader in = new FileReader(csvFile);
+             CSVParser parser = CSVFormat.DEFAULT.withFirstRecordAsHeader().parse(in)) {
+            boolean first = true;
+            for (CSVRecord record : parser) {
+                if (first) {
+                    // Skip the header
+                    first = false;
+                    continue;
+                }
+                consumer.accept(record);
             }
-            tickets.add(new TicketRecord(record, dateHandler));
         }
-        return tickets;
-    }
-
-    private static List<EventRecord> getEvents(File csvFile, String source, DateHandler dateHandler) throws IOException {
-        final Reader in = new FileReader(csvFile);
-        final Iterable<CSVRecord> records = CSVFormat.DEFAULT
-                .withFirstRecordAsHeader()
-                .parse(in);
-        boolean first = true;
-        final List<EventRecord> events = new ArrayList<>();
-        for (CSVRecord record : records) {
-            if (first) {
-                // Skip the header
-                first = false;
-                continue;
+    }
+
+    private static ExecutorService newExecutor(int numThreads) {
+        if (numThreads <= 1) {
+            // Run the tasks on the calling thread
+            return MoreExecutors.newDirectExecutorService();
+        }
+        return Executors.newFixedThreadPool(numThreads, new ThreadFactoryBuilder()
+                .setNameFormat("csv-loader-%d")
+                .setDaemon(true)
+                .build());
+    }
+
+    private static <T> List<Future<List<T>>> submitAll(ExecutorService executor, List<File> files, FileParser<T> parser) {
+        final List<Future<List<T>>> futures = new ArrayList<>(files.size());
+        for (File file : files) {
+            futures.add(executor.submit(() -> parser.parse(file)));
+        }
+        return futures;
+    }
+
+    private static <T> List<T> getAll(List<Future<List<T>>> futures) throws IOException {
+        final List<T> all = new ArrayList<>();
+        for (Future<List<T>> future : futures) {
+            all.addAll(get(future));
+        }
+        return all;
+    }
+
+    private static <T> T get(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException)cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
             }
-            events.add(new EventRecord(source, record, dateHandler));
+            throw new RuntimeException(cause);
         }
-        return events;
     }
 
-    private static List<TrapRecord> getTraps(File csvFile, DateHandler dateHandler) throws IOException {
-        final Reader in = new FileReader(csvFile);
-        final Iterable<CSVRecord> records = CSVFormat.DEFAULT
-                .withFirstRecordAsHeader()
-                .parse(in);
-        boolean first = true;
-        final List<TrapRecord> traps = new ArrayList<>();
-        for (CSVRecord record : records) {
-            if (first) {
-                // Skip the header
-                first = false;
-                continue;
+    private static void call(Callable<Void> callable) throws IOException {
+        try {
+            callable.call();
+        } catch (IOException|RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static List<File> getAllFiles(List<File> ticketCsvFiles, List<File> serviceCsvFiles, List<File> syslogCsvFiles, List<File> trapCsvFiles) {
+        final List<File> allFiles = new ArrayList<>();
+        allFiles.addAll(ticketCsvFiles);
+        allFiles.addAll(serviceCsvFiles);
+        allFiles.addAll(syslogCsvFiles);
+        allFiles.addAll(trapCsvFiles);
+        return allFiles;
+    }
+
+    @FunctionalInterface
+    private interface FileParser<T> {
+        List<T> parse(File file) throws IOException;
+    }
+
+    private static class CsvFiles {
+        private final List<File> ticketCsvFiles = new ArrayList<>();
+        private final List<File> serviceCsvFiles = new ArrayList<>();
+        private final List<File> syslogCsvFiles = new ArrayList<>();
+        private final List<File> trapCsvFiles = new ArrayList<>();
+
+        private static CsvFiles fromFolder(File sourceFolder) throws IOException {
+            if (!sourceFolder.isDirectory()) {
+                throw new IOException(sourceFolder + " is not a directory!");
             }
-            traps.add(new TrapRecord(record, dateHandler));
+            final CsvFiles files = new CsvFiles();
+            for (String fileName : sourceFolder.list((dir, name) -> name.toLowerCase().endsWith(".csv"))) {
+                final String fileNameLower = fileName.toLowerCase();
+                final File targetFile = new File(sourceFolder, fileName);
+                if (fileNameLower.contains("ticket")) {
+                    files.ticketCsvFiles.add(targetFile);
+                } else if (fileNameLower.contains("service")) {
+                    files.serviceCsvFiles.add(targetFile);
+                } else if (fileNameLower.contains("syslog")) {
+                    files.syslogCsvFiles.add(targetFile);
+                } else if (fileNameLower.contains("trap")) {
+                    files.trapCsvFiles.add(targetFile);
+                }
+            }
+            return files;
         }
-        return traps;
     }
 
 }
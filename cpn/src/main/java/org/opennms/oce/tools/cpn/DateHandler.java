@@ -36,6 +36,8 @@ import static java.time.temporal.ChronoField.SECOND_OF_MINUTE;
 import static java.time.temporal.ChronoField.YEAR;
 
 import java.time.LocalDateTime;
+import java.time.Month;
+import java.time.Year;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
@@ -48,36 +50,22 @@ import java.util.Objects;
 
 /**
  * Parses the date format found in CPN's .csv files
+ *
+ * Instances are immutable and can be shared across threads.
  */
 public class DateHandler {
 
-    private final ZoneId zoneId;
-
-    public DateHandler(ZoneId zoneId) {
-        this.zoneId = Objects.requireNonNull(zoneId);
-    }
-
-    public Date parse(String str) {
-        return Date.from(parseToZoneDateTime(str).toInstant());
-    }
+    private static final String[] MONTHS = {"Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"};
 
-    public ZonedDateTime parseToZoneDateTime(String str) {
+    private static final DateTimeFormatter FORMATTER;
+    static {
         // Use an explicit map so that we're not dependent on system locale
         final Map<Long, String> moy = new HashMap<>();
-        moy.put(1L, "Jan");
-        moy.put(2L, "Feb");
-        moy.put(3L, "Mar");
-        moy.put(4L, "Apr");
-        moy.put(5L, "May");
-        moy.put(6L, "Jun");
-        moy.put(7L, "Jul");
-        moy.put(8L, "Aug");
-        moy.put(9L, "Sep");
-        moy.put(10L, "Oct");
-        moy.put(11L, "Nov");
-        moy.put(12L, "Dec");
-
-        final DateTimeFormatter formatter = new DateTimeFormatterBuilder()
+        for (int i = 0; i < MONTHS.length; i++) {
+            moy.put(i + 1L, MONTHS[i]);
+        }
+
+        FORMATTER = new DateTimeFormatterBuilder()
                 .parseCaseInsensitive()
                 .parseLenient()
                 .appendValue(YEAR, 4)  // 2 digit year not handled
@@ -93,9 +81,79 @@ public class DateHandler {
                 .appendLiteral(':')
                 .appendValue(SECOND_OF_MINUTE, 2)
                 .toFormatter();
+    }
+
+    private final ZoneId zoneId;
 
-        final LocalDateTime dateTime = LocalDateTime.parse(str, formatter);
+    public DateHandler(ZoneId zoneId) {
+        this.zoneId = Objects.requireNonNull(zoneId);
+    }
+
+    public Date parse(String str) {
+        return Date.from(parseToZoneDateTime(str).toInstant());
+    }
+
+    public ZonedDateTime parseToZoneDateTime(String str) {
+        LocalDateTime dateTime = parseCommonFormat(str);
+        if (dateTime == null) {
+            // Let the formatter deal with anything out of the ordinary
+            dateTime = LocalDateTime.parse(str, FORMATTER);
+        }
         return dateTime.atZone(zoneId);
     }
 
+    /**
+     * Parses timestamps in the form of "2018-Apr-23, 10:27:41" or "2018-Apr-3, 10:27:41"
+     * without going through the formatter.
+     *
+     * @return the date, or null if the timestamp is not in the common form, or uses values
+     * that the formatter would need to resolve i.e. 2018-Feb-30
+     */
+    private static LocalDateTime parseCommonFormat(String str) {
+        final int len = str.length();
+        if (len != 20 && len != 21) {
+            return null;
+        }
+        final int dayLen = len - 19;
+        final int t = 11 + dayLen; // Start of the time
+        if (str.charAt(4) != '-' || str.charAt(8) != '-' || str.charAt(t - 2) != ','
+                || str.charAt(t - 1) != ' ' || str.charAt(t + 2) != ':' || str.charAt(t + 5) != ':') {
+            return null;
+        }
+
+        final int year = digits(str, 0, 4);
+        final int month = month(str);
+        final int day = digits(str, 9, dayLen);
+        final int hour = digits(str, t, 2);
+        final int minute = digits(str, t + 3, 2);
+        final int second = digits(str, t + 6, 2);
+        if (year < 0 || month < 1 || day < 1 || hour < 0 || hour > 23
+                || minute < 0 || minute > 59 || second < 0 || second > 59
+                || day > Month.of(month).length(Year.isLeap(year))) {
+            return null;
+        }
+        return LocalDateTime.of(year, month, day, hour, minute, second);
+    }
+
+    private static int month(String str) {
+        for (int i = 0; i < MONTHS.length; i++) {
+            if (str.regionMatches(5, MONTHS[i], 0, 3)) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static int digits(String str, int start, int len) {
+        int value = 0;
+        for (int i = start; i < start + len; i++) {
+            final char c = str.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
 }
@@ -36,33 +36,39 @@ import java.io.IOException;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.index.query.RangeQueryBuilder;
-import org.elasticsearch.search.aggregations.AggregationBuilder;
 import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.composite.TermsValuesSourceBuilder;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.opennms.oce.tools.cpn.api.CpnEntityDao;
 import org.opennms.oce.tools.cpn.model.EventRecord;
+import org.opennms.oce.tools.cpn.model.LocationRecord;
 import org.opennms.oce.tools.cpn.model.TicketRecord;
 import org.opennms.oce.tools.cpn.model.TrapRecord;
 import org.opennms.oce.tools.es.ESClient;
+import org.opennms.oce.tools.es.Projection;
 
-import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 
 import io.searchbox.client.JestResult;
 import io.searchbox.core.Get;
 import io.searchbox.core.Search;
 import io.searchbox.core.SearchResult;
-import io.searchbox.core.SearchScroll;
-import io.searchbox.core.search.aggregation.TermsAggregation;
 import io.searchbox.core.search.sort.Sort;
 import io.searchbox.params.Parameters;
 
@@ -70,6 +76,10 @@ public class ESDataProvider implements CpnEntityDao {
 
     public static final int BATCH_SIZE = 10000;
 
+    // Fields used to break ties between hits when paging using search_after
+    public static final String TICKET_TIE_BREAKER = "ticketId.keyword";
+    public static final String EVENT_TIE_BREAKER = "eventId.keyword";
+
     private ESClient esClient;
 
     public ESDataProvider(ESClient esClient) {
@@ -93,7 +103,7 @@ public class ESDataProvider implements CpnEntityDao {
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        return result.getSourceAsObject(TicketRecord.class);
+        return CpnJsonCodec.getCodec().decodeSource(result.getJsonObject(), TicketRecord.class);
     }
 
     public void getTicketRecordsInRange(ZonedDateTime startTime, ZonedDateTime endTime, Consumer<List<TicketRecord>> callback) throws IOException {
@@ -123,13 +133,12 @@ public class ESDataProvider implements CpnEntityDao {
     }
 
     private void getTicketRecords(String query, Consumer<List<TicketRecord>> callback) {
-        final Search search = new Search.Builder(query)
+        scroll(query, q -> new Search.Builder(q)
                 .addIndex("tickets")
                 .addType("ticket")
                 .addSort(new Sort("creationTime"))
                 .setParameter(Parameters.SCROLL, "5m")
-                .build();
-        scroll(search, TicketRecord.class, callback);
+                .build(), TicketRecord.class, callback, TICKET_TIE_BREAKER);
     }
 
     @Override
@@ -138,13 +147,11 @@ public class ESDataProvider implements CpnEntityDao {
         searchSourceBuilder.query(QueryBuilders.boolQuery().must(termQuery("ticketId",id)));
         String query = searchSourceBuilder.toString();
 
-        final Search search = new Search.Builder(query)
+        final List<TrapRecord> traps = new ArrayList<>();
+        scroll(query, q -> new Search.Builder(q)
                 .addIndex("traps")
                 .setParameter(Parameters.SCROLL, "5m")
-                .build();
-
-        final List<TrapRecord> traps = new ArrayList<>();
-        scroll(search, TrapRecord.class, traps::addAll);
+                .build(), TrapRecord.class, traps::addAll, EVENT_TIE_BREAKER);
         return traps;
     }
 
@@ -154,13 +161,11 @@ public class ESDataProvider implements CpnEntityDao {
         searchSourceBuilder.query(QueryBuilders.boolQuery().must(termQuery("ticketId",id)));
         String query = searchSourceBuilder.toString();
 
-        final Search search = new Search.Builder(query)
+        final List<EventRecord> syslogs = new ArrayList<>();
+        scroll(query, q -> new Search.Builder(q)
                 .addIndex("syslogs")
                 .setParameter(Parameters.SCROLL, "5m")
-                .build();
-
-        final List<EventRecord> syslogs = new ArrayList<>();
-        scroll(search, EventRecord.class, syslogs::addAll);
+                .build(), EventRecord.class, syslogs::addAll, EVENT_TIE_BREAKER);
         return syslogs;
     }
 
@@ -170,20 +175,18 @@ public class ESDataProvider implements CpnEntityDao {
         searchSourceBuilder.query(QueryBuilders.boolQuery().must(termQuery("ticketId",id)));
         String query = searchSourceBuilder.toString();
 
-        final Search search = new Search.Builder(query)
+        final List<EventRecord> events = new ArrayList<>();
+        scroll(query, q -> new Search.Builder(q)
                 .addIndex("services")
                 .setParameter(Parameters.SCROLL, "5m")
-                .build();
-
-        final List<EventRecord> events = new ArrayList<>();
-        scroll(search, EventRecord.class, events::addAll);
+                .build(), EventRecord.class, events::addAll, EVENT_TIE_BREAKER);
         return events;
     }
 
     public TrapRecord getTrapRecord(String id) throws IOException {
         Get get = new Get.Builder("traps", id).type("trap").build();
         JestResult result = esClient.getJestClient().execute(get);
-        return result.getSourceAsObject(TrapRecord.class);
+        return CpnJsonCodec.getCodec().decodeSource(result.getJsonObject(), TrapRecord.class);
     }
 
     public void getTrapRecords(Consumer<List<TrapRecord>> callback) throws IOException {
@@ -203,6 +206,11 @@ public class ESDataProvider implements CpnEntityDao {
 
     @Override
     public void getTrapRecordsInRange(ZonedDateTime startTime, ZonedDateTime endTime, List<QueryBuilder> includeQueries, List<QueryBuilder> excludeQueries, Consumer<List<TrapRecord>> callback) {
+        getTrapRecordsInRange(startTime, endTime, includeQueries, excludeQueries, Projection.ALL, callback);
+    }
+
+    @Override
+    public void getTrapRecordsInRange(ZonedDateTime startTime, ZonedDateTime endTime, List<QueryBuilder> includeQueries, List<QueryBuilder> excludeQueries, Projection projection, Consumer<List<TrapRecord>> callback) {
         SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
         final BoolQueryBuilder boolQuery = new BoolQueryBuilder();
         boolQuery.mustNot(QueryBuilders.matchQuery("ticketId", ""));
@@ -222,17 +230,17 @@ public class ESDataProvider implements CpnEntityDao {
         }
         searchSourceBuilder.query(boolQuery);
         searchSourceBuilder.size(BATCH_SIZE);
+        projection.applyTo(searchSourceBuilder);
         getTrapRecords(searchSourceBuilder.toString(), callback);
     }
 
     private void getTrapRecords(String query, Consumer<List<TrapRecord>> callback) {
-        final Search search = new Search.Builder(query)
+        scroll(query, q -> new Search.Builder(q)
                 .addIndex("traps")
                 .addType("trap")
                 .addSort(new Sort("time"))
                 .setParameter(Parameters.SCROLL, "5m")
-                .build();
-        scroll(search, TrapRecord.class, callback);
+                .build(), TrapRecord.class, callback, EVENT_TIE_BREAKER);
     }
 
     public void getServiceEventsInRange(ZonedDateTime startTime, ZonedDateTime endTime, Consumer<List<EventRecord>> callback) throws IOException {
@@ -250,19 +258,18 @@ public class ESDataProvider implements CpnEntityDao {
     }
 
     private void getServiceEvents(String query, Consumer<List<EventRecord>> callback) throws IOException {
-        final Search search = new Search.Builder(query)
+        scroll(query, q -> new Search.Builder(q)
                 .addIndex("services")
                 .addType("service")
                 .addSort(new Sort("time"))
                 .setParameter(Parameters.SCROLL, "5m")
-                .build();
-        scroll(search, EventRecord.class, callback);
+                .build(), EventRecord.class, callback, EVENT_TIE_BREAKER);
     }
 
     public EventRecord getSyslogRecord(String id) throws IOException {
         Get get = new Get.Builder("syslogs", id).type("syslog").build();
         JestResult result = esClient.getJestClient().execute(get);
-        return result.getSourceAsObject(EventRecord.class);
+        return CpnJsonCodec.getCodec().decodeSource(result.getJsonObject(), EventRecord.class);
     }
 
     public void getSyslogRecords(Consumer<List<EventRecord>> callback) throws IOException {
@@ -280,6 +287,11 @@ public class ESDataProvider implements CpnEntityDao {
 
     @Override
     public void getSyslogRecordsInRange(ZonedDateTime startTime, ZonedDateTime endTime, List<QueryBuilder> includeQueries, List<QueryBuilder> excludeQueries, Consumer<List<EventRecord>> callback, QueryBuilder... queries)  {
+        getSyslogRecordsInRange(startTime, endTime, includeQueries, excludeQueries, Projection.ALL, callback, queries);
+    }
+
+    @Override
+    public void getSyslogRecordsInRange(ZonedDateTime startTime, ZonedDateTime endTime, List<QueryBuilder> includeQueries, List<QueryBuilder> excludeQueries, Projection projection, Consumer<List<EventRecord>> callback, QueryBuilder... queries)  {
         SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
         final BoolQueryBuilder boolQuery = new BoolQueryBuilder();
         boolQuery.mustNot(QueryBuilders.matchQuery("ticketId", ""));
@@ -301,17 +313,17 @@ public class ESDataProvider implements CpnEntityDao {
         }
         searchSourceBuilder.query(boolQuery);
         searchSourceBuilder.size(BATCH_SIZE);
+        projection.applyTo(searchSourceBuilder);
         getSyslogRecords(searchSourceBuilder.toString(), callback);
     }
 
     private void getSyslogRecords(String query, Consumer<List<EventRecord>> callback) {
-        final Search search = new Search.Builder(query)
+        scroll(query, q -> new Search.Builder(q)
                 .addIndex("syslogs")
                 .addType("syslog")
                 .addSort(new Sort("time"))
                 .setParameter(Parameters.SCROLL, "5m")
-                .build();
-        scroll(search, EventRecord.class, callback);
+                .build(), EventRecord.class, callback, EVENT_TIE_BREAKER);
     }
 
     public List<EventRecord> getEventsByTicketId(String ticketId) throws IOException {
@@ -332,7 +344,42 @@ public class ESDataProvider implements CpnEntityDao {
         return getNumEventsForHostname(startTime, endTime, hostname, excludeQueries, "traps", "trap");
     }
 
+    @Override
+    public Map<String, Long> getNumSyslogEventsByHostname(ZonedDateTime startTime, ZonedDateTime endTime, Set<String> hostnames, List<QueryBuilder> excludeQueries) {
+        return getNumEventsByHostname(startTime, endTime, hostnames, excludeQueries, "syslogs", "syslog");
+    }
+
+    @Override
+    public Map<String, Long> getNumTrapEventsByHostname(ZonedDateTime startTime, ZonedDateTime endTime, Set<String> hostnames, List<QueryBuilder> excludeQueries) {
+        return getNumEventsByHostname(startTime, endTime, hostnames, excludeQueries, "traps", "trap");
+    }
+
     public long getNumEventsForHostname(ZonedDateTime startTime, ZonedDateTime endTime, String hostname, List<QueryBuilder> excludeQueries, String index, String type) {
+        final Search search = getCountSearch(startTime, endTime, hostname, excludeQueries, index, type);
+        SearchResult result = null;
+        try {
+            result = esClient.getJestClient().execute(search);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (!result.isSucceeded()) {
+            throw new RuntimeException(result.getErrorMessage());
+        }
+        return result.getTotal();
+    }
+
+    /**
+     * Count the events for many hostnames at once, using multi-search requests.
+     */
+    public Map<String, Long> getNumEventsByHostname(ZonedDateTime startTime, ZonedDateTime endTime, Set<String> hostnames, List<QueryBuilder> excludeQueries, String index, String type) {
+        final Map<String, Search> searches = new LinkedHashMap<>();
+        for (String hostname : hostnames) {
+            searches.put(hostname, getCountSearch(startTime, endTime, hostname, excludeQueries, index, type));
+        }
+        return esClient.count(searches);
+    }
+
+    private static Search getCountSearch(ZonedDateTime startTime, ZonedDateTime endTime, String hostname, List<QueryBuilder> excludeQueries, String index, String type) {
         SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
         searchSourceBuilder.size(0); // we don't need the results, only the count
         final BoolQueryBuilder boolQuery = QueryBuilders.boolQuery()
@@ -343,26 +390,32 @@ public class ESDataProvider implements CpnEntityDao {
             boolQuery.mustNot(excludeQuery);
         }
         searchSourceBuilder.query(boolQuery);
-        final Search search = new Search.Builder(searchSourceBuilder.toString())
+        return new Search.Builder(searchSourceBuilder.toString())
                 .addIndex(index)
                 .addType(type)
                 .build();
-        SearchResult result = null;
-        try {
-            result = esClient.getJestClient().execute(search);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        if (!result.isSucceeded()) {
-            throw new RuntimeException(result.getErrorMessage());
-        }
-        return result.getTotal();
     }
 
     @Override
     public void getDistinctLocations(ZonedDateTime startTime, ZonedDateTime endTime, List<QueryBuilder> excludeQueries, Consumer<List<String>> callback) {
+        getLocations(startTime, endTime, excludeQueries, locations -> callback.accept(locations.stream()
+                .map(LocationRecord::getLocation)
+                .collect(Collectors.toList())));
+    }
 
-        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
+    /**
+     * Pages through all of the distinct locations of the syslogs and traps that are part of a ticket
+     * using a composite aggregation on the location, along with the number of syslogs and traps
+     * found at every location.
+     *
+     * Every location is delivered exactly once, in lexicographic order.
+     */
+    @Override
+    public void getLocations(ZonedDateTime startTime, ZonedDateTime endTime, List<QueryBuilder> excludeQueries, Consumer<List<LocationRecord>> callback) {
+        getLocations(startTime, endTime, excludeQueries, callback, BATCH_SIZE);
+    }
+
+    void getLocations(ZonedDateTime startTime, ZonedDateTime endTime, List<QueryBuilder> excludeQueries, Consumer<List<LocationRecord>> callback, int pageSize) {
         final BoolQueryBuilder boolQuery = new BoolQueryBuilder();
         boolQuery.mustNot(QueryBuilders.matchQuery("ticketId", ""));
         final RangeQueryBuilder rangeQueryBuilder = new RangeQueryBuilder("time")
@@ -374,81 +427,77 @@ public class ESDataProvider implements CpnEntityDao {
         for (QueryBuilder excludeQuery : excludeQueries) {
             boolQuery.mustNot(excludeQuery);
         }
-        searchSourceBuilder.query(boolQuery);
-
-        AggregationBuilder termsAgg = AggregationBuilders.terms("uniq_location")
-                .field("location.keyword")
-                .size(100000); // FIXME: What if there are more?
-
-        searchSourceBuilder.aggregation(termsAgg);
-        searchSourceBuilder.size(0);
-
-        // Search for syslogs
-        Search search = new Search.Builder(searchSourceBuilder.toString())
-                .addIndex("syslogs")
-                .addType("syslog")
-                .build();
-        SearchResult result = null;
-        try {
-            result = esClient.getJestClient().execute(search);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        if (!result.isSucceeded()) {
-            throw new RuntimeException(result.getErrorMessage());
-        }
-        TermsAggregation terms = result.getAggregations().getTermsAggregation("uniq_location");
-        List<String> locations = terms.getBuckets().stream().map(TermsAggregation.Entry::getKeyAsString).collect(Collectors.toList());
-        callback.accept(locations);
 
-        // Search for traps
-        search = new Search.Builder(searchSourceBuilder.toString())
-                .addIndex("traps")
-                .addType("trap")
-                .build();
-        try {
-            result = esClient.getJestClient().execute(search);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        if (!result.isSucceeded()) {
-            throw new RuntimeException(result.getErrorMessage());
-        }
-        terms = result.getAggregations().getTermsAggregation("uniq_location");
-        locations = terms.getBuckets().stream().map(TermsAggregation.Entry::getKeyAsString).collect(Collectors.toList());
-        callback.accept(locations);
-    }
+        String lastLocation = null;
+        while (true) {
+            final CompositeAggregationBuilder locationsAgg = new CompositeAggregationBuilder("locations",
+                    Collections.singletonList(new TermsValuesSourceBuilder("location").field("location.keyword")))
+                    .size(pageSize)
+                    // Split the counts by type, a location has at most one bucket per index
+                    .subAggregation(AggregationBuilders.terms("indices").field("_index").size(100));
+            if (lastLocation != null) {
+                locationsAgg.aggregateAfter(Collections.singletonMap("location", lastLocation));
+            }
+            final SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
+            searchSourceBuilder.query(boolQuery);
+            searchSourceBuilder.aggregation(locationsAgg);
+            searchSourceBuilder.size(0);
+
+            // Search both syslogs and traps at once
+            final Search search = new Search.Builder(searchSourceBuilder.toString())
+                    .addIndex("syslogs")
+                    .addIndex("traps")
+                    .addType("syslog")
+                    .addType("trap")
+                    .build();
+            final SearchResult result;
+            try {
+                result = esClient.getJestClient().execute(search);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            if (!result.isSucceeded()) {
+                throw new RuntimeException(result.getErrorMessage());
+            }
 
-    private <T> void scroll(Search search, Class<T> clazz, Consumer<List<T>> callback) {
-        try {
-            JestResult result = esClient.getJestClient().execute(search);
-            while(true) {
-                if (!result.isSucceeded()) {
-                    throw new RuntimeException(result.getErrorMessage());
+            final JsonArray buckets = result.getJsonObject().getAsJsonObject("aggregations")
+                    .getAsJsonObject("locations")
+                    .getAsJsonArray("buckets");
+            final List<LocationRecord> locations = new ArrayList<>(buckets.size());
+            for (JsonElement bucket : buckets) {
+                final String location = bucket.getAsJsonObject().getAsJsonObject("key").get("location").getAsString();
+                if (location.equals(lastLocation)) {
+                    // Already delivered
+                    continue;
                 }
-
-                // Cast the result to a search result for easy access to the hits
-                SearchResult searchResult = new SearchResult(new Gson());
-                searchResult.setJsonObject(result.getJsonObject());
-                searchResult.setPathToResult(result.getPathToResult());
-                List<SearchResult.Hit<T, Void>> hits = searchResult.getHits(clazz);
-                if (hits.size() < 1) {
-                    break;
+                long numSyslogs = 0;
+                long numTraps = 0;
+                for (JsonElement indexBucket : bucket.getAsJsonObject().getAsJsonObject("indices").getAsJsonArray("buckets")) {
+                    final String index = indexBucket.getAsJsonObject().get("key").getAsString();
+                    final long docCount = indexBucket.getAsJsonObject().get("doc_count").getAsLong();
+                    if (index.startsWith("syslogs")) {
+                        numSyslogs += docCount;
+                    } else if (index.startsWith("traps")) {
+                        numTraps += docCount;
+                    }
                 }
-
-                // Issue the callback
-                callback.accept(hits.stream().map(h -> h.source).collect(Collectors.toList()));
-
-                // Scroll
-                String scrollId = result.getJsonObject().getAsJsonPrimitive("_scroll_id").getAsString();
-                SearchScroll scroll = new SearchScroll.Builder(scrollId, "5m").build();
-                result = esClient.getJestClient().execute(scroll);
+                locations.add(new LocationRecord(location, numSyslogs, numTraps));
+                lastLocation = location;
+            }
+            if (!locations.isEmpty()) {
+                callback.accept(locations);
+            }
+            // Resume after the last bucket, the after_key is only included in the responses as of 6.3
+            if (buckets.size() < pageSize) {
+                break;
             }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
         }
     }
 
+    private <T> void scroll(String query, Function<String, Search> searchFactory, Class<T> clazz, Consumer<List<T>> callback, String tieBreaker) {
+        esClient.scroll(query, searchFactory, CpnJsonCodec.getGson(), clazz, callback, tieBreaker);
+    }
+
     public ESClient getEsClient() {
         return esClient;
     }
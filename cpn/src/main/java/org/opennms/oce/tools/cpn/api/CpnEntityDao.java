@@ -30,12 +30,16 @@ package org.opennms.oce.tools.cpn.api;
 
 import java.time.ZonedDateTime;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.function.Consumer;
 
 import org.elasticsearch.index.query.QueryBuilder;
 import org.opennms.oce.tools.cpn.model.EventRecord;
+import org.opennms.oce.tools.cpn.model.LocationRecord;
 import org.opennms.oce.tools.cpn.model.TicketRecord;
 import org.opennms.oce.tools.cpn.model.TrapRecord;
+import org.opennms.oce.tools.es.Projection;
 
 public interface CpnEntityDao {
 
@@ -47,14 +51,31 @@ public interface CpnEntityDao {
 
     void getDistinctLocations(ZonedDateTime startTime, ZonedDateTime endTime, List<QueryBuilder> excludeQueries, Consumer<List<String>> callback);
 
+    // Distinct locations along with their number of syslogs and traps
+    void getLocations(ZonedDateTime startTime, ZonedDateTime endTime, List<QueryBuilder> excludeQueries, Consumer<List<LocationRecord>> callback);
+
     long getNumSyslogEvents(ZonedDateTime startTime, ZonedDateTime endTime, String hostname, List<QueryBuilder> excludeQueries);
 
     long getNumTrapEvents(ZonedDateTime startTime, ZonedDateTime endTime, String hostname, List<QueryBuilder> excludeQueries);
 
+    // Batched variants of the counts above, keyed by hostname
+    Map<String, Long> getNumSyslogEventsByHostname(ZonedDateTime startTime, ZonedDateTime endTime, Set<String> hostnames, List<QueryBuilder> excludeQueries);
+
+    Map<String, Long> getNumTrapEventsByHostname(ZonedDateTime startTime, ZonedDateTime endTime, Set<String> hostnames, List<QueryBuilder> excludeQueries);
+
     void getTicketRecordsInRange(ZonedDateTime startTime, ZonedDateTime endTime, List<QueryBuilder> includeQueries, List<QueryBuilder> excludeQueries, Consumer<List<TicketRecord>> callback);
 
     void getSyslogRecordsInRange(ZonedDateTime startTime, ZonedDateTime endTime, List<QueryBuilder> includeQueries, List<QueryBuilder> excludeQueries, Consumer<List<EventRecord>> callback, QueryBuilder... queries);
 
     void getTrapRecordsInRange(ZonedDateTime startTime, ZonedDateTime endTime, List<QueryBuilder> includeQueries, List<QueryBuilder> excludeQueries, Consumer<List<TrapRecord>> callback);
 
+    // Variants of the above that only need to retrieve the given fields of the records, the remaining fields may be left unset
+    default void getSyslogRecordsInRange(ZonedDateTime startTime, ZonedDateTime endTime, List<QueryBuilder> includeQueries, List<QueryBuilder> excludeQueries, Projection projection, Consumer<List<EventRecord>> callback, QueryBuilder... queries) {
+        getSyslogRecordsInRange(startTime, endTime, includeQueries, excludeQueries, callback, queries);
+    }
+
+    default void getTrapRecordsInRange(ZonedDateTime startTime, ZonedDateTime endTime, List<QueryBuilder> includeQueries, List<QueryBuilder> excludeQueries, Projection projection, Consumer<List<TrapRecord>> callback) {
+        getTrapRecordsInRange(startTime, endTime, includeQueries, excludeQueries, callback);
+    }
+
 }
@@ -30,11 +30,15 @@ package org.opennms.oce.tools.cpn.api;
 
 import java.time.ZonedDateTime;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.function.Consumer;
 
 import org.elasticsearch.index.query.QueryBuilder;
 import org.opennms.oce.tools.cpn.model.EventRecord;
+import org.opennms.oce.tools.cpn.model.LocationRecord;
 import org.opennms.oce.tools.cpn.model.TicketRecord;
 import org.opennms.oce.tools.cpn.model.TrapRecord;
 
@@ -64,6 +68,11 @@ public class EmptyCpnEntityDao implements CpnEntityDao {
 
     }
 
+    @Override
+    public void getLocations(ZonedDateTime startTime, ZonedDateTime endTime, List<QueryBuilder> excludeQueries, Consumer<List<LocationRecord>> callback) {
+
+    }
+
     @Override
     public long getNumSyslogEvents(ZonedDateTime startTime, ZonedDateTime endTime, String hostname, List<QueryBuilder> excludeQueries) {
         return 0;
@@ -74,6 +83,24 @@ public class EmptyCpnEntityDao implements CpnEntityDao {
         return 0;
     }
 
+    @Override
+    public Map<String, Long> getNumSyslogEventsByHostname(ZonedDateTime startTime, ZonedDateTime endTime, Set<String> hostnames, List<QueryBuilder> excludeQueries) {
+        final Map<String, Long> counts = new LinkedHashMap<>();
+        for (String hostname : hostnames) {
+            counts.put(hostname, getNumSyslogEvents(startTime, endTime, hostname, excludeQueries));
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getNumTrapEventsByHostname(ZonedDateTime startTime, ZonedDateTime endTime, Set<String> hostnames, List<QueryBuilder> excludeQueries) {
+        final Map<String, Long> counts = new LinkedHashMap<>();
+        for (String hostname : hostnames) {
+            counts.put(hostname, getNumTrapEvents(startTime, endTime, hostname, excludeQueries));
+        }
+        return counts;
+    }
+
     @Override
     public void getTicketRecordsInRange(ZonedDateTime startTime, ZonedDateTime endTime, List<QueryBuilder> includeQueries, List<QueryBuilder> excludeQueries, Consumer<List<TicketRecord>> callback) {
 
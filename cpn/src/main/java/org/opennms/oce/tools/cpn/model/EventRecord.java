@@ -74,6 +74,23 @@ public class EventRecord implements EventRecordLite, MatchingSyslogEventRecord {
         this.reductionCount = Strings.isBlank(record.get("Reduction Count")) ? 0 : Integer.parseInt(record.get("Reduction Count"));
     }
 
+    public EventRecord(String source, EventSeverity severity, String eventId, Date time, String description,
+                       String detailedDescription, String location, String alarmId, String ticketId,
+                       String causingEventId, int duplicationCount, int reductionCount) {
+        this.source = source;
+        this.severity = severity;
+        this.eventId = eventId;
+        this.time = time;
+        this.description = description;
+        this.detailedDescription = detailedDescription;
+        this.location = location;
+        this.alarmId = alarmId;
+        this.ticketId = ticketId;
+        this.causingEventId = causingEventId;
+        this.duplicationCount = duplicationCount;
+        this.reductionCount = reductionCount;
+    }
+
     public String getSource() {
         return source;
     }
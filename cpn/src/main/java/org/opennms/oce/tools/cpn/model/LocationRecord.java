@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.tools.cpn.model;
+
+import java.util.Objects;
+
+/**
+ * A distinct event location, along with the number of syslogs and traps
+ * that were found at that location.
+ */
+public class LocationRecord {
+
+    private final String location;
+    private final long numSyslogs;
+    private final long numTraps;
+
+    public LocationRecord(String location, long numSyslogs, long numTraps) {
+        this.location = Objects.requireNonNull(location);
+        this.numSyslogs = numSyslogs;
+        this.numTraps = numTraps;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public long getNumSyslogs() {
+        return numSyslogs;
+    }
+
+    public long getNumTraps() {
+        return numTraps;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        LocationRecord that = (LocationRecord) o;
+        return numSyslogs == that.numSyslogs &&
+                numTraps == that.numTraps &&
+                Objects.equals(location, that.location);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(location, numSyslogs, numTraps);
+    }
+
+    @Override
+    public String toString() {
+        return "LocationRecord{" +
+                "location='" + location + '\'' +
+                ", numSyslogs=" + numSyslogs +
+                ", numTraps=" + numTraps +
+                '}';
+    }
+}
@@ -80,6 +80,24 @@ public class TicketRecord {
         this.alarmCount = record.get("Alarm Count");
     }
 
+    public TicketRecord(EventSeverity severity, String ticketId, Date lastModificationTime, Date rootEventTime,
+                        String description, String location, Boolean acknowledged, Date creationTime, int eventCount,
+                        String affectedDevicesCount, String duplicationCount, String reductionCount, String alarmCount) {
+        this.severity = severity;
+        this.ticketId = ticketId;
+        this.lastModificationTime = lastModificationTime;
+        this.rootEventTime = rootEventTime;
+        this.description = description;
+        this.location = location;
+        this.acknowledged = acknowledged;
+        this.creationTime = creationTime;
+        this.eventCount = eventCount;
+        this.affectedDevicesCount = affectedDevicesCount;
+        this.duplicationCount = duplicationCount;
+        this.reductionCount = reductionCount;
+        this.alarmCount = alarmCount;
+    }
+
     public EventSeverity getSeverity() {
         return severity;
     }
@@ -28,17 +28,40 @@
 
 package org.opennms.oce.tools.cpn.model;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.snmp4j.smi.OID;
 
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
 public class TrapHelper {
 
     /**
      * The standard traps list
      */
-    private static final List<OID> GENERIC_TRAPS;
+    private static final Set<OID> GENERIC_TRAPS;
+
+    /**
+     * The maximum number of distinct trap type OIDs for which the trap info is cached
+     */
+    private static final int MAX_CACHED_TRAP_INFOS = 10000;
+
+    /**
+     * There are relatively few distinct trap types, so we avoid parsing the same OIDs over and over again
+     */
+    private static final LoadingCache<String, TrapInfo> TRAP_INFO_CACHE = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHED_TRAP_INFOS)
+            .build(new CacheLoader<String, TrapInfo>() {
+                @Override
+                public TrapInfo load(String trapTypeOid) {
+                    return parseTrapInfo(trapTypeOid);
+                }
+            });
 
     /**
      * The dot separator in an OID
@@ -64,7 +87,7 @@ public class TrapHelper {
      * Create the standard traps list - used in v2 processing
      */
     static {
-        GENERIC_TRAPS = new ArrayList<>();
+        GENERIC_TRAPS = new HashSet<>();
         GENERIC_TRAPS.add(new OID("1.3.6.1.6.3.1.1.5.1")); // coldStart
         GENERIC_TRAPS.add(new OID("1.3.6.1.6.3.1.1.5.2")); // warmStart
         GENERIC_TRAPS.add(new OID("1.3.6.1.6.3.1.1.5.3")); // linkDown
@@ -73,6 +96,9 @@ public class TrapHelper {
         GENERIC_TRAPS.add(new OID("1.3.6.1.6.3.1.1.5.6")); // egpNeighborLoss
     }
 
+    /**
+     * The trap info is shared by all of the callers, so the enterprise OID must not be modified.
+     */
     protected static class TrapInfo {
         private final OID enterpriseId;
         private final int generic;
@@ -98,6 +124,16 @@ public class TrapHelper {
     }
 
     public static TrapInfo getTrapInfo(String trapTypeOid) {
+        try {
+            return TRAP_INFO_CACHE.getUnchecked(trapTypeOid);
+        } catch (UncheckedExecutionException e) {
+            // Surface the same exceptions as when parsing directly
+            Throwables.throwIfUnchecked(e.getCause());
+            throw e;
+        }
+    }
+
+    private static TrapInfo parseTrapInfo(String trapTypeOid) {
         OID enterpriseId = null;
         int generic;
         int specific;
@@ -42,6 +42,8 @@ public class TrapRecord extends EventRecord implements TrapEvent, MatchingTrapEv
     private final String translatedEnterprise;
     private final String enterprise;
     private final String trapTypeOid;
+    // Derived from the trap type OID when first needed
+    private transient volatile TrapHelper.TrapInfo trapInfo;
 
     public TrapRecord(CSVRecord record, DateHandler dateHandler) {
         super("trap", record, dateHandler);
@@ -59,6 +61,19 @@ public class TrapRecord extends EventRecord implements TrapEvent, MatchingTrapEv
         this.trapTypeOid = record.get("Trap Type OID");
     }
 
+    public TrapRecord(EventRecord eventRecord, String trapType, String longDescription, String translatedEnterprise,
+                      String enterprise, String trapTypeOid) {
+        super(eventRecord.getSource(), eventRecord.getSeverity(), eventRecord.getEventId(), eventRecord.getTime(),
+                eventRecord.getDescription(), eventRecord.getDetailedDescription(), eventRecord.getLocation(),
+                eventRecord.getAlarmId(), eventRecord.getTicketId(), eventRecord.getCausingEventId(),
+                eventRecord.getDuplicationCount(), eventRecord.getReductionCount());
+        this.trapType = trapType;
+        this.longDescription = longDescription;
+        this.translatedEnterprise = translatedEnterprise;
+        this.enterprise = enterprise;
+        this.trapTypeOid = trapTypeOid;
+    }
+
     public String getTrapType() {
         return trapType;
     }
@@ -68,6 +83,14 @@ public class TrapRecord extends EventRecord implements TrapEvent, MatchingTrapEv
         return longDescription;
     }
 
+    /**
+     * The "Detailed Description" column is typically not present in the trap exports,
+     * use {@link #getLongDescription()} instead.
+     */
+    public String getEventDetailedDescription() {
+        return super.getDetailedDescription();
+    }
+
     public String getLongDescription() {
         return longDescription;
     }
@@ -86,15 +109,25 @@ public class TrapRecord extends EventRecord implements TrapEvent, MatchingTrapEv
     }
 
     public OID getEnterpriseOid() {
-        return TrapHelper.getTrapInfo(trapTypeOid).getEnterpriseId();
+        return getTrapInfo().getEnterpriseId();
     }
 
     public int getGeneric() {
-        return TrapHelper.getTrapInfo(trapTypeOid).getGeneric();
+        return getTrapInfo().getGeneric();
     }
 
     public int getSpecific() {
-        return TrapHelper.getTrapInfo(trapTypeOid).getSpecific();
+        return getTrapInfo().getSpecific();
+    }
+
+    private TrapHelper.TrapInfo getTrapInfo() {
+        // Racing threads may both compute the info, but they will get the same result
+        TrapHelper.TrapInfo info = trapInfo;
+        if (info == null) {
+            info = TrapHelper.getTrapInfo(trapTypeOid);
+            trapInfo = info;
+        }
+        return info;
     }
 
     @Override
@@ -32,6 +32,8 @@ import java.time.ZonedDateTime;
 import java.util.Objects;
 import java.util.Set;
 
+import org.opennms.oce.tools.es.Projection;
+
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 
@@ -42,6 +44,8 @@ public class CpnDatasetView {
     private final ZonedDateTime endTime;
     private final Set<EventType> eventTypes;
     private final boolean includeTicketsWithASingleAlarm;
+    private final Projection ticketProjection;
+    private final Projection eventProjection;
 
     public enum EventType {
         TRAP,
@@ -55,6 +59,8 @@ public class CpnDatasetView {
         private ZonedDateTime endTime = null;
         private Set<EventType> eventTypes = Sets.newHashSet(EventType.TRAP, EventType.SYSLOG, EventType.SERVICE);
         private boolean includeTicketsWithASingleAlarm;
+        private Projection ticketProjection = Projection.ALL;
+        private Projection eventProjection = Projection.ALL;
 
         public Builder withBatchSize(int batchSize) {
             this.batchSize = batchSize;
@@ -81,6 +87,22 @@ public class CpnDatasetView {
             return this;
         }
 
+        /**
+         * Only retrieve the given fields of the tickets.
+         */
+        public Builder withTicketProjection(Projection ticketProjection) {
+            this.ticketProjection = Objects.requireNonNull(ticketProjection);
+            return this;
+        }
+
+        /**
+         * Only retrieve the given fields of the events in the tickets.
+         */
+        public Builder withEventProjection(Projection eventProjection) {
+            this.eventProjection = Objects.requireNonNull(eventProjection);
+            return this;
+        }
+
         public CpnDatasetView build() {
             return new CpnDatasetView(this);
         }
@@ -92,6 +114,8 @@ public class CpnDatasetView {
         this.endTime = builder.endTime;
         this.eventTypes = ImmutableSet.copyOf(builder.eventTypes);
         this.includeTicketsWithASingleAlarm = builder.includeTicketsWithASingleAlarm;
+        this.ticketProjection = builder.ticketProjection;
+        this.eventProjection = builder.eventProjection;
     }
 
     public int getBatchSize() {
@@ -113,4 +137,12 @@ public class CpnDatasetView {
     public boolean isIncludeTicketsWithASingleAlarm() {
         return includeTicketsWithASingleAlarm;
     }
+
+    public Projection getTicketProjection() {
+        return ticketProjection;
+    }
+
+    public Projection getEventProjection() {
+        return eventProjection;
+    }
 }
@@ -29,10 +29,8 @@
 package org.opennms.oce.tools.cpn.view;
 
 import java.io.IOException;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Objects;
-import java.util.Set;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -40,21 +38,19 @@ import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.index.query.RangeQueryBuilder;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.opennms.oce.tools.cpn.CpnJsonCodec;
+import org.opennms.oce.tools.cpn.ESDataProvider;
 import org.opennms.oce.tools.cpn.model.EventRecord;
 import org.opennms.oce.tools.cpn.model.TicketRecord;
 import org.opennms.oce.tools.cpn.model.TrapRecord;
 import org.opennms.oce.tools.es.ESClient;
+import org.opennms.oce.tools.es.SearchCursor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.gson.Gson;
-
 import io.searchbox.client.JestResult;
-import io.searchbox.core.ClearScroll;
 import io.searchbox.core.Get;
 import io.searchbox.core.Search;
-import io.searchbox.core.SearchResult;
-import io.searchbox.core.SearchScroll;
 import io.searchbox.core.search.sort.Sort;
 import io.searchbox.params.Parameters;
 
@@ -79,7 +75,7 @@ public class ESBackedCpnDatasetViewer implements CpnDatasetViewer {
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        return result.getSourceAsObject(TicketRecord.class);
+        return CpnJsonCodec.getCodec().decodeSource(result.getJsonObject(), TicketRecord.class);
     }
 
     @Override
@@ -96,6 +92,7 @@ public class ESBackedCpnDatasetViewer implements CpnDatasetViewer {
         boolQuery.must(rangeQueryBuilder);
         searchSourceBuilder.query(boolQuery);
         searchSourceBuilder.size(view.getBatchSize());
+        view.getTicketProjection().applyTo(searchSourceBuilder);
         getTicketRecords(searchSourceBuilder.toString(), callback);
     }
 
@@ -168,6 +165,7 @@ public class ESBackedCpnDatasetViewer implements CpnDatasetViewer {
         bqb.accept(boolQuery);
         searchSourceBuilder.query(boolQuery);
         searchSourceBuilder.size(view.getBatchSize());
+        view.getEventProjection().applyTo(searchSourceBuilder);
         return searchSourceBuilder.toString();
     }
 
@@ -178,7 +176,7 @@ public class ESBackedCpnDatasetViewer implements CpnDatasetViewer {
                 .addSort(new Sort("time"))
                 .setParameter(Parameters.SCROLL, "5m")
                 .build();
-        scroll(search, EventRecord.class, callback);
+        scroll(search, EventRecord.class, callback, ESDataProvider.EVENT_TIE_BREAKER);
     }
 
     private void getTrapRecords(String query, Consumer<List<TrapRecord>> callback) {
@@ -188,7 +186,7 @@ public class ESBackedCpnDatasetViewer implements CpnDatasetViewer {
                 .addSort(new Sort("time"))
                 .setParameter(Parameters.SCROLL, "5m")
                 .build();
-        scroll(search, TrapRecord.class, callback);
+        scroll(search, TrapRecord.class, callback, ESDataProvider.EVENT_TIE_BREAKER);
     }
 
     private void getServiceEvents(String query, Consumer<List<EventRecord>> callback) {
@@ -198,7 +196,7 @@ public class ESBackedCpnDatasetViewer implements CpnDatasetViewer {
                 .addSort(new Sort("time"))
                 .setParameter(Parameters.SCROLL, "5m")
                 .build();
-        scroll(search, EventRecord.class, callback);
+        scroll(search, EventRecord.class, callback, ESDataProvider.EVENT_TIE_BREAKER);
     }
 
     private void getTicketRecords(String query, Consumer<List<TicketRecord>> callback) {
@@ -208,61 +206,13 @@ public class ESBackedCpnDatasetViewer implements CpnDatasetViewer {
                 .addSort(new Sort("creationTime"))
                 .setParameter(Parameters.SCROLL, "5m")
                 .build();
-        scroll(search, TicketRecord.class, callback);
+        scroll(search, TicketRecord.class, callback, ESDataProvider.TICKET_TIE_BREAKER);
     }
 
-    private <T> void scroll(Search search, Class<T> clazz, Consumer<List<T>> callback) {
-        JestResult result = null;
-        try {
-            result = esClient.getJestClient().execute(search);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-
-        Set<String> scrollIds = new LinkedHashSet<>();
-        try {
-            while(true) {
-                if (!result.isSucceeded()) {
-                    throw new RuntimeException(result.getErrorMessage());
-                }
-
-                // Cast the result to a search result for easy access to the hits
-                SearchResult searchResult = new SearchResult(new Gson());
-                searchResult.setJsonObject(result.getJsonObject());
-                searchResult.setPathToResult(result.getPathToResult());
-                List<SearchResult.Hit<T, Void>> hits = searchResult.getHits(clazz);
-                if (hits.size() < 1) {
-                    break;
-                }
-
-                // Issue the callback
-                callback.accept(hits.stream().map(h -> h.source).collect(Collectors.toList()));
-
-                // Scroll
-                String scrollId = result.getJsonObject().getAsJsonPrimitive("_scroll_id").getAsString();
-                scrollIds.add(scrollId);
-                SearchScroll scroll = new SearchScroll.Builder(scrollId, "5m").build();
-                try {
-                    result = esClient.getJestClient().execute(scroll);
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
-            }
-        } finally {
-            if (!scrollIds.isEmpty()) {
-                ClearScroll clearScroll = new ClearScroll.Builder()
-                        .addScrollIds(scrollIds).build();
-                try {
-                    JestResult clearResult = esClient.getJestClient().execute(clearScroll);
-                    if (!clearResult.isSucceeded()) {
-                        LOG.info("Failed to clear one or more scrolls: {}", clearResult.getErrorMessage());
-                    }
-                } catch (IOException e) {
-                    LOG.warn("Error while clearing scrolls ids: {}", scrollIds, e);
-                }
-            }
+    private <T> void scroll(Search search, Class<T> clazz, Consumer<List<T>> callback, String tieBreaker) {
+        try (SearchCursor<T> cursor = esClient.openCursor(search, CpnJsonCodec.getGson(), clazz, tieBreaker)) {
+            cursor.forEachPage(callback);
         }
-
     }
 
     public ESClient getEsClient() {
@@ -28,41 +28,123 @@
 
 package org.opennms.oce.tools.cpn.view;
 
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import org.opennms.oce.tools.cpn.model.EventRecord;
 import org.opennms.oce.tools.cpn.model.TicketRecord;
 import org.opennms.oce.tools.cpn.model.TrapRecord;
 
+/**
+ * Provides a view over records that are held in memory.
+ *
+ * The records are indexed up front, so that tickets can be looked up by id or by
+ * root event time, and the events in a ticket can be retrieved without scanning
+ * through all of the events.
+ *
+ * The records are filtered and ordered in the same way as {@link ESBackedCpnDatasetViewer}.
+ */
 public class StaticCpnDatasetViewer implements CpnDatasetViewer {
 
+    // Order in which the events in a ticket are returned
+    private static final CpnDatasetView.EventType[] EVENT_TYPES = {
+            CpnDatasetView.EventType.SERVICE,
+            CpnDatasetView.EventType.TRAP,
+            CpnDatasetView.EventType.SYSLOG
+    };
+
     private final CpnDatasetView view;
+    private final Map<String, TicketRecord> ticketsById = new HashMap<>();
     private final List<TicketRecord> tickets;
-    private final List<EventRecord> serviceEvents;
-    private final List<EventRecord> syslogEvents;
-    private final List<TrapRecord> traps;
+    // Tickets with a root event time, sorted by root event time
+    private final TicketRecord[] ticketsByRootEventTime;
+    private final long[] rootEventTimes;
+    private final Map<CpnDatasetView.EventType, Map<String, List<EventRecord>>> eventsByTicketIdByType = new EnumMap<>(CpnDatasetView.EventType.class);
 
     public StaticCpnDatasetViewer(CpnDatasetView view, List<TicketRecord> tickets, List<EventRecord> serviceEvents, List<EventRecord> syslogEvents, List<TrapRecord> traps) {
         this.view = Objects.requireNonNull(view);
         this.tickets = Objects.requireNonNull(tickets);
-        this.serviceEvents = Objects.requireNonNull(serviceEvents);
-        this.syslogEvents = Objects.requireNonNull(syslogEvents);
-        this.traps = Objects.requireNonNull(traps);
+        Objects.requireNonNull(serviceEvents);
+        Objects.requireNonNull(syslogEvents);
+        Objects.requireNonNull(traps);
+
+        for (TicketRecord ticket : tickets) {
+            // Keep the first ticket when there are duplicates
+            ticketsById.putIfAbsent(ticket.getTicketId(), ticket);
+        }
+
+        ticketsByRootEventTime = tickets.stream()
+                .filter(t -> t.getRootEventTime() != null)
+                .sorted(Comparator.comparing(TicketRecord::getRootEventTime))
+                .toArray(TicketRecord[]::new);
+        rootEventTimes = new long[ticketsByRootEventTime.length];
+        for (int i = 0; i < ticketsByRootEventTime.length; i++) {
+            rootEventTimes[i] = ticketsByRootEventTime[i].getRootEventTime().getTime();
+        }
+
+        eventsByTicketIdByType.put(CpnDatasetView.EventType.SERVICE, indexByTicketId(serviceEvents));
+        eventsByTicketIdByType.put(CpnDatasetView.EventType.SYSLOG, indexByTicketId(syslogEvents));
+        // Traps without a type are never returned
+        eventsByTicketIdByType.put(CpnDatasetView.EventType.TRAP, indexByTicketId(traps.stream()
+                .filter(t -> !"N/A".equals(t.getTrapTypeOid()))
+                .collect(Collectors.toList())));
+    }
+
+    private static Map<String, List<EventRecord>> indexByTicketId(List<? extends EventRecord> events) {
+        final Map<String, List<EventRecord>> eventsByTicketId = new HashMap<>();
+        for (EventRecord e : events) {
+            eventsByTicketId.computeIfAbsent(e.getTicketId(), k -> new ArrayList<>()).add(e);
+        }
+        // Stable sort, events with the same time keep their relative order
+        eventsByTicketId.values().forEach(l -> l.sort(Comparator.comparing(EventRecord::getTime,
+                Comparator.nullsLast(Comparator.naturalOrder()))));
+        return eventsByTicketId;
+    }
+
+    /**
+     * The bounds are truncated to seconds, since these are compared as epoch seconds in Elasticsearch.
+     */
+    private static long toEpochMillis(ZonedDateTime time) {
+        return TimeUnit.SECONDS.toMillis(time.toEpochSecond());
     }
 
     @Override
     public TicketRecord getTicketWithId(String ticketId) {
-        return tickets.stream().filter(t -> Objects.equals(ticketId, t.getTicketId())).findFirst().orElse(null);
+        return ticketsById.get(ticketId);
     }
 
     @Override
     public void getTicketRecordsWithRootEventTimeInRange(Consumer<List<TicketRecord>> callback) {
-        // TODO: Filtering!
-        callback.accept(tickets);
+        final List<TicketRecord> ticketsInRange;
+        if (view.getStartTime() == null && view.getEndTime() == null) {
+            ticketsInRange = new ArrayList<>(tickets);
+        } else {
+            final int from = view.getStartTime() != null ? lowerBound(rootEventTimes, toEpochMillis(view.getStartTime())) : 0;
+            final int to = view.getEndTime() != null ? lowerBound(rootEventTimes, toEpochMillis(view.getEndTime())) : rootEventTimes.length;
+            ticketsInRange = new ArrayList<>(Math.max(0, to - from));
+            for (int i = from; i < to; i++) {
+                ticketsInRange.add(ticketsByRootEventTime[i]);
+            }
+        }
+        if (!view.isIncludeTicketsWithASingleAlarm()) {
+            ticketsInRange.removeIf(t -> "1".equals(t.getAlarmCount()));
+        }
+        ticketsInRange.sort(Comparator.comparing(TicketRecord::getCreationTime, Comparator.nullsLast(Comparator.naturalOrder())));
+
+        // Deliver the tickets in batches, like we would when scrolling
+        for (int i = 0; i < ticketsInRange.size(); i += view.getBatchSize()) {
+            callback.accept(Collections.unmodifiableList(ticketsInRange.subList(i, Math.min(i + view.getBatchSize(), ticketsInRange.size()))));
+        }
     }
 
     @Override
@@ -72,22 +154,40 @@ public class StaticCpnDatasetViewer implements CpnDatasetViewer {
 
     @Override
     public void getEventsInTicket(String ticketId, Consumer<List<EventRecord>> callback) {
-        getFilteredEvents().stream()
-                .filter(e -> Objects.equals(ticketId, e.getTicketId()))
-                .forEach(e -> callback.accept(Collections.singletonList(e)));
+        final Long startMs = view.getStartTime() != null ? toEpochMillis(view.getStartTime()) : null;
+        final Long endMs = view.getEndTime() != null ? toEpochMillis(view.getEndTime()) : null;
+        for (CpnDatasetView.EventType eventType : EVENT_TYPES) {
+            if (!view.getEventTypes().contains(eventType)) {
+                continue;
+            }
+            List<EventRecord> events = eventsByTicketIdByType.get(eventType).getOrDefault(ticketId, Collections.emptyList());
+            if (startMs != null || endMs != null) {
+                events = events.stream()
+                        .filter(e -> e.getTime() != null
+                                && (startMs == null || e.getTime().getTime() >= startMs)
+                                && (endMs == null || e.getTime().getTime() < endMs))
+                        .collect(Collectors.toList());
+            }
+            if (!events.isEmpty()) {
+                callback.accept(Collections.unmodifiableList(events));
+            }
+        }
     }
 
-    private List<EventRecord> getFilteredEvents() {
-        List<EventRecord> events = new LinkedList<>();
-        if (view.getEventTypes().contains(CpnDatasetView.EventType.SERVICE)) {
-            events.addAll(serviceEvents);
-        }
-        if (view.getEventTypes().contains(CpnDatasetView.EventType.SYSLOG)) {
-            events.addAll(syslogEvents);
-        }
-        if (view.getEventTypes().contains(CpnDatasetView.EventType.TRAP)) {
-            events.addAll(traps);
+    /**
+     * @return the index of the first element that is greater than or equal to the given key
+     */
+    private static int lowerBound(long[] values, long key) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (values[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
         }
-        return events;
+        return low;
     }
 }
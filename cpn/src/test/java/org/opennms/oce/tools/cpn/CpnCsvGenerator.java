@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.tools.cpn;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Random;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.opennms.oce.tools.cpn.model.EventSeverity;
+
+/**
+ * Generates .csv files that resemble the reports exported by CPN.
+ */
+public class CpnCsvGenerator {
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MMM-d, HH:mm:ss", Locale.ENGLISH);
+
+    private static final String[] TICKET_HEADERS = {"Severity", "Ticket ID", "Last Modification Time", "Root Event Time",
+            "Description", "Location", "Acknowledged", "Creation Time", "Event Count", "Affected Devices Count",
+            "Duplication Count", "Reduction Count", "Alarm Count"};
+
+    private static final String[] EVENT_HEADERS = {"Severity", "Event ID", "Time", "Description", "Detailed Description",
+            "Location", "Alarm ID", "Ticket ID", "Causing Event ID", "Duplication Count", "Reduction Count"};
+
+    private static final String[] TRAP_HEADERS = {"Severity", "Event ID", "Time", "Description", "Location", "Alarm ID",
+            "Ticket ID", "Causing Event ID", "Duplication Count", "Reduction Count", "Trap Type", "Long Description",
+            "Translated Enterprise", "Enterprise", "Trap Type OID"};
+
+    private static final LocalDateTime START = LocalDateTime.of(2018, 11, 1, 0, 0);
+
+    private final Random random = new Random(42);
+    private int nextId = 1;
+
+    public File generateTickets(File folder, String fileName, int numRecords) throws IOException {
+        final File file = new File(folder, fileName);
+        try (Writer writer = new FileWriter(file);
+             CSVPrinter printer = new CSVPrinter(writer, CSVFormat.DEFAULT.withHeader(TICKET_HEADERS))) {
+            for (int i = 0; i < numRecords; i++) {
+                final String time = nextTime();
+                printer.printRecord(nextSeverity(), nextId++, time, time, "Ticket, with \"quotes\"", nextLocation(),
+                        random.nextBoolean() ? "Yes" : "No", time, random.nextInt(100), 1, 0, "", 1);
+            }
+        }
+        return file;
+    }
+
+    public File generateEvents(File folder, String fileName, int numRecords) throws IOException {
+        final File file = new File(folder, fileName);
+        try (Writer writer = new FileWriter(file);
+             CSVPrinter printer = new CSVPrinter(writer, CSVFormat.DEFAULT.withHeader(EVENT_HEADERS))) {
+            for (int i = 0; i < numRecords; i++) {
+                printer.printRecord(nextSeverity(), nextId++, nextTime(), "Interface down", "Interface Gi0/0/1 down\nsecond line",
+                        nextLocation(), random.nextInt(10000), random.nextInt(1000), "", random.nextInt(3), random.nextBoolean() ? "" : "1");
+            }
+        }
+        return file;
+    }
+
+    public File generateTraps(File folder, String fileName, int numRecords) throws IOException {
+        final File file = new File(folder, fileName);
+        try (Writer writer = new FileWriter(file);
+             CSVPrinter printer = new CSVPrinter(writer, CSVFormat.DEFAULT.withHeader(TRAP_HEADERS))) {
+            for (int i = 0; i < numRecords; i++) {
+                printer.printRecord(nextSeverity(), nextId++, nextTime(), "Link down trap", nextLocation(), random.nextInt(10000),
+                        random.nextInt(1000), "", random.nextInt(3), "", "linkDown", "Link down on interface",
+                        "IF-MIB", ".1.3.6.1.6.3.1.1.5", ".1.3.6.1.6.3.1.1.5.3");
+            }
+        }
+        return file;
+    }
+
+    private String nextTime() {
+        return START.plusSeconds(random.nextInt(30 * 24 * 60 * 60)).format(DATE_FORMATTER);
+    }
+
+    private String nextSeverity() {
+        final EventSeverity[] severities = EventSeverity.values();
+        return severities[random.nextInt(severities.length)].name();
+    }
+
+    private String nextLocation() {
+        return "router-" + random.nextInt(50) + ".example.org";
+    }
+}
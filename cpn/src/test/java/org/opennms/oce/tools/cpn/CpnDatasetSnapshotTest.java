@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.tools.cpn;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.arrayContaining;
+import static org.hamcrest.Matchers.emptyArray;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opennms.oce.tools.cpn.model.EventRecord;
+import org.opennms.oce.tools.cpn.model.EventSeverity;
+import org.opennms.oce.tools.cpn.model.TicketRecord;
+import org.opennms.oce.tools.cpn.model.TrapRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class CpnDatasetSnapshotTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CpnDatasetSnapshotTest.class);
+
+    private static final ZoneId TIME_ZONE = ZoneId.of("America/Chicago");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void canRoundTripCsvDataset() throws Exception {
+        final File csvFolder = temporaryFolder.newFolder("csv");
+        final CpnCsvGenerator generator = new CpnCsvGenerator();
+        for (int day = 1; day <= 3; day++) {
+            generator.generateTickets(csvFolder, "Detailed Tickets " + day + ".csv", 500);
+            generator.generateEvents(csvFolder, "Detailed Service Events " + day + ".csv", 1000);
+            generator.generateEvents(csvFolder, "Detailed Syslogs " + day + ".csv", 2000);
+            generator.generateTraps(csvFolder, "Detailed Traps " + day + ".csv", 1500);
+        }
+
+        long start = System.nanoTime();
+        final CpnDataset csvDataset = CsvCpnDatasetLoader.loadDataset(csvFolder, TIME_ZONE, 1);
+        final long csvMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        final File snapshot = temporaryFolder.newFile("dataset.snapshot");
+        CpnDatasetSnapshot.write(csvDataset, snapshot);
+
+        start = System.nanoTime();
+        final CpnDataset snapshotDataset = CpnDatasetSnapshot.read(snapshot);
+        final long snapshotMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        final long csvBytes = Files.list(csvFolder.toPath()).mapToLong(p -> p.toFile().length()).sum();
+        LOG.info("Loaded {} bytes of .csv files in {}ms and a {} byte snapshot in {}ms.",
+                csvBytes, csvMs, snapshot.length(), snapshotMs);
+        assertThat(snapshot.length(), lessThan(csvBytes));
+
+        assertDatasetEquals(snapshotDataset, csvDataset);
+    }
+
+    @Test
+    public void canStreamRecordsIntoSnapshot() throws Exception {
+        final File csvFolder = temporaryFolder.newFolder("csv");
+        final CpnCsvGenerator generator = new CpnCsvGenerator();
+        generator.generateTickets(csvFolder, "Detailed Tickets.csv", 200);
+        generator.generateEvents(csvFolder, "Detailed Service Events.csv", 300);
+        generator.generateEvents(csvFolder, "Detailed Syslogs.csv", 400);
+        generator.generateTraps(csvFolder, "Detailed Traps.csv", 500);
+        final CpnDataset csvDataset = CsvCpnDatasetLoader.loadDataset(csvFolder, TIME_ZONE, 1);
+
+        // The records of different types are handed over concurrently
+        final File snapshotFolder = temporaryFolder.newFolder("snapshot");
+        final File snapshot = new File(snapshotFolder, "dataset.snapshot");
+        try (CpnDatasetSnapshot.Writer writer = CpnDatasetSnapshot.newWriter(snapshot)) {
+            CsvCpnDatasetLoader.streamDataset(csvFolder, TIME_ZONE, writer, 4);
+            writer.finish();
+        }
+        // Only the snapshot is left behind once the spools are deleted
+        assertThat(snapshotFolder.list(), arrayContaining(snapshot.getName()));
+
+        assertDatasetEquals(CpnDatasetSnapshot.read(snapshot), csvDataset);
+        // Use tiny chunks so that the columns span many of them
+        assertDatasetEquals(CpnDatasetSnapshot.read(snapshot, 64), csvDataset);
+    }
+
+    @Test
+    public void doesNotWriteSnapshotUnlessFinished() throws IOException {
+        final File snapshotFolder = temporaryFolder.newFolder("snapshot");
+        final File snapshot = new File(snapshotFolder, "dataset.snapshot");
+        try (CpnDatasetSnapshot.Writer writer = CpnDatasetSnapshot.newWriter(snapshot)) {
+            writer.handleTicket(new TicketRecord(EventSeverity.Major, "1", new Date(), null, "d", "l", false, new Date(), 1, "", "", "", ""));
+        }
+        assertThat(snapshotFolder.list(), emptyArray());
+    }
+
+    @Test
+    public void canRoundTripUnusualValues() throws IOException {
+        final Date time = new Date(1541052000123L);
+        final List<TicketRecord> tickets = new ArrayList<>(Arrays.asList(
+                new TicketRecord(EventSeverity.Major, "TICKET-1", time, null, "", null, null, time, 3, "", null, "1", "2"),
+                new TicketRecord(null, "0042", time, time, "d", "l", true, time, -1, "1", "0", "", "1")));
+        final List<EventRecord> syslogs = new ArrayList<>(Arrays.asList(
+                new EventRecord("syslog", EventSeverity.Cleared, "4294967296", time, "évènement ☃", null, "", null, "", "-1", 0, 0),
+                new EventRecord(null, EventSeverity.Minor, "2147483647", time, null, "x", "l", "0", "TICKET-1", "2147483648", Integer.MAX_VALUE, Integer.MIN_VALUE)));
+        final List<TrapRecord> traps = new ArrayList<>(Collections.singletonList(
+                new TrapRecord(new EventRecord("trap", EventSeverity.Warning, "1", time, "d", "detailed", "l", "2", "3", "", 1, 0),
+                        "linkDown", null, "IF-MIB", "", ".1.3.6.1.6.3.1.1.5.3")));
+        final CpnDataset dataset = new CsvBackedCpnDataset(tickets, new ArrayList<>(), syslogs, traps);
+
+        final File snapshot = temporaryFolder.newFile("dataset.snapshot");
+        CpnDatasetSnapshot.write(dataset, snapshot);
+        final CpnDataset snapshotDataset = CpnDatasetSnapshot.read(snapshot);
+
+        assertDatasetEquals(snapshotDataset, dataset);
+        assertThat(snapshotDataset.getTraps().get(0).getEventDetailedDescription(), equalTo("detailed"));
+    }
+
+    @Test
+    public void failsOnCorruptSnapshots() throws IOException {
+        final File snapshot = temporaryFolder.newFile("dataset.snapshot");
+        Files.write(snapshot.toPath(), "not a snapshot".getBytes());
+        try {
+            CpnDatasetSnapshot.read(snapshot);
+            fail("Should have failed.");
+        } catch (IOException e) {
+            // Expected
+        }
+
+        // Truncate a valid snapshot
+        CpnDatasetSnapshot.write(new CsvBackedCpnDataset(new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), new ArrayList<>()), snapshot);
+        final byte[] bytes = Files.readAllBytes(snapshot.toPath());
+        Files.write(snapshot.toPath(), Arrays.copyOf(bytes, bytes.length - 1));
+        try {
+            CpnDatasetSnapshot.read(snapshot);
+            fail("Should have failed.");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    private static void assertDatasetEquals(CpnDataset actual, CpnDataset expected) {
+        assertThat(actual.getTickets(), equalTo(expected.getTickets()));
+        assertThat(actual.getServiceEvents(), equalTo(expected.getServiceEvents()));
+        assertThat(actual.getSyslogEvents(), equalTo(expected.getSyslogEvents()));
+        assertThat(actual.getTraps(), equalTo(expected.getTraps()));
+        // The source isn't part of the equality check
+        assertThat(getSources(actual), equalTo(getSources(expected)));
+    }
+
+    private static List<String> getSources(CpnDataset dataset) {
+        return dataset.getEvents().stream().map(EventRecord::getSource).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.tools.cpn;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+import org.opennms.oce.tools.cpn.model.EventRecord;
+import org.opennms.oce.tools.cpn.model.EventSeverity;
+import org.opennms.oce.tools.cpn.model.TicketRecord;
+import org.opennms.oce.tools.cpn.model.TrapRecord;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+public class CpnJsonCodecTest {
+
+    private static final Date TIME = new Date(1541052000000L);
+
+    private final Gson reflectiveGson = new Gson();
+
+    @Test
+    public void canDecodeRecordsLikeReflectiveGson() {
+        final List<Object> records = Arrays.asList(
+                new EventRecord("syslog", EventSeverity.Cleared, "4294967296", TIME, "évènement ☃", null, "", null, "", "-1", 0, 0),
+                new EventRecord(null, EventSeverity.Minor, "2147483647", TIME, null, "x", "l", "0", "TICKET-1", "2147483648", Integer.MAX_VALUE, Integer.MIN_VALUE),
+                new TrapRecord(new EventRecord("trap", EventSeverity.Warning, "1", TIME, "d", "detailed", "l", "2", "3", "", 1, 0),
+                        "linkDown", null, "IF-MIB", "", ".1.3.6.1.6.3.1.1.5.3"),
+                new TicketRecord(EventSeverity.Major, "TICKET-1", TIME, null, "", null, null, TIME, 3, "", null, "1", "2"),
+                new TicketRecord(null, "0042", TIME, TIME, "d", "l", true, TIME, -1, "1", "0", "", "1"));
+
+        for (Object record : records) {
+            final String json = reflectiveGson.toJson(record);
+            // The codec writes the same documents
+            assertThat(CpnJsonCodec.getGson().toJson(record), equalTo(json));
+
+            final Object expected = reflectiveGson.fromJson(json, record.getClass());
+            final Object actual = CpnJsonCodec.getGson().fromJson(json, record.getClass());
+            assertThat(reflectiveGson.toJson(actual), equalTo(reflectiveGson.toJson(expected)));
+        }
+    }
+
+    @Test
+    public void canDecodeEveryField() throws IllegalAccessException {
+        for (Class<?> clazz : Arrays.asList(EventRecord.class, TrapRecord.class, TicketRecord.class)) {
+            // Give every serialized field a distinct value
+            final List<Field> fields = getSerializedFields(clazz);
+            final JsonObject json = new JsonObject();
+            int i = 0;
+            for (Field field : fields) {
+                i++;
+                final Class<?> type = field.getType();
+                if (type == String.class) {
+                    json.addProperty(field.getName(), "value-" + i);
+                } else if (type == int.class || type == Integer.class) {
+                    json.addProperty(field.getName(), i);
+                } else if (type == boolean.class || type == Boolean.class) {
+                    json.addProperty(field.getName(), true);
+                } else if (type == Date.class) {
+                    json.add(field.getName(), reflectiveGson.toJsonTree(new Date(TIME.getTime() + i * 1000L)));
+                } else if (type == EventSeverity.class) {
+                    json.addProperty(field.getName(), EventSeverity.values()[i % EventSeverity.values().length].name());
+                } else {
+                    throw new IllegalStateException("Unsupported type for " + field);
+                }
+            }
+
+            final Object expected = reflectiveGson.fromJson(json, clazz);
+            final Object actual = CpnJsonCodec.getGson().fromJson(json, clazz);
+            for (Field field : fields) {
+                assertThat(field.toString(), field.get(actual), notNullValue());
+                assertThat(field.toString(), field.get(actual), equalTo(field.get(expected)));
+            }
+        }
+    }
+
+    @Test
+    public void canDecodeIncompleteDocuments() {
+        final String json = "{\"eventId\":\"1\",\"severity\":\"Major\",\"duplicationCount\":null,\"unknown\":{\"a\":[1,2]}}";
+        final EventRecord expected = reflectiveGson.fromJson(json, EventRecord.class);
+        final EventRecord actual = CpnJsonCodec.getGson().fromJson(json, EventRecord.class);
+        assertThat(reflectiveGson.toJson(actual), equalTo(reflectiveGson.toJson(expected)));
+        assertThat(actual.getDuplicationCount(), equalTo(0));
+        assertThat(actual.getTime(), nullValue());
+    }
+
+    @Test
+    public void canDecodeSearchResponses() {
+        final JsonObject response = new JsonParser().parse("{\"took\":1,\"hits\":{\"total\":2,\"hits\":["
+                + "{\"_id\":\"1\",\"_source\":{\"ticketId\":\"1\",\"eventCount\":2}},"
+                + "{\"_id\":\"2\",\"_source\":{\"ticketId\":\"2\",\"acknowledged\":true}}]}}").getAsJsonObject();
+        final List<TicketRecord> tickets = CpnJsonCodec.getCodec().decodeSources(response, TicketRecord.class);
+        assertThat(tickets.stream().map(TicketRecord::getTicketId).toArray(), equalTo(new Object[]{"1", "2"}));
+        assertThat(tickets.get(0).getEventCount(), equalTo(2));
+        assertThat(tickets.get(1).getAcknowledged(), equalTo(true));
+
+        final JsonObject document = new JsonParser().parse("{\"_id\":\"3\",\"found\":true,\"_source\":{\"eventId\":\"3\"}}").getAsJsonObject();
+        assertThat(CpnJsonCodec.getCodec().decodeSource(document, EventRecord.class).getEventId(), equalTo("3"));
+        final JsonObject missing = new JsonParser().parse("{\"_id\":\"4\",\"found\":false}").getAsJsonObject();
+        assertThat(CpnJsonCodec.getCodec().decodeSource(missing, EventRecord.class), nullValue());
+    }
+
+    private static List<Field> getSerializedFields(Class<?> clazz) {
+        final List<Field> fields = new ArrayList<>();
+        for (Class<?> c = clazz; c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers()) && !Modifier.isTransient(field.getModifiers())) {
+                    field.setAccessible(true);
+                    fields.add(field);
+                }
+            }
+        }
+        return fields;
+    }
+}
@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.tools.cpn;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+
+import java.io.File;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opennms.oce.tools.cpn.model.EventRecord;
+import org.opennms.oce.tools.cpn.model.TicketRecord;
+import org.opennms.oce.tools.cpn.model.TrapRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class CsvCpnDatasetLoaderTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CsvCpnDatasetLoaderTest.class);
+
+    private static final ZoneId TIME_ZONE = ZoneId.of("America/Chicago");
+    private static final int NUM_DAYS = 3;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File folder;
+
+    @Before
+    public void setUp() throws Exception {
+        folder = temporaryFolder.getRoot();
+        final CpnCsvGenerator generator = new CpnCsvGenerator();
+        for (int day = 1; day <= NUM_DAYS; day++) {
+            generator.generateTickets(folder, "Detailed Tickets " + day + ".csv", 100);
+            generator.generateEvents(folder, "Detailed Service Events " + day + ".csv", 100);
+            generator.generateEvents(folder, "Detailed Syslogs " + day + ".csv", 200);
+            generator.generateTraps(folder, "Detailed Traps " + day + ".csv", 150);
+        }
+    }
+
+    @Test
+    public void canStreamDataset() throws Exception {
+        final CpnDataset dataset = CsvCpnDatasetLoader.loadDataset(folder, TIME_ZONE);
+        // The first record in every file is skipped
+        assertThat(dataset.getTickets(), hasSize(99 * NUM_DAYS));
+        assertThat(dataset.getServiceEvents(), hasSize(99 * NUM_DAYS));
+        assertThat(dataset.getSyslogEvents(), hasSize(199 * NUM_DAYS));
+        assertThat(dataset.getTraps(), hasSize(149 * NUM_DAYS));
+
+        assertStreamedDatasetEquals(dataset, 1);
+        assertStreamedDatasetEquals(dataset, 4);
+    }
+
+    @Test
+    public void canLoadFilesInParallel() throws Exception {
+        long start = System.nanoTime();
+        final CpnDataset sequential = CsvCpnDatasetLoader.loadDataset(folder, TIME_ZONE, 1);
+        final long sequentialMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        start = System.nanoTime();
+        final CpnDataset parallel = CsvCpnDatasetLoader.loadDataset(folder, TIME_ZONE, 4);
+        final long parallelMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        LOG.info("Loaded dataset sequentially in {}ms and in parallel in {}ms.", sequentialMs, parallelMs);
+
+        // The results should be merged in the same order
+        assertThat(parallel.getTickets(), equalTo(sequential.getTickets()));
+        assertThat(parallel.getServiceEvents(), equalTo(sequential.getServiceEvents()));
+        assertThat(parallel.getSyslogEvents(), equalTo(sequential.getSyslogEvents()));
+        assertThat(parallel.getTraps(), equalTo(sequential.getTraps()));
+    }
+
+    private void assertStreamedDatasetEquals(CpnDataset dataset, int numThreads) throws Exception {
+        final List<TicketRecord> tickets = new ArrayList<>();
+        final List<EventRecord> serviceEvents = new ArrayList<>();
+        final List<EventRecord> syslogEvents = new ArrayList<>();
+        final List<TrapRecord> traps = new ArrayList<>();
+        CsvCpnDatasetLoader.streamDataset(folder, TIME_ZONE, new CpnRecordHandler() {
+            @Override
+            public void handleTicket(TicketRecord ticket) {
+                tickets.add(ticket);
+            }
+
+            @Override
+            public void handleServiceEvent(EventRecord serviceEvent) {
+                serviceEvents.add(serviceEvent);
+            }
+
+            @Override
+            public void handleSyslogEvent(EventRecord syslogEvent) {
+                syslogEvents.add(syslogEvent);
+            }
+
+            @Override
+            public void handleTrap(TrapRecord trap) {
+                traps.add(trap);
+            }
+        }, numThreads);
+
+        // The streamed records should be the same as the ones that are loaded, the dataset sorts them
+        tickets.sort(Comparator.comparing(TicketRecord::getCreationTime));
+        serviceEvents.sort(Comparator.comparing(EventRecord::getTime));
+        syslogEvents.sort(Comparator.comparing(EventRecord::getTime));
+        traps.sort(Comparator.comparing(EventRecord::getTime));
+        assertThat(tickets, equalTo(dataset.getTickets()));
+        assertThat(serviceEvents, equalTo(dataset.getServiceEvents()));
+        assertThat(syslogEvents, equalTo(dataset.getSyslogEvents()));
+        assertThat(traps, equalTo(dataset.getTraps()));
+    }
+}
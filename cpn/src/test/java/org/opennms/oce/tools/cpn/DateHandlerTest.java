@@ -28,14 +28,34 @@
 
 package org.opennms.oce.tools.cpn;
 
+import static java.time.temporal.ChronoField.DAY_OF_MONTH;
+import static java.time.temporal.ChronoField.HOUR_OF_DAY;
+import static java.time.temporal.ChronoField.MINUTE_OF_HOUR;
+import static java.time.temporal.ChronoField.MONTH_OF_YEAR;
+import static java.time.temporal.ChronoField.SECOND_OF_MINUTE;
+import static java.time.temporal.ChronoField.YEAR;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
 
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.Month;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.SignStyle;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import org.junit.Test;
 
@@ -51,4 +71,103 @@ public class DateHandlerTest {
         assertThat(dateHandler.parseToZoneDateTime("2018-Apr-23, 10:27:41"), equalTo(expectedTime));
     }
 
+    /**
+     * Verifies that we parse timestamps exactly like the original implementation did,
+     * including the ones that need to be resolved by the formatter.
+     */
+    @Test
+    public void canParseGoldenTimestamps() throws Exception {
+        final Map<String, DateHandler> dateHandlersByZone = new HashMap<>();
+        int numTimestamps = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                getClass().getResourceAsStream("/cpn-timestamps.tsv"), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#")) {
+                    continue;
+                }
+                final String[] fields = line.split("\t", -1);
+                final DateHandler dateHandler = dateHandlersByZone.computeIfAbsent(fields[0], z -> new DateHandler(ZoneId.of(z)));
+                String actual;
+                try {
+                    actual = dateHandler.parseToZoneDateTime(fields[1]).toString();
+                } catch (RuntimeException e) {
+                    actual = "ERROR";
+                }
+                assertThat("Parsing '" + fields[1] + "' in " + fields[0], actual, equalTo(fields[2]));
+                numTimestamps++;
+            }
+        }
+        assertThat(numTimestamps, greaterThan(300));
+    }
+
+    @Test
+    public void canParseFromMultipleThreads() {
+        final DateHandler dateHandler = new DateHandler(ZoneId.of("America/Chicago"));
+        final List<String> timestamps = generateTimestamps(10000);
+        final List<ZonedDateTime> expected = timestamps.stream()
+                .map(dateHandler::parseToZoneDateTime)
+                .collect(Collectors.toList());
+        final List<ZonedDateTime> actual = timestamps.parallelStream()
+                .map(dateHandler::parseToZoneDateTime)
+                .collect(Collectors.toList());
+        assertThat(actual, equalTo(expected));
+    }
+
+    /**
+     * Compares the results with the original implementation, which built a new formatter for every call.
+     */
+    @Test
+    public void canParseLikeOriginal() {
+        final ZoneId zoneId = ZoneId.of("America/Chicago");
+        final DateHandler dateHandler = new DateHandler(zoneId);
+        for (String timestamp : generateTimestamps(50000)) {
+            assertThat(timestamp, dateHandler.parseToZoneDateTime(timestamp), equalTo(parseLikeOriginal(timestamp, zoneId)));
+        }
+    }
+
+    private static List<String> generateTimestamps(int count) {
+        final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MMM-d, HH:mm:ss", Locale.ENGLISH);
+        final LocalDateTime start = LocalDateTime.of(2018, 1, 1, 0, 0);
+        final List<String> timestamps = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            timestamps.add(start.plusSeconds(i * 1237L).format(formatter));
+        }
+        return timestamps;
+    }
+
+    private static ZonedDateTime parseLikeOriginal(String str, ZoneId zoneId) {
+        final Map<Long, String> moy = new HashMap<>();
+        moy.put(1L, "Jan");
+        moy.put(2L, "Feb");
+        moy.put(3L, "Mar");
+        moy.put(4L, "Apr");
+        moy.put(5L, "May");
+        moy.put(6L, "Jun");
+        moy.put(7L, "Jul");
+        moy.put(8L, "Aug");
+        moy.put(9L, "Sep");
+        moy.put(10L, "Oct");
+        moy.put(11L, "Nov");
+        moy.put(12L, "Dec");
+
+        final DateTimeFormatter formatter = new DateTimeFormatterBuilder()
+                .parseCaseInsensitive()
+                .parseLenient()
+                .appendValue(YEAR, 4)
+                .appendLiteral('-')
+                .appendText(MONTH_OF_YEAR, moy)
+                .appendLiteral('-')
+                .appendValue(DAY_OF_MONTH, 1, 2, SignStyle.NOT_NEGATIVE)
+                .appendLiteral(',')
+                .appendLiteral(' ')
+                .appendValue(HOUR_OF_DAY, 2)
+                .appendLiteral(':')
+                .appendValue(MINUTE_OF_HOUR, 2)
+                .appendLiteral(':')
+                .appendValue(SECOND_OF_MINUTE, 2)
+                .toFormatter();
+        return LocalDateTime.parse(str, formatter).atZone(zoneId);
+    }
+
 }
@@ -0,0 +1,297 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.tools.cpn;
+
+import static org.elasticsearch.index.query.QueryBuilders.regexpQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.text.SimpleDateFormat;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.junit.Test;
+import org.opennms.oce.tools.cpn.model.EventRecord;
+import org.opennms.oce.tools.cpn.model.LocationRecord;
+import org.opennms.oce.tools.cpn.model.TicketRecord;
+import org.opennms.oce.tools.cpn.model.TrapRecord;
+import org.opennms.oce.tools.es.ESClient;
+import org.opennms.oce.tools.es.ESClusterConfiguration;
+import org.opennms.oce.tools.es.LocalElasticsearch;
+import org.opennms.oce.tools.es.Projection;
+import org.opennms.oce.tools.es.ScrollCursor;
+
+import com.google.gson.JsonObject;
+
+import io.searchbox.core.Search;
+import io.searchbox.params.Parameters;
+
+public class ESDataProviderTest {
+
+    private static final int NUM_TICKETS = 500;
+    private static final int NUM_EVENTS_PER_TICKET = 25;
+    private static final ZonedDateTime START = ZonedDateTime.parse("2018-11-01T00:00:00Z");
+    private static final ZonedDateTime END = START.plusMonths(1);
+
+    @Rule
+    public LocalElasticsearch elasticsearch = new LocalElasticsearch();
+
+    @Before
+    public void setUp() {
+        final SimpleDateFormat df = new SimpleDateFormat(LocalElasticsearch.DATE_FORMAT);
+        final long stepMs = (END.toInstant().toEpochMilli() - START.toInstant().toEpochMilli()) / NUM_TICKETS;
+        int eventId = 0;
+        for (int i = 0; i < NUM_TICKETS; i++) {
+            final String ticketId = Integer.toString(1000 + i);
+            final String location = String.format("router-%d.example.org", i % 17);
+            final Date ticketTime = new Date(START.toInstant().toEpochMilli() + i * stepMs);
+
+            final JsonObject ticket = new JsonObject();
+            ticket.addProperty("severity", "Major");
+            ticket.addProperty("ticketId", ticketId);
+            ticket.addProperty("rootEventTime", df.format(ticketTime));
+            ticket.addProperty("creationTime", df.format(ticketTime));
+            ticket.addProperty("lastModificationTime", df.format(ticketTime));
+            ticket.addProperty("description", "Link down");
+            ticket.addProperty("location", location);
+            ticket.addProperty("eventCount", 2 * NUM_EVENTS_PER_TICKET);
+            ticket.addProperty("alarmCount", "2");
+            elasticsearch.index("tickets", "ticket", ticketId, ticket);
+
+            for (int j = 0; j < NUM_EVENTS_PER_TICKET; j++) {
+                final Date eventTime = new Date(ticketTime.getTime() + TimeUnit.SECONDS.toMillis(j));
+
+                final String trapId = Integer.toString(eventId++);
+                final JsonObject trap = new JsonObject();
+                trap.addProperty("source", "trap");
+                trap.addProperty("severity", "Major");
+                trap.addProperty("eventId", trapId);
+                trap.addProperty("time", df.format(eventTime));
+                trap.addProperty("description", "Link down");
+                trap.addProperty("location", location);
+                trap.addProperty("ticketId", ticketId);
+                trap.addProperty("trapTypeOid", ".1.3.6.1.6.3.1.1.5.3");
+                elasticsearch.index("traps", "trap", trapId, trap);
+
+                final String syslogId = Integer.toString(eventId++);
+                final JsonObject syslog = new JsonObject();
+                syslog.addProperty("source", "syslog");
+                syslog.addProperty("severity", "Minor");
+                syslog.addProperty("eventId", syslogId);
+                syslog.addProperty("time", df.format(eventTime));
+                syslog.addProperty("description", "Interface down");
+                syslog.addProperty("detailedDescription", "%LINK-3-UPDOWN: Interface GigabitEthernet0/1, changed state to down");
+                syslog.addProperty("location", location);
+                syslog.addProperty("ticketId", ticketId);
+                elasticsearch.index("syslogs", "syslog", syslogId, syslog);
+            }
+        }
+    }
+
+    @Test
+    public void canScrollUsingSlices() throws Exception {
+        final ESDataProvider sequential = createDataProvider(1);
+        final ESClusterConfiguration clusterConfiguration = elasticsearch.getClusterConfiguration();
+        clusterConfiguration.setScrollSlices(4);
+        final ESClient esClient = new ESClient(clusterConfiguration);
+        final ESDataProvider sliced = new ESDataProvider(esClient);
+
+        // Traps in a ticket, these use the default page size and span many scrolls
+        final List<TrapRecord> expectedTraps = sequential.getTrapsInTicket("1042");
+        assertThat(expectedTraps, hasSize(NUM_EVENTS_PER_TICKET));
+        assertThat(elasticsearch.getNumSlicedSearches(), equalTo(0));
+        assertThat(sliced.getTrapsInTicket("1042"), containsInAnyOrder(expectedTraps.toArray()));
+        assertThat(elasticsearch.getNumSlicedSearches(), equalTo(4));
+
+        // Slices can be started from within the callback of another sliced scroll
+        final List<TrapRecord> nestedTraps = new ArrayList<>();
+        esClient.scroll("{\"query\":{\"match_all\":{}}}", q -> new Search.Builder(q)
+                .addIndex("tickets")
+                .setParameter(Parameters.SCROLL, ScrollCursor.SCROLL_TIME)
+                .build(), CpnJsonCodec.getGson(), TicketRecord.class, tickets -> {
+            if (nestedTraps.isEmpty()) {
+                nestedTraps.addAll(sliced.getTrapsInTicket("1042"));
+            }
+        });
+        assertThat(nestedTraps, containsInAnyOrder(expectedTraps.toArray()));
+
+        // All of the scroll contexts should have been released
+        assertThat(elasticsearch.getNumOpenScrollContexts(), equalTo(0));
+    }
+
+    @Test
+    public void canScrollThroughSortedQueriesWithoutSlicing() throws Exception {
+        final ESDataProvider sequential = createDataProvider(1);
+        final ESDataProvider sliced = createDataProvider(4);
+
+        // Tickets, sorted by creation time
+        final List<TicketRecord> expectedTickets = new ArrayList<>();
+        sequential.getTicketRecordsInRange(START, END, expectedTickets::addAll);
+        assertThat(expectedTickets, hasSize(NUM_TICKETS));
+
+        final List<TicketRecord> tickets = new ArrayList<>();
+        sliced.getTicketRecordsInRange(START, END, tickets::addAll);
+        assertThat(tickets, equalTo(expectedTickets));
+
+        // Syslogs sorted by time, more than one page
+        final List<EventRecord> expectedSyslogs = new ArrayList<>();
+        sequential.getSyslogRecordsInRange(START, END, expectedSyslogs::addAll);
+        assertThat(expectedSyslogs, hasSize(NUM_TICKETS * NUM_EVENTS_PER_TICKET));
+        assertThat(expectedSyslogs.size(), greaterThan(ESDataProvider.BATCH_SIZE));
+
+        final List<EventRecord> syslogs = new ArrayList<>();
+        sliced.getSyslogRecordsInRange(START, END, syslogs::addAll);
+        assertThat(syslogs, equalTo(expectedSyslogs));
+        assertThat(elasticsearch.getNumSlicedSearches(), equalTo(0));
+
+        // All of the scroll contexts should have been released
+        assertThat(elasticsearch.getNumOpenScrollContexts(), equalTo(0));
+    }
+
+    @Test
+    public void canProjectSyslogFields() {
+        final ESDataProvider sliced = createDataProvider(4);
+
+        final List<EventRecord> expectedSyslogs = new ArrayList<>();
+        sliced.getSyslogRecordsInRange(START, END, expectedSyslogs::addAll);
+
+        final List<EventRecord> syslogs = new ArrayList<>();
+        sliced.getSyslogRecordsInRange(START, END, Collections.emptyList(), Collections.emptyList(),
+                Projection.includes("eventId", "time", "detailedDescription"), syslogs::addAll);
+        assertThat(syslogs, hasSize(expectedSyslogs.size()));
+
+        final Map<String, EventRecord> expectedSyslogsById = expectedSyslogs.stream()
+                .collect(Collectors.toMap(EventRecord::getEventId, e -> e));
+        for (EventRecord syslog : syslogs) {
+            final EventRecord expectedSyslog = expectedSyslogsById.get(syslog.getEventId());
+            assertThat(syslog.getTime(), equalTo(expectedSyslog.getTime()));
+            assertThat(syslog.getDetailedDescription(), equalTo(expectedSyslog.getDetailedDescription()));
+            // Fields that were not requested are left unset
+            assertThat(syslog.getLocation(), nullValue());
+            assertThat(syslog.getTicketId(), nullValue());
+        }
+    }
+
+    @Test
+    public void canCountEventsForManyHostnames() {
+        final ESClusterConfiguration clusterConfiguration = elasticsearch.getClusterConfiguration();
+        clusterConfiguration.setMsearchMaxSearches(8);
+        final ESDataProvider dataProvider = new ESDataProvider(new ESClient(clusterConfiguration));
+        // Use more hostnames than fit in a single multi-search request, some of which have no events
+        final Set<String> hostnames = new LinkedHashSet<>();
+        for (int i = 0; i < 20; i++) {
+            hostnames.add(String.format("router-%d.example.org", i));
+        }
+        final List<QueryBuilder> excludes = Collections.singletonList(termQuery("ticketId", "1042"));
+
+        elasticsearch.resetRequestCounts();
+        final Map<String, Long> numSyslogs = dataProvider.getNumSyslogEventsByHostname(START, END, hostnames, excludes);
+        final Map<String, Long> numTraps = dataProvider.getNumTrapEventsByHostname(START, END, hostnames, excludes);
+        assertThat(elasticsearch.getNumRequests("msearch"), equalTo(6));
+        assertThat(elasticsearch.getNumRequests("search"), equalTo(0));
+
+        assertThat(numSyslogs.keySet(), contains(hostnames.toArray()));
+        assertThat(numTraps.keySet(), contains(hostnames.toArray()));
+        long totalNumSyslogs = 0;
+        for (String hostname : hostnames) {
+            assertThat(numSyslogs.get(hostname), equalTo(dataProvider.getNumSyslogEvents(START, END, hostname, excludes)));
+            assertThat(numTraps.get(hostname), equalTo(dataProvider.getNumTrapEvents(START, END, hostname, excludes)));
+            totalNumSyslogs += numSyslogs.get(hostname);
+        }
+        assertThat(totalNumSyslogs, equalTo((long)(NUM_TICKETS - 1) * NUM_EVENTS_PER_TICKET));
+    }
+
+    @Test
+    public void canPageThroughLocations() {
+        final ESDataProvider dataProvider = createDataProvider(1);
+        final List<QueryBuilder> excludes = Collections.singletonList(termQuery("ticketId", "1042"));
+
+        // Every location has one ticket every 17, and all of the events share the ticket's location
+        final Map<String, Long> numEventsByLocation = new TreeMap<>();
+        for (int i = 0; i < NUM_TICKETS; i++) {
+            if (i != 42) {
+                numEventsByLocation.merge(String.format("router-%d.example.org", i % 17), (long)NUM_EVENTS_PER_TICKET, Long::sum);
+            }
+        }
+        final List<LocationRecord> expectedLocations = numEventsByLocation.entrySet().stream()
+                .map(e -> new LocationRecord(e.getKey(), e.getValue(), e.getValue()))
+                .collect(Collectors.toList());
+
+        elasticsearch.resetRequestCounts();
+        final List<LocationRecord> locations = new ArrayList<>();
+        dataProvider.getLocations(START, END, excludes, locations::addAll, 5);
+        assertThat(locations, equalTo(expectedLocations));
+        // 4 pages of 5 locations, the last one being partial
+        assertThat(elasticsearch.getNumRequests("search"), equalTo(4));
+
+        final List<String> distinctLocations = new ArrayList<>();
+        dataProvider.getDistinctLocations(START, END, excludes, distinctLocations::addAll);
+        assertThat(distinctLocations, equalTo(new ArrayList<>(numEventsByLocation.keySet())));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void canPropagateFailuresFromMultiSearches() {
+        final ESDataProvider dataProvider = createDataProvider(1);
+        // The stand-in rejects unsupported queries
+        dataProvider.getNumSyslogEventsByHostname(START, END, Collections.singleton("router-1.example.org"),
+                Collections.singletonList(regexpQuery("location", "router-.*")));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void canPropagateFailuresFromSlices() {
+        final ESDataProvider sliced = createDataProvider(3);
+        // The stand-in rejects unsupported queries
+        sliced.getSyslogRecordsInRange(START, END, Collections.emptyList(), Collections.emptyList(), syslogs -> {},
+                regexpQuery("location", "router-.*"));
+    }
+
+    private ESDataProvider createDataProvider(int numSlices) {
+        final ESClusterConfiguration clusterConfiguration = elasticsearch.getClusterConfiguration();
+        clusterConfiguration.setScrollSlices(numSlices);
+        return new ESDataProvider(new ESClient(clusterConfiguration));
+    }
+}
@@ -31,8 +31,10 @@ package org.opennms.oce.tools.cpn.model;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
 
 import org.junit.Test;
+import org.snmp4j.smi.OID;
 
 public class TrapHelperTest {
 
@@ -44,4 +46,28 @@ public class TrapHelperTest {
         assertThat(trapInfo.getGeneric(), equalTo(2));
         assertThat(trapInfo.getSpecific(), equalTo(0));
     }
+
+    @Test
+    public void canHandleEnterpriseSpecificTraps() {
+        TrapHelper.TrapInfo trapInfo = TrapHelper.getTrapInfo(".1.3.6.1.4.1.9.9.41.2.0.1");
+        assertThat(trapInfo.getEnterpriseId(), equalTo(new OID(".1.3.6.1.4.1.9.9.41.2")));
+        assertThat(trapInfo.getGeneric(), equalTo(6));
+        assertThat(trapInfo.getSpecific(), equalTo(1));
+
+        trapInfo = TrapHelper.getTrapInfo(".1.3.6.1.4.1.9.9.41.2.1");
+        assertThat(trapInfo.getEnterpriseId(), equalTo(new OID(".1.3.6.1.4.1.9.9.41.2")));
+        assertThat(trapInfo.getGeneric(), equalTo(6));
+        assertThat(trapInfo.getSpecific(), equalTo(1));
+    }
+
+    @Test
+    public void canReuseTrapInfo() {
+        final TrapHelper.TrapInfo trapInfo = TrapHelper.getTrapInfo(".1.3.6.1.4.1.9.9.41.2.0.1");
+        assertThat(TrapHelper.getTrapInfo(".1.3.6.1.4.1.9.9.41.2.0.1"), sameInstance(trapInfo));
+    }
+
+    @Test(expected = StringIndexOutOfBoundsException.class)
+    public void canPropagateParsingFailures() {
+        TrapHelper.getTrapInfo("");
+    }
 }
@@ -0,0 +1,316 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.tools.cpn.view;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.opennms.oce.tools.cpn.model.EventRecord;
+import org.opennms.oce.tools.cpn.model.EventSeverity;
+import org.opennms.oce.tools.cpn.model.TicketRecord;
+import org.opennms.oce.tools.cpn.model.TrapRecord;
+import org.opennms.oce.tools.es.ESClient;
+import org.opennms.oce.tools.es.LocalElasticsearch;
+
+import com.google.common.collect.Sets;
+import com.google.gson.JsonObject;
+
+public class StaticCpnDatasetViewerTest {
+
+    private static final long HOUR_MS = 60 * 60 * 1000L;
+    private static final ZonedDateTime START = ZonedDateTime.of(2018, 11, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+    @Rule
+    public LocalElasticsearch elasticsearch = new LocalElasticsearch();
+
+    private final List<TicketRecord> tickets = new ArrayList<>();
+    private final List<EventRecord> serviceEvents = new ArrayList<>();
+    private final List<EventRecord> syslogEvents = new ArrayList<>();
+    private final List<TrapRecord> traps = new ArrayList<>();
+
+    @Test
+    public void canGetTicketsById() {
+        addTicket("1", 2, "2");
+        addTicket("2", 1, "2");
+        final StaticCpnDatasetViewer viewer = new StaticCpnDatasetViewer(new CpnDatasetView.Builder().build(),
+                tickets, serviceEvents, syslogEvents, traps);
+        assertThat(viewer.getTicketWithId("2"), equalTo(tickets.get(1)));
+        assertThat(viewer.getTicketWithId("3"), nullValue());
+    }
+
+    @Test
+    public void canFilterTicketsByRootEventTime() {
+        // Add the tickets out of order
+        addTicket("4", 4, "2");
+        addTicket("1", 1, "2");
+        addTicket("3", 3, "1");
+        addTicket("0", 0, "2");
+        addTicket("2", 2, "2");
+        addTicket("5", 5, "2");
+
+        // [1h, 4h)
+        final CpnDatasetView.Builder viewBuilder = new CpnDatasetView.Builder()
+                .withStartTime(START.plusHours(1))
+                .withEndTime(START.plusHours(4));
+        assertThat(getTicketIds(viewBuilder.build()), contains("1", "2"));
+        assertThat(getTicketIds(viewBuilder.includeTicketsWithASingleAlarm(true).build()), contains("1", "2", "3"));
+
+        // Open ended ranges
+        assertThat(getTicketIds(new CpnDatasetView.Builder()
+                .withStartTime(START.plusHours(4))
+                .includeTicketsWithASingleAlarm(true)
+                .build()), contains("4", "5"));
+        assertThat(getTicketIds(new CpnDatasetView.Builder()
+                .withEndTime(START.plusHours(1))
+                .includeTicketsWithASingleAlarm(true)
+                .build()), contains("0"));
+        assertThat(getTicketIds(new CpnDatasetView.Builder()
+                .includeTicketsWithASingleAlarm(true)
+                .build()), contains("0", "1", "2", "3", "4", "5"));
+    }
+
+    @Test
+    public void canDeliverTicketsInBatches() {
+        for (int i = 0; i < 25; i++) {
+            addTicket(Integer.toString(i), i, "2");
+        }
+        final StaticCpnDatasetViewer viewer = new StaticCpnDatasetViewer(new CpnDatasetView.Builder().withBatchSize(10).build(),
+                tickets, serviceEvents, syslogEvents, traps);
+        final List<Integer> batchSizes = new ArrayList<>();
+        viewer.getTicketRecordsWithRootEventTimeInRange(batch -> batchSizes.add(batch.size()));
+        assertThat(batchSizes, contains(10, 10, 5));
+    }
+
+    @Test
+    public void canGetEventsInTicket() {
+        addTicket("1", 0, "2");
+        addTicket("2", 0, "2");
+        final EventRecord service = addEvent(serviceEvents, "service", "1", 0);
+        final EventRecord syslog1 = addEvent(syslogEvents, "syslog", "1", 1);
+        final EventRecord syslog2 = addEvent(syslogEvents, "syslog", "1", 5);
+        final EventRecord trap = addTrap("1", 2);
+        addEvent(syslogEvents, "syslog", "2", 1);
+
+        // Traps without a type are never returned
+        addTrap("1", 3, "N/A");
+
+        assertThat(getEvents(new CpnDatasetView.Builder().build(), "1"), contains(service, trap, syslog1, syslog2));
+        assertThat(getEvents(new CpnDatasetView.Builder()
+                .withEventTypes(Sets.newHashSet(CpnDatasetView.EventType.SYSLOG, CpnDatasetView.EventType.TRAP))
+                .build(), "1"), contains(trap, syslog1, syslog2));
+        assertThat(getEvents(new CpnDatasetView.Builder()
+                .withStartTime(START.plusHours(1))
+                .withEndTime(START.plusHours(5))
+                .build(), "1"), contains(trap, syslog1));
+        // The bounds are truncated to seconds
+        assertThat(getEvents(new CpnDatasetView.Builder()
+                .withStartTime(START.plusHours(1).plusNanos(500000000))
+                .withEndTime(START.plusHours(5).plusNanos(500000000))
+                .build(), "1"), contains(trap, syslog1));
+        assertThat(getEvents(new CpnDatasetView.Builder().build(), "3"), hasSize(0));
+    }
+
+    @Test
+    public void canGetEventsForManyTickets() {
+        final int numTickets = 10000;
+        for (int i = 0; i < numTickets; i++) {
+            addTicket(Integer.toString(i), i, "2");
+        }
+        for (int i = 0; i < 200000; i++) {
+            addEvent(syslogEvents, "syslog", Integer.toString(i % numTickets), i);
+        }
+        final StaticCpnDatasetViewer viewer = new StaticCpnDatasetViewer(new CpnDatasetView.Builder().build(),
+                tickets, serviceEvents, syslogEvents, traps);
+        final List<EventRecord> events = new ArrayList<>();
+        viewer.getTicketRecordsWithRootEventTimeInRange(batch -> batch.forEach(t -> viewer.getEventsInTicket(t, events::addAll)));
+        assertThat(events, hasSize(syslogEvents.size()));
+    }
+
+    @Test
+    public void canViewRecordsLikeESBackedViewer() throws IOException {
+        final SimpleDateFormat df = new SimpleDateFormat(LocalElasticsearch.DATE_FORMAT);
+        final Random random = new Random(42);
+        final String[] trapTypeOids = {".1.3.6.1.6.3.1.1.5.3", ".1.3.6.1.6.3.1.1.5.4", "N/A"};
+        for (int i = 0; i < 50; i++) {
+            final String ticketId = Integer.toString(100 + i);
+            final Date ticketTime = new Date(START.toInstant().toEpochMilli() + TimeUnit.MINUTES.toMillis(10 * i));
+            final TicketRecord ticket = new TicketRecord(EventSeverity.Major, ticketId, ticketTime, ticketTime,
+                    "Ticket " + ticketId, "router", false, ticketTime, 1, "1", "0", "0", random.nextInt(4) == 0 ? "1" : "2");
+            tickets.add(ticket);
+            final JsonObject ticketJson = new JsonObject();
+            ticketJson.addProperty("severity", "Major");
+            ticketJson.addProperty("ticketId", ticketId);
+            ticketJson.addProperty("rootEventTime", df.format(ticketTime));
+            ticketJson.addProperty("creationTime", df.format(ticketTime));
+            ticketJson.addProperty("lastModificationTime", df.format(ticketTime));
+            ticketJson.addProperty("alarmCount", ticket.getAlarmCount());
+            elasticsearch.index("tickets", "ticket", ticketId, ticketJson);
+
+            for (int j = 0; j < 12; j++) {
+                // Distinct whole seconds, some of which fall right on the bounds of the views
+                final Date time = new Date(ticketTime.getTime() + TimeUnit.SECONDS.toMillis(100 * j - 600 + random.nextInt(100)));
+                final String eventId = Integer.toString(tickets.size() * 100 + j);
+                final JsonObject eventJson = new JsonObject();
+                eventJson.addProperty("severity", "Major");
+                eventJson.addProperty("eventId", eventId);
+                eventJson.addProperty("time", df.format(time));
+                eventJson.addProperty("location", "router");
+                eventJson.addProperty("ticketId", ticketId);
+                final EventRecord event = new EventRecord(null, EventSeverity.Major, eventId, time, null, null, "router", null, ticketId, null, 0, 0);
+                switch (random.nextInt(3)) {
+                    case 0:
+                        serviceEvents.add(event);
+                        elasticsearch.index("services", "service", eventId, eventJson);
+                        break;
+                    case 1:
+                        syslogEvents.add(event);
+                        elasticsearch.index("syslogs", "syslog", eventId, eventJson);
+                        break;
+                    default:
+                        final String trapTypeOid = trapTypeOids[random.nextInt(trapTypeOids.length)];
+                        traps.add(new TrapRecord(event, null, null, null, null, trapTypeOid));
+                        eventJson.addProperty("trapTypeOid", trapTypeOid);
+                        elasticsearch.index("traps", "trap", eventId, eventJson);
+                }
+            }
+        }
+        // The records aren't necessarily sorted by time
+        Collections.shuffle(serviceEvents, random);
+        Collections.shuffle(syslogEvents, random);
+        Collections.shuffle(traps, random);
+
+        final List<CpnDatasetView> views = Arrays.asList(
+                new CpnDatasetView.Builder()
+                        .withStartTime(START)
+                        .withEndTime(START.plusDays(1))
+                        .build(),
+                new CpnDatasetView.Builder()
+                        .withStartTime(START.plusHours(1).plusNanos(500000000))
+                        .withEndTime(START.plusHours(6).plusNanos(999000000))
+                        .includeTicketsWithASingleAlarm(true)
+                        .withBatchSize(7)
+                        .build(),
+                new CpnDatasetView.Builder()
+                        .withStartTime(START.plusMinutes(95).plusNanos(1000000))
+                        .withEndTime(START.plusMinutes(275).plusNanos(500000000))
+                        .withEventTypes(Sets.newHashSet(CpnDatasetView.EventType.SYSLOG, CpnDatasetView.EventType.TRAP))
+                        .build());
+        try (ESClient esClient = new ESClient(elasticsearch.getClusterConfiguration())) {
+            for (CpnDatasetView view : views) {
+                final CpnDatasetViewer staticViewer = new StaticCpnDatasetViewer(view, tickets, serviceEvents, syslogEvents, traps);
+                final CpnDatasetViewer esViewer = new ESBackedCpnDatasetViewer(esClient, view);
+                final List<String> ticketIds = getTicketIds(esViewer);
+                assertThat(ticketIds, hasSize(greaterThan(0)));
+                assertThat(getTicketIds(staticViewer), equalTo(ticketIds));
+                for (String ticketId : ticketIds) {
+                    assertThat(getEventIds(staticViewer, ticketId), equalTo(getEventIds(esViewer, ticketId)));
+                }
+            }
+        }
+    }
+
+    private static List<String> getTicketIds(CpnDatasetViewer viewer) {
+        final List<String> ticketIds = new ArrayList<>();
+        viewer.getTicketRecordsWithRootEventTimeInRange(batch -> batch.forEach(t -> ticketIds.add(t.getTicketId())));
+        return ticketIds;
+    }
+
+    private static List<String> getEventIds(CpnDatasetViewer viewer, String ticketId) {
+        final List<String> eventIds = new ArrayList<>();
+        viewer.getEventsInTicket(ticketId, batch -> batch.forEach(e -> eventIds.add(e.getEventId())));
+        return eventIds;
+    }
+
+    private List<String> getTicketIds(CpnDatasetView view) {
+        final StaticCpnDatasetViewer viewer = new StaticCpnDatasetViewer(view, tickets, serviceEvents, syslogEvents, traps);
+        final List<TicketRecord> ticketsInRange = new ArrayList<>();
+        viewer.getTicketRecordsWithRootEventTimeInRange(ticketsInRange::addAll);
+        return ticketsInRange.stream().map(TicketRecord::getTicketId).collect(Collectors.toList());
+    }
+
+    private List<EventRecord> getEvents(CpnDatasetView view, String ticketId) {
+        final StaticCpnDatasetViewer viewer = new StaticCpnDatasetViewer(view, tickets, serviceEvents, syslogEvents, traps);
+        final List<EventRecord> events = new ArrayList<>();
+        viewer.getEventsInTicket(ticketId, events::addAll);
+        return events;
+    }
+
+    private void addTicket(String ticketId, int hour, String alarmCount) {
+        final Date time = getTime(hour);
+        tickets.add(new TicketRecord(EventSeverity.Major, ticketId, time, time, "Ticket " + ticketId, "router",
+                false, time, 1, "1", "0", "0", alarmCount));
+    }
+
+    private EventRecord addEvent(List<EventRecord> events, String source, String ticketId, int hour) {
+        final EventRecord event = createEvent(source, ticketId, hour);
+        events.add(event);
+        return event;
+    }
+
+    private TrapRecord addTrap(String ticketId, int hour) {
+        return addTrap(ticketId, hour, ".1.3.6.1.6.3.1.1.5.3");
+    }
+
+    private TrapRecord addTrap(String ticketId, int hour, String trapTypeOid) {
+        final TrapRecord trap = new TrapRecord(createEvent("trap", ticketId, hour), "linkDown", "Link down",
+                "IF-MIB", ".1.3.6.1.6.3.1.1.5", trapTypeOid);
+        traps.add(trap);
+        return trap;
+    }
+
+    private EventRecord createEvent(String source, String ticketId, int hour) {
+        final int eventId = serviceEvents.size() + syslogEvents.size() + traps.size();
+        return new EventRecord(source, EventSeverity.Major, Integer.toString(eventId), getTime(hour),
+                "Event", null, "router", "1", ticketId, "", 0, 0);
+    }
+
+    private static Date getTime(int hour) {
+        return Date.from(Instant.ofEpochMilli(START.toInstant().toEpochMilli() + hour * HOUR_MS));
+    }
+}
@@ -37,12 +37,30 @@ import org.opennms.oce.tools.cpn.events.EventRecordLite;
 import org.opennms.oce.tools.cpn.model.EventRecord;
 import org.opennms.oce.tools.cpn2oce.model.CanonicalEventRecordLite;
 import org.opennms.oce.tools.cpn2oce.model.EventDefinition;
+import org.opennms.oce.tools.cpn2oce.model.EventDefinitionClassifier;
 import org.opennms.oce.tools.cpn2oce.model.ModelObject;
 
 import com.google.common.collect.Lists;
 
 public class EventMapper {
 
+    // The patterns used to parse the locations of the events, these are compiled once and shared by all of the builders
+    static final Pattern BGP_PEER_IN_VRF_PATTERN = Pattern.compile("^(.*): .*\\(PeerId (.*), VRF (.*)\\)$");
+    static final Pattern BGP_PEER_PATTERN = Pattern.compile("^(.*): MpBgp:? (.*)$");
+    static final Pattern EIGRP_NEIGHBOR_PATTERN = Pattern.compile("^(.*): (.*): (.*)$");
+    static final Pattern PORT_PATTERN = Pattern.compile("^(.*): (.*?) (.*)$");
+    static final Pattern MPLS_INTERFACE_PATTERN = Pattern.compile("^(.*): LSE: MPLS on interface (.*)$");
+    static final Pattern MPLS_LINK_PATTERN = Pattern.compile("^(.*): IP (.*)<->(.*): IP (.*)$");
+    static final Pattern LDP_NEIGHBOR_PATTERN = Pattern.compile("^(.*): LSE: (.*)$");
+    static final Pattern BFD_NEIGHBOR_PATTERN = Pattern.compile("^(.*): (.*): (.*) <-> (.*)$");
+    // Fan trays, power supplies and cards
+    static final Pattern DEVICE_COMPONENT_PATTERN = Pattern.compile("^(.*)#(.*)$");
+    static final Pattern LINK_PATTERN = Pattern.compile("^(.*): (.*)<->(.*): (.*)$");
+    static final Pattern LINK_ON_DEVICE_PATTERN = Pattern.compile("^(.*): (.*) (.*)$");
+    static final Pattern OSPF_LINK_PATTERN = Pattern.compile("^(.*): (.*)<->(.*): (.*)");
+    static final Pattern FAN_PATTERN = Pattern.compile("^(.*)#(.*)\\.(.*)$");
+    static final Pattern DEVICE_GROUP_PATTERN = Pattern.compile("^(.*): (.*)$");
+
     public static List<EventDefinition> EVENT_DEFS = Lists.newArrayList(
             // Ignored events
             EventDefinition.builder()
@@ -276,6 +294,8 @@ public class EventMapper {
                     .build()
     );
 
+    private final EventDefinitionClassifier classifier = new EventDefinitionClassifier(EVENT_DEFS);
+
     public ModelObject parse(EventRecord e) {
         try {
             return parse((EventRecordLite)e);
@@ -301,16 +321,22 @@ public class EventMapper {
 
     public ModelObject parse(EventRecordLite e) {
         final CanonicalEventRecordLite ce = new CanonicalEventRecordLite(e);
-        for (EventDefinition eventDef : EVENT_DEFS) {
-            if (eventDef.matches(ce)) {
-                if (eventDef.isIgnored()) {
-                    // Ignore this event
-                    return null;
-                }
-                return eventDef.getModelObjectTree(ce);
-            }
+        final EventDefinition eventDef = classifier.getFirstMatch(ce);
+        if (eventDef == null || eventDef.isIgnored()) {
+            // Ignore this event
+            return null;
         }
-        return null;
+        return eventDef.getModelObjectTree(ce);
+    }
+
+    /**
+     * Retrieves the first of the {@link #EVENT_DEFS} that matches the given event, as-is.
+     *
+     * @param e event to match
+     * @return the matching definition, or null if none match
+     */
+    public EventDefinition getMatchingEventDefinition(EventRecordLite e) {
+        return classifier.getFirstMatch(e);
     }
 
     public static ModelObject createDeviceObject(EventRecordLite e) {
@@ -319,8 +345,7 @@ public class EventMapper {
 
     public static ModelObject createBgpPeerObject(EventRecordLite e) {
         final String location = e.getLocation();
-        Pattern p = Pattern.compile("^(.*): .*\\(PeerId (.*), VRF (.*)\\)$");
-        Matcher m = p.matcher(location);
+        Matcher m = BGP_PEER_IN_VRF_PATTERN.matcher(location);
         if (m.matches()) {
             String device = m.group(1);
             String peer = m.group(2);
@@ -337,8 +362,7 @@ public class EventMapper {
             return peerNode;
         }
 
-        p = Pattern.compile("^(.*): MpBgp:? (.*)$");
-        m = p.matcher(location);
+        m.usePattern(BGP_PEER_PATTERN).reset();
         if (m.matches()) {
             String device = m.group(1);
             String peer = m.group(2);
@@ -366,8 +390,7 @@ public class EventMapper {
 
     public static ModelObject createEigrpNeighbor(EventRecordLite e) {
         final String location = e.getLocation();
-        Pattern p = Pattern.compile("^(.*): (.*): (.*)$");
-        Matcher m = p.matcher(location);
+        Matcher m = EIGRP_NEIGHBOR_PATTERN.matcher(location);
         if (m.matches()) {
             String device = m.group(1);
             String port = m.group(2);
@@ -382,8 +405,7 @@ public class EventMapper {
 
     public static ModelObject createPortObject(EventRecordLite e) {
         final String location = e.getLocation();
-        Pattern p = Pattern.compile("^(.*): (.*?) (.*)$");
-        Matcher m = p.matcher(location);
+        Matcher m = PORT_PATTERN.matcher(location);
         if (m.matches()) {
             String device = m.group(1);
             String port = m.group(3);
@@ -418,8 +440,7 @@ public class EventMapper {
 
     public static ModelObject createMplsInterfaceObject(EventRecordLite e) {
         final String location = e.getLocation();
-        Pattern p = Pattern.compile("^(.*): LSE: MPLS on interface (.*)$");
-        Matcher m = p.matcher(location);
+        Matcher m = MPLS_INTERFACE_PATTERN.matcher(location);
         if (m.matches()) {
             String device = m.group(1);
             String iff = m.group(2);
@@ -436,8 +457,7 @@ public class EventMapper {
 
     public static ModelObject createMplsLinkObject(EventRecordLite e) {
         final String location = e.getLocation();
-        Pattern p = Pattern.compile("^(.*): IP (.*)<->(.*): IP (.*)$");
-        Matcher m = p.matcher(location);
+        Matcher m = MPLS_LINK_PATTERN.matcher(location);
         if (m.matches()) {
             String deviceA = m.group(1);
             String portA = m.group(2);
@@ -459,8 +479,7 @@ public class EventMapper {
 
     public static ModelObject createLdpObject(EventRecordLite e) {
         final String location = e.getLocation();
-        Pattern p = Pattern.compile("^(.*): LSE: (.*)$");
-        Matcher m = p.matcher(location);
+        Matcher m = LDP_NEIGHBOR_PATTERN.matcher(location);
         if (m.matches()) {
             String device = m.group(1);
             String ldpNeigh = m.group(2);
@@ -474,8 +493,7 @@ public class EventMapper {
 
     public static ModelObject createBfgNeighborObject(EventRecordLite e) {
         final String location = e.getLocation();
-        Pattern p = Pattern.compile("^(.*): (.*): (.*) <-> (.*)$");
-        Matcher m = p.matcher(location);
+        Matcher m = BFD_NEIGHBOR_PATTERN.matcher(location);
         if (m.matches()) {
             String device = m.group(1);
             String port = m.group(2);
@@ -491,8 +509,7 @@ public class EventMapper {
 
     public static ModelObject createFanTrayObject(EventRecordLite e) {
         final String location = e.getLocation();
-        Pattern p = Pattern.compile("^(.*)#(.*)$");
-        Matcher m = p.matcher(location);
+        Matcher m = DEVICE_COMPONENT_PATTERN.matcher(location);
         if (m.matches()) {
             String device = m.group(1);
             String fanTray = m.group(2);
@@ -506,8 +523,7 @@ public class EventMapper {
 
     private static ModelObject createLinkObject(EventRecordLite e) {
         final String location = e.getLocation();
-        Pattern p = Pattern.compile("^(.*): (.*)<->(.*): (.*)$");
-        Matcher m = p.matcher(location);
+        Matcher m = LINK_PATTERN.matcher(location);
         if (m.matches()) {
             String deviceA = m.group(1);
             String portA = m.group(2);
@@ -521,8 +537,7 @@ public class EventMapper {
             List<ModelObject> peers = Lists.newArrayList(portANode, portBNode);
             return new ModelObject(location, location, ManagedObjectType.SnmpInterfaceLink, peers);
         }
-        p = Pattern.compile("^(.*): (.*) (.*)$");
-        m = p.matcher(location);
+        m.usePattern(LINK_ON_DEVICE_PATTERN).reset();
         if (m.matches()) {
             String deviceA = m.group(1);
             String portA = m.group(2);
@@ -543,8 +558,7 @@ public class EventMapper {
 
     private static ModelObject createOspfLinkObject(EventRecordLite e) {
         final String location = e.getLocation();
-        Pattern p = Pattern.compile("^(.*): (.*)<->(.*): (.*)");
-        Matcher m = p.matcher(location);
+        Matcher m = OSPF_LINK_PATTERN.matcher(location);
         if (m.matches()) {
             String deviceA = m.group(1);
             String ospfA = m.group(2);
@@ -563,8 +577,7 @@ public class EventMapper {
 
     public static ModelObject createPowerSupplyObject(EventRecordLite e) {
         final String location = e.getLocation();
-        Pattern p = Pattern.compile("^(.*)#(.*)$");
-        Matcher m = p.matcher(location);
+        Matcher m = DEVICE_COMPONENT_PATTERN.matcher(location);
         if (m.matches()) {
             String device = m.group(1);
             String powerSupply = m.group(2);
@@ -578,8 +591,7 @@ public class EventMapper {
 
     public static ModelObject createFanObject(EventRecordLite e) {
         final String location = e.getLocation();
-        Pattern p = Pattern.compile("^(.*)#(.*)\\.(.*)$");
-        Matcher m = p.matcher(location);
+        Matcher m = FAN_PATTERN.matcher(location);
         if (m.matches()) {
             String device = m.group(1);
             String fanTray = m.group(2);
@@ -595,8 +607,7 @@ public class EventMapper {
 
     public static ModelObject createCardObject(EventRecordLite e) {
         final String location = e.getLocation();
-        Pattern p = Pattern.compile("^(.*)#(.*)$");
-        Matcher m = p.matcher(location);
+        Matcher m = DEVICE_COMPONENT_PATTERN.matcher(location);
         if (m.matches()) {
             String device = m.group(1);
             String card = m.group(2);
@@ -610,8 +621,7 @@ public class EventMapper {
 
     public static ModelObject createAggregationGroupObject(EventRecordLite e) {
         final String location = e.getLocation();
-        Pattern p = Pattern.compile("^(.*): (.*)$");
-        Matcher m = p.matcher(location);
+        Matcher m = DEVICE_GROUP_PATTERN.matcher(location);
         if (m.matches()) {
             String device = m.group(1);
             String group = m.group(2);
@@ -72,6 +72,7 @@ public class OceGenerator  {
     private final CpnDatasetViewer viewer;
     private final boolean modelGenerationDisabled;
     private final File targetFolder;
+    private final EventMapper eventMapper = new EventMapper();
     private String ticketId;
 
     private Situations situations;
@@ -182,8 +183,7 @@ public class OceGenerator  {
 
         if (!modelGenerationDisabled) {
             LOG.info("Generating inventory and meta-model...");
-            final EventMapper mapper = new EventMapper();
-            final ModelGenerator generator = new ModelGenerator(mapper, allEventsInTickets);
+            final ModelGenerator generator = new ModelGenerator(eventMapper, allEventsInTickets);
             generator.generate();
 
             metaModel = generator.getMetaModel();
@@ -316,12 +316,7 @@ public class OceGenerator  {
         return Severity.INDETERMINATE;
     }
 
-    private static EventDefinition getMachingEvenfDef(EventRecord e) {
-        for (EventDefinition def : EventMapper.EVENT_DEFS) {
-            if (def.matches(e)) {
-                return def;
-            }
-        }
-        return null;
+    private EventDefinition getMachingEvenfDef(EventRecord e) {
+        return eventMapper.getMatchingEventDefinition(e);
     }
 }
@@ -31,6 +31,11 @@ package org.opennms.oce.tools.cpn2oce.model;
 import org.opennms.oce.tools.cpn.events.EventRecordLite;
 
 public class CanonicalEventRecordLite implements EventRecordLite {
+    private static final String[] CLEARED_SUFFIXES = new String[] {
+            " - Cleared due to ForceClear",
+            " - Cleared due to Automatic Clear"
+    };
+
     private final String description;
     private final String location;
 
@@ -53,11 +58,7 @@ public class CanonicalEventRecordLite implements EventRecordLite {
         if (description == null) {
             throw new NullPointerException("Description cannot be null!");
         }
-        final String patterns[] = new String[] {
-                " - Cleared due to ForceClear",
-                " - Cleared due to Automatic Clear"
-        };
-        for (String pattern : patterns) {
+        for (String pattern : CLEARED_SUFFIXES) {
             if (description.endsWith(pattern)) {
                 return description.substring(0, description.length() - pattern.length());
             }
@@ -49,4 +49,8 @@ public class CompositeMatcher implements EventRecordMatcher {
     public boolean matches(EventRecordLite e) {
         return matchers.stream().anyMatch(m -> m.matches(e));
     }
+
+    public Collection<EventRecordMatcher> getMatchers() {
+        return matchers;
+    }
 }
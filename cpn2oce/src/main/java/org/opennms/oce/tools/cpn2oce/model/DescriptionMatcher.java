@@ -44,4 +44,8 @@ public class DescriptionMatcher implements  EventRecordMatcher {
     public boolean matches(EventRecordLite e) {
         return description.equals(e.getDescription());
     }
+
+    public String getDescription() {
+        return description;
+    }
 }
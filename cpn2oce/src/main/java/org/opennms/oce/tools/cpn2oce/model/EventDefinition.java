@@ -59,6 +59,10 @@ public class EventDefinition implements  EventRecordMatcher {
         return matcher.matches(e);
     }
 
+    public EventRecordMatcher getMatcher() {
+        return matcher;
+    }
+
     public ModelObject getModelObjectTree(EventRecordLite e) {
         final ModelObject mo = moBuilder.apply(e);
         if (!types.contains(mo.getType())) {
@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.tools.cpn2oce.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+import org.opennms.oce.tools.cpn.events.EventRecordLite;
+
+/**
+ * Finds the first of a list of event definitions that matches a given event, without
+ * testing every one of the definitions in turn.
+ *
+ * The exact descriptions of all the definitions are indexed in a single table. The regular
+ * expressions are only tried for the definitions that precede the exact match, if any, and
+ * only once the description starts with the literal prefix of the expression. Matchers of
+ * any other type are tried in order, as before.
+ */
+public class EventDefinitionClassifier {
+
+    private final List<EventDefinition> definitions;
+    private final Map<String, Integer> definitionIndexByDescription = new HashMap<>();
+    private final List<Candidate> candidates = new ArrayList<>();
+
+    public EventDefinitionClassifier(List<EventDefinition> definitions) {
+        this.definitions = new ArrayList<>(definitions);
+        for (int i = 0; i < this.definitions.size(); i++) {
+            index(this.definitions.get(i).getMatcher(), i);
+        }
+    }
+
+    private void index(EventRecordMatcher matcher, int definitionIndex) {
+        if (matcher instanceof CompositeMatcher) {
+            for (EventRecordMatcher childMatcher : ((CompositeMatcher) matcher).getMatchers()) {
+                index(childMatcher, definitionIndex);
+            }
+        } else if (matcher instanceof DescriptionMatcher) {
+            // Only the first definition for a given description can ever match
+            definitionIndexByDescription.putIfAbsent(((DescriptionMatcher) matcher).getDescription(), definitionIndex);
+        } else if (matcher instanceof RegexDescriptionMatcher) {
+            candidates.add(new RegexCandidate(definitionIndex, ((RegexDescriptionMatcher) matcher).getPattern()));
+        } else {
+            candidates.add(new Candidate(definitionIndex, matcher));
+        }
+    }
+
+    /**
+     * Retrieves the first definition that matches the given event.
+     *
+     * @param e event to match
+     * @return the first matching definition, or null if none of the definitions match
+     */
+    public EventDefinition getFirstMatch(EventRecordLite e) {
+        final String description = e.getDescription();
+        int definitionIndex = description != null ? definitionIndexByDescription.getOrDefault(description, Integer.MAX_VALUE) : Integer.MAX_VALUE;
+        // The candidates are sorted by definition, stop as soon as we reach the one that matched the description
+        for (Candidate candidate : candidates) {
+            if (candidate.definitionIndex >= definitionIndex) {
+                break;
+            }
+            if (candidate.matches(e, description)) {
+                definitionIndex = candidate.definitionIndex;
+                break;
+            }
+        }
+        return definitionIndex != Integer.MAX_VALUE ? definitions.get(definitionIndex) : null;
+    }
+
+    private static class Candidate {
+        protected final int definitionIndex;
+        private final EventRecordMatcher matcher;
+
+        private Candidate(int definitionIndex, EventRecordMatcher matcher) {
+            this.definitionIndex = definitionIndex;
+            this.matcher = matcher;
+        }
+
+        protected boolean matches(EventRecordLite e, String description) {
+            return matcher.matches(e);
+        }
+    }
+
+    private static class RegexCandidate extends Candidate {
+        private final Pattern pattern;
+        private final String literalPrefix;
+
+        private RegexCandidate(int definitionIndex, Pattern pattern) {
+            super(definitionIndex, null);
+            this.pattern = Objects.requireNonNull(pattern);
+            this.literalPrefix = getLiteralPrefix(pattern);
+        }
+
+        @Override
+        protected boolean matches(EventRecordLite e, String description) {
+            // Only run the expression when the description could possibly match
+            return description.startsWith(literalPrefix) && pattern.matcher(description).matches();
+        }
+    }
+
+    /**
+     * Extracts the literal characters that every string matched by the pattern must start with.
+     *
+     * @param pattern the pattern
+     * @return the literal prefix, or an empty string if there is none
+     */
+    static String getLiteralPrefix(Pattern pattern) {
+        final String regex = pattern.pattern();
+        if (pattern.flags() != 0 || regex.indexOf('|') >= 0) {
+            // Case insensitive matching or alternatives, either of which could start differently
+            return "";
+        }
+        final StringBuilder prefix = new StringBuilder();
+        int i = regex.startsWith("^") ? 1 : 0;
+        for (; i < regex.length(); i++) {
+            final char c = regex.charAt(i);
+            if ("\\.[]{}()*+?^$|".indexOf(c) >= 0) {
+                if (prefix.length() > 0 && "*+?{".indexOf(c) >= 0) {
+                    // The last character is optional or repeated
+                    prefix.setLength(prefix.length() - 1);
+                }
+                break;
+            }
+            prefix.append(c);
+        }
+        return prefix.toString();
+    }
+}
@@ -44,4 +44,8 @@ public class RegexDescriptionMatcher implements  EventRecordMatcher {
     public boolean matches(EventRecordLite e) {
         return pattern.matcher(e.getDescription()).matches();
     }
+
+    public Pattern getPattern() {
+        return pattern;
+    }
 }
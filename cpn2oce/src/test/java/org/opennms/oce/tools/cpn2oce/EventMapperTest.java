@@ -34,8 +34,13 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.notNullValue;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import org.junit.Test;
 import org.opennms.alec.opennms.model.ManagedObjectType;
@@ -47,9 +52,60 @@ import org.opennms.oce.tools.cpn2oce.model.EventDefinition;
 import org.opennms.oce.tools.cpn2oce.model.ModelObject;
 
 import com.google.common.collect.Sets;
+import com.google.common.io.Resources;
 
 public class EventMapperTest {
 
+    // One description for every event definition, along with one that is not mapped
+    private static final List<String> CORPUS_DESCRIPTIONS = Arrays.asList(
+            "IPsec Phase-1 IKE Tunnel inactive trap",
+            "Port down due to oper",
+            "Fex Port Status Noti Connected",
+            "BGP neighbor loss VRF due to oper",
+            "Device synchronization resumed by system",
+            "BFD connectivity down",
+            "BFD neighbor loss",
+            "Link down due to oper down",
+            "MPLS interface removed",
+            "MPLS Link down",
+            "LDP neighbor down",
+            "DS0 bundle admin down",
+            "DS1 Path down due to Oper",
+            "Tx utilization is below lower threshold",
+            "CPU utilization exceeded upper threshold",
+            "Power Supply out",
+            "Fan out",
+            "Fan-tray out",
+            "OSPF link down",
+            "Card out",
+            "Medium priority member down",
+            "DUAL 5 neighbor up syslog",
+            "Unknown event");
+
+    // The shapes of the locations found in CPN, some of which are only handled by some of the definitions
+    private static final List<String> CORPUS_LOCATIONS = Arrays.asList(
+            "router-%d",
+            "Router-%d#0",
+            "router-%d#FAN-TRAY %d",
+            "router-%d#fan-tray-%d.%d",
+            "router-%d: GigabitEthernet0/%d",
+            "CORE-%d: IP Vlan%d",
+            "router-%d: Bundle-Ether%d TenGigE0/0/0/%d",
+            "router-%d:GigabitEthernet0/%d",
+            "router-%d:GigabitEthernet0/%d:%d",
+            "router-%d: GigabitEthernet0/%d<->router-%d: GigabitEthernet0/%d",
+            "router-%d: IP 10.0.0.%d<->router-%d: IP 10.0.1.%d",
+            "router-%d: LSE: MPLS on interface TenGigE0/0/0/%d",
+            "router-%d: LSE: 10.0.0.%d",
+            "router-%d: MpBgp: 10.0.0.%d",
+            "router-%d: MpBgp 10.0.0.%d",
+            "router-%d: BGP 10.0.0.%d (PeerId 10.0.0.%d, VRF vrf-%d)",
+            "router-%d: GigabitEthernet0/%d: 10.0.0.%d <-> 10.0.0.%d",
+            "router-%d: GigabitEthernet0/%d: 10.0.0.%d",
+            "router-%d: OSPF-%d Area 0<->router-%d: OSPF-%d Area 0",
+            "router-%d: Port-channel%d",
+            "CPN %d Device");
+
     @Test
     public void canMapSyslogsInTicket() {
         // Load data from the ticket #4015708, and ensure we map the events to SNMP interface links
@@ -159,6 +215,66 @@ public class EventMapperTest {
         assertThat(parent.getId(), equalTo("blue"));
     }
 
+    @Test
+    public void canMapCorpusToTheSameModelObjects() throws IOException {
+        final List<String> expectedLines = Resources.readLines(Resources.getResource("event-mapper/model-objects.txt"), StandardCharsets.UTF_8);
+        final List<String> lines = mapCorpus();
+        assertThat(lines, hasSize(expectedLines.size()));
+        for (int i = 0; i < lines.size(); i++) {
+            assertThat(lines.get(i), equalTo(expectedLines.get(i)));
+        }
+    }
+
+    private static List<String> generateLocations(int numIterations) {
+        final List<String> locations = new ArrayList<>(numIterations * CORPUS_LOCATIONS.size());
+        for (int i = 0; i < numIterations; i++) {
+            for (String location : CORPUS_LOCATIONS) {
+                locations.add(String.format(location, i, i + 1, i + 2, i + 3));
+            }
+        }
+        return locations;
+    }
+
+    private static List<String> mapCorpus() {
+        return mapCorpus(new EventMapper(), 2);
+    }
+
+    private static List<String> mapCorpus(EventMapper mapper, int numIterations) {
+        final List<String> lines = new ArrayList<>();
+        for (String location : generateLocations(numIterations)) {
+            for (String description : CORPUS_DESCRIPTIONS) {
+                String result;
+                try {
+                    final ModelObject mo = mapper.parse(description, location);
+                    result = mo != null ? toString(mo) : "null";
+                } catch (RuntimeException e) {
+                    result = e.getClass().getSimpleName() + ": " + e.getMessage();
+                }
+                lines.add(String.format("%s | %s => %s", description, location, result));
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Renders the complete tree, since {@link ModelObject#equals} does not take the
+     * specific ids, peers or nephews into account.
+     */
+    private static String toString(ModelObject mo) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(mo.getType()).append('(').append(mo.getId()).append(", ").append(mo.getSpecificId());
+        if (mo.hasParent()) {
+            sb.append(", parent=").append(toString(mo.getParent()));
+        }
+        if (!mo.getPeers().isEmpty()) {
+            sb.append(", peers=").append(mo.getPeers().stream().map(EventMapperTest::toString).collect(Collectors.joining(", ", "[", "]")));
+        }
+        if (!mo.getNephews().isEmpty()) {
+            sb.append(", nephews=").append(mo.getNephews().stream().map(EventMapperTest::toString).collect(Collectors.joining(", ", "[", "]")));
+        }
+        return sb.append(')').toString();
+    }
+
     private static EventDefinition getMachingEvenfDef(EventRecordLite e) {
         for (EventDefinition def : EventMapper.EVENT_DEFS) {
             if (def.matches(e)) {
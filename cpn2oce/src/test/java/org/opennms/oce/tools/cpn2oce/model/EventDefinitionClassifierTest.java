@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.tools.cpn2oce.model;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+import org.opennms.alec.opennms.model.ManagedObjectType;
+import org.opennms.oce.tools.cpn.events.EventRecordLite;
+import org.opennms.oce.tools.cpn2oce.EventMapper;
+
+public class EventDefinitionClassifierTest {
+
+    @Test
+    public void canFindTheSameDefinitionsAsTheLinearScan() {
+        final Set<String> descriptions = new LinkedHashSet<>();
+        for (EventDefinition def : EventMapper.EVENT_DEFS) {
+            addDescriptions(def.getMatcher(), descriptions);
+        }
+        assertThat(descriptions.size(), greaterThan(100));
+        descriptions.addAll(Arrays.asList("Fex Port Status Noti Connected", "Fex Port Status", "Fex Port", "",
+                "Port up - Cleared due to ForceClear", "port up", "Unknown event"));
+
+        final EventDefinitionClassifier classifier = new EventDefinitionClassifier(EventMapper.EVENT_DEFS);
+        for (String description : descriptions) {
+            final EventRecordLite e = getEvent(description, "router-1: GigabitEthernet0/1");
+            assertThat(description, classifier.getFirstMatch(e), sameInstance(getFirstMatchUsingLinearScan(EventMapper.EVENT_DEFS, e)));
+        }
+    }
+
+    @Test
+    public void canReturnTheFirstMatchingDefinition() {
+        final EventDefinition regexDef = getDefinition(new RegexDescriptionMatcher("Link .*"));
+        final EventDefinition linkDownDef = getDefinition(new DescriptionMatcher("Link down"), new DescriptionMatcher("Port down"));
+        final EventDefinition duplicateLinkDownDef = getDefinition(new DescriptionMatcher("Link down"));
+        final EventDefinition locationDef = getDefinition(e -> "router-2".equals(e.getLocation()));
+        final EventDefinition portDownDef = getDefinition(new DescriptionMatcher("Port down"), new DescriptionMatcher("Port up"));
+        final List<EventDefinition> defs = Arrays.asList(regexDef, linkDownDef, duplicateLinkDownDef, locationDef, portDownDef);
+        final EventDefinitionClassifier classifier = new EventDefinitionClassifier(defs);
+
+        assertThat(classifier.getFirstMatch(getEvent("Link down", "router-1")), sameInstance(regexDef));
+        assertThat(classifier.getFirstMatch(getEvent("Port down", "router-2")), sameInstance(linkDownDef));
+        assertThat(classifier.getFirstMatch(getEvent("Port up", "router-1")), sameInstance(portDownDef));
+        assertThat(classifier.getFirstMatch(getEvent("Port up", "router-2")), sameInstance(locationDef));
+        assertThat(classifier.getFirstMatch(getEvent("Card out", "router-2")), sameInstance(locationDef));
+        assertThat(classifier.getFirstMatch(getEvent("Card out", "router-1")), nullValue());
+
+        for (String description : Arrays.asList("Link down", "Port down", "Port up", "Card out", "Link", "Link up")) {
+            for (String location : Arrays.asList("router-1", "router-2")) {
+                final EventRecordLite e = getEvent(description, location);
+                assertThat(classifier.getFirstMatch(e), sameInstance(getFirstMatchUsingLinearScan(defs, e)));
+            }
+        }
+    }
+
+    @Test
+    public void canExtractLiteralPrefixes() {
+        assertThat(EventDefinitionClassifier.getLiteralPrefix(Pattern.compile("Fex Port Status .*")), equalTo("Fex Port Status "));
+        assertThat(EventDefinitionClassifier.getLiteralPrefix(Pattern.compile("^Link [a-z]+")), equalTo("Link "));
+        assertThat(EventDefinitionClassifier.getLiteralPrefix(Pattern.compile("Links? down")), equalTo("Link"));
+        assertThat(EventDefinitionClassifier.getLiteralPrefix(Pattern.compile("Link\\.down")), equalTo("Link"));
+        assertThat(EventDefinitionClassifier.getLiteralPrefix(Pattern.compile("Link down|Port down")), equalTo(""));
+        assertThat(EventDefinitionClassifier.getLiteralPrefix(Pattern.compile("(?i)Link down")), equalTo(""));
+        assertThat(EventDefinitionClassifier.getLiteralPrefix(Pattern.compile("Link down", Pattern.CASE_INSENSITIVE)), equalTo(""));
+    }
+
+    private static void addDescriptions(EventRecordMatcher matcher, Set<String> descriptions) {
+        if (matcher instanceof CompositeMatcher) {
+            for (EventRecordMatcher childMatcher : ((CompositeMatcher) matcher).getMatchers()) {
+                addDescriptions(childMatcher, descriptions);
+            }
+        } else if (matcher instanceof DescriptionMatcher) {
+            descriptions.add(((DescriptionMatcher) matcher).getDescription());
+        }
+    }
+
+    private static EventDefinition getFirstMatchUsingLinearScan(List<EventDefinition> defs, EventRecordLite e) {
+        for (EventDefinition def : defs) {
+            if (def.matches(e)) {
+                return def;
+            }
+        }
+        return null;
+    }
+
+    private static EventDefinition getDefinition(EventRecordMatcher... matchers) {
+        return new EventDefinition(new CompositeMatcher(new ArrayList<>(Arrays.asList(matchers))),
+                Collections.singleton(ManagedObjectType.Node), e -> null);
+    }
+
+    private static EventRecordLite getEvent(String description, String location) {
+        return new EventRecordLite() {
+            @Override
+            public String getDescription() {
+                return description;
+            }
+
+            @Override
+            public String getLocation() {
+                return location;
+            }
+        };
+    }
+}
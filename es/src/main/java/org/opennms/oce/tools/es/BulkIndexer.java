@@ -0,0 +1,324 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.tools.es;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Utf8;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.Gson;
+
+import io.searchbox.client.JestClient;
+import io.searchbox.core.Bulk;
+import io.searchbox.core.BulkResult;
+import io.searchbox.core.Index;
+
+/**
+ * Indexes documents using bulk requests.
+ *
+ * Documents are grouped into requests by their size in bytes, and several requests
+ * are kept in flight at once. Items that are rejected because the cluster is too busy
+ * are retried with an exponential backoff, all other failures are logged and counted.
+ *
+ * Records must be added from a single thread. The indexer must be closed in order
+ * to flush the remaining documents and wait for the requests to complete.
+ */
+public class BulkIndexer<T> implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BulkIndexer.class);
+
+    private static final long INITIAL_BACKOFF_MS = 100;
+    private static final long MAX_BACKOFF_MS = TimeUnit.SECONDS.toMillis(10);
+    private static final int MAX_FAILURES_LOGGED = 10;
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactoryBuilder()
+            .setNameFormat("es-bulk-%d")
+            .setDaemon(true)
+            .build();
+
+    private final JestClient client;
+    private final Gson gson;
+    private final String index;
+    private final String type;
+    private final Function<T,String> idProvider;
+    private final long maxBytesPerRequest;
+    private final int maxRetries;
+    private final int concurrency;
+
+    private final ExecutorService executor;
+    private final Semaphore inFlight;
+
+    private final List<Index> pending = new ArrayList<>();
+    private long pendingBytes = 0;
+
+    private final AtomicLong numIndexed = new AtomicLong(0);
+    private final AtomicLong numFailed = new AtomicLong(0);
+    private final AtomicLong numRetried = new AtomicLong(0);
+
+    private boolean closed = false;
+
+    public BulkIndexer(JestClient client, Gson gson, String index, String type, Function<T,String> idProvider,
+                       long maxBytesPerRequest, int concurrency, int maxRetries) {
+        this.client = Objects.requireNonNull(client);
+        this.gson = Objects.requireNonNull(gson);
+        this.index = Objects.requireNonNull(index);
+        this.type = Objects.requireNonNull(type);
+        this.idProvider = Objects.requireNonNull(idProvider);
+        this.maxBytesPerRequest = maxBytesPerRequest;
+        this.concurrency = Math.max(1, concurrency);
+        this.maxRetries = maxRetries;
+        executor = Executors.newFixedThreadPool(this.concurrency, THREAD_FACTORY);
+        inFlight = new Semaphore(this.concurrency);
+    }
+
+    public void add(T record) {
+        if (closed) {
+            throw new IllegalStateException("Indexer is closed.");
+        }
+        // Serialize the record now so that we know how large it is
+        final String source = gson.toJson(record);
+        pending.add(new Index.Builder(source).index(index).type(type).id(idProvider.apply(record)).build());
+        pendingBytes += Utf8.encodedLength(source);
+        if (pendingBytes >= maxBytesPerRequest) {
+            submit();
+        }
+    }
+
+    public void addAll(Collection<T> records) {
+        records.forEach(this::add);
+    }
+
+    /**
+     * Sends any pending documents and waits for all of the requests in flight to complete.
+     */
+    public void flush() {
+        submit();
+        acquire(concurrency);
+        inFlight.release(concurrency);
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            closed = true;
+            executor.shutdown();
+        }
+        final Stats stats = getStats();
+        if (stats.getNumFailed() > 0) {
+            LOG.warn("Failed to index {} documents into index '{}'. {}", stats.getNumFailed(), index, stats);
+        } else {
+            LOG.debug("Done indexing into index '{}'. {}", index, stats);
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(numIndexed.get(), numFailed.get(), numRetried.get());
+    }
+
+    private void submit() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        final List<Index> actions = new ArrayList<>(pending);
+        LOG.debug("Inserting batch of {} records ({} bytes) into index '{}'.", actions.size(), pendingBytes, index);
+        pending.clear();
+        pendingBytes = 0;
+
+        // Block when too many requests are already in flight
+        acquire(1);
+        try {
+            executor.execute(() -> {
+                final Batch batch = new Batch(actions);
+                try {
+                    execute(batch);
+                } catch (RuntimeException e) {
+                    // Only count the documents that weren't already indexed or failed
+                    final int numUnresolved = batch.unresolved.size();
+                    LOG.error("Failed to index {} documents into index '{}'.", numUnresolved, index, e);
+                    numFailed.addAndGet(numUnresolved);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    /**
+     * The documents in a bulk request along with those that have yet to be
+     * either indexed or counted as failed.
+     */
+    private static class Batch {
+        private List<Index> unresolved;
+
+        private Batch(List<Index> actions) {
+            this.unresolved = actions;
+        }
+    }
+
+    private void execute(Batch batch) {
+        for (int attempt = 0; ; attempt++) {
+            final List<Index> remaining = batch.unresolved;
+            final List<Index> retryable = new ArrayList<>();
+            long numIndexedInAttempt = 0;
+            final List<Index> failedInAttempt = new ArrayList<>();
+            final List<String> failureReasons = new ArrayList<>();
+            try {
+                final BulkResult result = client.execute(new Bulk.Builder().addAction(remaining).build());
+                final List<BulkResult.BulkResultItem> items = result.getJsonObject() != null && result.getJsonObject().has("items")
+                        ? result.getItems() : Collections.emptyList();
+                if (items.size() != remaining.size()) {
+                    // The request as a whole failed
+                    if (!isRetryable(result.getResponseCode(), null)) {
+                        batch.unresolved = Collections.emptyList();
+                        fail(remaining, result.getErrorMessage());
+                        return;
+                    }
+                    retryable.addAll(remaining);
+                } else {
+                    for (int i = 0; i < items.size(); i++) {
+                        final BulkResult.BulkResultItem item = items.get(i);
+                        if (item.error == null && item.status < 300) {
+                            numIndexedInAttempt++;
+                        } else if (isRetryable(item.status, item.errorType)) {
+                            retryable.add(remaining.get(i));
+                        } else {
+                            failedInAttempt.add(remaining.get(i));
+                            failureReasons.add(String.format("%s: %s (status %d, id %s)",
+                                    item.errorType, item.errorReason, item.status, item.id));
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                LOG.debug("Bulk request failed on attempt {}.", attempt + 1, e);
+                retryable.clear();
+                retryable.addAll(remaining);
+            }
+
+            // Account for the results of this attempt all at once, so that a failure
+            // past this point only affects the documents that are left to retry
+            batch.unresolved = retryable;
+            numIndexed.addAndGet(numIndexedInAttempt);
+            for (int i = 0; i < failedInAttempt.size(); i++) {
+                fail(failedInAttempt.subList(i, i + 1), failureReasons.get(i));
+            }
+
+            if (retryable.isEmpty()) {
+                return;
+            } else if (attempt >= maxRetries) {
+                batch.unresolved = Collections.emptyList();
+                fail(retryable, String.format("gave up after %d retries", maxRetries));
+                return;
+            }
+            numRetried.addAndGet(retryable.size());
+            backoff(attempt);
+        }
+    }
+
+    private static boolean isRetryable(int status, String errorType) {
+        return status == 429 || status == 503 || "es_rejected_execution_exception".equals(errorType);
+    }
+
+    private void fail(List<Index> actions, String reason) {
+        if (numFailed.getAndAdd(actions.size()) < MAX_FAILURES_LOGGED) {
+            LOG.warn("Failed to index {} document(s) into index '{}': {}", actions.size(), index, reason);
+        }
+    }
+
+    private static void backoff(int attempt) {
+        final long delayMs = Math.min(MAX_BACKOFF_MS, INITIAL_BACKOFF_MS << Math.min(attempt, 16));
+        try {
+            Thread.sleep(delayMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void acquire(int permits) {
+        try {
+            inFlight.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static class Stats {
+        private final long numIndexed;
+        private final long numFailed;
+        private final long numRetried;
+
+        public Stats(long numIndexed, long numFailed, long numRetried) {
+            this.numIndexed = numIndexed;
+            this.numFailed = numFailed;
+            this.numRetried = numRetried;
+        }
+
+        public long getNumIndexed() {
+            return numIndexed;
+        }
+
+        public long getNumFailed() {
+            return numFailed;
+        }
+
+        public long getNumRetried() {
+            return numRetried;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Indexed: %d, failed: %d, retried: %d", numIndexed, numFailed, numRetried);
+        }
+    }
+}
@@ -28,55 +28,214 @@
 
 package org.opennms.oce.tools.es;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
 
+import io.searchbox.client.AbstractJestClient;
 import io.searchbox.client.JestClient;
 import io.searchbox.client.JestClientFactory;
 import io.searchbox.client.config.HttpClientConfig;
-import io.searchbox.core.Bulk;
-import io.searchbox.core.Index;
+import io.searchbox.core.MultiSearch;
+import io.searchbox.core.MultiSearchResult;
+import io.searchbox.core.Search;
+import io.searchbox.params.Parameters;
 
-public class ESClient {
+public class ESClient implements Closeable {
 
     private static final Logger LOG = LoggerFactory.getLogger(ESClient.class);
 
+    private static final int MIN_CONNECTIONS = 10;
+
     private final ESClusterConfiguration clusterConfiguration;
     private final JestClient jestClient;
+    private final Gson gson = new GsonBuilder()
+            .setDateFormat(AbstractJestClient.ELASTIC_SEARCH_DATE_FORMAT)
+            .create();
+    private final ScrollContextTracker scrollContextTracker = new ScrollContextTracker();
+    private final ExecutorService scrollExecutor;
+    private final SlicedScroller scroller;
 
     public ESClient(ESClusterConfiguration clusterConfiguration) {
         this.clusterConfiguration = Objects.requireNonNull(clusterConfiguration);
 
+        // Leave enough connections for the scroll slices and the bulk requests that can be in flight
+        final int maxConnections = Math.max(MIN_CONNECTIONS,
+                clusterConfiguration.getScrollSlices() + clusterConfiguration.getBulkConcurrency());
+
         JestClientFactory factory = new JestClientFactory();
         factory.setHttpClientConfig(new HttpClientConfig
                 .Builder(clusterConfiguration.getUrl())
                 .multiThreaded(true)
+                .maxTotalConnection(maxConnections)
+                .defaultMaxTotalConnectionPerRoute(maxConnections)
+                // Use the same Gson instance that we use to serialize the bulk records
+                .gson(gson)
                 .readTimeout(clusterConfiguration.getReadTimeout())
                 .connTimeout(clusterConfiguration.getConnTimeout())
                 .build());
         jestClient = factory.getObject();
+        scrollExecutor = Executors.newFixedThreadPool(Math.max(1, clusterConfiguration.getScrollSlices()),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("es-scroll-slice-%d")
+                        .setDaemon(true)
+                        .build());
+        scroller = new SlicedScroller(jestClient, scrollContextTracker, clusterConfiguration.getScrollSlices(), scrollExecutor);
     }
 
-    public <T> void bulkIndex(List<T> records, String index, String type, Function<T,String> idProvider) throws IOException {
+    /**
+     * Index all of the given records and wait for the requests to complete.
+     *
+     * @return statistics on the number of records that were indexed, failed and retried
+     */
+    public <T> BulkIndexer.Stats bulkIndex(List<T> records, String index, String type, Function<T,String> idProvider) throws IOException {
         LOG.debug("Inserting {} records into index '{}'.", records.size(), index);
-        int numRecordsRemaining = records.size();
-        for (List<T> recordPartition : Lists.partition(records, 1000)) {
-            numRecordsRemaining -= recordPartition.size();
-            LOG.debug("Inserting batch of {} records into index '{}'. {} records remaining.", recordPartition.size(), index, numRecordsRemaining);
-            final Bulk.Builder builder = new Bulk.Builder();
-            for (T record : recordPartition) {
-                builder.addAction(new Index.Builder(record).index(index).type(type).id(idProvider.apply(record)).build());
-            }
-            jestClient.execute(builder.build());
+        final BulkIndexer<T> indexer = newBulkIndexer(index, type, idProvider);
+        try {
+            indexer.addAll(records);
+        } finally {
+            indexer.close();
         }
         LOG.debug("Done inserting into index '{}'.", index);
+        return indexer.getStats();
+    }
+
+    /**
+     * Create a new indexer for streaming records into the given index.
+     *
+     * The indexer must be closed once all of the records have been added.
+     */
+    public <T> BulkIndexer<T> newBulkIndexer(String index, String type, Function<T,String> idProvider) {
+        return new BulkIndexer<>(jestClient, gson, index, type, idProvider,
+                clusterConfiguration.getBulkMaxBytes(),
+                clusterConfiguration.getBulkConcurrency(),
+                clusterConfiguration.getBulkMaxRetries());
+    }
+
+    /**
+     * Scroll through all of the hits matching the given query, using the paging mode
+     * configured for the cluster. Scrolls are sliced when more than one slice is configured
+     * and the search isn't sorted.
+     *
+     * @param tieBreakers fields used to break ties between hits when paging using search_after,
+     *                    searches without any tie breakers are always scrolled
+     * @see SlicedScroller#scroll(String, Function, Gson, Class, Consumer)
+     * @see SearchAfterCursor
+     */
+    public <T> void scroll(String query, Function<String, Search> searchFactory, Gson gson, Class<T> clazz, Consumer<List<T>> callback, String... tieBreakers) {
+        if (clusterConfiguration.getPagingMode() == PagingMode.SEARCH_AFTER && tieBreakers.length > 0) {
+            try (SearchCursor<T> cursor = openCursor(searchFactory.apply(query), gson, clazz, tieBreakers)) {
+                cursor.forEachPage(callback);
+            }
+        } else {
+            scroller.scroll(query, searchFactory, gson, clazz, callback);
+        }
+    }
+
+    /**
+     * Open a cursor that can be used to page through the hits of the given search,
+     * using the paging mode configured for the cluster.
+     *
+     * The cursor must be closed in order to release any scroll contexts.
+     *
+     * @param tieBreakers fields used to break ties between hits when paging using search_after,
+     *                    searches without any tie breakers are always scrolled
+     */
+    public <T> SearchCursor<T> openCursor(Search search, Gson gson, Class<T> clazz, String... tieBreakers) {
+        if (clusterConfiguration.getPagingMode() == PagingMode.SEARCH_AFTER
+                && !search.getParameter(Parameters.SCROLL).isEmpty()
+                && tieBreakers.length > 0) {
+            return new SearchAfterCursor<>(jestClient, search, gson, clazz, null, Arrays.asList(tieBreakers));
+        }
+        return new ScrollCursor<>(jestClient, scrollContextTracker, search, gson, clazz);
+    }
+
+    /**
+     * Open a cursor that pages through the hits of the given search using search_after,
+     * regardless of the paging mode configured for the cluster.
+     *
+     * @param position position to resume from, see {@link SearchAfterCursor#getPosition()}, or null to start from the beginning
+     * @param tieBreakers fields used to break ties between hits, at least one is required
+     */
+    public <T> SearchAfterCursor<T> openSearchAfterCursor(Search search, Gson gson, Class<T> clazz, String position, String... tieBreakers) {
+        return new SearchAfterCursor<>(jestClient, search, gson, clazz, position, Arrays.asList(tieBreakers));
+    }
+
+    /**
+     * Retrieve the total number of hits for each of the given searches.
+     *
+     * The searches are sent in batches of up to msearch-max-searches using multi-search
+     * requests, instead of issuing one request per search.
+     *
+     * @param searches searches keyed by an identifier of the caller's choosing, these
+     *                 should set a size of 0 since the hits are not retrieved
+     * @return the number of hits for each search, in the same order as the given map
+     */
+    public <K> Map<K, Long> count(Map<K, Search> searches) {
+        final Map<K, Long> counts = new LinkedHashMap<>();
+        final List<K> keys = new ArrayList<>(searches.keySet());
+        final int batchSize = Math.max(1, clusterConfiguration.getMsearchMaxSearches());
+        for (int from = 0; from < keys.size(); from += batchSize) {
+            final List<K> batch = keys.subList(from, Math.min(from + batchSize, keys.size()));
+            final MultiSearch.Builder multiSearchBuilder = new MultiSearch.Builder(searches.get(batch.get(0)));
+            for (K key : batch.subList(1, batch.size())) {
+                multiSearchBuilder.addSearch(searches.get(key));
+            }
+
+            final MultiSearchResult result;
+            try {
+                result = jestClient.execute(multiSearchBuilder.build());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            if (!result.isSucceeded()) {
+                throw new RuntimeException(result.getErrorMessage());
+            }
+
+            final List<MultiSearchResult.MultiSearchResponse> responses = result.getResponses();
+            if (responses.size() != batch.size()) {
+                throw new RuntimeException(String.format("Expected %d responses to the multi-search, got %d.",
+                        batch.size(), responses.size()));
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                final MultiSearchResult.MultiSearchResponse response = responses.get(i);
+                if (response.isError) {
+                    throw new RuntimeException(response.errorMessage);
+                }
+                counts.put(batch.get(i), response.searchResult.getTotal());
+            }
+        }
+        return counts;
+    }
+
+    public ScrollContextTracker getScrollContextTracker() {
+        return scrollContextTracker;
+    }
+
+    /**
+     * Reports any scroll contexts that were never released and shuts down the client.
+     */
+    @Override
+    public void close() throws IOException {
+        scrollExecutor.shutdown();
+        scrollContextTracker.reportLeaks();
+        jestClient.close();
     }
 
     public JestClient getJestClient() {
@@ -37,11 +37,12 @@ public class ESClusterConfiguration {
     @JsonProperty("url")
     private String url;
 
+    // Never wait forever for a response, pending requests can't be interrupted
     @JsonProperty("read-timeout")
-    private int readTimeout;
+    private int readTimeout = 120000;
 
     @JsonProperty("conn-timeout")
-    private int connTimeout;
+    private int connTimeout = 30000;
 
     @JsonProperty("opennms-event-index")
     private String opennmsEventIndex;
@@ -49,6 +50,24 @@ public class ESClusterConfiguration {
     @JsonProperty("opennms-alarm-index")
     private String opennmsAlarmIndex;
 
+    @JsonProperty("scroll-slices")
+    private int scrollSlices = 1;
+
+    @JsonProperty("paging-mode")
+    private PagingMode pagingMode = PagingMode.SCROLL;
+
+    @JsonProperty("bulk-max-bytes")
+    private long bulkMaxBytes = 5 * 1024 * 1024;
+
+    @JsonProperty("bulk-concurrency")
+    private int bulkConcurrency = 2;
+
+    @JsonProperty("bulk-max-retries")
+    private int bulkMaxRetries = 5;
+
+    @JsonProperty("msearch-max-searches")
+    private int msearchMaxSearches = 200;
+
     public String getName() {
         return name;
     }
@@ -96,4 +115,52 @@ public class ESClusterConfiguration {
     public void setOpennmsAlarmIndex(String opennmsAlarmIndex) {
         this.opennmsAlarmIndex = opennmsAlarmIndex;
     }
+
+    public int getScrollSlices() {
+        return scrollSlices;
+    }
+
+    public void setScrollSlices(int scrollSlices) {
+        this.scrollSlices = scrollSlices;
+    }
+
+    public PagingMode getPagingMode() {
+        return pagingMode;
+    }
+
+    public void setPagingMode(PagingMode pagingMode) {
+        this.pagingMode = pagingMode;
+    }
+
+    public long getBulkMaxBytes() {
+        return bulkMaxBytes;
+    }
+
+    public void setBulkMaxBytes(long bulkMaxBytes) {
+        this.bulkMaxBytes = bulkMaxBytes;
+    }
+
+    public int getBulkConcurrency() {
+        return bulkConcurrency;
+    }
+
+    public void setBulkConcurrency(int bulkConcurrency) {
+        this.bulkConcurrency = bulkConcurrency;
+    }
+
+    public int getBulkMaxRetries() {
+        return bulkMaxRetries;
+    }
+
+    public void setBulkMaxRetries(int bulkMaxRetries) {
+        this.bulkMaxRetries = bulkMaxRetries;
+    }
+
+    public int getMsearchMaxSearches() {
+        return msearchMaxSearches;
+    }
+
+    public void setMsearchMaxSearches(int msearchMaxSearches) {
+        this.msearchMaxSearches = msearchMaxSearches;
+    }
 }
@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.tools.es;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Decodes the documents found in Elasticsearch responses.
+ *
+ * Gson instances are thread-safe and cache the type adapters they create, so codecs
+ * should be built once and shared instead of creating a new Gson for every request.
+ * Modules register adapters for their own document types when building their codec.
+ *
+ * The sources are decoded straight from the hits, without going through Jest's
+ * {@link io.searchbox.core.SearchResult.Hit} wrappers which copy every source.
+ */
+public class JsonCodec {
+
+    private final Gson gson;
+
+    public JsonCodec(Gson gson) {
+        this.gson = Objects.requireNonNull(gson);
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    public Gson getGson() {
+        return gson;
+    }
+
+    /**
+     * Decode the sources of the hits in the given search response.
+     */
+    public <T> List<T> decodeSources(JsonObject response, Class<T> clazz) {
+        return decodeSources(gson, response, clazz);
+    }
+
+    /**
+     * Decode the sources of the hits in the given search response by streaming through it,
+     * without building a tree for the response first.
+     */
+    public <T> List<T> decodeSources(Reader response, Class<T> clazz) throws IOException {
+        return decodeSources(gson, response, clazz);
+    }
+
+    /**
+     * Decode the source of the given document i.e. the response to a get request.
+     *
+     * @return the decoded source, or null if the document has no source
+     */
+    public <T> T decodeSource(JsonObject document, Class<T> clazz) {
+        final JsonElement source = document != null ? document.get("_source") : null;
+        if (source == null || source.isJsonNull()) {
+            return null;
+        }
+        return gson.getAdapter(clazz).fromJsonTree(source);
+    }
+
+    public static <T> List<T> decodeSources(Gson gson, JsonObject response, Class<T> clazz) {
+        final JsonObject hits = response.getAsJsonObject("hits");
+        if (hits == null || !hits.has("hits")) {
+            return Collections.emptyList();
+        }
+        final TypeAdapter<T> adapter = gson.getAdapter(clazz);
+        final JsonArray hitsArray = hits.getAsJsonArray("hits");
+        final List<T> sources = new ArrayList<>(hitsArray.size());
+        for (JsonElement hit : hitsArray) {
+            final JsonElement source = hit.getAsJsonObject().get("_source");
+            if (source != null && !source.isJsonNull()) {
+                sources.add(adapter.fromJsonTree(source));
+            }
+        }
+        return sources;
+    }
+
+    public static <T> List<T> decodeSources(Gson gson, Reader response, Class<T> clazz) throws IOException {
+        final TypeAdapter<T> adapter = gson.getAdapter(clazz);
+        final List<T> sources = new ArrayList<>();
+        final JsonReader reader = new JsonReader(response);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!"hits".equals(reader.nextName())) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!"hits".equals(reader.nextName())) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    readSource(reader, adapter, sources);
+                }
+                reader.endArray();
+            }
+            reader.endObject();
+        }
+        reader.endObject();
+        return sources;
+    }
+
+    private static <T> void readSource(JsonReader reader, TypeAdapter<T> adapter, List<T> sources) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("_source".equals(reader.nextName()) && reader.peek() != JsonToken.NULL) {
+                sources.add(adapter.read(reader));
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    public static class Builder {
+        private final GsonBuilder gsonBuilder = new GsonBuilder();
+
+        private Builder() {
+        }
+
+        public Builder registerTypeAdapter(Type type, Object typeAdapter) {
+            gsonBuilder.registerTypeAdapter(type, typeAdapter);
+            return this;
+        }
+
+        public Builder registerTypeAdapterFactory(TypeAdapterFactory factory) {
+            gsonBuilder.registerTypeAdapterFactory(factory);
+            return this;
+        }
+
+        public Builder setDateFormat(String pattern) {
+            gsonBuilder.setDateFormat(pattern);
+            return this;
+        }
+
+        public JsonCodec build() {
+            return new JsonCodec(gsonBuilder.create());
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.tools.es;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+
+/**
+ * The fields of the documents that are retrieved by a search, mapped to the _source includes and excludes.
+ *
+ * Fields that are not retrieved are left unset when the documents are decoded, so call sites should
+ * only project the fields they actually read.
+ */
+public class Projection {
+
+    private static final String[] NONE = new String[0];
+
+    /**
+     * Retrieves the complete documents.
+     */
+    public static final Projection ALL = new Projection(NONE, NONE);
+
+    private final String[] includes;
+    private final String[] excludes;
+
+    private Projection(String[] includes, String[] excludes) {
+        this.includes = Objects.requireNonNull(includes);
+        this.excludes = Objects.requireNonNull(excludes);
+    }
+
+    /**
+     * Only retrieve the given fields.
+     */
+    public static Projection includes(String... fields) {
+        return new Projection(fields.clone(), NONE);
+    }
+
+    /**
+     * Retrieve all fields but the given ones.
+     */
+    public static Projection excludes(String... fields) {
+        return new Projection(NONE, fields.clone());
+    }
+
+    public boolean isAll() {
+        return includes.length == 0 && excludes.length == 0;
+    }
+
+    public String[] getIncludes() {
+        return includes.clone();
+    }
+
+    public String[] getExcludes() {
+        return excludes.clone();
+    }
+
+    public SearchSourceBuilder applyTo(SearchSourceBuilder searchSourceBuilder) {
+        if (!isAll()) {
+            searchSourceBuilder.fetchSource(includes.length > 0 ? includes : null, excludes.length > 0 ? excludes : null);
+        }
+        return searchSourceBuilder;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        final Projection that = (Projection) o;
+        return Arrays.equals(includes, that.includes) && Arrays.equals(excludes, that.excludes);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(includes) + Arrays.hashCode(excludes);
+    }
+
+    @Override
+    public String toString() {
+        return "Projection{" +
+                "includes=" + Arrays.toString(includes) +
+                ", excludes=" + Arrays.toString(excludes) +
+                '}';
+    }
+}
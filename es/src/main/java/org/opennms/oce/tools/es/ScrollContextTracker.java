@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.tools.es;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps track of the scroll cursors that are currently holding on to scroll
+ * contexts in the cluster.
+ */
+public class ScrollContextTracker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScrollContextTracker.class);
+
+    private final Map<ScrollCursor<?>, Long> openCursors = new ConcurrentHashMap<>();
+    private final AtomicLong numOpened = new AtomicLong(0);
+    private final AtomicLong numClosed = new AtomicLong(0);
+
+    void opened(ScrollCursor<?> cursor) {
+        openCursors.put(cursor, System.currentTimeMillis());
+        numOpened.incrementAndGet();
+    }
+
+    void closed(ScrollCursor<?> cursor) {
+        if (openCursors.remove(cursor) != null) {
+            numClosed.incrementAndGet();
+        }
+    }
+
+    public int getNumOpenContexts() {
+        return openCursors.size();
+    }
+
+    public long getNumOpened() {
+        return numOpened.get();
+    }
+
+    public long getNumClosed() {
+        return numClosed.get();
+    }
+
+    /**
+     * Logs the cursors that are still open.
+     *
+     * @return the number of cursors that are still open
+     */
+    public int reportLeaks() {
+        final long now = System.currentTimeMillis();
+        int numLeaks = 0;
+        for (Map.Entry<ScrollCursor<?>, Long> entry : openCursors.entrySet()) {
+            LOG.warn("Scroll context was never released: {} (open for {}ms)", entry.getKey(), now - entry.getValue());
+            numLeaks++;
+        }
+        LOG.debug("Opened {} scroll contexts and released {}.", numOpened.get(), numClosed.get());
+        return numLeaks;
+    }
+}
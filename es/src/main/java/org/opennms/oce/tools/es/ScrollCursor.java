@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.tools.es;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+
+import io.searchbox.client.JestClient;
+import io.searchbox.client.JestResult;
+import io.searchbox.core.ClearScroll;
+import io.searchbox.core.Search;
+import io.searchbox.core.SearchResult;
+import io.searchbox.core.SearchScroll;
+
+/**
+ * Iterates through the pages of a scrolled search.
+ *
+ * The scroll contexts are released when the cursor is closed. Cursors that
+ * hold on to a scroll context are tracked by the {@link ScrollContextTracker}
+ * so that the ones that are never closed can be reported.
+ */
+public class ScrollCursor<T> implements SearchCursor<T> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScrollCursor.class);
+
+    public static final String SCROLL_TIME = "5m";
+
+    private final JestClient client;
+    private final ScrollContextTracker tracker;
+    private final Search search;
+    private final Gson gson;
+    private final Class<T> clazz;
+
+    private final Set<String> scrollIds = new LinkedHashSet<>();
+    private String scrollId;
+    private long numHitsRetrieved = 0;
+    private boolean exhausted = false;
+    private boolean closed = false;
+
+    public ScrollCursor(JestClient client, ScrollContextTracker tracker, Search search, Gson gson, Class<T> clazz) {
+        this.client = Objects.requireNonNull(client);
+        this.tracker = Objects.requireNonNull(tracker);
+        this.search = Objects.requireNonNull(search);
+        this.gson = Objects.requireNonNull(gson);
+        this.clazz = Objects.requireNonNull(clazz);
+    }
+
+    @Override
+    public List<T> next() {
+        if (closed) {
+            throw new IllegalStateException("Cursor is closed.");
+        }
+        if (exhausted) {
+            return Collections.emptyList();
+        }
+
+        final JestResult result;
+        try {
+            if (scrollId == null) {
+                result = client.execute(search);
+            } else {
+                result = client.execute(new SearchScroll.Builder(scrollId, SCROLL_TIME).build());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (!result.isSucceeded()) {
+            throw new RuntimeException(result.getErrorMessage());
+        }
+
+        if (result.getJsonObject().has("_scroll_id")) {
+            scrollId = result.getJsonObject().getAsJsonPrimitive("_scroll_id").getAsString();
+            if (scrollIds.add(scrollId) && scrollIds.size() == 1) {
+                tracker.opened(this);
+            }
+        } else {
+            // Not a scroll, there is only a single page
+            exhausted = true;
+        }
+
+        // Decode the sources directly, without copying them into hit wrappers
+        final SearchResult searchResult = new SearchResult(gson);
+        searchResult.setJsonObject(result.getJsonObject());
+        searchResult.setPathToResult(result.getPathToResult());
+        final List<T> sources = JsonCodec.decodeSources(gson, result.getJsonObject(), clazz);
+        numHitsRetrieved += sources.size();
+
+        // Avoid an extra round trip when we know that there are no more hits
+        final Long total = searchResult.getTotal();
+        if (sources.isEmpty() || (total != null && numHitsRetrieved >= total)) {
+            exhausted = true;
+        }
+        return sources;
+    }
+
+    @Override
+    public boolean isExhausted() {
+        return exhausted;
+    }
+
+    /**
+     * Releases the scroll contexts held by this cursor.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (scrollIds.isEmpty()) {
+            return;
+        }
+
+        // Always try to release the contexts, even if we were interrupted
+        final boolean interrupted = Thread.interrupted();
+        try {
+            final ClearScroll clearScroll = new ClearScroll.Builder()
+                    .addScrollIds(scrollIds).build();
+            final JestResult clearResult = client.execute(clearScroll);
+            if (!clearResult.isSucceeded()) {
+                LOG.info("Failed to clear one or more scrolls: {}", clearResult.getErrorMessage());
+            }
+        } catch (IOException e) {
+            LOG.warn("Error while clearing scrolls ids: {}", scrollIds, e);
+        } finally {
+            tracker.closed(this);
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ScrollCursor[uri=%s, numHitsRetrieved=%d, scrollIds=%d]",
+                search.getURI(), numHitsRetrieved, scrollIds.size());
+    }
+}
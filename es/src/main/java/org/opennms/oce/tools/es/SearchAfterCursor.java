@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.tools.es;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import io.searchbox.client.JestClient;
+import io.searchbox.core.Search;
+import io.searchbox.core.SearchResult;
+
+/**
+ * Pages through the hits of a search using search_after.
+ *
+ * Unlike scrolls, no state is kept in the cluster between pages. The hits are
+ * sorted using the sort of the given search, with the given tie breakers appended,
+ * and every page starts after the sort values of the last hit of the previous page.
+ * The tie breakers must have doc values, i.e. the id of the record, and together
+ * with the sort they must uniquely identify every hit, otherwise hits that fall on
+ * the boundary between two pages can be skipped. The position of the cursor can be
+ * used to resume paging at a later time, i.e. after a restart.
+ */
+public class SearchAfterCursor<T> implements SearchCursor<T> {
+
+    /**
+     * Number of hits retrieved per page when the search doesn't set a size.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 10000;
+
+    private final JestClient client;
+    private final Gson gson;
+    private final Class<T> clazz;
+    private final String index;
+    private final String type;
+    private final JsonObject source;
+    private final int pageSize;
+
+    private JsonArray searchAfter;
+    private boolean exhausted = false;
+
+    /**
+     * @param search the search, any scroll parameters are ignored
+     * @param position the position to resume from, as previously returned by {@link #getPosition()}, or null to start from the beginning
+     * @param tieBreakers fields used to break ties between hits with the same sort values, at least one is required
+     */
+    public SearchAfterCursor(JestClient client, Search search, Gson gson, Class<T> clazz, String position, List<String> tieBreakers) {
+        this.client = Objects.requireNonNull(client);
+        this.gson = Objects.requireNonNull(gson);
+        this.clazz = Objects.requireNonNull(clazz);
+        index = search.getIndex();
+        type = search.getType();
+
+        // Use the source generated by the search, it includes the sort fields that were added to the builder
+        source = new JsonParser().parse(search.getData(gson)).getAsJsonObject();
+        source.remove("from");
+        if (tieBreakers.isEmpty()) {
+            throw new IllegalArgumentException("At least one tie breaker is required.");
+        }
+        source.add("sort", withTieBreakers(source.get("sort"), tieBreakers));
+        if (!source.has("size")) {
+            source.addProperty("size", DEFAULT_PAGE_SIZE);
+        }
+        pageSize = source.get("size").getAsInt();
+        if (position != null) {
+            searchAfter = new JsonParser().parse(position).getAsJsonArray();
+        }
+    }
+
+    @Override
+    public List<T> next() {
+        if (exhausted) {
+            return Collections.emptyList();
+        }
+
+        if (searchAfter != null) {
+            source.add("search_after", searchAfter);
+        }
+        final Search.Builder builder = new Search.Builder(source.toString());
+        if (index != null) {
+            builder.addIndex(index);
+        }
+        if (type != null) {
+            builder.addType(type);
+        }
+
+        final SearchResult result;
+        try {
+            result = client.execute(builder.build());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (!result.isSucceeded()) {
+            throw new RuntimeException(result.getErrorMessage());
+        }
+
+        final JsonArray rawHits = result.getJsonObject().getAsJsonObject("hits").getAsJsonArray("hits");
+        if (rawHits.size() > 0) {
+            searchAfter = rawHits.get(rawHits.size() - 1).getAsJsonObject().getAsJsonArray("sort");
+        }
+        // A partial page is the last page
+        if (rawHits.size() < pageSize) {
+            exhausted = true;
+        }
+
+        return JsonCodec.decodeSources(gson, result.getJsonObject(), clazz);
+    }
+
+    @Override
+    public boolean isExhausted() {
+        return exhausted;
+    }
+
+    /**
+     * @return the sort values of the last hit that was retrieved, as JSON, or null if no hits were retrieved
+     */
+    public String getPosition() {
+        return searchAfter != null ? searchAfter.toString() : null;
+    }
+
+    @Override
+    public void close() {
+        // Nothing is held in the cluster
+    }
+
+    private static JsonArray withTieBreakers(JsonElement sort, List<String> tieBreakers) {
+        final JsonArray sortArray = new JsonArray();
+        if (sort != null && sort.isJsonArray()) {
+            sortArray.addAll(sort.getAsJsonArray());
+        } else if (sort != null && !sort.isJsonNull()) {
+            sortArray.add(sort);
+        }
+
+        for (String field : tieBreakers) {
+            if (!isSortedOn(sortArray, field)) {
+                final JsonObject tieBreaker = new JsonObject();
+                tieBreaker.addProperty(field, "asc");
+                sortArray.add(tieBreaker);
+            }
+        }
+        return sortArray;
+    }
+
+    private static boolean isSortedOn(JsonArray sortArray, String field) {
+        for (JsonElement el : sortArray) {
+            if ((el.isJsonPrimitive() && field.equals(el.getAsString()))
+                    || (el.isJsonObject() && el.getAsJsonObject().has(field))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SearchAfterCursor[index=%s, position=%s]", index, getPosition());
+    }
+}
@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.tools.es;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Pages through the hits of a search.
+ *
+ * Cursors must be closed in order to release any resources they hold in the cluster.
+ */
+public interface SearchCursor<T> extends AutoCloseable {
+
+    /**
+     * Retrieves the next page of hits.
+     *
+     * @return the hits, or an empty list once all of the hits have been retrieved
+     */
+    List<T> next();
+
+    boolean isExhausted();
+
+    @Override
+    void close();
+
+    /**
+     * Invokes the callback with every remaining page of hits.
+     */
+    default void forEachPage(Consumer<List<T>> callback) {
+        while (!isExhausted()) {
+            final List<T> hits = next();
+            if (hits.isEmpty()) {
+                break;
+            }
+            callback.accept(hits);
+        }
+    }
+}
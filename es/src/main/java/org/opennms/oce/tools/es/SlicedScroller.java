@@ -0,0 +1,235 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.tools.es;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import io.searchbox.client.JestClient;
+import io.searchbox.core.Search;
+import io.searchbox.params.Parameters;
+
+/**
+ * Scrolls through all of the hits of a search by fanning the query out across
+ * a number of slices which are retrieved in parallel.
+ *
+ * Pages are handed to the callback on the calling thread, one at a time, so callbacks
+ * don't need to be thread-safe. Pages from different slices are interleaved, so searches
+ * that are sorted are never sliced, and are scrolled through sequentially instead.
+ *
+ * The slices are retrieved using the given executor, which is shared by all of the scrolls.
+ * Only one scroll is sliced at a time: scrolls that are started while another one is
+ * in progress, i.e. from within a callback, are scrolled through sequentially.
+ *
+ * The scroll contexts of every slice are released once the slice was consumed,
+ * or when the scroll fails.
+ */
+public class SlicedScroller {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SlicedScroller.class);
+
+    private final JestClient client;
+    private final ScrollContextTracker tracker;
+    private final int numSlices;
+    private final Executor executor;
+    private final Semaphore slices;
+
+    /**
+     * @param executor used to retrieve the slices, should be able to run numSlices tasks concurrently
+     */
+    public SlicedScroller(JestClient client, ScrollContextTracker tracker, int numSlices, Executor executor) {
+        this.client = Objects.requireNonNull(client);
+        this.tracker = Objects.requireNonNull(tracker);
+        this.numSlices = numSlices;
+        this.executor = Objects.requireNonNull(executor);
+        slices = new Semaphore(Math.max(numSlices, 1));
+    }
+
+    /**
+     * Scroll through all of the hits matching the given query.
+     *
+     * @param query the search source, as JSON
+     * @param searchFactory used to build the search for a query, the query will include the slice when slicing is enabled
+     * @param gson used to decode the hits, and to render the search
+     * @param clazz type of the hit sources
+     * @param callback invoked with every page of hits
+     */
+    public <T> void scroll(String query, Function<String, Search> searchFactory, Gson gson, Class<T> clazz, Consumer<List<T>> callback) {
+        final Search unslicedSearch = searchFactory.apply(query);
+        if (numSlices <= 1 || unslicedSearch.getParameter(Parameters.SCROLL).isEmpty()) {
+            // Slicing requires at least two slices and is only valid for scrolls
+            scrollSlice(unslicedSearch, gson, clazz, callback);
+            return;
+        } else if (isSorted(unslicedSearch, gson)) {
+            // The order of the hits would be lost when interleaving the slices
+            LOG.debug("Scrolling through sorted query without slicing.");
+            scrollSlice(unslicedSearch, gson, clazz, callback);
+            return;
+        } else if (!slices.tryAcquire(numSlices)) {
+            LOG.debug("Another sliced scroll is in progress, scrolling through query without slicing.");
+            scrollSlice(unslicedSearch, gson, clazz, callback);
+            return;
+        }
+
+        LOG.debug("Scrolling through query using {} slices.", numSlices);
+        final BlockingQueue<Page<T>> pages = new ArrayBlockingQueue<>(numSlices);
+        final AtomicBoolean cancelled = new AtomicBoolean(false);
+        final CountDownLatch slicesDone = new CountDownLatch(numSlices);
+        int numSlicesStarted = 0;
+        try {
+            for (int sliceId = 0; sliceId < numSlices; sliceId++) {
+                final Search search = searchFactory.apply(withSlice(query, sliceId, numSlices));
+                executor.execute(() -> {
+                    try {
+                        Page<T> lastPage;
+                        try {
+                            scrollSlice(search, gson, clazz, hits -> enqueue(pages, new Page<>(hits, null), cancelled));
+                            lastPage = new Page<>(null, null);
+                        } catch (ScrollCancelledException e) {
+                            throw e;
+                        } catch (RuntimeException e) {
+                            lastPage = new Page<>(null, e);
+                        }
+                        enqueue(pages, lastPage, cancelled);
+                    } catch (ScrollCancelledException e) {
+                        // The scroll was aborted, nobody is listening anymore
+                    } finally {
+                        slicesDone.countDown();
+                    }
+                });
+                numSlicesStarted++;
+            }
+
+            int numSlicesRemaining = numSlices;
+            while (numSlicesRemaining > 0) {
+                final Page<T> page = pages.take();
+                if (page.error != null) {
+                    throw page.error;
+                } else if (page.hits == null) {
+                    numSlicesRemaining--;
+                } else {
+                    callback.accept(page.hits);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            // Stop any slices that are still running, and wait for them to release their contexts
+            cancelled.set(true);
+            for (int i = numSlicesStarted; i < numSlices; i++) {
+                slicesDone.countDown();
+            }
+            awaitSlices(slicesDone, pages);
+            slices.release(numSlices);
+        }
+    }
+
+    private <T> void scrollSlice(Search search, Gson gson, Class<T> clazz, Consumer<List<T>> callback) {
+        try (ScrollCursor<T> cursor = new ScrollCursor<>(client, tracker, search, gson, clazz)) {
+            cursor.forEachPage(callback);
+        }
+    }
+
+    private static void awaitSlices(CountDownLatch slicesDone, BlockingQueue<?> pages) {
+        try {
+            while (!slicesDone.await(100, TimeUnit.MILLISECONDS)) {
+                // Make room for any slices that are blocked on the queue
+                pages.clear();
+            }
+        } catch (InterruptedException e) {
+            // The slices were cancelled, and will stop on their own
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean isSorted(Search search, Gson gson) {
+        final JsonElement sort = new JsonParser().parse(search.getData(gson)).getAsJsonObject().get("sort");
+        if (sort == null || sort.isJsonNull()) {
+            return false;
+        }
+        return !sort.isJsonArray() || sort.getAsJsonArray().size() > 0;
+    }
+
+    private static String withSlice(String query, int sliceId, int numSlices) {
+        final JsonObject source = new JsonParser().parse(query).getAsJsonObject();
+        final JsonObject slice = new JsonObject();
+        slice.addProperty("id", sliceId);
+        slice.addProperty("max", numSlices);
+        source.add("slice", slice);
+        return source.toString();
+    }
+
+    private static <T> void enqueue(BlockingQueue<Page<T>> pages, Page<T> page, AtomicBoolean cancelled) {
+        try {
+            while (!cancelled.get()) {
+                if (pages.offer(page, 100, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        throw new ScrollCancelledException();
+    }
+
+    public int getNumSlices() {
+        return numSlices;
+    }
+
+    private static class Page<T> {
+        private final List<T> hits;
+        private final RuntimeException error;
+
+        private Page(List<T> hits, RuntimeException error) {
+            this.hits = hits;
+            this.error = error;
+        }
+    }
+
+    private static class ScrollCancelledException extends RuntimeException {
+    }
+}
@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.oce.tools.es;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+public class BulkIndexerTest {
+
+    @Rule
+    public LocalElasticsearch elasticsearch = new LocalElasticsearch();
+
+    @Test
+    public void canIndexUsingMultipleRequests() throws IOException {
+        final ESClusterConfiguration clusterConfiguration = elasticsearch.getClusterConfiguration();
+        clusterConfiguration.setBulkMaxBytes(1024);
+        clusterConfiguration.setBulkConcurrency(3);
+        try (ESClient esClient = new ESClient(clusterConfiguration)) {
+            final BulkIndexer.Stats stats = esClient.bulkIndex(getRecords(200), "records", "record", r -> Integer.toString(r.id));
+            assertThat(stats.getNumIndexed(), equalTo(200L));
+            assertThat(stats.getNumFailed(), equalTo(0L));
+            assertThat(stats.getNumRetried(), equalTo(0L));
+        }
+        assertThat(elasticsearch.getNumDocuments("records"), equalTo(200));
+        assertThat(elasticsearch.getNumRequests("bulk"), greaterThan(1));
+        assertThat(elasticsearch.getDocument("records", "42").get("name").getAsString(), equalTo("record-42"));
+    }
+
+    @Test
+    public void canRetryRejectedItems() throws IOException {
+        elasticsearch.rejectBulkItems(15);
+        try (ESClient esClient = new ESClient(elasticsearch.getClusterConfiguration())) {
+            final BulkIndexer.Stats stats = esClient.bulkIndex(getRecords(50), "records", "record", r -> Integer.toString(r.id));
+            assertThat(stats.getNumIndexed(), equalTo(50L));
+            assertThat(stats.getNumFailed(), equalTo(0L));
+            assertThat(stats.getNumRetried(), equalTo(15L));
+        }
+        assertThat(elasticsearch.getNumDocuments("records"), equalTo(50));
+    }
+
+    @Test
+    public void canReportFailuresOnceRetriesAreExhausted() throws IOException {
+        elasticsearch.rejectBulkItems(Integer.MAX_VALUE);
+        final ESClusterConfiguration clusterConfiguration = elasticsearch.getClusterConfiguration();
+        clusterConfiguration.setBulkMaxRetries(2);
+        try (ESClient esClient = new ESClient(clusterConfiguration)) {
+            final BulkIndexer.Stats stats = esClient.bulkIndex(getRecords(10), "records", "record", r -> Integer.toString(r.id));
+            assertThat(stats.getNumIndexed(), equalTo(0L));
+            assertThat(stats.getNumFailed(), equalTo(10L));
+            assertThat(stats.getNumRetried(), equalTo(20L));
+        }
+        assertThat(elasticsearch.getNumDocuments("records"), equalTo(0));
+        assertThat(elasticsearch.getNumRequests("bulk"), equalTo(3));
+    }
+
+    @Test
+    public void canAccountForUnresolvedDocumentsWhenInterrupted() throws Exception {
+        elasticsearch.rejectBulkItems(15);
+        final ESClusterConfiguration clusterConfiguration = elasticsearch.getClusterConfiguration();
+        clusterConfiguration.setBulkMaxRetries(10);
+        try (ESClient esClient = new ESClient(clusterConfiguration)) {
+            final BulkIndexer<Record> indexer = esClient.newBulkIndexer("records", "record", r -> Integer.toString(r.id));
+            indexer.addAll(getRecords(50));
+
+            // Interrupt the worker while it's backing off before retrying the rejected items
+            final Thread interrupter = new Thread(() -> {
+                while (elasticsearch.getNumRequests("bulk") < 1) {
+                    Thread.yield();
+                }
+                Thread.getAllStackTraces().keySet().stream()
+                        .filter(t -> t.getName().startsWith("es-bulk-"))
+                        .forEach(Thread::interrupt);
+            });
+            interrupter.start();
+            indexer.close();
+            interrupter.join();
+
+            // The documents that were indexed on the first attempt must not also be counted as failed
+            final BulkIndexer.Stats stats = indexer.getStats();
+            assertThat(stats.getNumIndexed(), equalTo(35L));
+            assertThat(stats.getNumFailed(), equalTo(15L));
+        }
+        assertThat(elasticsearch.getNumDocuments("records"), equalTo(35));
+        assertThat(elasticsearch.getNumRequests("bulk"), equalTo(1));
+    }
+
+    private static List<Record> getRecords(int numRecords) {
+        return IntStream.range(0, numRecords)
+                .mapToObj(i -> new Record(i, "record-" + i))
+                .collect(Collectors.toList());
+    }
+
+    private static class Record {
+        private int id;
+        private String name;
+
+        private Record(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+}
@@ -53,5 +53,6 @@ public class ESConfigurationDaoTest {
 
         assertThat(clusterConfig.getOpennmsEventIndex(), equalTo("opennms-events-raw-*"));
         assertThat(clusterConfig.getOpennmsAlarmIndex(), equalTo("opennms-alarms-*"));
+        assertThat(clusterConfig.getPagingMode(), equalTo(PagingMode.SEARCH_AFTER));
     }
 }
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.tools.es;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+public class JsonCodecTest {
+
+    private final JsonCodec codec = JsonCodec.newBuilder().build();
+
+    @Test
+    public void canDecodeSources() throws IOException {
+        final String response = "{\"took\":3,\"timed_out\":false,\"_shards\":{\"total\":1},"
+                + "\"hits\":{\"total\":3,\"max_score\":1.0,\"hits\":["
+                + "{\"_index\":\"records\",\"_id\":\"1\",\"_source\":{\"value\":1,\"name\":\"a\"},\"sort\":[1]},"
+                + "{\"_index\":\"records\",\"_id\":\"2\",\"_source\":{\"value\":2,\"extra\":{\"x\":[1,{}]}}},"
+                + "{\"_source\":{\"name\":null,\"value\":3},\"_index\":\"records\",\"_id\":\"3\"}]},"
+                + "\"aggregations\":{\"hits\":{\"hits\":[]}}}";
+        final JsonObject json = new JsonParser().parse(response).getAsJsonObject();
+
+        final List<Record> expected = Arrays.asList(new Record(1, "a"), new Record(2, null), new Record(3, null));
+
+        assertThat(codec.decodeSources(json, Record.class), equalTo(expected));
+        assertThat(codec.decodeSources(new StringReader(response), Record.class), equalTo(expected));
+    }
+
+    @Test
+    public void canDecodeEmptyResponses() throws IOException {
+        final String response = "{\"took\":3,\"hits\":{\"total\":0,\"hits\":[]}}";
+        assertThat(codec.decodeSources(new JsonParser().parse(response).getAsJsonObject(), Record.class), empty());
+        assertThat(codec.decodeSources(new StringReader(response), Record.class), empty());
+        assertThat(codec.decodeSources(new JsonParser().parse("{}").getAsJsonObject(), Record.class), empty());
+    }
+
+    private static class Record {
+        private int value;
+        private String name;
+
+        private Record(int value, String name) {
+            this.value = value;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            final Record record = (Record) o;
+            return value == record.value && Objects.equals(name, record.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(value, name);
+        }
+    }
+}
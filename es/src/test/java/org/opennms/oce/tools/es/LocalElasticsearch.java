@@ -0,0 +1,1068 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.tools.es;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.junit.rules.ExternalResource;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A single-node Elasticsearch stand-in that speaks enough of the REST API
+ * to exercise the clients in this project.
+ *
+ * Documents are held in memory and only the subset of the query DSL that is used
+ * by the tools is supported. Unsupported queries fail the request, so gaps are
+ * noticed rather than silently returning the wrong results.
+ */
+public class LocalElasticsearch extends ExternalResource {
+
+    /**
+     * The format used by Jest when serializing dates.
+     */
+    public static final String DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ssZ";
+
+    private static final Optional<Long> NOT_A_DATE = Optional.empty();
+    private static final Map<String, Optional<Long>> DATE_CACHE = new ConcurrentHashMap<>();
+
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{Alnum}]+");
+
+    private final Gson gson = new GsonBuilder().setDateFormat(DATE_FORMAT).create();
+    private final Map<String, Map<String, Document>> indices = new ConcurrentHashMap<>();
+    private final Map<String, ScrollContext> scrollContexts = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> requestCounts = new ConcurrentHashMap<>();
+    private final AtomicInteger numBulkItemsToReject = new AtomicInteger(0);
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    @Override
+    protected void before() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    @Override
+    protected void after() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public String getUrl() {
+        return String.format("http://127.0.0.1:%d", server.getAddress().getPort());
+    }
+
+    public ESClusterConfiguration getClusterConfiguration() {
+        final ESClusterConfiguration clusterConfiguration = new ESClusterConfiguration();
+        clusterConfiguration.setName("local");
+        clusterConfiguration.setUrl(getUrl());
+        clusterConfiguration.setReadTimeout(30000);
+        clusterConfiguration.setConnTimeout(30000);
+        clusterConfiguration.setOpennmsEventIndex("opennms-events-raw-*");
+        clusterConfiguration.setOpennmsAlarmIndex("opennms-alarms-*");
+        return clusterConfiguration;
+    }
+
+    public void index(String index, String type, String id, Object source) {
+        final JsonObject json = source instanceof JsonObject ? (JsonObject)source : gson.toJsonTree(source).getAsJsonObject();
+        indices.computeIfAbsent(index, i -> Collections.synchronizedMap(new LinkedHashMap<>()))
+                .put(id, new Document(index, type, id, json));
+    }
+
+    public int getNumDocuments(String index) {
+        return indices.getOrDefault(index, Collections.emptyMap()).size();
+    }
+
+    public JsonObject getDocument(String index, String id) {
+        final Document doc = indices.getOrDefault(index, Collections.emptyMap()).get(id);
+        return doc != null ? doc.source : null;
+    }
+
+    /**
+     * Rejects the next items that are received in bulk requests, as if the cluster was too busy.
+     */
+    public void rejectBulkItems(int numItems) {
+        numBulkItemsToReject.set(numItems);
+    }
+
+    public int getNumOpenScrollContexts() {
+        return scrollContexts.size();
+    }
+
+    /**
+     * @param endpoint one of "search", "search_after", "scroll", "clear_scroll", "bulk", "msearch" or "get"
+     * @return the number of requests that were received for the given endpoint
+     */
+    public int getNumRequests(String endpoint) {
+        return requestCounts.getOrDefault(endpoint, new AtomicInteger(0)).get();
+    }
+
+    public int getNumSlicedSearches() {
+        return getNumRequests("sliced_search");
+    }
+
+    public void resetRequestCounts() {
+        requestCounts.clear();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        int status = 200;
+        JsonElement response;
+        try {
+            response = dispatch(exchange);
+            if (response == null) {
+                status = 404;
+                response = error("resource_not_found_exception", "No handler for " + exchange.getRequestURI());
+            }
+        } catch (RuntimeException e) {
+            status = 400;
+            response = error("parsing_exception", e.getMessage());
+        }
+        final byte[] bytes = response.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    private JsonElement dispatch(HttpExchange exchange) throws IOException {
+        final String method = exchange.getRequestMethod();
+        final List<String> path = Arrays.stream(exchange.getRequestURI().getRawPath().split("/"))
+                .filter(s -> !s.isEmpty())
+                .map(LocalElasticsearch::decode)
+                .collect(Collectors.toList());
+        final Map<String, String> params = parseParams(exchange.getRequestURI().getRawQuery());
+        final String body = readBody(exchange.getRequestBody());
+
+        if (path.size() >= 2 && "_search".equals(path.get(path.size() - 2)) && "scroll".equals(path.get(path.size() - 1))) {
+            if ("DELETE".equals(method)) {
+                count("clear_scroll");
+                return clearScroll(path, body);
+            }
+            count("scroll");
+            final String scrollId = params.containsKey("scroll_id") ? params.get("scroll_id")
+                    : new JsonParser().parse(body).getAsJsonObject().get("scroll_id").getAsString();
+            return scroll(scrollId);
+        } else if (!path.isEmpty() && "_search".equals(path.get(path.size() - 1))) {
+            count("search");
+            final List<String> indexPatterns = path.size() > 1 ? Arrays.asList(path.get(0).split(",")) : Collections.singletonList("*");
+            final JsonObject request = body.trim().isEmpty() ? new JsonObject() : new JsonParser().parse(body).getAsJsonObject();
+            return search(indexPatterns, request, params.get("scroll"));
+        } else if (!path.isEmpty() && "_msearch".equals(path.get(path.size() - 1))) {
+            count("msearch");
+            return multiSearch(path.size() > 1 ? path.get(0) : null, body);
+        } else if (!path.isEmpty() && "_bulk".equals(path.get(path.size() - 1))) {
+            count("bulk");
+            return bulk(path.size() > 1 ? path.get(0) : null, body);
+        } else if (path.size() == 3 && "GET".equals(method)) {
+            count("get");
+            return get(path.get(0), path.get(2));
+        }
+        return null;
+    }
+
+    private JsonObject search(List<String> indexPatterns, JsonObject request, String scroll) {
+        final List<Document> hits = new ArrayList<>();
+        final JsonObject query = request.has("query") ? request.getAsJsonObject("query") : null;
+        final JsonObject slice = request.has("slice") ? request.getAsJsonObject("slice") : null;
+        if (slice != null) {
+            count("sliced_search");
+        }
+        for (Map.Entry<String, Map<String, Document>> index : indices.entrySet()) {
+            if (indexPatterns.stream().noneMatch(p -> globMatches(p, index.getKey()))) {
+                continue;
+            }
+            final List<Document> docs;
+            synchronized (index.getValue()) {
+                docs = new ArrayList<>(index.getValue().values());
+            }
+            for (Document doc : docs) {
+                if (slice != null && Math.floorMod(doc.id.hashCode(), slice.get("max").getAsInt()) != slice.get("id").getAsInt()) {
+                    continue;
+                }
+                if (query == null || matches(query, doc.source)) {
+                    hits.add(doc);
+                }
+            }
+        }
+
+        final List<SortField> sortFields = getSortFields(request);
+        if (!sortFields.isEmpty()) {
+            // Compute the sort values once
+            final Map<Document, List<JsonElement>> sortValues = new IdentityHashMap<>();
+            for (Document hit : hits) {
+                sortValues.put(hit, sortFields.stream().map(s -> s.getSortValue(hit)).collect(Collectors.toList()));
+            }
+            hits.sort((a, b) -> compare(sortFields, sortValues.get(a), sortValues.get(b)));
+
+            if (request.has("search_after")) {
+                count("search_after");
+                final List<JsonElement> searchAfter = new ArrayList<>();
+                request.getAsJsonArray("search_after").forEach(searchAfter::add);
+                if (searchAfter.size() != sortFields.size()) {
+                    throw new IllegalArgumentException("search_after has " + searchAfter.size() + " value(s) but sort has " + sortFields.size());
+                }
+                hits.removeIf(hit -> compare(sortFields, sortValues.get(hit), searchAfter) <= 0);
+            }
+        } else if (request.has("search_after")) {
+            throw new IllegalArgumentException("Sort must contain at least one field when using search_after");
+        }
+
+        final int size = request.has("size") ? request.get("size").getAsInt() : 10;
+        final int from = request.has("from") ? request.get("from").getAsInt() : 0;
+        final ScrollContext context = new ScrollContext(hits, sortFields, size, SourceFilter.parse(request.get("_source")));
+        context.offset = Math.min(from, hits.size());
+        final JsonObject response = context.nextPage();
+        final JsonObject aggs = getAggregations(request);
+        if (aggs != null) {
+            response.add("aggregations", aggregate(aggs, hits));
+        }
+        if (scroll != null) {
+            final String scrollId = UUID.randomUUID().toString();
+            scrollContexts.put(scrollId, context);
+            response.addProperty("_scroll_id", scrollId);
+        }
+        return response;
+    }
+
+    private static JsonObject getAggregations(JsonObject body) {
+        return body.has("aggregations") ? body.getAsJsonObject("aggregations")
+                : body.has("aggs") ? body.getAsJsonObject("aggs") : null;
+    }
+
+    /**
+     * Computes the given aggregations over the matching documents.
+     *
+     * Only terms and composite aggregations (with terms sources) are supported.
+     */
+    private JsonObject aggregate(JsonObject aggs, List<Document> docs) {
+        final JsonObject results = new JsonObject();
+        for (Map.Entry<String, JsonElement> agg : aggs.entrySet()) {
+            final JsonObject body = agg.getValue().getAsJsonObject();
+            final JsonObject subAggs = getAggregations(body);
+            if (body.has("terms")) {
+                results.add(agg.getKey(), termsAggregation(body.getAsJsonObject("terms"), docs, subAggs));
+            } else if (body.has("composite")) {
+                results.add(agg.getKey(), compositeAggregation(body.getAsJsonObject("composite"), docs, subAggs));
+            } else {
+                throw new UnsupportedOperationException("Unsupported aggregation: " + body.entrySet().stream().map(Map.Entry::getKey).collect(Collectors.toList()));
+            }
+        }
+        return results;
+    }
+
+    private JsonObject termsAggregation(JsonObject terms, List<Document> docs, JsonObject subAggs) {
+        final String field = terms.get("field").getAsString();
+        final int size = terms.has("size") ? terms.get("size").getAsInt() : 10;
+        final Map<String, List<Document>> docsByKey = new LinkedHashMap<>();
+        for (Document doc : docs) {
+            getFieldValues(doc, field).stream()
+                    .map(JsonElement::getAsString)
+                    .distinct()
+                    .forEach(key -> docsByKey.computeIfAbsent(key, k -> new ArrayList<>()).add(doc));
+        }
+        // Most frequent terms first, ties are broken by key
+        final List<Map.Entry<String, List<Document>>> entries = new ArrayList<>(docsByKey.entrySet());
+        entries.sort((a, b) -> {
+            final int c = Integer.compare(b.getValue().size(), a.getValue().size());
+            return c != 0 ? c : a.getKey().compareTo(b.getKey());
+        });
+
+        final JsonArray buckets = new JsonArray();
+        long sumOtherDocCount = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            final Map.Entry<String, List<Document>> entry = entries.get(i);
+            if (i >= size) {
+                sumOtherDocCount += entry.getValue().size();
+                continue;
+            }
+            buckets.add(bucket(new JsonPrimitive(entry.getKey()), entry.getValue(), subAggs));
+        }
+        final JsonObject result = new JsonObject();
+        result.addProperty("doc_count_error_upper_bound", 0);
+        result.addProperty("sum_other_doc_count", sumOtherDocCount);
+        result.add("buckets", buckets);
+        return result;
+    }
+
+    private JsonObject compositeAggregation(JsonObject composite, List<Document> docs, JsonObject subAggs) {
+        final List<String> names = new ArrayList<>();
+        final List<String> fields = new ArrayList<>();
+        for (JsonElement source : composite.getAsJsonArray("sources")) {
+            final Map.Entry<String, JsonElement> entry = source.getAsJsonObject().entrySet().iterator().next();
+            final JsonObject valuesSource = entry.getValue().getAsJsonObject();
+            if (!valuesSource.has("terms")) {
+                throw new UnsupportedOperationException("Unsupported composite source: " + valuesSource.entrySet().stream().map(Map.Entry::getKey).collect(Collectors.toList()));
+            }
+            names.add(entry.getKey());
+            fields.add(valuesSource.getAsJsonObject("terms").get("field").getAsString());
+        }
+        final int size = composite.has("size") ? composite.get("size").getAsInt() : 10;
+
+        // Build the composite keys, documents with more than one value belong to many buckets
+        final Map<List<JsonElement>, List<Document>> docsByKey = new LinkedHashMap<>();
+        for (Document doc : docs) {
+            List<List<JsonElement>> keys = Collections.singletonList(Collections.emptyList());
+            for (String field : fields) {
+                final List<List<JsonElement>> expandedKeys = new ArrayList<>();
+                for (List<JsonElement> key : keys) {
+                    for (JsonElement value : getFieldValues(doc, field)) {
+                        final List<JsonElement> expandedKey = new ArrayList<>(key);
+                        expandedKey.add(value);
+                        expandedKeys.add(expandedKey);
+                    }
+                }
+                keys = expandedKeys;
+            }
+            keys.stream().distinct().forEach(key -> docsByKey.computeIfAbsent(key, k -> new ArrayList<>()).add(doc));
+        }
+        final List<List<JsonElement>> keys = new ArrayList<>(docsByKey.keySet());
+        keys.sort(LocalElasticsearch::compareCompositeKeys);
+
+        List<JsonElement> after = null;
+        if (composite.has("after")) {
+            final JsonObject afterKey = composite.getAsJsonObject("after");
+            after = names.stream().map(afterKey::get).collect(Collectors.toList());
+        }
+        final JsonArray buckets = new JsonArray();
+        for (List<JsonElement> key : keys) {
+            if (buckets.size() >= size) {
+                break;
+            }
+            if (after != null && compareCompositeKeys(key, after) <= 0) {
+                continue;
+            }
+            final JsonObject keyObj = new JsonObject();
+            for (int i = 0; i < names.size(); i++) {
+                keyObj.add(names.get(i), key.get(i));
+            }
+            buckets.add(bucket(keyObj, docsByKey.get(key), subAggs));
+        }
+        // Like 6.2, we don't return an after_key, clients need to use the key of the last bucket
+        final JsonObject result = new JsonObject();
+        result.add("buckets", buckets);
+        return result;
+    }
+
+    private JsonObject bucket(JsonElement key, List<Document> docs, JsonObject subAggs) {
+        final JsonObject bucket = new JsonObject();
+        bucket.add("key", key);
+        bucket.addProperty("doc_count", docs.size());
+        if (subAggs != null) {
+            for (Map.Entry<String, JsonElement> subAgg : aggregate(subAggs, docs).entrySet()) {
+                bucket.add(subAgg.getKey(), subAgg.getValue());
+            }
+        }
+        return bucket;
+    }
+
+    private static List<JsonElement> getFieldValues(Document doc, String field) {
+        if ("_index".equals(field)) {
+            return Collections.singletonList(new JsonPrimitive(doc.index));
+        } else if ("_type".equals(field)) {
+            return doc.type != null ? Collections.singletonList(new JsonPrimitive(doc.type)) : Collections.emptyList();
+        }
+        return getValues(doc.source, field);
+    }
+
+    private static int compareCompositeKeys(List<JsonElement> a, List<JsonElement> b) {
+        for (int i = 0; i < a.size(); i++) {
+            final JsonPrimitive va = a.get(i).getAsJsonPrimitive();
+            final JsonPrimitive vb = b.get(i).getAsJsonPrimitive();
+            final int c = va.isNumber() && vb.isNumber() ? Double.compare(va.getAsDouble(), vb.getAsDouble())
+                    : va.getAsString().compareTo(vb.getAsString());
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    private JsonObject multiSearch(String defaultIndex, String body) {
+        final List<String> lines = Arrays.stream(body.split("\n"))
+                .filter(l -> !l.trim().isEmpty())
+                .collect(Collectors.toList());
+        final JsonArray responses = new JsonArray();
+        for (int i = 0; i < lines.size(); i += 2) {
+            final JsonObject header = new JsonParser().parse(lines.get(i)).getAsJsonObject();
+            final List<String> indexPatterns = new ArrayList<>();
+            if (header.has("index") && header.get("index").isJsonArray()) {
+                header.getAsJsonArray("index").forEach(index -> indexPatterns.add(index.getAsString()));
+            } else if (header.has("index")) {
+                indexPatterns.addAll(Arrays.asList(header.get("index").getAsString().split(",")));
+            } else if (defaultIndex != null) {
+                indexPatterns.addAll(Arrays.asList(defaultIndex.split(",")));
+            } else {
+                indexPatterns.add("*");
+            }
+            try {
+                final JsonObject request = new JsonParser().parse(lines.get(i + 1)).getAsJsonObject();
+                final JsonObject response = search(indexPatterns, request, null);
+                response.addProperty("status", 200);
+                responses.add(response);
+            } catch (RuntimeException e) {
+                final JsonObject response = error("parsing_exception", e.getMessage());
+                response.addProperty("status", 400);
+                responses.add(response);
+            }
+        }
+        final JsonObject response = new JsonObject();
+        response.add("responses", responses);
+        return response;
+    }
+
+    private JsonObject scroll(String scrollId) {
+        final ScrollContext context = scrollContexts.get(scrollId);
+        if (context == null) {
+            throw new IllegalStateException("No search context found for id [" + scrollId + "]");
+        }
+        final JsonObject response;
+        synchronized (context) {
+            response = context.nextPage();
+        }
+        response.addProperty("_scroll_id", scrollId);
+        return response;
+    }
+
+    private JsonObject clearScroll(List<String> path, String body) {
+        int numFreed = 0;
+        if ("_all".equals(path.get(path.size() - 1))) {
+            numFreed = scrollContexts.size();
+            scrollContexts.clear();
+        } else {
+            final JsonElement scrollIds = new JsonParser().parse(body).getAsJsonObject().get("scroll_id");
+            for (JsonElement scrollId : scrollIds.isJsonArray() ? scrollIds.getAsJsonArray() : asArray(scrollIds)) {
+                if (scrollContexts.remove(scrollId.getAsString()) != null) {
+                    numFreed++;
+                }
+            }
+        }
+        final JsonObject response = new JsonObject();
+        response.addProperty("succeeded", true);
+        response.addProperty("num_freed", numFreed);
+        return response;
+    }
+
+    private JsonObject bulk(String defaultIndex, String body) {
+        final List<String> lines = Arrays.stream(body.split("\n"))
+                .filter(l -> !l.trim().isEmpty())
+                .collect(Collectors.toList());
+        final JsonArray items = new JsonArray();
+        boolean errors = false;
+        for (int i = 0; i < lines.size(); i += 2) {
+            final JsonObject action = new JsonParser().parse(lines.get(i)).getAsJsonObject();
+            if (!action.has("index")) {
+                throw new IllegalArgumentException("Unsupported bulk action: " + action);
+            }
+            final JsonObject meta = action.getAsJsonObject("index");
+            final String index = meta.has("_index") ? meta.get("_index").getAsString() : defaultIndex;
+            final String type = meta.has("_type") ? meta.get("_type").getAsString() : null;
+            final String id = meta.get("_id").getAsString();
+
+            final JsonObject result = new JsonObject();
+            result.addProperty("_index", index);
+            result.addProperty("_type", type);
+            result.addProperty("_id", id);
+            if (numBulkItemsToReject.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                final JsonObject error = new JsonObject();
+                error.addProperty("type", "es_rejected_execution_exception");
+                error.addProperty("reason", "rejected execution of bulk item");
+                result.addProperty("status", 429);
+                result.add("error", error);
+                errors = true;
+            } else {
+                index(index, type, id, new JsonParser().parse(lines.get(i + 1)).getAsJsonObject());
+                result.addProperty("status", 201);
+                result.addProperty("result", "created");
+            }
+            final JsonObject item = new JsonObject();
+            item.add("index", result);
+            items.add(item);
+        }
+        final JsonObject response = new JsonObject();
+        response.addProperty("took", 1);
+        response.addProperty("errors", errors);
+        response.add("items", items);
+        return response;
+    }
+
+    private JsonObject get(String index, String id) {
+        final Document doc = indices.getOrDefault(index, Collections.emptyMap()).get(id);
+        final JsonObject response = new JsonObject();
+        response.addProperty("_index", index);
+        response.addProperty("_id", id);
+        response.addProperty("found", doc != null);
+        if (doc != null) {
+            response.addProperty("_type", doc.type);
+            response.addProperty("_version", 1);
+            response.add("_source", doc.source);
+        }
+        return response;
+    }
+
+    private boolean matches(JsonObject query, JsonObject source) {
+        final Map.Entry<String, JsonElement> clause = query.entrySet().iterator().next();
+        final JsonObject body = clause.getValue().isJsonObject() ? clause.getValue().getAsJsonObject() : new JsonObject();
+        switch (clause.getKey()) {
+            case "match_all":
+                return true;
+            case "bool":
+                return matchesBool(body, source);
+            case "nested":
+                return matches(body.getAsJsonObject("query"), source);
+            case "exists":
+                return !getValues(source, body.get("field").getAsString()).isEmpty();
+            case "term":
+                return matchesField(body, source, (value, expected) -> equal(value, getQueryValue(expected, "value")));
+            case "terms": {
+                final Map.Entry<String, JsonElement> field = getFieldEntry(body);
+                for (JsonElement expected : field.getValue().getAsJsonArray()) {
+                    for (JsonElement value : getValues(source, field.getKey())) {
+                        if (equal(value, expected)) {
+                            return true;
+                        }
+                    }
+                }
+                return false;
+            }
+            case "prefix":
+                // Like on a keyword field, the whole value must start with the prefix
+                return matchesField(body, source, (value, expected) ->
+                        value.getAsString().startsWith(getQueryValue(expected, "value").getAsString()));
+            case "wildcard":
+                // Like on a keyword field, the whole value must match the pattern
+                return matchesField(body, source, (value, expected) -> {
+                    // The pattern is given as "wildcard" by the query builders, and as "value" in the docs
+                    final JsonElement pattern = expected.isJsonObject() && expected.getAsJsonObject().has("wildcard") ?
+                            expected.getAsJsonObject().get("wildcard") : getQueryValue(expected, "value");
+                    return toRegex(pattern.getAsString()).matcher(value.getAsString()).matches();
+                });
+            case "match":
+                return matchesField(body, source, (value, expected) -> {
+                    final List<String> tokens = tokenize(getQueryValue(expected, "query").getAsString());
+                    final List<String> valueTokens = tokenize(value.getAsString());
+                    return tokens.stream().anyMatch(valueTokens::contains);
+                });
+            case "match_phrase":
+                return matchesField(body, source, (value, expected) -> {
+                    final List<String> tokens = tokenize(getQueryValue(expected, "query").getAsString());
+                    return !tokens.isEmpty() && Collections.indexOfSubList(tokenize(value.getAsString()), tokens) >= 0;
+                });
+            case "range":
+                return matchesField(body, source, (value, range) -> matchesRange(value, range.getAsJsonObject()));
+            default:
+                throw new UnsupportedOperationException("Unsupported query: " + clause.getKey());
+        }
+    }
+
+    /**
+     * Converts a wildcard pattern, where * matches any sequence of characters, ? matches any single
+     * character and \\ escapes the next character, to a regular expression.
+     */
+    private static Pattern toRegex(String wildcard) {
+        final StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < wildcard.length(); i++) {
+            final char c = wildcard.charAt(i);
+            if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else if (c == '\\' && i + 1 < wildcard.length()) {
+                regex.append(Pattern.quote(String.valueOf(wildcard.charAt(++i))));
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    private boolean matchesBool(JsonObject bool, JsonObject source) {
+        for (String occur : Arrays.asList("must", "filter")) {
+            for (JsonElement q : getClauses(bool, occur)) {
+                if (!matches(q.getAsJsonObject(), source)) {
+                    return false;
+                }
+            }
+        }
+        for (JsonElement q : getClauses(bool, "must_not")) {
+            if (matches(q.getAsJsonObject(), source)) {
+                return false;
+            }
+        }
+        final JsonArray should = getClauses(bool, "should");
+        if (should.size() > 0) {
+            final boolean shouldIsRequired = getClauses(bool, "must").size() == 0 && getClauses(bool, "filter").size() == 0;
+            boolean anyMatched = false;
+            for (JsonElement q : should) {
+                if (matches(q.getAsJsonObject(), source)) {
+                    anyMatched = true;
+                    break;
+                }
+            }
+            return anyMatched || !shouldIsRequired;
+        }
+        return true;
+    }
+
+    private boolean matchesRange(JsonElement value, JsonObject range) {
+        final Long v = toComparableLong(value);
+        if (v == null) {
+            return false;
+        }
+        final String format = range.has("format") ? range.get("format").getAsString() : "epoch_millis";
+        final long multiplier = "epoch_second".equals(format) ? 1000L : 1L;
+        final JsonElement from = range.has("from") ? range.get("from") : range.has("gte") ? range.get("gte") : range.get("gt");
+        final JsonElement to = range.has("to") ? range.get("to") : range.has("lte") ? range.get("lte") : range.get("lt");
+        final boolean includeLower = range.has("include_lower") ? range.get("include_lower").getAsBoolean() : !range.has("gt");
+        final boolean includeUpper = range.has("include_upper") ? range.get("include_upper").getAsBoolean() : !range.has("lt");
+        if (from != null && !from.isJsonNull()) {
+            final long lower = from.getAsLong() * multiplier;
+            if (includeLower ? v < lower : v <= lower) {
+                return false;
+            }
+        }
+        if (to != null && !to.isJsonNull()) {
+            final long upper = to.getAsLong() * multiplier;
+            if (includeUpper ? v > upper : v >= upper) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private interface FieldPredicate {
+        boolean test(JsonElement value, JsonElement expected);
+    }
+
+    private boolean matchesField(JsonObject body, JsonObject source, FieldPredicate predicate) {
+        final Map.Entry<String, JsonElement> field = getFieldEntry(body);
+        for (JsonElement value : getValues(source, field.getKey())) {
+            if (predicate.test(value, field.getValue())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Map.Entry<String, JsonElement> getFieldEntry(JsonObject body) {
+        return body.entrySet().stream()
+                .filter(e -> !"boost".equals(e.getKey()))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("No field in: " + body));
+    }
+
+    private static JsonElement getQueryValue(JsonElement expected, String key) {
+        return expected.isJsonObject() ? expected.getAsJsonObject().get(key) : expected;
+    }
+
+    private static JsonArray getClauses(JsonObject bool, String occur) {
+        final JsonElement clauses = bool.get(occur);
+        if (clauses == null) {
+            return new JsonArray();
+        }
+        return clauses.isJsonArray() ? clauses.getAsJsonArray() : asArray(clauses);
+    }
+
+    private static JsonArray asArray(JsonElement el) {
+        final JsonArray array = new JsonArray();
+        array.add(el);
+        return array;
+    }
+
+    /**
+     * Resolve the (flattened) values for the given field path, i.e. "p_oids.value".
+     */
+    static List<JsonElement> getValues(JsonElement el, String path) {
+        final List<JsonElement> values = new ArrayList<>();
+        collectValues(el, Arrays.asList(path.split("\\.")), values);
+        if (values.isEmpty() && path.endsWith(".keyword")) {
+            collectValues(el, Arrays.asList(path.substring(0, path.length() - ".keyword".length()).split("\\.")), values);
+        }
+        return values;
+    }
+
+    private static void collectValues(JsonElement el, List<String> path, List<JsonElement> values) {
+        if (el == null || el.isJsonNull()) {
+            return;
+        }
+        if (el.isJsonArray()) {
+            for (JsonElement child : el.getAsJsonArray()) {
+                collectValues(child, path, values);
+            }
+            return;
+        }
+        if (path.isEmpty()) {
+            values.add(el);
+            return;
+        }
+        if (!el.isJsonObject()) {
+            return;
+        }
+        final JsonObject obj = el.getAsJsonObject();
+        // Support both nested objects, and dotted field names
+        for (int i = path.size(); i > 0; i--) {
+            final String key = String.join(".", path.subList(0, i));
+            if (obj.has(key)) {
+                collectValues(obj.get(key), path.subList(i, path.size()), values);
+                return;
+            }
+        }
+    }
+
+    private static boolean equal(JsonElement value, JsonElement expected) {
+        if (value.isJsonPrimitive() && expected.isJsonPrimitive()) {
+            final JsonPrimitive a = value.getAsJsonPrimitive();
+            final JsonPrimitive b = expected.getAsJsonPrimitive();
+            if (a.isNumber() || b.isNumber()) {
+                try {
+                    return Double.compare(a.getAsDouble(), b.getAsDouble()) == 0;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+            return a.getAsString().equals(b.getAsString());
+        }
+        return value.equals(expected);
+    }
+
+    private static List<String> tokenize(String text) {
+        return Arrays.stream(TOKEN_SEPARATOR.split(text.toLowerCase()))
+                .filter(t -> !t.isEmpty())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Numbers are used as-is, dates are converted to epoch millis.
+     */
+    static Long toComparableLong(JsonElement value) {
+        if (value == null || !value.isJsonPrimitive()) {
+            return null;
+        }
+        final JsonPrimitive p = value.getAsJsonPrimitive();
+        if (p.isNumber()) {
+            return p.getAsLong();
+        }
+        if (p.isString()) {
+            return DATE_CACHE.computeIfAbsent(p.getAsString(), s -> {
+                try {
+                    return Optional.of(new SimpleDateFormat(DATE_FORMAT).parse(s).getTime());
+                } catch (ParseException e) {
+                    return NOT_A_DATE;
+                }
+            }).orElse(null);
+        }
+        return null;
+    }
+
+    private static List<SortField> getSortFields(JsonObject request) {
+        final List<SortField> sortFields = new ArrayList<>();
+        final JsonElement sort = request.get("sort");
+        if (sort == null) {
+            return sortFields;
+        }
+        for (JsonElement el : sort.isJsonArray() ? sort.getAsJsonArray() : asArray(sort)) {
+            if (el.isJsonPrimitive()) {
+                sortFields.add(new SortField(el.getAsString(), true));
+            } else {
+                for (Map.Entry<String, JsonElement> entry : el.getAsJsonObject().entrySet()) {
+                    final JsonElement order = entry.getValue().isJsonObject() ? entry.getValue().getAsJsonObject().get("order") : entry.getValue();
+                    sortFields.add(new SortField(entry.getKey(), order == null || "asc".equalsIgnoreCase(order.getAsString())));
+                }
+            }
+        }
+        return sortFields;
+    }
+
+    private static int compare(List<SortField> sortFields, List<JsonElement> a, List<JsonElement> b) {
+        for (int i = 0; i < sortFields.size(); i++) {
+            final int c = sortFields.get(i).compare(a.get(i), b.get(i));
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    private static class SortField {
+        private final String field;
+        private final boolean ascending;
+
+        private SortField(String field, boolean ascending) {
+            this.field = field;
+            this.ascending = ascending;
+        }
+
+        private JsonElement getSortValue(Document doc) {
+            if ("_id".equals(field) || "_uid".equals(field)) {
+                return new JsonPrimitive(doc.id);
+            }
+            final List<JsonElement> values = getValues(doc.source, field);
+            if (values.isEmpty()) {
+                return JsonNull.INSTANCE;
+            }
+            final JsonElement value = values.get(0);
+            final Long asLong = toComparableLong(value);
+            return asLong != null ? new JsonPrimitive(asLong) : value;
+        }
+
+        private int compare(JsonElement va, JsonElement vb) {
+            // Missing values are always last
+            if (va.isJsonNull() || vb.isJsonNull()) {
+                return Boolean.compare(va.isJsonNull(), vb.isJsonNull());
+            }
+            final int c;
+            if (va.getAsJsonPrimitive().isNumber() && vb.getAsJsonPrimitive().isNumber()) {
+                c = Long.compare(va.getAsLong(), vb.getAsLong());
+            } else {
+                c = va.getAsString().compareTo(vb.getAsString());
+            }
+            return ascending ? c : -c;
+        }
+    }
+
+    private static class Document {
+        private final String index;
+        private final String type;
+        private final String id;
+        private final JsonObject source;
+
+        private Document(String index, String type, String id, JsonObject source) {
+            this.index = Objects.requireNonNull(index);
+            this.type = type;
+            this.id = Objects.requireNonNull(id);
+            this.source = Objects.requireNonNull(source);
+        }
+    }
+
+    /**
+     * Applies the _source includes and excludes of a search request, without support for wildcards.
+     */
+    private static class SourceFilter {
+        private final boolean enabled;
+        private final List<String> includes;
+        private final List<String> excludes;
+
+        private SourceFilter(boolean enabled, List<String> includes, List<String> excludes) {
+            this.enabled = enabled;
+            this.includes = includes;
+            this.excludes = excludes;
+        }
+
+        private static SourceFilter parse(JsonElement source) {
+            if (source == null) {
+                return new SourceFilter(true, Collections.emptyList(), Collections.emptyList());
+            } else if (source.isJsonPrimitive() && source.getAsJsonPrimitive().isBoolean()) {
+                return new SourceFilter(source.getAsBoolean(), Collections.emptyList(), Collections.emptyList());
+            } else if (source.isJsonObject()) {
+                final JsonObject obj = source.getAsJsonObject();
+                return new SourceFilter(true, getFields(obj.get("includes")), getFields(obj.get("excludes")));
+            }
+            return new SourceFilter(true, getFields(source), Collections.emptyList());
+        }
+
+        private static List<String> getFields(JsonElement fields) {
+            final List<String> values = new ArrayList<>();
+            if (fields != null && !fields.isJsonNull()) {
+                asArray(fields).forEach(f -> values.add(f.getAsString()));
+            }
+            return values;
+        }
+
+        private static JsonArray asArray(JsonElement el) {
+            return el.isJsonArray() ? el.getAsJsonArray() : LocalElasticsearch.asArray(el);
+        }
+
+        private JsonElement filter(JsonElement value, String path) {
+            if (value.isJsonArray()) {
+                final JsonArray filtered = new JsonArray();
+                value.getAsJsonArray().forEach(el -> filtered.add(filter(el, path)));
+                return filtered;
+            } else if (!value.isJsonObject()) {
+                return value;
+            }
+            final JsonObject filtered = new JsonObject();
+            for (Map.Entry<String, JsonElement> entry : value.getAsJsonObject().entrySet()) {
+                final String fieldPath = path + entry.getKey();
+                if (excludes.contains(fieldPath)) {
+                    continue;
+                }
+                if (includes.isEmpty() || includes.stream().anyMatch(i -> fieldPath.equals(i) || fieldPath.startsWith(i + "."))) {
+                    filtered.add(entry.getKey(), filter(entry.getValue(), fieldPath + "."));
+                } else if (includes.stream().anyMatch(i -> i.startsWith(fieldPath + "."))) {
+                    // Only some of the nested fields are included
+                    filtered.add(entry.getKey(), filter(entry.getValue(), fieldPath + "."));
+                }
+            }
+            return filtered;
+        }
+    }
+
+    private static class ScrollContext {
+        private final List<Document> hits;
+        private final List<SortField> sortFields;
+        private final int size;
+        private final SourceFilter sourceFilter;
+        private int offset = 0;
+
+        private ScrollContext(List<Document> hits, List<SortField> sortFields, int size, SourceFilter sourceFilter) {
+            this.hits = hits;
+            this.sortFields = sortFields;
+            this.size = size;
+            this.sourceFilter = sourceFilter;
+        }
+
+        private JsonObject nextPage() {
+            final JsonArray page = new JsonArray();
+            final int end = Math.min(offset + size, hits.size());
+            for (Document doc : hits.subList(offset, end)) {
+                final JsonObject hit = new JsonObject();
+                hit.addProperty("_index", doc.index);
+                hit.addProperty("_type", doc.type);
+                hit.addProperty("_id", doc.id);
+                hit.add("_score", JsonNull.INSTANCE);
+                if (sourceFilter.enabled) {
+                    hit.add("_source", sourceFilter.filter(doc.source, ""));
+                }
+                if (!sortFields.isEmpty()) {
+                    final JsonArray sortValues = new JsonArray();
+                    sortFields.forEach(s -> sortValues.add(s.getSortValue(doc)));
+                    hit.add("sort", sortValues);
+                }
+                page.add(hit);
+            }
+            offset = end;
+
+            final JsonObject hitsObj = new JsonObject();
+            hitsObj.addProperty("total", hits.size());
+            hitsObj.add("max_score", JsonNull.INSTANCE);
+            hitsObj.add("hits", page);
+            final JsonObject response = new JsonObject();
+            response.addProperty("took", 1);
+            response.addProperty("timed_out", false);
+            response.add("hits", hitsObj);
+            return response;
+        }
+    }
+
+    private void count(String endpoint) {
+        requestCounts.computeIfAbsent(endpoint, e -> new AtomicInteger(0)).incrementAndGet();
+    }
+
+    private static JsonObject error(String type, String reason) {
+        final JsonObject cause = new JsonObject();
+        cause.addProperty("type", type);
+        cause.addProperty("reason", reason);
+        final JsonObject error = new JsonObject();
+        error.add("root_cause", asArray(cause));
+        error.addProperty("type", type);
+        error.addProperty("reason", reason);
+        final JsonObject response = new JsonObject();
+        response.add("error", error);
+        return response;
+    }
+
+    private static boolean globMatches(String pattern, String value) {
+        return value.matches(Arrays.stream(pattern.split("\\*", -1))
+                .map(Pattern::quote)
+                .collect(Collectors.joining(".*")));
+    }
+
+    private static Map<String, String> parseParams(String rawQuery) {
+        final Map<String, String> params = new LinkedHashMap<>();
+        if (rawQuery == null) {
+            return params;
+        }
+        for (String param : rawQuery.split("&")) {
+            final int idx = param.indexOf('=');
+            if (idx < 0) {
+                params.put(decode(param), "");
+            } else {
+                params.put(decode(param.substring(0, idx)), decode(param.substring(idx + 1)));
+            }
+        }
+        return params;
+    }
+
+    private static String decode(String s) {
+        try {
+            return URLDecoder.decode(s, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String readBody(InputStream is) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int n;
+        while ((n = is.read(buffer)) >= 0) {
+            baos.write(buffer, 0, n);
+        }
+        return new String(baos.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
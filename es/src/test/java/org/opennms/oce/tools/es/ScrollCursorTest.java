@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.oce.tools.es;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+
+import io.searchbox.core.Search;
+import io.searchbox.params.Parameters;
+
+public class ScrollCursorTest {
+
+    private static final int NUM_DOCUMENTS = 25;
+
+    @Rule
+    public LocalElasticsearch elasticsearch = new LocalElasticsearch();
+
+    @Before
+    public void setUp() {
+        for (int i = 0; i < NUM_DOCUMENTS; i++) {
+            elasticsearch.index("records", "record", Integer.toString(i), new Record(i));
+        }
+    }
+
+    @Test
+    public void canReleaseScrollContexts() throws IOException {
+        try (ESClient esClient = new ESClient(elasticsearch.getClusterConfiguration())) {
+            final List<Record> records = new ArrayList<>();
+            esClient.scroll(getQuery(), this::getSearch, new Gson(), Record.class, records::addAll);
+            assertThat(records, hasSize(NUM_DOCUMENTS));
+
+            // 3 pages, the last one is known to be the last without asking for more
+            assertThat(elasticsearch.getNumRequests("search"), equalTo(1));
+            assertThat(elasticsearch.getNumRequests("scroll"), equalTo(2));
+            assertThat(elasticsearch.getNumRequests("clear_scroll"), equalTo(1));
+            assertThat(elasticsearch.getNumOpenScrollContexts(), equalTo(0));
+            assertThat(esClient.getScrollContextTracker().getNumOpenContexts(), equalTo(0));
+        }
+    }
+
+    @Test
+    public void canReleaseScrollContextsOnFailure() throws IOException {
+        final ESClusterConfiguration clusterConfiguration = elasticsearch.getClusterConfiguration();
+        clusterConfiguration.setScrollSlices(4);
+        try (ESClient esClient = new ESClient(clusterConfiguration)) {
+            try {
+                esClient.scroll(getQuery(), this::getSearch, new Gson(), Record.class, records -> {
+                    throw new IllegalStateException("Failed to process records.");
+                });
+                fail("Should have failed.");
+            } catch (IllegalStateException e) {
+                // Expected
+            }
+            assertThat(elasticsearch.getNumOpenScrollContexts(), equalTo(0));
+            assertThat(esClient.getScrollContextTracker().getNumOpenContexts(), equalTo(0));
+        }
+    }
+
+    @Test
+    public void canReportLeakedScrollContexts() throws IOException {
+        try (ESClient esClient = new ESClient(elasticsearch.getClusterConfiguration())) {
+            final ScrollContextTracker tracker = esClient.getScrollContextTracker();
+            final SearchCursor<Record> cursor = esClient.openCursor(getSearch(getQuery()), new Gson(), Record.class);
+            assertThat(tracker.getNumOpenContexts(), equalTo(0));
+
+            assertThat(cursor.next(), hasSize(10));
+            assertThat(tracker.getNumOpenContexts(), equalTo(1));
+            assertThat(tracker.reportLeaks(), equalTo(1));
+
+            cursor.close();
+            assertThat(tracker.getNumOpenContexts(), equalTo(0));
+            assertThat(tracker.reportLeaks(), equalTo(0));
+            assertThat(elasticsearch.getNumOpenScrollContexts(), equalTo(0));
+        }
+    }
+
+    private String getQuery() {
+        return "{\"size\":10,\"query\":{\"match_all\":{}}}";
+    }
+
+    private Search getSearch(String query) {
+        return new Search.Builder(query)
+                .addIndex("records")
+                .setParameter(Parameters.SCROLL, ScrollCursor.SCROLL_TIME)
+                .build();
+    }
+
+    private static class Record {
+        private int value;
+
+        private Record(int value) {
+            this.value = value;
+        }
+    }
+}
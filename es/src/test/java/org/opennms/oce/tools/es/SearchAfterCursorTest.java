@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+
+package org.opennms.oce.tools.es;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.notNullValue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+
+import io.searchbox.core.Search;
+import io.searchbox.core.search.sort.Sort;
+import io.searchbox.params.Parameters;
+
+public class SearchAfterCursorTest {
+
+    private static final int NUM_DOCUMENTS = 25;
+
+    @Rule
+    public LocalElasticsearch elasticsearch = new LocalElasticsearch();
+
+    @Before
+    public void setUp() {
+        for (int i = 0; i < NUM_DOCUMENTS; i++) {
+            // Use a sort key with many duplicates, the record id is used to break ties
+            elasticsearch.index("records", "record", Integer.toString(i), new Record(i, i % 3));
+        }
+    }
+
+    @Test
+    public void canPageUsingSearchAfter() throws IOException {
+        final ESClusterConfiguration clusterConfiguration = elasticsearch.getClusterConfiguration();
+        clusterConfiguration.setPagingMode(PagingMode.SEARCH_AFTER);
+        clusterConfiguration.setScrollSlices(4);
+        try (ESClient esClient = new ESClient(clusterConfiguration)) {
+            final List<Record> records = new ArrayList<>();
+            esClient.scroll(getQuery(), this::getSearch, new Gson(), Record.class, records::addAll, "id");
+
+            assertThat(records, hasSize(NUM_DOCUMENTS));
+            assertThat(getIds(records), equalTo(getIds(0, NUM_DOCUMENTS)));
+            for (int i = 1; i < records.size(); i++) {
+                assertThat(records.get(i - 1).group, lessThanOrEqualTo(records.get(i).group));
+            }
+
+            // 3 pages, the last one is partial so we know there are no more
+            assertThat(elasticsearch.getNumRequests("search"), equalTo(3));
+            assertThat(elasticsearch.getNumRequests("search_after"), equalTo(2));
+            assertThat(elasticsearch.getNumRequests("scroll"), equalTo(0));
+            assertThat(elasticsearch.getNumSlicedSearches(), equalTo(0));
+            assertThat(elasticsearch.getNumOpenScrollContexts(), equalTo(0));
+        }
+    }
+
+    @Test
+    public void canResumeFromPosition() throws IOException {
+        try (ESClient esClient = new ESClient(elasticsearch.getClusterConfiguration())) {
+            final Search search = getSearch(getQuery());
+            final List<Record> records = new ArrayList<>();
+            final String position;
+            try (SearchAfterCursor<Record> cursor = esClient.openSearchAfterCursor(search, new Gson(), Record.class, null, "id")) {
+                records.addAll(cursor.next());
+                position = cursor.getPosition();
+            }
+            assertThat(records, hasSize(10));
+            assertThat(position, notNullValue());
+
+            // Pick up where we left off using a new cursor
+            try (SearchAfterCursor<Record> cursor = esClient.openSearchAfterCursor(search, new Gson(), Record.class, position, "id")) {
+                cursor.forEachPage(records::addAll);
+            }
+            assertThat(records, hasSize(NUM_DOCUMENTS));
+            assertThat(getIds(records), equalTo(getIds(0, NUM_DOCUMENTS)));
+        }
+    }
+
+    @Test
+    public void canPageUsingDefaultPageSize() throws IOException {
+        final ESClusterConfiguration clusterConfiguration = elasticsearch.getClusterConfiguration();
+        clusterConfiguration.setPagingMode(PagingMode.SEARCH_AFTER);
+        try (ESClient esClient = new ESClient(clusterConfiguration)) {
+            final List<Record> records = new ArrayList<>();
+            esClient.scroll("{\"query\":{\"match_all\":{}}}", this::getSearch, new Gson(), Record.class, records::addAll, "id");
+
+            assertThat(records, hasSize(NUM_DOCUMENTS));
+            assertThat(getIds(records), equalTo(getIds(0, NUM_DOCUMENTS)));
+            // All of the hits fit in a single page
+            assertThat(elasticsearch.getNumRequests("search"), equalTo(1));
+            assertThat(elasticsearch.getNumRequests("search_after"), equalTo(0));
+        }
+    }
+
+    @Test
+    public void canScrollWithoutTieBreakers() throws IOException {
+        final ESClusterConfiguration clusterConfiguration = elasticsearch.getClusterConfiguration();
+        clusterConfiguration.setPagingMode(PagingMode.SEARCH_AFTER);
+        try (ESClient esClient = new ESClient(clusterConfiguration)) {
+            final List<Record> records = new ArrayList<>();
+            esClient.scroll(getQuery(), this::getSearch, new Gson(), Record.class, records::addAll);
+
+            assertThat(records, hasSize(NUM_DOCUMENTS));
+            assertThat(elasticsearch.getNumRequests("search_after"), equalTo(0));
+            assertThat(elasticsearch.getNumRequests("scroll"), equalTo(2));
+            assertThat(elasticsearch.getNumOpenScrollContexts(), equalTo(0));
+        }
+    }
+
+    private String getQuery() {
+        return "{\"size\":10,\"query\":{\"match_all\":{}}}";
+    }
+
+    private Search getSearch(String query) {
+        return new Search.Builder(query)
+                .addIndex("records")
+                .addSort(new Sort("group"))
+                .setParameter(Parameters.SCROLL, ScrollCursor.SCROLL_TIME)
+                .build();
+    }
+
+    private static Set<Integer> getIds(List<Record> records) {
+        return records.stream().map(r -> r.id).collect(Collectors.toCollection(TreeSet::new));
+    }
+
+    private static Set<Integer> getIds(int from, int to) {
+        return IntStream.range(from, to).boxed().collect(Collectors.toCollection(TreeSet::new));
+    }
+
+    private static class Record {
+        private int id;
+        private int group;
+
+        private Record(int id, int group) {
+            this.id = id;
+            this.group = group;
+        }
+    }
+}
@@ -30,12 +30,17 @@ package org.opennms.oce.tools.main;
 
 import java.io.File;
 import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
 
 import org.kohsuke.args4j.Option;
+import org.opennms.oce.tools.cpn.CpnDatasetSnapshot;
+import org.opennms.oce.tools.cpn.CpnRecordHandler;
 import org.opennms.oce.tools.cpn.CsvCpnDatasetLoader;
-import org.opennms.oce.tools.cpn.CpnDataset;
 import org.opennms.oce.tools.cpn.model.EventRecord;
 import org.opennms.oce.tools.cpn.model.TicketRecord;
+import org.opennms.oce.tools.cpn.model.TrapRecord;
+import org.opennms.oce.tools.es.BulkIndexer;
 import org.opennms.oce.tools.es.ESClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -53,6 +58,12 @@ public class CpnCsvImportCommand extends AbstractCommand {
     @Option(name="--timezone",aliases = {"-t"}, usage="Time-zone to use when importing the CPN records")
     private String timeZone = DEFAULT_TIME_ZONE_ID;
 
+    @Option(name="--threads", usage="Number of threads used to parse the .csv files")
+    private int numThreads = 4;
+
+    @Option(name="--snapshot", usage="Also write a binary snapshot of the dataset to the given file")
+    private File snapshotFile;
+
     public CpnCsvImportCommand() {
         super(NAME);
     }
@@ -60,15 +71,67 @@ public class CpnCsvImportCommand extends AbstractCommand {
     @Override
     public void doExec(Context context) throws Exception {
         final ZoneId timeZoneId = ZoneId.of(timeZone);
-        LOG.info("Loading data from source folder: {}", sourceFolder);
-        final CpnDataset dataset = CsvCpnDatasetLoader.loadDataset(sourceFolder, timeZoneId);
-        LOG.info("Indexing dataset in Elasticsearch.");
         final ESClient esClient = context.getEsClient();
-        esClient.bulkIndex(dataset.getTickets(), "tickets", "ticket", TicketRecord::getTicketId);
-        esClient.bulkIndex(dataset.getServiceEvents(), "services", "service", EventRecord::getEventId);
-        esClient.bulkIndex(dataset.getSyslogEvents(), "syslogs", "syslog", EventRecord::getEventId);
-        esClient.bulkIndex(dataset.getTraps(), "traps", "trap", EventRecord::getEventId);
-        LOG.info("Done indexing dataset in Elasticsearch.");
+        LOG.info("Streaming data from source folder into Elasticsearch: {}", sourceFolder);
+        final List<BulkIndexer.Stats> stats;
+        // Records are indexed as they are parsed, the indexers block when too many requests are in flight
+        try (BulkIndexer<TicketRecord> ticketIndexer = esClient.newBulkIndexer("tickets", "ticket", TicketRecord::getTicketId);
+             BulkIndexer<EventRecord> serviceIndexer = esClient.newBulkIndexer("services", "service", EventRecord::getEventId);
+             BulkIndexer<EventRecord> syslogIndexer = esClient.newBulkIndexer("syslogs", "syslog", EventRecord::getEventId);
+             BulkIndexer<TrapRecord> trapIndexer = esClient.newBulkIndexer("traps", "trap", EventRecord::getEventId);
+             CpnDatasetSnapshot.Writer snapshotWriter = snapshotFile != null ? CpnDatasetSnapshot.newWriter(snapshotFile) : null) {
+            // Each type of record is streamed from a single thread, so each indexer is only used by one thread
+            CsvCpnDatasetLoader.streamDataset(sourceFolder, timeZoneId, new CpnRecordHandler() {
+                @Override
+                public void handleTicket(TicketRecord ticket) {
+                    ticketIndexer.add(ticket);
+                    if (snapshotWriter != null) {
+                        snapshotWriter.handleTicket(ticket);
+                    }
+                }
+
+                @Override
+                public void handleServiceEvent(EventRecord serviceEvent) {
+                    serviceIndexer.add(serviceEvent);
+                    if (snapshotWriter != null) {
+                        snapshotWriter.handleServiceEvent(serviceEvent);
+                    }
+                }
+
+                @Override
+                public void handleSyslogEvent(EventRecord syslogEvent) {
+                    syslogIndexer.add(syslogEvent);
+                    if (snapshotWriter != null) {
+                        snapshotWriter.handleSyslogEvent(syslogEvent);
+                    }
+                }
+
+                @Override
+                public void handleTrap(TrapRecord trap) {
+                    trapIndexer.add(trap);
+                    if (snapshotWriter != null) {
+                        snapshotWriter.handleTrap(trap);
+                    }
+                }
+            }, numThreads);
+            if (snapshotWriter != null) {
+                LOG.info("Writing snapshot to: {}", snapshotFile);
+                snapshotWriter.finish();
+            }
+            // Wait for the requests in flight to complete before gathering the stats
+            ticketIndexer.flush();
+            serviceIndexer.flush();
+            syslogIndexer.flush();
+            trapIndexer.flush();
+            stats = Arrays.asList(ticketIndexer.getStats(), serviceIndexer.getStats(), syslogIndexer.getStats(), trapIndexer.getStats());
+        }
+        final long numIndexed = stats.stream().mapToLong(BulkIndexer.Stats::getNumIndexed).sum();
+        final long numFailed = stats.stream().mapToLong(BulkIndexer.Stats::getNumFailed).sum();
+        final long numRetried = stats.stream().mapToLong(BulkIndexer.Stats::getNumRetried).sum();
+        LOG.info("Done indexing dataset in Elasticsearch. Indexed: {}, failed: {}, retried: {}", numIndexed, numFailed, numRetried);
+        if (numFailed > 0) {
+            throw new Exception(String.format("Failed to index %d records.", numFailed));
+        }
     }
 
 }
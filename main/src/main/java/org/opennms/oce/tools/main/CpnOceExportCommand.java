@@ -32,8 +32,12 @@ import java.io.File;
 import java.io.IOException;
 
 import org.kohsuke.args4j.Option;
+import org.opennms.oce.tools.cpn.CpnDataset;
+import org.opennms.oce.tools.cpn.CpnDatasetSnapshot;
 import org.opennms.oce.tools.cpn.view.CpnDatasetView;
+import org.opennms.oce.tools.cpn.view.CpnDatasetViewer;
 import org.opennms.oce.tools.cpn.view.ESBackedCpnDatasetViewer;
+import org.opennms.oce.tools.cpn.view.StaticCpnDatasetViewer;
 import org.opennms.oce.tools.cpn2oce.OceGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -67,6 +71,9 @@ public class CpnOceExportCommand extends AbstractCommand {
     @Option(name="--include-ticket-with-one-alarm",usage="Include tickets with a single event/alarm")
     private boolean includeTicketsWithASingleAlarm = false;
 
+    @Option(name="--snapshot",usage="Read the CPN records from a snapshot written by cpn-csv-import instead of Elasticsearch")
+    private File snapshotFile;
+
     public CpnOceExportCommand() {
         super(NAME);
     }
@@ -90,8 +97,18 @@ public class CpnOceExportCommand extends AbstractCommand {
             throw new IOException("Failed to create the target directory: " + targetFolder);
         }
 
+        final CpnDatasetViewer viewer;
+        if (snapshotFile != null) {
+            LOG.info("Loading snapshot from: {}", snapshotFile);
+            final CpnDataset dataset = CpnDatasetSnapshot.read(snapshotFile);
+            viewer = new StaticCpnDatasetViewer(viewBuilder.build(), dataset.getTickets(), dataset.getServiceEvents(),
+                    dataset.getSyslogEvents(), dataset.getTraps());
+        } else {
+            viewer = new ESBackedCpnDatasetViewer(context.getEsClient(), viewBuilder.build());
+        }
+
         final OceGenerator oceGenerator = new OceGenerator.Builder()
-                .withViewer(new ESBackedCpnDatasetViewer(context.getEsClient(), viewBuilder.build()))
+                .withViewer(viewer)
                 .withTicketId(ticketId)
                 .withTargetFolder(targetFolder)
                 .withModelGenerationDisabled(modelGenerationDisabled)
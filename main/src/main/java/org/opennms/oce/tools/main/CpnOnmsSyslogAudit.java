@@ -28,22 +28,17 @@
 
 package org.opennms.oce.tools.main;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
 
 import org.kohsuke.args4j.Option;
 import org.opennms.core.xml.JaxbUtils;
 import org.opennms.netmgt.config.syslogd.SyslogdConfigurationGroup;
-import org.opennms.netmgt.config.syslogd.UeiMatch;
-import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.syslogd.ByteBufferParser;
-import org.opennms.netmgt.syslogd.ConvertToEvent;
 import org.opennms.netmgt.syslogd.RadixTreeSyslogParser;
 import org.opennms.netmgt.syslogd.SyslogMessage;
 import org.opennms.alec.integrations.opennms.config.CiscoSyslogMatchExtension;
@@ -65,10 +60,7 @@ public class CpnOnmsSyslogAudit extends AbstractCommand {
 
     private final ByteBufferParser<SyslogMessage> parser = RadixTreeSyslogParser.getRadixParser();
 
-    private final List<UeiMatch> ueiMatches = new ArrayList<>();
-
-    private final Method matchRegex = ConvertToEvent.class.getDeclaredMethod("matchRegex", String.class,
-            UeiMatch.class, EventBuilder.class, String.class);
+    private SyslogUeiMatcher ueiMatcher;
 
     private long failedHeaderParsingCount;
 
@@ -76,15 +68,14 @@ public class CpnOnmsSyslogAudit extends AbstractCommand {
 
     private long processedCount;
 
-    public CpnOnmsSyslogAudit() throws NoSuchMethodException {
+    public CpnOnmsSyslogAudit() {
         super(NAME);
-        matchRegex.setAccessible(true);
     }
 
     @Override
     public void doExec(Context context) throws Exception {
         ESDataProvider esDataProvider = new ESDataProvider(context.getEsClient());
-        ueiMatches.addAll(JaxbUtils.unmarshal(SyslogdConfigurationGroup.class,
+        ueiMatcher = new SyslogUeiMatcher(JaxbUtils.unmarshal(SyslogdConfigurationGroup.class,
                 CiscoSyslogMatchExtension.class.getClassLoader()
                         .getResourceAsStream("syslog/Cisco.ext.syslog.xml")).getUeiMatches());
         CommandUtils.DateRange range = CommandUtils.parseDateRange(from, to);
@@ -102,51 +93,57 @@ public class CpnOnmsSyslogAudit extends AbstractCommand {
 
     private void consumeSyslogBatch(List<EventRecord> batchOfSyslogs) {
         System.out.printf("Processed %d Syslog messages.\n", processedCount);
-        batchOfSyslogs.stream()
+        final List<String> detailedDescriptions = batchOfSyslogs.stream()
                 .filter(event -> !EventUtils.isClear(event))
-                .forEach(syslog -> {
-                    processedCount++;
-                    String detailedDescription = syslog.getDetailedDescription();
-                    ByteBuffer bytesToParse = ByteBuffer.wrap(detailedDescription.getBytes());
-                    CompletableFuture<SyslogMessage> parseFuture = parser.parse(bytesToParse);
-                    Optional<SyslogMessage> parsedSyslogOpt = Optional.empty();
-
-                    try {
-                        parsedSyslogOpt = Optional.of(parseFuture.get());
-                    } catch (InterruptedException | ExecutionException e) {
-                        System.out.printf("Exception while parsing: %s\n", detailedDescription);
-                        e.printStackTrace();
-                    }
+                .map(EventRecord::getDetailedDescription)
+                .collect(Collectors.toList());
+
+        // Submit all of the messages in the batch to the parser before waiting on any of the results
+        final List<CompletableFuture<SyslogMessage>> parseFutures = detailedDescriptions.stream()
+                .map(detailedDescription -> parser.parse(ByteBuffer.wrap(detailedDescription.getBytes())))
+                .collect(Collectors.toList());
+
+        for (int i = 0; i < detailedDescriptions.size(); i++) {
+            processedCount++;
+            final String detailedDescription = detailedDescriptions.get(i);
+            Optional<SyslogMessage> parsedSyslogOpt = Optional.empty();
+
+            try {
+                parsedSyslogOpt = Optional.of(parseFutures.get(i).get());
+            } catch (InterruptedException | ExecutionException e) {
+                System.out.printf("Exception while parsing: %s\n", detailedDescription);
+                e.printStackTrace();
+            }
 
-                    SyslogMessage parsedSyslog = parsedSyslogOpt.orElseThrow(() -> 
-                            new RuntimeException("Parser failed to return a parsed syslog message - syslog parser could not decode the message"));
-                    String parsedMessage = parsedSyslog.getMessage();
+            SyslogMessage parsedSyslog = parsedSyslogOpt.orElseThrow(() ->
+                    new RuntimeException("Parser failed to return a parsed syslog message - syslog parser could not decode the message"));
+            String parsedMessage = parsedSyslog.getMessage();
 
-                    if (!passedHeaderParsing(parsedMessage)) {
-                        failedHeaderParsingCount++;
+            if (!passedHeaderParsing(parsedMessage)) {
+                failedHeaderParsingCount++;
 
-                        if (!countOnly) {
-                            System.out.println("FAILED to parse header");
-                            System.out.println("Input:\n" + detailedDescription);
-                            System.out.println("Result:\n" + parsedSyslog + "\n");
-                        }
-                    }
+                if (!countOnly) {
+                    System.out.println("FAILED to parse header");
+                    System.out.println("Input:\n" + detailedDescription);
+                    System.out.println("Result:\n" + parsedSyslog + "\n");
+                }
+            }
+
+            try {
+                if (!passedBodyParsing(parsedMessage)) {
+                    failedBodyParsingCount++;
 
-                    try {
-                        if (!passedBodyParsing(parsedMessage)) {
-                            failedBodyParsingCount++;
-
-                            if (!countOnly) {
-                                System.out.println("FAILED to parse body - no corresponding event definition matched");
-                                System.out.println("Input:\n" + detailedDescription);
-                                System.out.println("Result:\n" + parsedSyslog + "\n");
-                            }
-                        }
-                    } catch (Exception e) {
-                        System.out.printf("Exception while parsing: %s\n", parsedMessage);
-                        e.printStackTrace();
+                    if (!countOnly) {
+                        System.out.println("FAILED to parse body - no corresponding event definition matched");
+                        System.out.println("Input:\n" + detailedDescription);
+                        System.out.println("Result:\n" + parsedSyslog + "\n");
                     }
-                });
+                }
+            } catch (Exception e) {
+                System.out.printf("Exception while parsing: %s\n", parsedMessage);
+                e.printStackTrace();
+            }
+        }
     }
 
     private boolean passedHeaderParsing(String syslogMessage) {
@@ -154,14 +151,7 @@ public class CpnOnmsSyslogAudit extends AbstractCommand {
         return syslogMessage.startsWith("%");
     }
 
-    private boolean passedBodyParsing(String syslogMessage) throws InvocationTargetException, IllegalAccessException {
-        for (UeiMatch ueiMatch : ueiMatches) {
-            if ((boolean) matchRegex.invoke(ConvertToEvent.class, syslogMessage, ueiMatch, new EventBuilder(),
-                    "discarduei")) {
-                return true;
-            }
-        }
-
-        return false;
+    private boolean passedBodyParsing(String syslogMessage) {
+        return ueiMatcher.matches(syslogMessage);
     }
 }
@@ -29,6 +29,7 @@
 package org.opennms.oce.tools.main;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Paths;
 import java.util.List;
 
@@ -122,6 +123,14 @@ public class OceTools {
             throw new Exception(String.format("Failed to load Elasticsearch configuration from %s.", esConfigFile), e);
         }
         final ESClient esClient = new ESClient(esConfiguration.getFirstCluster());
+        // Some commands keep running after execute() returns, so release the client on shutdown
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                esClient.close();
+            } catch (IOException e) {
+                LOG.warn("Error while closing the Elasticsearch client.", e);
+            }
+        }, "es-client-shutdown"));
         final Context context = new Context(esClient);
         cmd.execute(context);
     }
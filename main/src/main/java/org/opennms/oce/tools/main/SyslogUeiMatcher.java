@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.tools.main;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.opennms.netmgt.config.syslogd.UeiMatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Matches syslog messages against a list of {@link UeiMatch}es, with the same results as
+ * invoking ConvertToEvent.matchRegex for every one of these in turn.
+ *
+ * The expressions are compiled once, up front. Expressions that don't contain any regex
+ * metacharacters are grouped together and matched using {@link String#contains}.
+ */
+public class SyslogUeiMatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SyslogUeiMatcher.class);
+
+    private static final String REGEX_METACHARACTERS = "\\^$.|?*+()[]{}";
+
+    private static class Entry {
+        private final String literal;
+        private final Pattern pattern;
+
+        private Entry(String literal, Pattern pattern) {
+            this.literal = literal;
+            this.pattern = pattern;
+        }
+
+        private boolean find(String message) {
+            return literal != null ? message.contains(literal) : pattern.matcher(message).find();
+        }
+    }
+
+    private final List<Entry> literalEntries = new ArrayList<>();
+    private final List<Entry> patternEntries = new ArrayList<>();
+
+    public SyslogUeiMatcher(List<UeiMatch> ueiMatches) {
+        for (UeiMatch ueiMatch : ueiMatches) {
+            // ConvertToEvent.matchRegex treats all of the expressions as regular expressions,
+            // which we can replace with a substring search when there are no metacharacters
+            final String expression = Objects.requireNonNull(ueiMatch.getMatch().getExpression());
+            if (isLiteral(expression)) {
+                literalEntries.add(new Entry(expression, null));
+                continue;
+            }
+            try {
+                // Compiled with the same flags as ConvertToEvent
+                patternEntries.add(new Entry(null, Pattern.compile(expression, Pattern.MULTILINE)));
+            } catch (PatternSyntaxException e) {
+                LOG.warn("Ignoring UEI match for {} with invalid expression: {}", ueiMatch.getUei(), expression, e);
+            }
+        }
+    }
+
+    /**
+     * @param message syslog message to match
+     * @return true if any of the UEI matches match the given message, false otherwise
+     */
+    public boolean matches(String message) {
+        // The order doesn't matter here, so try the cheaper substring searches first
+        for (Entry entry : literalEntries) {
+            if (entry.find(message)) {
+                return true;
+            }
+        }
+        for (Entry entry : patternEntries) {
+            if (entry.find(message)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isLiteral(String expression) {
+        for (int i = 0; i < expression.length(); i++) {
+            if (REGEX_METACHARACTERS.indexOf(expression.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
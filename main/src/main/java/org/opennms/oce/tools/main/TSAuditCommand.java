@@ -31,8 +31,10 @@ package org.opennms.oce.tools.main;
 import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.kohsuke.args4j.Option;
+import org.opennms.oce.tools.NodeAndFactsGenerator;
 import org.opennms.oce.tools.cpn.ESDataProvider;
 import org.opennms.oce.tools.es.ESClient;
 import org.opennms.oce.tools.onms.client.EventClient;
@@ -56,6 +58,12 @@ public class TSAuditCommand extends AbstractCommand {
     @Option(name = "--rest", usage = "Spawn a REST server and serve the results after processing")
     private boolean restServerEnabled = false;
 
+    @Option(name = "--threads", usage = "Number of nodes for which the facts are gathered concurrently")
+    private int numThreads = NodeAndFactsGenerator.DEFAULT_NUM_THREADS;
+
+    @Option(name = "--node-timeout", usage = "Maximum number of seconds spent gathering the facts for a single node, 0 for no limit")
+    private long nodeTimeoutSeconds = 0;
+
     public TSAuditCommand() {
         super(NAME);
     }
@@ -69,7 +77,7 @@ public class TSAuditCommand extends AbstractCommand {
 
         CommandUtils.DateRange range = CommandUtils.parseDateRange(from, to);
         final TSAudit tsAudit = new TSAudit(esDataProvider, eventClient, range.getStart(), range.getEnd(), hostnames,
-                csvOutput, restServerEnabled);
+                csvOutput, restServerEnabled, numThreads, TimeUnit.SECONDS.toMillis(nodeTimeoutSeconds));
         tsAudit.run();
     }
 }
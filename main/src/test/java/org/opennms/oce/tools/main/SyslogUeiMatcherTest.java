@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.tools.main;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.alec.integrations.opennms.config.CiscoSyslogMatchExtension;
+import org.opennms.core.xml.JaxbUtils;
+import org.opennms.netmgt.config.syslogd.Match;
+import org.opennms.netmgt.config.syslogd.SyslogdConfigurationGroup;
+import org.opennms.netmgt.config.syslogd.UeiMatch;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.syslogd.ConvertToEvent;
+
+public class SyslogUeiMatcherTest {
+
+    private static final List<String> MESSAGES = Arrays.asList(
+            "%LINK-3-UPDOWN: Interface GigabitEthernet0/0/1, changed state to down",
+            "%LINK-3-UPDOWN: Interface GigabitEthernet0/0/1, changed state to up",
+            "%LINEPROTO-5-UPDOWN: Line protocol on Interface GigabitEthernet0/0/1, changed state to down",
+            "%BGP-5-ADJCHANGE: neighbor 10.0.0.1 Up",
+            "%BGP-5-ADJCHANGE: neighbor 10.0.0.1 Down Interface flap",
+            "%OSPF-5-ADJCHG: Process 1, Nbr 10.0.0.2 on GigabitEthernet0/0/2 from FULL to DOWN",
+            "%SYS-5-CONFIG_I: Configured from console by admin on vty0 (10.0.0.3)",
+            "%SYS-5-RESTART: System restarted --",
+            "%CDP-4-NATIVE_VLAN_MISMATCH: Native VLAN mismatch discovered on GigabitEthernet0/0/3 (1)",
+            "%SYS-2-MALLOCFAIL: Memory allocation of 65536 bytes failed from 0x1234, alignment 0\n%BGP-5-ADJCHANGE: neighbor 10.0.0.1 Up",
+            "%FAKE-1-NOTHING: This message should not match anything",
+            "Not a Cisco syslog message",
+            "");
+
+    private Method matchRegex;
+
+    @Before
+    public void setUp() throws NoSuchMethodException {
+        matchRegex = ConvertToEvent.class.getDeclaredMethod("matchRegex", String.class, UeiMatch.class,
+                EventBuilder.class, String.class);
+        matchRegex.setAccessible(true);
+    }
+
+    @Test
+    public void canMatchCiscoSyslogsLikeConvertToEvent() throws InvocationTargetException, IllegalAccessException {
+        final List<UeiMatch> ueiMatches = JaxbUtils.unmarshal(SyslogdConfigurationGroup.class,
+                CiscoSyslogMatchExtension.class.getClassLoader()
+                        .getResourceAsStream("syslog/Cisco.ext.syslog.xml")).getUeiMatches();
+        final SyslogUeiMatcher ueiMatcher = new SyslogUeiMatcher(ueiMatches);
+
+        final List<String> messages = new ArrayList<>(MESSAGES);
+        // Build messages around every expression, so that each of these has a chance to match
+        for (UeiMatch ueiMatch : ueiMatches) {
+            final String expression = ueiMatch.getMatch().getExpression();
+            messages.add(expression);
+            messages.add("%" + expression + " trailing text");
+        }
+
+        for (String message : messages) {
+            assertThat(message, ueiMatcher.matches(message), equalTo(matchesWithConvertToEvent(ueiMatches, message)));
+        }
+    }
+
+    @Test
+    public void canMatchLiteralRegexAndInvalidExpressionsLikeConvertToEvent() throws InvocationTargetException, IllegalAccessException {
+        final List<UeiMatch> ueiMatches = Arrays.asList(
+                createUeiMatch("uei.opennms.org/test/literal", "%SYS-5-RESTART"),
+                createUeiMatch("uei.opennms.org/test/regex", "^%BGP-5-ADJCHANGE: neighbor \\S+ Up$"),
+                createUeiMatch("uei.opennms.org/test/invalid", "%LINK-3-UPDOWN: (["));
+        final SyslogUeiMatcher ueiMatcher = new SyslogUeiMatcher(ueiMatches);
+
+        for (String message : MESSAGES) {
+            assertThat(message, ueiMatcher.matches(message), equalTo(matchesWithConvertToEvent(ueiMatches, message)));
+        }
+        assertThat(ueiMatcher.matches("%SYS-5-RESTART: System restarted --"), equalTo(true));
+        assertThat(ueiMatcher.matches("%BGP-5-ADJCHANGE: neighbor 10.0.0.1 Up"), equalTo(true));
+        assertThat(ueiMatcher.matches("%BGP-5-ADJCHANGE: neighbor 10.0.0.1 Down"), equalTo(false));
+        // The invalid expression is ignored, and doesn't match itself literally either
+        assertThat(ueiMatcher.matches("%LINK-3-UPDOWN: (["), equalTo(false));
+    }
+
+    private boolean matchesWithConvertToEvent(List<UeiMatch> ueiMatches, String message) throws InvocationTargetException, IllegalAccessException {
+        for (UeiMatch ueiMatch : ueiMatches) {
+            if ((boolean) matchRegex.invoke(ConvertToEvent.class, message, ueiMatch, new EventBuilder(), "discarduei")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static UeiMatch createUeiMatch(String uei, String expression) {
+        final Match match = new Match();
+        match.setType("regex");
+        match.setExpression(expression);
+        final UeiMatch ueiMatch = new UeiMatch();
+        ueiMatch.setUei(uei);
+        ueiMatch.setMatch(match);
+        return ueiMatch;
+    }
+}
@@ -32,6 +32,7 @@ import static java.util.stream.Collectors.groupingBy;
 import static org.elasticsearch.index.query.QueryBuilders.matchPhraseQuery;
 import static org.elasticsearch.index.query.QueryBuilders.termQuery;
 
+import java.io.File;
 import java.io.IOException;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
@@ -47,8 +48,19 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.OptionalDouble;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.elasticsearch.index.query.QueryBuilder;
@@ -57,6 +69,7 @@ import org.opennms.oce.tools.cpn.api.CpnEntityDao;
 import org.opennms.oce.tools.cpn.model.EventRecord;
 import org.opennms.oce.tools.cpn.model.TicketRecord;
 import org.opennms.oce.tools.cpn.model.TrapRecord;
+import org.opennms.oce.tools.es.Projection;
 import org.opennms.oce.tools.onms.alarmdto.AlarmDocumentDTO;
 import org.opennms.oce.tools.onms.client.ESEventDTO;
 import org.opennms.oce.tools.onms.client.api.OnmsEntityDao;
@@ -73,9 +86,26 @@ import org.opennms.oce.tools.tsaudit.TicketAndEvents;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 public class NodeAndFactsGenerator {
     private static final Logger LOG = LoggerFactory.getLogger(NodeAndFactsGenerator.class);
 
+    public static final int DEFAULT_NUM_THREADS = 4;
+
+    // Clock skew detection only needs to skip the clears and compare the time of the syslogs to the date in their message
+    public static final Projection CLOCK_SKEW_PROJECTION = Projection.includes("eventId", "severity", "time", "detailedDescription");
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactoryBuilder()
+            .setNameFormat("node-facts-%d")
+            .setDaemon(true)
+            .build();
+
+    private static final ThreadFactory WATCHDOG_THREAD_FACTORY = new ThreadFactoryBuilder()
+            .setNameFormat("node-facts-watchdog-%d")
+            .setDaemon(true)
+            .build();
+
     private final OnmsEntityDao onmsEntityDao;
     private final CpnEntityDao cpnEntityDao;
     private final ZonedDateTime start;
@@ -83,23 +113,31 @@ public class NodeAndFactsGenerator {
     private final List<String> hostnameSubstringsToFilter;
     private final StateCache stateCache;
     private final List<QueryBuilder> cpnEventExcludes;
+    private final int numThreads;
+    private final long nodeTimeoutMs;
 
     private final long startMs;
     private final long endMs;
 
     private NodeAndFactsGenerator(OnmsEntityDao onmsEntityDao, CpnEntityDao cpnEntityDao, ZonedDateTime start,
                                  ZonedDateTime end, List<String> hostnameSubstringsToFilter,
-                                 List<QueryBuilder> cpnEventExcludes) {
+                                 List<QueryBuilder> cpnEventExcludes, int numThreads, long nodeTimeoutMs,
+                                 File stateCacheFile) {
         this.onmsEntityDao = Objects.requireNonNull(onmsEntityDao);
         this.cpnEntityDao = Objects.requireNonNull(cpnEntityDao);
         this.start = Objects.requireNonNull(start);
         this.end = Objects.requireNonNull(end);
         this.hostnameSubstringsToFilter = Objects.requireNonNull(hostnameSubstringsToFilter);
         this.cpnEventExcludes = Objects.requireNonNull(cpnEventExcludes);
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("Number of threads must be strictly positive, got: " + numThreads);
+        }
+        this.numThreads = numThreads;
+        this.nodeTimeoutMs = nodeTimeoutMs;
         
         startMs = start.toInstant().toEpochMilli();
         endMs=end.toInstant().toEpochMilli();
-        stateCache = new StateCache(startMs, endMs);
+        stateCache = stateCacheFile != null ? new StateCache(stateCacheFile, startMs, endMs) : new StateCache(startMs, endMs);
     }
 
     public static class NodeAndFactsGeneratorBuilder {
@@ -109,6 +147,9 @@ public class NodeAndFactsGenerator {
         private ZonedDateTime end;
         private List<String> hostnameSubstringsToFilter = Collections.emptyList();
         private List<QueryBuilder> cpnEventExcludes = Collections.emptyList();
+        private int numThreads = DEFAULT_NUM_THREADS;
+        private long nodeTimeoutMs = 0;
+        private File stateCacheFile;
 
         private NodeAndFactsGeneratorBuilder() {
         }
@@ -143,8 +184,34 @@ public class NodeAndFactsGenerator {
             return this;
         }
 
+        /**
+         * Maximum number of nodes for which the facts are gathered concurrently.
+         */
+        public NodeAndFactsGeneratorBuilder setNumThreads(int numThreads) {
+            this.numThreads = numThreads;
+            return this;
+        }
+
+        /**
+         * Maximum amount of time spent gathering the facts for a single node,
+         * a value <= 0 disables the timeout.
+         */
+        public NodeAndFactsGeneratorBuilder setNodeTimeoutMs(long nodeTimeoutMs) {
+            this.nodeTimeoutMs = nodeTimeoutMs;
+            return this;
+        }
+
+        /**
+         * Database used to cache the node info, defaults to the one in the user's home directory.
+         */
+        public NodeAndFactsGeneratorBuilder setStateCacheFile(File stateCacheFile) {
+            this.stateCacheFile = stateCacheFile;
+            return this;
+        }
+
         public NodeAndFactsGenerator build() {
-            return new NodeAndFactsGenerator(onmsEntityDao, cpnEntityDao, start, end, hostnameSubstringsToFilter, cpnEventExcludes);
+            return new NodeAndFactsGenerator(onmsEntityDao, cpnEntityDao, start, end, hostnameSubstringsToFilter,
+                    cpnEventExcludes, numThreads, nodeTimeoutMs, stateCacheFile);
         }
     }
 
@@ -165,9 +232,19 @@ public class NodeAndFactsGenerator {
         return getNodesAndFacts(hostnames);
     }
 
+    /**
+     * Gathers the facts for the given hostnames.
+     *
+     * The node info lookups and the clock skew detection are run for up to numThreads nodes
+     * concurrently, and the event counts are retrieved in batches for all of the nodes at once.
+     * The results are always returned in the same order as they would be if the nodes were
+     * processed one after another.
+     *
+     * Nodes for which the facts could not be gathered, or not in time, are returned with a failure
+     * and are not processed any further.
+     */
     public List<NodeAndFacts> getNodesAndFacts(Set<String> hostnames) {
-        final List<NodeAndFacts> nodesAndFacts = new LinkedList<>();
-        // Build the initial objects from the set of hostname
+        final List<String> hostnamesToProcess = new ArrayList<>(hostnames.size());
         for (String hostname : hostnames) {
             // Apply the hostname filters (could be also done in the query above to improve performance)
             if (hostnameSubstringsToFilter.size() > 0) {
@@ -183,35 +260,32 @@ public class NodeAndFactsGenerator {
                     continue;
                 }
             }
-            nodesAndFacts.add(new NodeAndFacts(hostname));
+            hostnamesToProcess.add(hostname);
         }
 
-        for (NodeAndFacts nodeAndFacts : nodesAndFacts) {
+        final List<NodeAndFacts> nodesAndFacts = new LinkedList<>();
+        for (String hostname : hostnamesToProcess) {
+            final NodeAndFacts nodeAndFacts = new NodeAndFacts(hostname);
             // Store the current start/end range in the fact
             nodeAndFacts.setStart(start);
             nodeAndFacts.setEnd(end);
+            nodesAndFacts.add(nodeAndFacts);
+        }
 
-            // Now try and find *some* event for where the node label starts with the given hostname
-            findOpennmsNodeInfo(nodeAndFacts);
-
-            // Don't do any further processing if there is no node associated
-            if (!nodeAndFacts.hasOpennmsNode()) {
-                continue;
-            }
+        // Now try and find *some* event for where the node label starts with the given hostname
+        forEachNode(nodesAndFacts, this::findOpennmsNodeInfo, "finding the OpenNMS node info");
 
-            // Count the number of syslogs and traps received in CPN
-            nodeAndFacts.setNumCpnSyslogs(cpnEntityDao.getNumSyslogEvents(start, end, nodeAndFacts.getCpnHostname(), cpnEventExcludes));
-            nodeAndFacts.setNumCpnTraps(cpnEntityDao.getNumTrapEvents(start, end, nodeAndFacts.getCpnHostname(), cpnEventExcludes));
+        // Don't do any further processing if there is no node associated
+        final List<NodeAndFacts> nodesWithOpennmsNode = nodesAndFacts.stream()
+                .filter(NodeAndFacts::hasOpennmsNode)
+                .collect(Collectors.toList());
+        countEvents(nodesWithOpennmsNode);
 
-            // Count the number of syslogs and traps received in OpenNMS
-            nodeAndFacts.setNumOpennmsSyslogs(onmsEntityDao.getNumSyslogEvents(startMs, endMs, nodeAndFacts.getOpennmsNodeId()));
-            nodeAndFacts.setNumOpennmsTraps(onmsEntityDao.getNumTrapEvents(startMs, endMs, nodeAndFacts.getOpennmsNodeId()));
-
-            // Detect clock skew if we have 1+ syslog messages from both CPN and OpenNMS
-            if (nodeAndFacts.getNumCpnSyslogs() > 0 && nodeAndFacts.getNumOpennmsSyslogs() > 0) {
-                detectClockSkewUsingSyslogEvents(nodeAndFacts);
-            }
-        }
+        // Detect clock skew if we have 1+ syslog messages from both CPN and OpenNMS
+        final List<NodeAndFacts> nodesWithSyslogs = nodesWithOpennmsNode.stream()
+                .filter(n -> n.getNumCpnSyslogs() > 0 && n.getNumOpennmsSyslogs() > 0)
+                .collect(Collectors.toList());
+        forEachNode(nodesWithSyslogs, this::detectClockSkewUsingSyslogEvents, "detecting clock skew");
 
         // Sort
         nodesAndFacts.sort(Comparator.comparing(NodeAndFacts::shouldProcess)
@@ -222,35 +296,152 @@ public class NodeAndFactsGenerator {
         return nodesAndFacts;
     }
 
-    private void findOpennmsNodeInfo(NodeAndFacts nodeAndFacts) {
-        LOG.debug("Trying to find OpenNMS node info for hostname: {}", nodeAndFacts.getCpnHostname());
-        if (stateCache.findOpennmsNodeInfo(nodeAndFacts)) {
-            LOG.debug("Results successfully loaded from cache.");
+    /**
+     * Count the number of syslogs and traps received in CPN and OpenNMS for the given nodes.
+     *
+     * The counts are retrieved in batches for all of the nodes at once instead of issuing
+     * one request per count for every node.
+     */
+    private void countEvents(List<NodeAndFacts> nodesAndFacts) {
+        if (nodesAndFacts.isEmpty()) {
             return;
         }
+        final long startedAt = System.currentTimeMillis();
+        final Set<String> hostnames = new LinkedHashSet<>();
+        final Set<Integer> nodeIds = new LinkedHashSet<>();
+        for (NodeAndFacts nodeAndFacts : nodesAndFacts) {
+            hostnames.add(nodeAndFacts.getCpnHostname());
+            nodeIds.add(nodeAndFacts.getOpennmsNodeId());
+        }
+
+        final Map<String, Long> numCpnSyslogs = cpnEntityDao.getNumSyslogEventsByHostname(start, end, hostnames, cpnEventExcludes);
+        final Map<String, Long> numCpnTraps = cpnEntityDao.getNumTrapEventsByHostname(start, end, hostnames, cpnEventExcludes);
+        final Map<Integer, Long> numOpennmsSyslogs = onmsEntityDao.getNumSyslogEventsByNodeId(startMs, endMs, nodeIds);
+        final Map<Integer, Long> numOpennmsTraps = onmsEntityDao.getNumTrapEventsByNodeId(startMs, endMs, nodeIds);
+
+        for (NodeAndFacts nodeAndFacts : nodesAndFacts) {
+            nodeAndFacts.setNumCpnSyslogs(numCpnSyslogs.get(nodeAndFacts.getCpnHostname()));
+            nodeAndFacts.setNumCpnTraps(numCpnTraps.get(nodeAndFacts.getCpnHostname()));
+            nodeAndFacts.setNumOpennmsSyslogs(numOpennmsSyslogs.get(nodeAndFacts.getOpennmsNodeId()));
+            nodeAndFacts.setNumOpennmsTraps(numOpennmsTraps.get(nodeAndFacts.getOpennmsNodeId()));
+        }
+        LOG.info("Counted the events for {} nodes in {}ms.", nodesAndFacts.size(), System.currentTimeMillis() - startedAt);
+    }
 
-        final Optional<ESEventDTO> firstEvent = onmsEntityDao.findFirstEventForNodeLabelPrefix(startMs, endMs,
-                nodeAndFacts.getCpnHostname());
+    /**
+     * Apply the given processor to every node, using up to numThreads threads.
+     *
+     * The processor only computes the facts for the node, and returns the update to apply to it.
+     * The updates are applied from the calling thread, and only for the nodes that were processed
+     * in time: a node that timed out may still be processed in the background (requests that are
+     * in flight are not interrupted, and are only bounded by the client's read timeout), but its
+     * results are discarded.
+     *
+     * Nodes for which the processor failed, or timed out, are flagged as such instead of failing
+     * the whole activity.
+     */
+    private void forEachNode(List<NodeAndFacts> nodesAndFacts, Function<NodeAndFacts, Consumer<NodeAndFacts>> processor,
+                             String activity) {
+        final int numNodes = nodesAndFacts.size();
+        final int progressInterval = Math.max(1, numNodes / 20);
+        final AtomicInteger numCompleted = new AtomicInteger(0);
+        int numFailures = 0;
+        final long startedAt = System.currentTimeMillis();
+        LOG.info("Started {} for {} nodes using {} threads.", activity, numNodes, numThreads);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(numThreads, THREAD_FACTORY);
+        final ScheduledExecutorService watchdog = nodeTimeoutMs > 0 ?
+                Executors.newSingleThreadScheduledExecutor(WATCHDOG_THREAD_FACTORY) : null;
+        try {
+            final List<FutureTask<Consumer<NodeAndFacts>>> tasks = new ArrayList<>(numNodes);
+            for (NodeAndFacts nodeAndFacts : nodesAndFacts) {
+                final FutureTask<Consumer<NodeAndFacts>> task = new FutureTask<>(() -> processor.apply(nodeAndFacts));
+                tasks.add(task);
+                executor.execute(() -> {
+                    // Give up on the node if it takes too long, a cancelled task never yields its result
+                    final ScheduledFuture<?> timeout = watchdog != null ?
+                            watchdog.schedule(() -> task.cancel(true), nodeTimeoutMs, TimeUnit.MILLISECONDS) : null;
+                    try {
+                        task.run();
+                    } finally {
+                        if (timeout != null) {
+                            timeout.cancel(false);
+                        }
+                        final int completed = numCompleted.incrementAndGet();
+                        if (completed % progressInterval == 0 || completed == numNodes) {
+                            LOG.info("Done {} for {}/{} nodes.", activity, completed, numNodes);
+                        }
+                    }
+                });
+            }
+
+            // Wait for the nodes in the order in which they were submitted
+            for (int i = 0; i < numNodes; i++) {
+                final NodeAndFacts nodeAndFacts = nodesAndFacts.get(i);
+                final String hostname = nodeAndFacts.getCpnHostname();
+                try {
+                    tasks.get(i).get().accept(nodeAndFacts);
+                } catch (CancellationException e) {
+                    LOG.warn("Timed out after {}ms while {} for {}.", nodeTimeoutMs, activity, hostname);
+                    nodeAndFacts.setFailure(String.format("Timed out after %dms while %s.", nodeTimeoutMs, activity));
+                    numFailures++;
+                } catch (ExecutionException | RuntimeException e) {
+                    final Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+                    LOG.warn("Failed while {} for {}.", activity, hostname, cause);
+                    nodeAndFacts.setFailure(String.format("Failed while %s: %s", activity, cause));
+                    numFailures++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            executor.shutdownNow();
+            if (watchdog != null) {
+                watchdog.shutdownNow();
+            }
+        }
+
+        LOG.info("Done {} for {} nodes in {}ms with {} failures.", activity, numNodes,
+                System.currentTimeMillis() - startedAt, numFailures);
+    }
+
+    private Consumer<NodeAndFacts> findOpennmsNodeInfo(NodeAndFacts nodeAndFacts) {
+        final String hostname = nodeAndFacts.getCpnHostname();
+        LOG.debug("Trying to find OpenNMS node info for hostname: {}", hostname);
+        final NodeAndFacts cached = new NodeAndFacts(hostname);
+        if (stateCache.findOpennmsNodeInfo(cached)) {
+            LOG.debug("Results successfully loaded from cache.");
+            return n -> {
+                n.setOpennmsNodeId(cached.getOpennmsNodeId());
+                n.setOpennmsNodeLabel(cached.getOpennmsNodeLabel());
+            };
+        }
+
+        final Optional<ESEventDTO> firstEvent = onmsEntityDao.findFirstEventForNodeLabelPrefix(startMs, endMs, hostname);
+        final Integer nodeId = firstEvent.map(ESEventDTO::getNodeId).orElse(null);
+        final String nodeLabel = firstEvent.map(ESEventDTO::getNodeLabel).orElse(null);
         if (firstEvent.isPresent()) {
-            final ESEventDTO event = firstEvent.get();
-            nodeAndFacts.setOpennmsNodeId(event.getNodeId());
-            nodeAndFacts.setOpennmsNodeLabel(event.getNodeLabel());
-            LOG.debug("Matched {} with {} (id={}).", nodeAndFacts.getCpnHostname(), event.getNodeLabel(), event.getNodeId());
+            LOG.debug("Matched {} with {} (id={}).", hostname, nodeLabel, nodeId);
         } else {
-            LOG.debug("No match found for: {}", nodeAndFacts.getCpnHostname());
+            LOG.debug("No match found for: {}", hostname);
         }
-        // Save the results in the cache
-        stateCache.saveOpennmsNodeInfo(nodeAndFacts);
+        return n -> {
+            n.setOpennmsNodeId(nodeId);
+            n.setOpennmsNodeLabel(nodeLabel);
+            // Save the results in the cache
+            stateCache.saveOpennmsNodeInfo(n);
+        };
     }
 
-    private void detectClockSkewUsingSyslogEvents(NodeAndFacts nodeAndFacts) {
+    private Consumer<NodeAndFacts> detectClockSkewUsingSyslogEvents(NodeAndFacts nodeAndFacts) {
         LOG.debug("Detecting clock skew for hostname: {}", nodeAndFacts.getCpnHostname());
         final List<Long> deltas = new LinkedList<>();
         final AtomicReference<Date> minTimeRef = new AtomicReference<>(new Date());
         final AtomicReference<Date> maxTimeRef = new AtomicReference<>(new Date(0));
 
         // Retrieve syslog records for the given host
-        cpnEntityDao.getSyslogRecordsInRange(start, end, Arrays.asList(matchPhraseQuery("location", nodeAndFacts.getCpnHostname())), cpnEventExcludes,  syslogs -> {
+        cpnEntityDao.getSyslogRecordsInRange(start, end, Arrays.asList(matchPhraseQuery("location", nodeAndFacts.getCpnHostname())), cpnEventExcludes, CLOCK_SKEW_PROJECTION, syslogs -> {
             for (EventRecord syslog : syslogs) {
                 // Skip clears
                 if (EventUtils.isClear(syslog)) {
@@ -298,9 +489,13 @@ public class NodeAndFactsGenerator {
             }
         }
 
-        nodeAndFacts.setClockSkewStatus(clockSkewStatus);
-        nodeAndFacts.setClockSkew(clockSkew);
         LOG.debug("Clock skew results for hostname: {}, status: {}, skew: {}", nodeAndFacts.getCpnHostname(), clockSkewStatus, clockSkew);
+        final NodeAndFacts.ClockSkewStatus status = clockSkewStatus;
+        final Long skew = clockSkew;
+        return n -> {
+            n.setClockSkewStatus(status);
+            n.setClockSkew(skew);
+        };
     }
 
     public NodeAndEvents retrieveAndPairEvents(NodeAndFacts nodeAndFacts) {
@@ -45,6 +45,8 @@ import org.opennms.oce.tools.cpn.ESDataProvider;
 import org.opennms.oce.tools.cpn.model.EventRecord;
 import org.opennms.oce.tools.cpn.model.TrapRecord;
 import org.opennms.oce.tools.onms.model.api.SyslogEvent;
+import org.opennms.oce.tools.onms.model.matchers.SnmpTrapMatcherIndex;
+import org.opennms.oce.tools.onms.model.matchers.SyslogMatcherIndex;
 import org.opennms.oce.tools.onms.model.v1.SnmpTrapAlarmDefinitions;
 import org.opennms.oce.tools.onms.model.v1.SyslogAlarmDefinitions;
 
@@ -127,6 +129,8 @@ public class EventCoverageAudit {
                 .build();
         reporter.start(5, TimeUnit.SECONDS);
 
+        // Only evaluate the syslog matchers whose literals are found in the message
+        final SyslogMatcherIndex syslogMatcherIndex = new SyslogMatcherIndex(SyslogAlarmDefinitions.DEFS);
         esDataProvider.getSyslogRecordsInRange(start, end, records -> {
             for (EventRecord r : records) {
                 final SyslogEvent s = new SyslogEvent() {
@@ -141,7 +145,7 @@ public class EventCoverageAudit {
                     }
                 };
 
-                boolean matched = SyslogAlarmDefinitions.DEFS.stream().anyMatch(def -> def.matches(s));
+                boolean matched = syslogMatcherIndex.matches(s);
                 if (!matched && s.getMessage().contains("Cleared due to ")) {
                     // The syslog message has been mangled by CPN, ignore it
                    continue;
@@ -172,9 +176,11 @@ public class EventCoverageAudit {
                 }
             }
         });
+        // Index the trap matchers instead of evaluating all of the definitions for every trap
+        final SnmpTrapMatcherIndex trapMatcherIndex = new SnmpTrapMatcherIndex(SnmpTrapAlarmDefinitions.DEFS);
         esDataProvider.getTrapRecordsInRange(start, end, records -> {
             for (TrapRecord r : records) {
-                final boolean matched = SnmpTrapAlarmDefinitions.DEFS.stream().anyMatch(def -> def.matches(r));
+                final boolean matched = trapMatcherIndex.matches(r);
                 if (matched) {
                     trapsMatched.inc();
                 } else {
@@ -31,6 +31,7 @@ package org.opennms.oce.tools.onms;
 import java.io.IOException;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -39,7 +40,6 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -207,22 +207,24 @@ public class MatchCpnTicketsToOnmsSituationsAudit {
                 traps.size(), syslogs.size());
 
         boolean didMatchAllEvents = true;
+        final Map<String, ESEventDTO> onmsTrapsByCpnEventId = cpnToOnmsEventMatcher.matchCpnTrapsToOnmsTraps(traps);
         for (TrapRecord trap : traps) {
-            final Optional<ESEventDTO> event = cpnToOnmsEventMatcher.matchCpnTrapToOnmsTrap(trap);
-            if (!event.isPresent()) {
+            final ESEventDTO event = onmsTrapsByCpnEventId.get(trap.getEventId());
+            if (event == null) {
                 didMatchAllEvents = false;
                 break;
             } else {
-                cpnEventIdToOnmsEvents.put(trap.getEventId(), event.get());
+                cpnEventIdToOnmsEvents.put(trap.getEventId(), event);
             }
         }
+        final Map<String, ESEventDTO> onmsSyslogsByCpnEventId = cpnToOnmsEventMatcher.matchCpnSyslogsToOnmsSyslogs(syslogs);
         for (EventRecord syslog : syslogs) {
-            final Optional<ESEventDTO> event = cpnToOnmsEventMatcher.matchCpnSyslogToOnmsSyslog(syslog);
-            if (!event.isPresent()) {
+            final ESEventDTO event = onmsSyslogsByCpnEventId.get(syslog.getEventId());
+            if (event == null) {
                 didMatchAllEvents = false;
                 break;
             }  else {
-                cpnEventIdToOnmsEvents.put(syslog.getEventId(), event.get());
+                cpnEventIdToOnmsEvents.put(syslog.getEventId(), event);
             }
         }
 
@@ -245,39 +247,45 @@ public class MatchCpnTicketsToOnmsSituationsAudit {
                 .collect(Collectors.groupingBy(EventRecord::getAlarmId));
         System.out.println("CPN Alarm IDs: " + cpnEventsByAlarmId.keySet());
 
-        // Now, grab the first event for every alarm, and attempt to find the corresponding alarm in OpenNMS
-        Map<String,AlarmDocumentDTO> cpnAlarmIdToOnmsAlarm = new LinkedHashMap<>();
+        // Now, grab the first event for every alarm, and attempt to find the corresponding alarms in OpenNMS
+        final Map<String, ESEventDTO> cpnAlarmIdToFirstOnmsEvent = new LinkedHashMap<>();
         for (String cpnAlarmId : cpnEventsByAlarmId.keySet()) {
-
             final EventRecord firstCpnEvent = cpnEventsByAlarmId.get(cpnAlarmId).get(0);
             final ESEventDTO matchingOnmsEvent = cpnEventIdToOnmsEvents.get(firstCpnEvent.getEventId());
-            final Optional<AlarmDocumentDTO> alarm;
             if (matchingOnmsEvent == null) {
-                alarm = Optional.empty();
                 System.out.printf("NO MATCH FOR ALARM WITH CPN ID: %s - no matching event\n", cpnAlarmId);
             } else {
-                alarm = cpnToOnmsEventMatcher.getAlarmForEvent(matchingOnmsEvent);
-                if (!alarm.isPresent()) {
-                    System.out.printf("NO MATCH FOR ALARM WITH CPN ID: %s and ONMS event with id: %d\n", cpnAlarmId, matchingOnmsEvent.getId());
-                } else {
-                    System.out.printf("CPN alarm id: %s maps to ONMS alarm id: %d\n", cpnAlarmId, alarm.get().getId());
-                    cpnAlarmIdToOnmsAlarm.put(cpnAlarmId, alarm.get());
-                }
+                cpnAlarmIdToFirstOnmsEvent.put(cpnAlarmId, matchingOnmsEvent);
             }
-
         }
 
-        Map<Integer,AlarmDocumentDTO> onmsAlarmIdToSituation = new LinkedHashMap<>();
-        for (AlarmDocumentDTO onmsAlarm : cpnAlarmIdToOnmsAlarm.values()) {
-            if (onmsAlarmIdToSituation.containsKey(onmsAlarm.getId())) {
-                continue;
+        final Map<Integer, AlarmDocumentDTO> onmsEventIdToAlarm = cpnAlarmIdToFirstOnmsEvent.isEmpty() ? Collections.emptyMap()
+                : cpnToOnmsEventMatcher.getAlarmsForEvents(cpnAlarmIdToFirstOnmsEvent.values());
+        Map<String,AlarmDocumentDTO> cpnAlarmIdToOnmsAlarm = new LinkedHashMap<>();
+        for (Map.Entry<String, ESEventDTO> entry : cpnAlarmIdToFirstOnmsEvent.entrySet()) {
+            final String cpnAlarmId = entry.getKey();
+            final AlarmDocumentDTO alarm = onmsEventIdToAlarm.get(entry.getValue().getId());
+            if (alarm == null) {
+                System.out.printf("NO MATCH FOR ALARM WITH CPN ID: %s and ONMS event with id: %d\n", cpnAlarmId, entry.getValue().getId());
+            } else {
+                System.out.printf("CPN alarm id: %s maps to ONMS alarm id: %d\n", cpnAlarmId, alarm.getId());
+                cpnAlarmIdToOnmsAlarm.put(cpnAlarmId, alarm);
             }
+        }
 
-            final Optional<AlarmDocumentDTO> situation = cpnToOnmsEventMatcher.getSituationForAlarm(onmsAlarm);
-            if (!situation.isPresent()) {
-                System.out.printf("NO SITUATION FOUND FOR ONMS ALARM WITH ID: %d\n", onmsAlarm.getId());
+        final Map<Integer, AlarmDocumentDTO> onmsAlarmsById = new LinkedHashMap<>();
+        for (AlarmDocumentDTO onmsAlarm : cpnAlarmIdToOnmsAlarm.values()) {
+            onmsAlarmsById.putIfAbsent(onmsAlarm.getId(), onmsAlarm);
+        }
+        final Map<Integer, AlarmDocumentDTO> situationsByAlarmId = onmsAlarmsById.isEmpty() ? Collections.emptyMap()
+                : cpnToOnmsEventMatcher.getSituationsForAlarms(onmsAlarmsById.values());
+        Map<Integer,AlarmDocumentDTO> onmsAlarmIdToSituation = new LinkedHashMap<>();
+        for (Integer onmsAlarmId : onmsAlarmsById.keySet()) {
+            final AlarmDocumentDTO situation = situationsByAlarmId.get(onmsAlarmId);
+            if (situation == null) {
+                System.out.printf("NO SITUATION FOUND FOR ONMS ALARM WITH ID: %d\n", onmsAlarmId);
             } else {
-                onmsAlarmIdToSituation.put(onmsAlarm.getId(), situation.get());
+                onmsAlarmIdToSituation.put(onmsAlarmId, situation);
             }
         }
 
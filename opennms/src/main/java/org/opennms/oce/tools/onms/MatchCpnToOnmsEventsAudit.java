@@ -30,12 +30,11 @@ package org.opennms.oce.tools.onms;
 
 import java.io.IOException;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.opennms.oce.tools.cpn.ESDataProvider;
 import org.opennms.oce.tools.cpn.EventUtils;
@@ -93,25 +92,26 @@ public class MatchCpnToOnmsEventsAudit {
 
     public void match() throws IOException {
         esDataProvider.getSyslogRecordsInRange(start, end, records -> {
+            final List<EventRecord> syslogs = new ArrayList<>();
             for (EventRecord r : records) {
                 if (EventUtils.isClear(r)) {
                     System.out.println("Skipping clear.");
-                    return;
+                    break;
                 }
-                try {
-                    Optional<ESEventDTO> event = cpnToOnmsEventMatcher.matchCpnSyslogToOnmsSyslog(r);
-                    if (event.isPresent()) {
-                        logMatchForLocation(r.getLocation());
-                    } else {
-                        logMismatchForLocation(r.getLocation());
-                    }
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
+                syslogs.add(r);
+            }
+            final Map<String, ESEventDTO> events = cpnToOnmsEventMatcher.matchCpnSyslogsToOnmsSyslogs(syslogs);
+            for (EventRecord r : syslogs) {
+                if (events.containsKey(r.getEventId())) {
+                    logMatchForLocation(r.getLocation());
+                } else {
+                    logMismatchForLocation(r.getLocation());
                 }
             }
         });
 
         esDataProvider.getTrapRecordsInRange(start, end, records -> {
+            final List<TrapRecord> traps = new ArrayList<>();
             for (TrapRecord r : records) {
                 if (r.getTrapTypeOid() == null || "N/A".equals(r.getTrapTypeOid())) {
                     System.out.println("Skipping trap without type oid");
@@ -123,19 +123,18 @@ public class MatchCpnToOnmsEventsAudit {
                 }
                 if (EventUtils.isClear(r)) {
                     System.out.println("Skipping clear.");
-                    return;
+                    break;
                 }
-                try {
-                    Optional<ESEventDTO> event = cpnToOnmsEventMatcher.matchCpnTrapToOnmsTrap(r);
-                    if (event.isPresent()) {
-                        logMatchForLocation(r.getLocation());
-                        logMatchForTrapType(r.getTrapTypeOid());
-                    } else {
-                        logMismatchForLocation(r.getLocation());
-                        logMismatchForTrapType(r.getTrapTypeOid());
-                    }
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
+                traps.add(r);
+            }
+            final Map<String, ESEventDTO> events = cpnToOnmsEventMatcher.matchCpnTrapsToOnmsTraps(traps);
+            for (TrapRecord r : traps) {
+                if (events.containsKey(r.getEventId())) {
+                    logMatchForLocation(r.getLocation());
+                    logMatchForTrapType(r.getTrapTypeOid());
+                } else {
+                    logMismatchForLocation(r.getLocation());
+                    logMismatchForTrapType(r.getTrapTypeOid());
                 }
             }
         });
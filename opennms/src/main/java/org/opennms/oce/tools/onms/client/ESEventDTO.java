@@ -28,15 +28,33 @@
 
 package org.opennms.oce.tools.onms.client;
 
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 
+import org.opennms.oce.tools.es.Projection;
+
 import com.google.gson.annotations.SerializedName;
 
 public class ESEventDTO {
 
+    /**
+     * The fields of the event documents that are mapped by this class.
+     */
+    public static final String[] FIELDS = Arrays.stream(ESEventDTO.class.getDeclaredFields())
+            .map(f -> f.getAnnotation(SerializedName.class))
+            .filter(Objects::nonNull)
+            .map(SerializedName::value)
+            .toArray(String[]::new);
+
+    /**
+     * Only retrieves the fields that are mapped by this class.
+     */
+    public static final Projection PROJECTION = Projection.includes(FIELDS);
+
     @SerializedName("nodelabel")
     private String nodeLabel;
 
@@ -36,18 +36,24 @@ import static org.elasticsearch.index.query.QueryBuilders.prefixQuery;
 import static org.elasticsearch.index.query.QueryBuilders.rangeQuery;
 import static org.elasticsearch.index.query.QueryBuilders.termQuery;
 import static org.elasticsearch.index.query.QueryBuilders.termsQuery;
+import static org.elasticsearch.index.query.QueryBuilders.wildcardQuery;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import org.apache.lucene.search.join.ScoreMode;
@@ -58,66 +64,101 @@ import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.elasticsearch.search.sort.SortOrder;
 import org.opennms.oce.tools.es.ESClient;
 import org.opennms.oce.tools.es.ESClusterConfiguration;
+import org.opennms.oce.tools.es.SearchCursor;
 import org.opennms.oce.tools.onms.alarmdto.AlarmDocumentDTO;
 import org.opennms.oce.tools.onms.client.api.OnmsEntityDao;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.common.collect.Iterables;
 
 import io.searchbox.client.JestClient;
-import io.searchbox.client.JestResult;
 import io.searchbox.core.Search;
 import io.searchbox.core.SearchResult;
-import io.searchbox.core.SearchScroll;
 import io.searchbox.core.search.sort.Sort;
 import io.searchbox.params.Parameters;
 
 public class EventClient implements OnmsEntityDao {
     public static final int BATCH_SIZE = 100;
+    public static final int MAX_IDS_PER_QUERY = 1024;
+    // Every update of an alarm is stored as a separate document, so there are usually many more documents than ids
+    public static final int ALARMS_PAGE_SIZE = 1000;
 
+    // Fields used to break ties between hits when paging using search_after,
+    // every update of an alarm is stored as a separate document
+    private static final String[] EVENT_TIE_BREAKERS = {"id"};
+    private static final String[] ALARM_TIE_BREAKERS = {"id", "@update_time"};
+
+    private static final Pattern WILDCARD_SPECIAL_CHARS = Pattern.compile("[*?\\\\]");
+
+    private final ESClient esClient;
     private final ESClusterConfiguration esClusterConfiguration;
     private final JestClient client;
 
     public EventClient(ESClient client) {
+        this.esClient = client;
         this.esClusterConfiguration = client.getClusterConfiguration();
         this.client = client.getJestClient();
     }
 
     public Optional<AlarmDocumentDTO> findAlarmForEventWithId(Integer id) {
-        final SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
-        searchSourceBuilder.size(1);
-        searchSourceBuilder.query(matchQuery("last-event.id", Integer.toString(id)));
-        String query = searchSourceBuilder.toString();
-        final Search search = new Search.Builder(query)
-                .addIndex("opennms-alarms-*")
-                .addType(AlarmDocumentDTO.TYPE)
-                // Grab the earliest
-                .addSort(new Sort("@update-time", Sort.Sorting.ASC))
-                .build();
-        final SearchResult result;
-        try {
-            result = client.execute(search);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        if (!result.isSucceeded()) {
-            throw new RuntimeException(result.getErrorMessage());
-        }
+        return findEarliestAlarm(termQuery("last_event.id", id));
+    }
 
-        final List<SearchResult.Hit<AlarmDocumentDTO, Void>> hits = result.getHits(AlarmDocumentDTO.class);
-        return hits.stream().map(h -> h.source).findFirst();
+    /**
+     * Finds the earliest alarm document that was last updated by each of the given events.
+     *
+     * @param ids event ids
+     * @return alarms keyed by event id, events for which no alarm was found are omitted
+     */
+    public Map<Integer, AlarmDocumentDTO> findAlarmsForEventsWithIds(Collection<Integer> ids) {
+        final Map<Integer, AlarmDocumentDTO> alarmsByEventId = new LinkedHashMap<>();
+        for (List<Integer> batch : Iterables.partition(new LinkedHashSet<>(ids), MAX_IDS_PER_QUERY)) {
+            final Set<Integer> eventIds = new HashSet<>(batch);
+            final Search search = getEarliestAlarmsSearch(termsQuery("last_event.id", eventIds), ALARMS_PAGE_SIZE)
+                    .setParameter(Parameters.SCROLL, "5m")
+                    .build();
+            scroll(search, AlarmDocumentDTO.class, alarms -> {
+                for (AlarmDocumentDTO alarm : alarms) {
+                    if (alarm.getLastEvent() != null && eventIds.contains(alarm.getLastEvent().getId())) {
+                        alarmsByEventId.putIfAbsent(alarm.getLastEvent().getId(), alarm);
+                    }
+                }
+            }, ALARM_TIE_BREAKERS);
+        }
+        return alarmsByEventId;
     }
 
     public Optional<AlarmDocumentDTO> findSituationForAlarmWithId(Integer id) {
-        final SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
-        searchSourceBuilder.size(1);
-        searchSourceBuilder.query(matchQuery("related-alarm-ids", Integer.toString(id)));
-        final Search search = new Search.Builder(searchSourceBuilder.toString())
-                .addIndex("opennms-alarms-*")
-                .addType(AlarmDocumentDTO.TYPE)
-                // Grab the earliest
-                .addSort(new Sort("@update-time", Sort.Sorting.ASC))
-                .build();
+        return findEarliestAlarm(termQuery("related_alarm_ids", id));
+    }
+
+    /**
+     * Finds the earliest situation document that relates each of the given alarms.
+     *
+     * @param ids alarm ids
+     * @return situations keyed by alarm id, alarms for which no situation was found are omitted
+     */
+    public Map<Integer, AlarmDocumentDTO> findSituationsForAlarmsWithIds(Collection<Integer> ids) {
+        final Map<Integer, AlarmDocumentDTO> situationsByAlarmId = new LinkedHashMap<>();
+        for (List<Integer> batch : Iterables.partition(new LinkedHashSet<>(ids), MAX_IDS_PER_QUERY)) {
+            final Set<Integer> alarmIds = new HashSet<>(batch);
+            final Search search = getEarliestAlarmsSearch(termsQuery("related_alarm_ids", alarmIds), ALARMS_PAGE_SIZE)
+                    .setParameter(Parameters.SCROLL, "5m")
+                    .build();
+            scroll(search, AlarmDocumentDTO.class, situations -> {
+                for (AlarmDocumentDTO situation : situations) {
+                    for (Integer alarmId : situation.getRelatedAlarmIds()) {
+                        if (alarmIds.contains(alarmId)) {
+                            situationsByAlarmId.putIfAbsent(alarmId, situation);
+                        }
+                    }
+                }
+            }, ALARM_TIE_BREAKERS);
+        }
+        return situationsByAlarmId;
+    }
+
+    private Optional<AlarmDocumentDTO> findEarliestAlarm(QueryBuilder queryBuilder) {
+        final Search search = getEarliestAlarmsSearch(queryBuilder, 1).build();
         final SearchResult result;
         try {
             result = client.execute(search);
@@ -127,9 +168,18 @@ public class EventClient implements OnmsEntityDao {
         if (!result.isSucceeded()) {
             throw new RuntimeException(result.getErrorMessage());
         }
+        return OnmsJsonCodec.getCodec().decodeSources(result.getJsonObject(), AlarmDocumentDTO.class).stream().findFirst();
+    }
 
-        final List<SearchResult.Hit<AlarmDocumentDTO, Void>> hits = result.getHits(AlarmDocumentDTO.class);
-        return hits.stream().map(h -> h.source).findFirst();
+    private Search.Builder getEarliestAlarmsSearch(QueryBuilder queryBuilder, int size) {
+        final SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
+        searchSourceBuilder.size(size);
+        searchSourceBuilder.query(queryBuilder);
+        return new Search.Builder(searchSourceBuilder.toString())
+                .addIndex(esClusterConfiguration.getOpennmsAlarmIndex())
+                .addType(AlarmDocumentDTO.TYPE)
+                // The documents are visited from the earliest to the latest
+                .addSort(new Sort("@update_time", Sort.Sorting.ASC));
     }
 
     public Optional<ESEventDTO> findBestSyslogMessageMatching(long timestamp, String hostname, String substringInMessage) throws IOException {
@@ -168,6 +218,7 @@ public class EventClient implements OnmsEntityDao {
             boolQuery.must(includeQuery);
         }
         searchSourceBuilder.query(boolQuery);
+        ESEventDTO.PROJECTION.applyTo(searchSourceBuilder);
         String query = searchSourceBuilder.toString();
         final Search search = new Search.Builder(query)
                 .addIndex(esClusterConfiguration.getOpennmsEventIndex())
@@ -176,24 +227,26 @@ public class EventClient implements OnmsEntityDao {
                 .build();
 
         final List<ESEventDTO> matchedEvents = new ArrayList<>();
-        scroll(search, ESEventDTO.class, matchedEvents::addAll);
+        scroll(search, ESEventDTO.class, matchedEvents::addAll, EVENT_TIE_BREAKERS);
         return matchedEvents;
     }
 
     public List<ESEventDTO> getSyslogEvents(long startMs, long endMs, String hostname, String group) throws IOException {
-        return getSyslogEvents(startMs, endMs, Collections.emptyList()).stream()
-                .filter(event -> { // FIXME: Should be done in query instead
-                    if (event.getNodeLabel() == null || !event.getNodeLabel().contains(hostname)) {
-                        return false;
-                    }
-                    if (event.getSyslogMessage() != null && event.getSyslogMessage().contains(group)) {
-                        return true;
-                    }
-                    return false;
-                })
+        return getSyslogEvents(startMs, endMs, Collections.singletonList(getNodeLabelContainsQuery(hostname))).stream()
+                // The message is matched here, since it may be mapped as text or as a keyword
+                .filter(event -> event.getNodeLabel() != null && event.getNodeLabel().contains(hostname)
+                        && event.getSyslogMessage() != null && event.getSyslogMessage().contains(group))
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Matches the events for which the node label contains the given hostname, the node label
+     * is mapped as a keyword.
+     */
+    public static QueryBuilder getNodeLabelContainsQuery(String hostname) {
+        return wildcardQuery("nodelabel", "*" + WILDCARD_SPECIAL_CHARS.matcher(hostname).replaceAll("\\\\$0") + "*");
+    }
+
     @Override
     public List<ESEventDTO> getSyslogEvents(long startMs, long endMs, List<QueryBuilder> includeQueries) {
         SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
@@ -205,6 +258,7 @@ public class EventClient implements OnmsEntityDao {
             boolQuery.must(includeQuery);
         }
         searchSourceBuilder.query(boolQuery);
+        ESEventDTO.PROJECTION.applyTo(searchSourceBuilder);
         final Search search = new Search.Builder(searchSourceBuilder.toString())
                 .addIndex(esClusterConfiguration.getOpennmsEventIndex())
                 .addSort(new Sort("@timestamp"))
@@ -212,7 +266,7 @@ public class EventClient implements OnmsEntityDao {
                 .build();
 
         final List<ESEventDTO> matchedEvents = new ArrayList<>();
-        scroll(search, ESEventDTO.class, matchedEvents::addAll);
+        scroll(search, ESEventDTO.class, matchedEvents::addAll, EVENT_TIE_BREAKERS);
         return matchedEvents;
     }
 
@@ -224,6 +278,7 @@ public class EventClient implements OnmsEntityDao {
         searchSourceBuilder.query(boolQuery()
                 .must(prefixQuery("nodelabel", nodeLabelPrefix))
                 .must(rangeQuery("@timestamp").gte(startMs).lte(endMs).includeLower(true).includeUpper(true).format("epoch_millis")));
+        ESEventDTO.PROJECTION.applyTo(searchSourceBuilder);
         final Search search = new Search.Builder(searchSourceBuilder.toString())
                 .addIndex(esClusterConfiguration.getOpennmsEventIndex())
                 .addSort(new Sort("@timestamp"))
@@ -231,7 +286,7 @@ public class EventClient implements OnmsEntityDao {
                 .build();
 
         final List<ESEventDTO> matchedEvents = new ArrayList<>();
-        scroll(search, ESEventDTO.class, matchedEvents::addAll);
+        scroll(search, ESEventDTO.class, matchedEvents::addAll, EVENT_TIE_BREAKERS);
         return matchedEvents.stream().findFirst();
     }
 
@@ -248,7 +303,7 @@ public class EventClient implements OnmsEntityDao {
                 .build();
 
         final List<AlarmDocumentDTO> situations = new ArrayList<>();
-        scroll(search, AlarmDocumentDTO.class, situations::addAll);
+        scroll(search, AlarmDocumentDTO.class, situations::addAll, ALARM_TIE_BREAKERS);
         return situations;
     }
 
@@ -263,7 +318,7 @@ public class EventClient implements OnmsEntityDao {
                 .build();
 
         final List<AlarmDocumentDTO> situations = new ArrayList<>();
-        scroll(search, AlarmDocumentDTO.class, situations::addAll);
+        scroll(search, AlarmDocumentDTO.class, situations::addAll, ALARM_TIE_BREAKERS);
         return situations.stream().findFirst();
     }
 
@@ -276,19 +331,20 @@ public class EventClient implements OnmsEntityDao {
                 .setParameter(Parameters.SCROLL, "5m")
                 .build();
 
-        scroll(search, AlarmDocumentDTO.class, callback);
+        scroll(search, AlarmDocumentDTO.class, callback, ALARM_TIE_BREAKERS);
     }
 
     public void getEvents(List<Integer> eventIds, Consumer<List<ESEventDTO>> callback) throws IOException {
         SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
         searchSourceBuilder.query(QueryBuilders.boolQuery()
                 .must(termsQuery("id", eventIds)));
+        ESEventDTO.PROJECTION.applyTo(searchSourceBuilder);
         final Search search = new Search.Builder(searchSourceBuilder.toString())
                 .addIndex(esClusterConfiguration.getOpennmsEventIndex())
                 .setParameter(Parameters.SCROLL, "5m")
                 .build();
 
-        scroll(search, ESEventDTO.class, callback);
+        scroll(search, ESEventDTO.class, callback, EVENT_TIE_BREAKERS);
     }
 
     @Override
@@ -304,7 +360,7 @@ public class EventClient implements OnmsEntityDao {
                 .build();
 
         final List<AlarmDocumentDTO> situations = new ArrayList<>();
-        scroll(search, AlarmDocumentDTO.class, situations::addAll);
+        scroll(search, AlarmDocumentDTO.class, situations::addAll, ALARM_TIE_BREAKERS);
         return situations;
     }
 
@@ -318,19 +374,18 @@ public class EventClient implements OnmsEntityDao {
         return getNumEventsForMatching(startMs, endMs, nodeId, nestedQuery("p_oids", boolQuery().must(existsQuery("p_oids")), ScoreMode.None));
     }
 
-    public long getNumEventsForMatching(long startMs, long endMs, int nodeId, QueryBuilder queryBuilder) {
-        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
-        searchSourceBuilder.sort("@timestamp", SortOrder.ASC);
-        searchSourceBuilder.size(0); // we don't need the results, only the count
-        searchSourceBuilder.query(boolQuery()
-                .must(termQuery("nodeid", nodeId))
-                .must(queryBuilder)
-                .must(rangeQuery("@timestamp").gte(startMs).lte(endMs).includeLower(true).includeUpper(true).format("epoch_millis")));
-        final Search search = new Search.Builder(searchSourceBuilder.toString())
-                .addIndex(esClusterConfiguration.getOpennmsEventIndex())
-                .addSort(new Sort("@timestamp"))
-                .build();
+    @Override
+    public Map<Integer, Long> getNumSyslogEventsByNodeId(long startMs, long endMs, Set<Integer> nodeIds) {
+        return getNumEventsByNodeIdMatching(startMs, endMs, nodeIds, termQuery("eventsource", "syslogd"));
+    }
 
+    @Override
+    public Map<Integer, Long> getNumTrapEventsByNodeId(long startMs, long endMs, Set<Integer> nodeIds) {
+        return getNumEventsByNodeIdMatching(startMs, endMs, nodeIds, nestedQuery("p_oids", boolQuery().must(existsQuery("p_oids")), ScoreMode.None));
+    }
+
+    public long getNumEventsForMatching(long startMs, long endMs, int nodeId, QueryBuilder queryBuilder) {
+        final Search search = getCountSearch(startMs, endMs, nodeId, queryBuilder);
         SearchResult result = null;
         try {
             result = client.execute(search);
@@ -344,41 +399,33 @@ public class EventClient implements OnmsEntityDao {
         return result.getTotal();
     }
 
-    private <T> void scroll(Search search, Class<T> clazz, Consumer<List<T>> callback) {
-        try {
-            JestResult result = client.execute(search);
-            while(true) {
-                if (!result.isSucceeded()) {
-                    throw new RuntimeException(result.getErrorMessage());
-                }
-
-                Gson gson = new GsonBuilder()
-                        .registerTypeAdapter(Date.class, new DateTimeTypeConverter()).create();
-
-                // Cast the result to a search result for easy access to the hits
-                SearchResult searchResult = new SearchResult(gson);
-                searchResult.setJsonObject(result.getJsonObject());
-                searchResult.setPathToResult(result.getPathToResult());
-                List<SearchResult.Hit<T, Void>> hits = searchResult.getHits(clazz);
-                if (hits.size() < 1) {
-                    break;
-                }
+    /**
+     * Count the events for many nodes at once, using multi-search requests.
+     */
+    public Map<Integer, Long> getNumEventsByNodeIdMatching(long startMs, long endMs, Set<Integer> nodeIds, QueryBuilder queryBuilder) {
+        final Map<Integer, Search> searches = new LinkedHashMap<>();
+        for (Integer nodeId : nodeIds) {
+            searches.put(nodeId, getCountSearch(startMs, endMs, nodeId, queryBuilder));
+        }
+        return esClient.count(searches);
+    }
 
-                // Issue the callback
-                callback.accept(hits.stream().map(h -> h.source).collect(Collectors.toList()));
+    private Search getCountSearch(long startMs, long endMs, int nodeId, QueryBuilder queryBuilder) {
+        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
+        searchSourceBuilder.size(0); // we don't need the results, only the count
+        searchSourceBuilder.query(boolQuery()
+                .must(termQuery("nodeid", nodeId))
+                .must(queryBuilder)
+                .must(rangeQuery("@timestamp").gte(startMs).lte(endMs).includeLower(true).includeUpper(true).format("epoch_millis")));
+        return new Search.Builder(searchSourceBuilder.toString())
+                .addIndex(esClusterConfiguration.getOpennmsEventIndex())
+                .build();
+    }
 
-                // Scroll
-                if (!result.getJsonObject().has("_scroll_id")) {
-                    return;
-                }
-                String scrollId = result.getJsonObject().getAsJsonPrimitive("_scroll_id").getAsString();
-                SearchScroll scroll = new SearchScroll.Builder(scrollId, "5m").build();
-                result = client.execute(scroll);
-            }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    private <T> void scroll(Search search, Class<T> clazz, Consumer<List<T>> callback, String... tieBreakers) {
+        try (SearchCursor<T> cursor = esClient.openCursor(search, OnmsJsonCodec.getGson(), clazz, tieBreakers)) {
+            cursor.forEachPage(callback);
         }
-
     }
 
 }
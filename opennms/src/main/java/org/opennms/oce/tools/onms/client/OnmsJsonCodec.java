@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.tools.onms.client;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.opennms.oce.tools.es.JsonCodec;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Codec for the OpenNMS event and alarm documents stored in Elasticsearch.
+ *
+ * Events are read using an adapter that only decodes the fields we map and skips
+ * over the others, since the event documents carry many parameters. The fields are
+ * looked up by their {@link SerializedName}, like {@link ESEventDTO#FIELDS}.
+ */
+public class OnmsJsonCodec {
+
+    private static final JsonCodec CODEC = JsonCodec.newBuilder()
+            .registerTypeAdapter(Date.class, new DateTimeTypeConverter())
+            .registerTypeAdapterFactory(new EventAdapterFactory())
+            .build();
+
+    private OnmsJsonCodec() {
+    }
+
+    public static JsonCodec getCodec() {
+        return CODEC;
+    }
+
+    public static Gson getGson() {
+        return CODEC.getGson();
+    }
+
+    private static class EventAdapterFactory implements TypeAdapterFactory {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            if (type.getRawType() != ESEventDTO.class) {
+                return null;
+            }
+            return (TypeAdapter<T>) new EventAdapter(gson, (TypeAdapter<ESEventDTO>) gson.getDelegateAdapter(this, type));
+        }
+    }
+
+    private static class EventAdapter extends TypeAdapter<ESEventDTO> {
+        private final TypeAdapter<ESEventDTO> delegate;
+        private final Map<String, BoundField> fields = new HashMap<>();
+
+        private EventAdapter(Gson gson, TypeAdapter<ESEventDTO> delegate) {
+            this.delegate = delegate;
+            // Build the table once from the same annotations that are used to write the events
+            for (Field field : ESEventDTO.class.getDeclaredFields()) {
+                final SerializedName name = field.getAnnotation(SerializedName.class);
+                if (name != null) {
+                    field.setAccessible(true);
+                    fields.put(name.value(), new BoundField(field, gson.getAdapter(TypeToken.get(field.getGenericType()))));
+                }
+            }
+        }
+
+        @Override
+        public void write(JsonWriter out, ESEventDTO value) throws IOException {
+            delegate.write(out, value);
+        }
+
+        @Override
+        public ESEventDTO read(JsonReader in) throws IOException {
+            final ESEventDTO event = new ESEventDTO();
+            in.beginObject();
+            while (in.hasNext()) {
+                final BoundField field = fields.get(in.nextName());
+                if (field != null) {
+                    field.read(in, event);
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return event;
+        }
+    }
+
+    private static class BoundField {
+        private final Field field;
+        private final TypeAdapter<?> adapter;
+
+        private BoundField(Field field, TypeAdapter<?> adapter) {
+            this.field = field;
+            this.adapter = adapter;
+        }
+
+        private void read(JsonReader in, ESEventDTO event) throws IOException {
+            final Object value = adapter.read(in);
+            try {
+                field.set(event, value);
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
@@ -29,8 +29,11 @@
 package org.opennms.oce.tools.onms.client.api;
 
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import org.elasticsearch.index.query.QueryBuilder;
 import org.opennms.oce.tools.onms.alarmdto.AlarmDocumentDTO;
@@ -47,6 +50,24 @@ public class EmptyOnmsEntityDao implements OnmsEntityDao {
         return 0;
     }
 
+    @Override
+    public Map<Integer, Long> getNumSyslogEventsByNodeId(long startMs, long endMs, Set<Integer> nodeIds) {
+        final Map<Integer, Long> counts = new LinkedHashMap<>();
+        for (Integer nodeId : nodeIds) {
+            counts.put(nodeId, getNumSyslogEvents(startMs, endMs, nodeId));
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<Integer, Long> getNumTrapEventsByNodeId(long startMs, long endMs, Set<Integer> nodeIds) {
+        final Map<Integer, Long> counts = new LinkedHashMap<>();
+        for (Integer nodeId : nodeIds) {
+            counts.put(nodeId, getNumTrapEvents(startMs, endMs, nodeId));
+        }
+        return counts;
+    }
+
     @Override
     public Optional<ESEventDTO> findFirstEventForNodeLabelPrefix(long startMs, long endMs, String nodeLabelPrefix) {
         return Optional.empty();
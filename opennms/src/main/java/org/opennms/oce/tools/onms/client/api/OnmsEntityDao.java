@@ -29,7 +29,9 @@
 package org.opennms.oce.tools.onms.client.api;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import org.elasticsearch.index.query.QueryBuilder;
 import org.opennms.oce.tools.onms.alarmdto.AlarmDocumentDTO;
@@ -41,6 +43,11 @@ public interface OnmsEntityDao {
 
     long getNumTrapEvents(long startMs, long endMs, int nodeId);
 
+    // Batched variants of the counts above, keyed by node id
+    Map<Integer, Long> getNumSyslogEventsByNodeId(long startMs, long endMs, Set<Integer> nodeIds);
+
+    Map<Integer, Long> getNumTrapEventsByNodeId(long startMs, long endMs, Set<Integer> nodeIds);
+
     Optional<ESEventDTO> findFirstEventForNodeLabelPrefix(long startMs, long endMs, String nodeLabelPrefix);
     
     List<ESEventDTO> getTrapEvents(long startMs, long endMs, List<QueryBuilder> includeQueries);
@@ -29,9 +29,12 @@
 package org.opennms.oce.tools.onms.match;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
 import java.util.Optional;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import org.opennms.oce.tools.cpn.EventUtils;
 import org.opennms.oce.tools.cpn.model.EventRecord;
@@ -45,20 +48,27 @@ import io.searchbox.client.JestClient;
 
 public class CpnToOnmsEventMatcher {
 
+    private static final Pattern SYSLOG_MESSAGE_PATTERN = Pattern.compile(".*?%.*?\\s*:\\s*(.*)$");
+
     private final EventClient eventClient;
+    private final WindowedEventMatcher windowedEventMatcher;
 
     public CpnToOnmsEventMatcher(ESClient client) {
         this.eventClient = new EventClient(client);
+        this.windowedEventMatcher = new WindowedEventMatcher(eventClient);
     }
 
-    public Optional<ESEventDTO> matchCpnSyslogToOnmsSyslog(EventRecord syslog) throws IOException {
-        final String hostname = EventUtils.getNodeLabelFromLocation(syslog.getLocation());
-        final Pattern p = Pattern.compile(".*?%.*?\\s*:\\s*(.*)$");
-        final Matcher m = p.matcher(syslog.getDetailedDescription());
+    static String getSubstringToMatch(EventRecord syslog) {
+        final Matcher m = SYSLOG_MESSAGE_PATTERN.matcher(syslog.getDetailedDescription());
         if (!m.matches()) {
             throw new IllegalStateException("ABC: " + syslog.getDetailedDescription());
         }
-        final String substringToMatch = m.group(1);
+        return m.group(1);
+    }
+
+    public Optional<ESEventDTO> matchCpnSyslogToOnmsSyslog(EventRecord syslog) throws IOException {
+        final String hostname = EventUtils.getNodeLabelFromLocation(syslog.getLocation());
+        final String substringToMatch = getSubstringToMatch(syslog);
 
         System.out.printf("Trying to match syslog (id=%s) at %s (%d) for: '%s' (hostname='%s') with substring: %s\n",
                 syslog.getEventId(),
@@ -92,6 +102,26 @@ public class CpnToOnmsEventMatcher {
         return event;
     }
 
+    /**
+     * @return the matching OpenNMS events keyed by CPN event id, syslogs without a match are omitted
+     */
+    public Map<String, ESEventDTO> matchCpnSyslogsToOnmsSyslogs(Collection<EventRecord> syslogs) {
+        System.out.printf("Trying to match %d syslogs.\n", syslogs.size());
+        final Map<String, ESEventDTO> events = windowedEventMatcher.matchSyslogs(syslogs);
+        System.out.printf("Found matches for %d out of %d syslogs.\n", events.size(), syslogs.size());
+        return events;
+    }
+
+    /**
+     * @return the matching OpenNMS events keyed by CPN event id, traps without a match are omitted
+     */
+    public Map<String, ESEventDTO> matchCpnTrapsToOnmsTraps(Collection<TrapRecord> traps) {
+        System.out.printf("Trying to match %d traps.\n", traps.size());
+        final Map<String, ESEventDTO> events = windowedEventMatcher.matchTraps(traps);
+        System.out.printf("Found matches for %d out of %d traps.\n", events.size(), traps.size());
+        return events;
+    }
+
     public Optional<AlarmDocumentDTO> getAlarmForEvent(ESEventDTO event) {
         System.out.printf("Trying to match alarm for event with id: %d\n", event.getId());
         Optional<AlarmDocumentDTO> alarm =  eventClient.findAlarmForEventWithId(event.getId());
@@ -116,4 +146,28 @@ public class CpnToOnmsEventMatcher {
         return situation;
     }
 
+    /**
+     * @return alarms keyed by the id of the given events, events without a matching alarm are omitted
+     */
+    public Map<Integer, AlarmDocumentDTO> getAlarmsForEvents(Collection<ESEventDTO> events) {
+        System.out.printf("Trying to match alarms for %d events.\n", events.size());
+        final Map<Integer, AlarmDocumentDTO> alarmsByEventId = eventClient.findAlarmsForEventsWithIds(events.stream()
+                .map(ESEventDTO::getId)
+                .collect(Collectors.toList()));
+        System.out.printf("Found alarms for %d out of %d events.\n", alarmsByEventId.size(), events.size());
+        return alarmsByEventId;
+    }
+
+    /**
+     * @return situations keyed by the id of the given alarms, alarms without a situation are omitted
+     */
+    public Map<Integer, AlarmDocumentDTO> getSituationsForAlarms(Collection<AlarmDocumentDTO> alarms) {
+        System.out.printf("Trying to find situations for %d alarms.\n", alarms.size());
+        final Map<Integer, AlarmDocumentDTO> situationsByAlarmId = eventClient.findSituationsForAlarmsWithIds(alarms.stream()
+                .map(AlarmDocumentDTO::getId)
+                .collect(Collectors.toList()));
+        System.out.printf("Found situations for %d out of %d alarms.\n", situationsByAlarmId.size(), alarms.size());
+        return situationsByAlarmId;
+    }
+
 }
@@ -0,0 +1,236 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.tools.onms.match;
+
+import static org.elasticsearch.index.query.QueryBuilders.prefixQuery;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import org.opennms.oce.tools.cpn.EventUtils;
+import org.opennms.oce.tools.cpn.model.EventRecord;
+import org.opennms.oce.tools.cpn.model.TrapRecord;
+import org.opennms.oce.tools.onms.client.ESEventDTO;
+import org.opennms.oce.tools.onms.client.EventClient;
+import org.opennms.oce.tools.onms.client.api.OnmsEntityDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Matches many CPN events to OpenNMS events at once.
+ *
+ * The CPN events are grouped by host into windows of events that are close in time. All of the OpenNMS candidates for a window are retrieved with a single query
+ * and indexed in memory, by trap type OID for traps, and by time. The best matches are then found locally,
+ * using the same criteria as {@link org.opennms.oce.tools.onms.client.EventClient#findBestSyslogMessageMatching}
+ * and {@link org.opennms.oce.tools.onms.client.EventClient#findBestTrapMatching}.
+ */
+public class WindowedEventMatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WindowedEventMatcher.class);
+
+    public static final long SYSLOG_DELTA_MS = TimeUnit.SECONDS.toMillis(1);
+    public static final long TRAP_DELTA_MS = TimeUnit.MINUTES.toMillis(1);
+    public static final long DEFAULT_MAX_WINDOW_GAP_MS = TimeUnit.MINUTES.toMillis(2);
+    public static final long DEFAULT_MAX_WINDOW_MS = TimeUnit.MINUTES.toMillis(10);
+
+    private final OnmsEntityDao onmsEntityDao;
+    private final long maxWindowGapMs;
+    private final long maxWindowMs;
+
+    public WindowedEventMatcher(OnmsEntityDao onmsEntityDao) {
+        this(onmsEntityDao, DEFAULT_MAX_WINDOW_GAP_MS, DEFAULT_MAX_WINDOW_MS);
+    }
+
+    /**
+     * @param maxWindowGapMs events that are further apart than this are matched using separate queries
+     * @param maxWindowMs windows are split so that no query covers more than this, which bounds the number of candidates retrieved at once
+     * @throws IllegalArgumentException if the gap is not smaller than the window, in which case it could never split a window
+     */
+    public WindowedEventMatcher(OnmsEntityDao onmsEntityDao, long maxWindowGapMs, long maxWindowMs) {
+        this.onmsEntityDao = Objects.requireNonNull(onmsEntityDao);
+        if (maxWindowGapMs >= maxWindowMs) {
+            throw new IllegalArgumentException(String.format("The maximum gap (%dms) must be smaller than the maximum window (%dms).",
+                    maxWindowGapMs, maxWindowMs));
+        }
+        this.maxWindowGapMs = maxWindowGapMs;
+        this.maxWindowMs = maxWindowMs;
+    }
+
+    /**
+     * @return the best matching OpenNMS event keyed by CPN event id, syslogs without a match are omitted
+     */
+    public Map<String, ESEventDTO> matchSyslogs(Collection<EventRecord> syslogs) {
+        final Map<String, ESEventDTO> matches = new LinkedHashMap<>();
+        for (Window<EventRecord> window : getWindows(syslogs, SYSLOG_DELTA_MS)) {
+            final TimeIndex index = new TimeIndex();
+            for (ESEventDTO event : onmsEntityDao.getSyslogEvents(window.startMs, window.endMs,
+                    Collections.singletonList(EventClient.getNodeLabelContainsQuery(window.hostname)))) {
+                if (event.getNodeLabel() != null && event.getSyslogMessage() != null) {
+                    index.add(event);
+                }
+            }
+            for (EventRecord syslog : window.records) {
+                final String substringToMatch = CpnToOnmsEventMatcher.getSubstringToMatch(syslog);
+                index.findClosest(syslog.getTime().getTime(), SYSLOG_DELTA_MS,
+                        e -> e.getNodeLabel().contains(window.hostname) && e.getSyslogMessage().contains(substringToMatch))
+                        .ifPresent(e -> matches.put(syslog.getEventId(), e));
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * @return the best matching OpenNMS event keyed by CPN event id, traps without a match are omitted
+     */
+    public Map<String, ESEventDTO> matchTraps(Collection<TrapRecord> traps) {
+        final Map<String, ESEventDTO> matches = new LinkedHashMap<>();
+        for (Window<TrapRecord> window : getWindows(traps, TRAP_DELTA_MS)) {
+            final Map<String, TimeIndex> indexByOid = new HashMap<>();
+            for (ESEventDTO event : onmsEntityDao.getTrapEvents(window.startMs, window.endMs,
+                    Collections.singletonList(prefixQuery("nodelabel", window.hostname)))) {
+                for (String oid : getOidValues(event)) {
+                    indexByOid.computeIfAbsent(oid, o -> new TimeIndex()).add(event);
+                }
+            }
+            for (TrapRecord trap : window.records) {
+                final TimeIndex index = indexByOid.get(trap.getTrapTypeOid());
+                if (index != null) {
+                    index.findClosest(trap.getTime().getTime(), TRAP_DELTA_MS, e -> true)
+                            .ifPresent(e -> matches.put(trap.getEventId(), e));
+                }
+            }
+        }
+        return matches;
+    }
+
+    private static Set<String> getOidValues(ESEventDTO event) {
+        if (event.getP_oids() == null) {
+            return Collections.emptySet();
+        }
+        final Set<String> values = new LinkedHashSet<>();
+        for (Map<String, String> oid : event.getP_oids()) {
+            final String value = oid.get("value");
+            if (value != null) {
+                values.add(value);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Groups the events by host, and then into windows of events that are close in time.
+     */
+    private <T extends EventRecord> List<Window<T>> getWindows(Collection<T> records, long deltaMs) {
+        final Map<String, List<T>> recordsByHostname = new LinkedHashMap<>();
+        for (T record : records) {
+            recordsByHostname.computeIfAbsent(EventUtils.getNodeLabelFromLocation(record.getLocation()), h -> new ArrayList<>())
+                    .add(record);
+        }
+
+        final List<Window<T>> windows = new ArrayList<>();
+        for (Map.Entry<String, List<T>> entry : recordsByHostname.entrySet()) {
+            final List<T> hostRecords = entry.getValue();
+            hostRecords.sort(Comparator.comparing(EventRecord::getTime));
+            Window<T> window = null;
+            for (T record : hostRecords) {
+                final long timeMs = record.getTime().getTime();
+                if (window == null || timeMs - deltaMs - window.endMs > maxWindowGapMs
+                        || timeMs + deltaMs - window.startMs > maxWindowMs) {
+                    window = new Window<>(entry.getKey(), timeMs - deltaMs);
+                    windows.add(window);
+                }
+                window.records.add(record);
+                window.endMs = timeMs + deltaMs;
+            }
+        }
+        LOG.debug("Grouped {} events into {} windows.", records.size(), windows.size());
+        return windows;
+    }
+
+    private static class Window<T> {
+        private final String hostname;
+        private final long startMs;
+        private long endMs;
+        private final List<T> records = new ArrayList<>();
+
+        private Window(String hostname, long startMs) {
+            this.hostname = hostname;
+            this.startMs = startMs;
+        }
+    }
+
+    /**
+     * Events indexed by timestamp, events with the same timestamp are kept in the order they were added.
+     */
+    private static class TimeIndex {
+        private final NavigableMap<Long, List<ESEventDTO>> eventsByTime = new TreeMap<>();
+
+        private void add(ESEventDTO event) {
+            if (event.getTimestamp() != null) {
+                eventsByTime.computeIfAbsent(event.getTimestamp().getTime(), t -> new ArrayList<>(1)).add(event);
+            }
+        }
+
+        /**
+         * @return the event closest to the given time that matches the predicate, the earliest one on ties
+         */
+        private Optional<ESEventDTO> findClosest(long timeMs, long deltaMs, Predicate<ESEventDTO> predicate) {
+            ESEventDTO closest = null;
+            long closestDistance = Long.MAX_VALUE;
+            for (Map.Entry<Long, List<ESEventDTO>> entry : eventsByTime.subMap(timeMs - deltaMs, true, timeMs + deltaMs, true).entrySet()) {
+                final long distance = Math.abs(timeMs - entry.getKey());
+                if (distance >= closestDistance) {
+                    continue;
+                }
+                for (ESEventDTO event : entry.getValue()) {
+                    if (predicate.test(event)) {
+                        closest = event;
+                        closestDistance = distance;
+                        break;
+                    }
+                }
+            }
+            return Optional.ofNullable(closest);
+        }
+    }
+}
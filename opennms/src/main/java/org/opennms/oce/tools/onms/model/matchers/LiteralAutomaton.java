@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.tools.onms.model.matchers;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * An Aho-Corasick automaton used to find which of a set of literals occur
+ * in a given text using a single pass over the text.
+ */
+class LiteralAutomaton {
+
+    private static class Node {
+        private final Map<Character, Node> children = new HashMap<>();
+        private Node failure;
+        private final BitSet outputs = new BitSet();
+    }
+
+    private final Node root = new Node();
+    private final int numLiterals;
+
+    /**
+     * @param literals the literals to search for, their index in the list is used to identify them
+     */
+    LiteralAutomaton(List<String> literals) {
+        numLiterals = literals.size();
+        for (int i = 0; i < literals.size(); i++) {
+            Node node = root;
+            for (char c : literals.get(i).toCharArray()) {
+                node = node.children.computeIfAbsent(c, k -> new Node());
+            }
+            node.outputs.set(i);
+        }
+
+        // Compute the failure links breadth first, merging the outputs along the way
+        root.failure = root;
+        final Queue<Node> queue = new ArrayDeque<>();
+        for (Node child : root.children.values()) {
+            child.failure = root;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            final Node node = queue.remove();
+            for (Map.Entry<Character, Node> entry : node.children.entrySet()) {
+                final char c = entry.getKey();
+                final Node child = entry.getValue();
+                Node failure = node.failure;
+                while (failure != root && !failure.children.containsKey(c)) {
+                    failure = failure.failure;
+                }
+                final Node next = failure.children.get(c);
+                child.failure = next != null ? next : root;
+                child.outputs.or(child.failure.outputs);
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * @param text text to search
+     * @return the indices of the literals that occur in the text
+     */
+    BitSet findAll(CharSequence text) {
+        final BitSet found = new BitSet(numLiterals);
+        Node node = root;
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            Node next = node.children.get(c);
+            while (next == null && node != root) {
+                node = node.failure;
+                next = node.children.get(c);
+            }
+            node = next != null ? next : root;
+            if (!node.outputs.isEmpty()) {
+                found.or(node.outputs);
+            }
+        }
+        return found;
+    }
+}
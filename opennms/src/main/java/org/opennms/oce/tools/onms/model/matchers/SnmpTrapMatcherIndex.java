@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.tools.onms.model.matchers;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.opennms.oce.tools.common.TrapEvent;
+import org.snmp4j.smi.OID;
+
+/**
+ * Indexes the {@link SnmpTrapEventMatcher}s found in a set of matchers so that we can
+ * determine whether or not any of these match a given trap using hash lookups instead
+ * of evaluating every matcher in turn.
+ *
+ * Matchers may leave any of the enterprise, generic or specific fields unset, in which case
+ * they match any value for that field. The matchers are grouped by the fields they set, and
+ * a trap is looked up once per group, using only the fields that are set for that group.
+ *
+ * Syslog matchers never match traps and are ignored.
+ */
+public class SnmpTrapMatcherIndex {
+
+    private static final int ENTERPRISE = 1;
+    private static final int GENERIC = 1 << 1;
+    private static final int SPECIFIC = 1 << 2;
+
+    /**
+     * Keys for the matchers, grouped by the mask of fields they set.
+     */
+    private final Map<Integer, Set<TrapKey>> keysByMask = new TreeMap<>();
+
+    public SnmpTrapMatcherIndex(Collection<? extends EventMatcher> matchers) {
+        final EventMatcherVisitor visitor = new EventMatcherVisitor() {
+            @Override
+            public void visitSnmpTrapEventMatcher(SnmpTrapEventMatcher m) {
+                final int mask = (m.getEnterprise() != null ? ENTERPRISE : 0)
+                        | (m.getGeneric() != null ? GENERIC : 0)
+                        | (m.getSpecific() != null ? SPECIFIC : 0);
+                // Copy the OID, since these are mutable
+                final OID enterprise = m.getEnterprise() != null ? new OID(m.getEnterprise()) : null;
+                keysByMask.computeIfAbsent(mask, k -> new HashSet<>())
+                        .add(new TrapKey(enterprise, m.getGeneric(), m.getSpecific()));
+            }
+
+            @Override
+            public void visitSyslogEventSubstringMatcher(SyslogEventSubstringMatcher m) {
+                // pass
+            }
+
+            @Override
+            public void visitSyslogEventRegexMatcher(SyslogEventRegexMatcher m) {
+                // pass
+            }
+        };
+        for (EventMatcher matcher : matchers) {
+            matcher.visit(visitor);
+        }
+    }
+
+    /**
+     * @param trapEvent trap to match
+     * @return true if any of the indexed matchers match the given trap, false otherwise
+     */
+    public boolean matches(TrapEvent trapEvent) {
+        final OID enterprise = trapEvent.getEnterpriseOid();
+        final int generic = trapEvent.getGeneric();
+        final int specific = trapEvent.getSpecific();
+        for (Map.Entry<Integer, Set<TrapKey>> entry : keysByMask.entrySet()) {
+            final int mask = entry.getKey();
+            if ((mask & ENTERPRISE) != 0 && enterprise == null) {
+                // Matchers that set the enterprise never match traps without one
+                continue;
+            }
+            final TrapKey key = new TrapKey((mask & ENTERPRISE) != 0 ? enterprise : null,
+                    (mask & GENERIC) != 0 ? generic : null,
+                    (mask & SPECIFIC) != 0 ? specific : null);
+            if (entry.getValue().contains(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class TrapKey {
+        private final OID enterprise;
+        private final Integer generic;
+        private final Integer specific;
+        private final int hashCode;
+
+        private TrapKey(OID enterprise, Integer generic, Integer specific) {
+            this.enterprise = enterprise;
+            this.generic = generic;
+            this.specific = specific;
+            this.hashCode = Objects.hash(enterprise, generic, specific);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            final TrapKey trapKey = (TrapKey) o;
+            return Objects.equals(enterprise, trapKey.enterprise) &&
+                    Objects.equals(generic, trapKey.generic) &&
+                    Objects.equals(specific, trapKey.specific);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
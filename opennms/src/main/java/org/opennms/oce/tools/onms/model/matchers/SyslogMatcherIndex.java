@@ -0,0 +1,253 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.tools.onms.model.matchers;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.opennms.oce.tools.onms.model.api.AlarmDefinition;
+import org.opennms.oce.tools.onms.model.api.EventDefinition;
+import org.opennms.oce.tools.onms.model.api.SyslogEvent;
+
+/**
+ * Used to find the event definitions that match a given syslog message without
+ * evaluating the matchers of every definition.
+ *
+ * A literal that must be present in any matching message is extracted from each of the
+ * syslog matchers, and all of these literals are searched for at once using a
+ * {@link LiteralAutomaton}. The matchers are only evaluated for the definitions whose literal
+ * was found in the message, and for those for which no literal could be extracted.
+ *
+ * The results are the same as evaluating the matchers of every event definition in order.
+ */
+public class SyslogMatcherIndex {
+
+    private static class Candidate {
+        private final EventDefinition eventDef;
+        private final int literalId;
+        // True if finding the literal is sufficient for the matcher to match
+        private final boolean literalIsMatch;
+
+        private Candidate(EventDefinition eventDef, int literalId, boolean literalIsMatch) {
+            this.eventDef = eventDef;
+            this.literalId = literalId;
+            this.literalIsMatch = literalIsMatch;
+        }
+    }
+
+    private final List<Candidate> candidates = new ArrayList<>();
+    private final LiteralAutomaton automaton;
+
+    public SyslogMatcherIndex(Collection<? extends AlarmDefinition> alarmDefs) {
+        final Map<String, Integer> literalIds = new LinkedHashMap<>();
+        for (AlarmDefinition alarmDef : alarmDefs) {
+            for (EventDefinition eventDef : alarmDef.getEventDefinitions()) {
+                eventDef.getMatcher().visit(new EventMatcherVisitor() {
+                    @Override
+                    public void visitSnmpTrapEventMatcher(SnmpTrapEventMatcher m) {
+                        // Never matches syslog messages
+                    }
+
+                    @Override
+                    public void visitSyslogEventSubstringMatcher(SyslogEventSubstringMatcher m) {
+                        addCandidate(eventDef, m.getSubstring(), true);
+                    }
+
+                    @Override
+                    public void visitSyslogEventRegexMatcher(SyslogEventRegexMatcher m) {
+                        addCandidate(eventDef, getRequiredLiteral(m.getPattern()), false);
+                    }
+
+                    private void addCandidate(EventDefinition eventDef, String literal, boolean literalIsMatch) {
+                        if (literal.isEmpty()) {
+                            candidates.add(new Candidate(eventDef, -1, literalIsMatch));
+                        } else {
+                            final int literalId = literalIds.computeIfAbsent(literal, k -> literalIds.size());
+                            candidates.add(new Candidate(eventDef, literalId, literalIsMatch));
+                        }
+                    }
+                });
+            }
+        }
+        automaton = new LiteralAutomaton(new ArrayList<>(literalIds.keySet()));
+    }
+
+    /**
+     * @param syslogEvent syslog to match
+     * @return the first event definition whose matcher matches the given syslog, or null if none match
+     */
+    public EventDefinition getFirstMatch(SyslogEvent syslogEvent) {
+        final BitSet literalsFound = automaton.findAll(syslogEvent.getMessage());
+        for (Candidate candidate : candidates) {
+            if (candidate.literalId >= 0) {
+                if (!literalsFound.get(candidate.literalId)) {
+                    continue;
+                } else if (candidate.literalIsMatch) {
+                    return candidate.eventDef;
+                }
+            }
+            if (candidate.eventDef.getMatcher().matches(syslogEvent)) {
+                return candidate.eventDef;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param syslogEvent syslog to match
+     * @return true if any of the event definitions match the given syslog, false otherwise
+     */
+    public boolean matches(SyslogEvent syslogEvent) {
+        return getFirstMatch(syslogEvent) != null;
+    }
+
+    /**
+     * Extracts the longest literal that must be present in any string matched by the given pattern.
+     *
+     * Only simple patterns are analyzed, an empty string is returned for patterns that use flags,
+     * groups, alternations or constructs that we don't otherwise know how to handle.
+     *
+     * @param pattern pattern to analyze
+     * @return the longest required literal, or an empty string if none could be found
+     */
+    static String getRequiredLiteral(Pattern pattern) {
+        final String regex = pattern.pattern();
+        if (pattern.flags() != 0 || regex.indexOf('|') >= 0 || regex.indexOf('(') >= 0) {
+            return "";
+        }
+
+        String longest = "";
+        final StringBuilder run = new StringBuilder();
+        // True if the last atom was appended to the current run
+        boolean lastAtomInRun = false;
+        for (int i = 0; i < regex.length(); i++) {
+            final char c = regex.charAt(i);
+            switch (c) {
+                case '\\':
+                    if (i + 1 >= regex.length()) {
+                        return "";
+                    }
+                    final char escaped = regex.charAt(++i);
+                    if (!Character.isLetterOrDigit(escaped)) {
+                        run.append(escaped);
+                        lastAtomInRun = true;
+                    } else if ("sSdDwWbB".indexOf(escaped) >= 0) {
+                        longest = longestOf(longest, run);
+                        lastAtomInRun = false;
+                    } else {
+                        // Quoting, back references, code points, properties, etc...
+                        return "";
+                    }
+                    break;
+                case '[':
+                    i = getEndOfCharacterClass(regex, i);
+                    if (i < 0) {
+                        return "";
+                    }
+                    longest = longestOf(longest, run);
+                    lastAtomInRun = false;
+                    break;
+                case '.':
+                case '^':
+                case '$':
+                    longest = longestOf(longest, run);
+                    lastAtomInRun = false;
+                    break;
+                case '*':
+                case '?':
+                case '{':
+                    // The previous atom is optional
+                    if (lastAtomInRun) {
+                        run.setLength(run.length() - 1);
+                    }
+                    if (c == '{') {
+                        i = regex.indexOf('}', i);
+                        if (i < 0) {
+                            return "";
+                        }
+                    }
+                    i = skipQuantifierModifier(regex, i);
+                    longest = longestOf(longest, run);
+                    lastAtomInRun = false;
+                    break;
+                case '+':
+                    // The previous atom is required, but may be repeated
+                    i = skipQuantifierModifier(regex, i);
+                    longest = longestOf(longest, run);
+                    lastAtomInRun = false;
+                    break;
+                default:
+                    run.append(c);
+                    lastAtomInRun = true;
+            }
+        }
+        return longestOf(longest, run);
+    }
+
+    private static String longestOf(String longest, StringBuilder run) {
+        final String candidate = run.toString();
+        run.setLength(0);
+        return candidate.length() > longest.length() ? candidate : longest;
+    }
+
+    private static int skipQuantifierModifier(String regex, int i) {
+        if (i + 1 < regex.length() && (regex.charAt(i + 1) == '?' || regex.charAt(i + 1) == '+')) {
+            return i + 1;
+        }
+        return i;
+    }
+
+    private static int getEndOfCharacterClass(String regex, int start) {
+        int i = start + 1;
+        if (i < regex.length() && regex.charAt(i) == '^') {
+            i++;
+        }
+        if (i < regex.length() && regex.charAt(i) == ']') {
+            // A leading ']' is taken literally
+            i++;
+        }
+        for (; i < regex.length(); i++) {
+            final char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                // Nested classes, unions and intersections
+                return -1;
+            } else if (c == ']') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
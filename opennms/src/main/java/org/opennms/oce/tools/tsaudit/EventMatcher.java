@@ -28,23 +28,21 @@
 
 package org.opennms.oce.tools.tsaudit;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.LongSummaryStatistics;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.stream.Collectors;
 
-import org.apache.commons.math3.stat.descriptive.moment.Mean;
-import org.apache.commons.math3.stat.descriptive.moment.StandardDeviation;
 import org.opennms.oce.tools.cpn.EventUtils;
 import org.opennms.oce.tools.cpn.events.MatchingSyslogEventRecord;
 import org.opennms.oce.tools.cpn.events.MatchingTrapEventRecord;
@@ -64,70 +62,121 @@ public class EventMatcher {
     @VisibleForTesting
     static final long syslogDateFuzzMs = TimeUnit.MILLISECONDS.convert(1, TimeUnit.SECONDS);
 
-    private static final Mean mean = new Mean();
-    private static final StandardDeviation standardDeviation = new StandardDeviation(false);
-
-
+    /**
+     * Matches syslogs from CPN/OpenNMS that have the same message and the same timestamp, falling
+     * back to timestamps that are within {@link #syslogDateFuzzMs} of each other.
+     *
+     * The OpenNMS syslogs are indexed by message and time, so that the candidates for a given CPN
+     * syslog can be found without comparing against all of the OpenNMS syslogs. When there are
+     * multiple candidates, the first one in the given list of OpenNMS syslogs is used.
+     *
+     * @param cpnSyslogs syslogs from CPN to match
+     * @param onmsSyslogs syslogs from OpenNMS to match
+     * @return map of CPN events id, to OpenNMS event id
+     */
     public static Map<String, Integer> matchSyslogEventsScopedByTimeAndHost(List<? extends MatchingSyslogEventRecord> cpnSyslogs, List<ESEventDTO> onmsSyslogs) {
         final Set<Integer> alreadyMatchedOnmsEvents = new HashSet<>();
         // Group the syslogs by node
         List<GenericSyslogMessage> genericCpnSyslogs = mapSyslogMessagesFromCpn(cpnSyslogs);
         List<GenericSyslogMessage> genericOnmsSyslogs = mapSyslogMessagesFromOnms(onmsSyslogs);
+        final SyslogIndex onmsSyslogIndex = new SyslogIndex(genericOnmsSyslogs, syslogDateFuzzMs);
 
         Map<String, Integer> cpnEventIdToOnmsEventId = new HashMap<>();
-        AtomicBoolean foundMatch = new AtomicBoolean();
 
         // Iterate through each list of syslogs
         for (GenericSyslogMessage cpnSyslog : genericCpnSyslogs) {
-            foundMatch.set(false);
-
-            genericOnmsSyslogs.stream()
-                    .filter(candidateSyslog ->
-                            !alreadyMatchedOnmsEvents.contains(Integer.parseInt(candidateSyslog.getId())) &&
-                                    cpnSyslog.equalsIgnoringHost(candidateSyslog))
-                    .findAny()
-                    // If we found a match then record a mapping between the event Ids
-                    .ifPresent(onmsSyslog -> {
-                        Integer onmsId = Integer.parseInt(onmsSyslog.getId());
-                        cpnEventIdToOnmsEventId.put(cpnSyslog.getId(), onmsId);
-                        alreadyMatchedOnmsEvents.add(onmsId);
-                        foundMatch.set(true);
-                    });
+            Integer onmsId = onmsSyslogIndex.findExactMatch(cpnSyslog, alreadyMatchedOnmsEvents);
 
             // If we didn't find the event using an exact matching strategy, try allowing for some time delta
-            if (!foundMatch.get()) {
-                genericOnmsSyslogs.stream()
-                        .filter(candidateSyslog ->
-                                !alreadyMatchedOnmsEvents.contains(Integer.parseInt(candidateSyslog.getId())) &&
-                                        cpnSyslog.equalsIgnoringHostFuzzyDate(candidateSyslog, syslogDateFuzzMs))
-                        .findAny()
-                        // If we found a match then record a mapping between the event Ids
-                        .ifPresent(onmsSyslog -> {
-                            Integer onmsId = Integer.parseInt(onmsSyslog.getId());
-                            cpnEventIdToOnmsEventId.put(cpnSyslog.getId(), onmsId);
-                            LOG.debug("Matched syslog events that were time-skewed: {}->{}",cpnSyslog.getId(), onmsId);
-                            alreadyMatchedOnmsEvents.add(onmsId);
-                        });
+            if (onmsId == null) {
+                onmsId = onmsSyslogIndex.findFuzzyMatch(cpnSyslog, alreadyMatchedOnmsEvents);
+                if (onmsId != null) {
+                    LOG.debug("Matched syslog events that were time-skewed: {}->{}", cpnSyslog.getId(), onmsId);
+                }
+            }
+
+            // If we found a match then record a mapping between the event Ids
+            if (onmsId != null) {
+                cpnEventIdToOnmsEventId.put(cpnSyslog.getId(), onmsId);
+                alreadyMatchedOnmsEvents.add(onmsId);
             }
         }
 
         return Collections.unmodifiableMap(cpnEventIdToOnmsEventId);
     }
 
-    private static List<ESEventDTO> filterMatchesForTrap(MatchingTrapEventRecord cpnTrap,
-                                                         List<ESEventDTO> potentialMatches) {
-        if (oid2str(OnmsSnmpConstants.linkDown).equals(cpnTrap.getTrapTypeOid()) ||
-                oid2str(OnmsSnmpConstants.linkUp).equals(cpnTrap.getTrapTypeOid())) {
-            // We know we a link up/down trap, extract the port from the location
-            final ModelObject mo = EventMapper.createPortObject(cpnTrap);
-            String ifDescr = mo.getSpecificId(); // the *specific* id of the interface object is the ifDescr!
+    /**
+     * Index of syslog messages by message and time.
+     *
+     * The syslogs are referenced by their position in the original list, and are kept in that
+     * order in every bucket so that the first candidate in a bucket is also the first in the list.
+     */
+    private static class SyslogIndex {
+        private final int[] ids;
+        private final long[] times;
+        private final long fuzzMs;
+        private final Map<String, Map<Long, Deque<Integer>>> byMessageAndTime = new HashMap<>();
+        private final Map<String, Map<Long, List<Integer>>> byMessageAndBucket = new HashMap<>();
+
+        private SyslogIndex(List<GenericSyslogMessage> syslogs, long fuzzMs) {
+            this.fuzzMs = fuzzMs;
+            ids = new int[syslogs.size()];
+            times = new long[syslogs.size()];
+            for (int i = 0; i < syslogs.size(); i++) {
+                final GenericSyslogMessage syslog = syslogs.get(i);
+                ids[i] = Integer.parseInt(syslog.getId());
+                times[i] = syslog.getDate().getTime();
+                byMessageAndTime.computeIfAbsent(syslog.getMessage(), m -> new HashMap<>())
+                        .computeIfAbsent(times[i], t -> new ArrayDeque<>())
+                        .add(i);
+                byMessageAndBucket.computeIfAbsent(syslog.getMessage(), m -> new HashMap<>())
+                        .computeIfAbsent(getBucket(times[i]), b -> new ArrayList<>())
+                        .add(i);
+            }
+        }
+
+        private long getBucket(long time) {
+            return Math.floorDiv(time, Math.max(1, fuzzMs));
+        }
+
+        private Integer findExactMatch(GenericSyslogMessage syslog, Set<Integer> alreadyMatched) {
+            final Deque<Integer> candidates = byMessageAndTime.getOrDefault(syslog.getMessage(), Collections.emptyMap())
+                    .get(syslog.getDate().getTime());
+            if (candidates == null) {
+                return null;
+            }
+            // Once matched, a syslog stays matched, so we can discard these for good
+            while (!candidates.isEmpty() && alreadyMatched.contains(ids[candidates.peekFirst()])) {
+                candidates.pollFirst();
+            }
+            return candidates.isEmpty() ? null : ids[candidates.peekFirst()];
+        }
 
-            return potentialMatches.stream()
-                    .filter(e -> e.getP_oids().stream()
-                            .anyMatch(oidMap -> oidMap.get("oid").startsWith(oid2str(OnmsSnmpConstants.ifDescr)) && oidMap.get("value").equals(ifDescr)))
-                    .collect(Collectors.toList());
+        private Integer findFuzzyMatch(GenericSyslogMessage syslog, Set<Integer> alreadyMatched) {
+            final Map<Long, List<Integer>> byBucket = byMessageAndBucket.get(syslog.getMessage());
+            if (byBucket == null) {
+                return null;
+            }
+            final long time = syslog.getDate().getTime();
+            // The buckets are as wide as the allowed delta, so we need to probe the neighboring buckets too
+            int bestIndex = Integer.MAX_VALUE;
+            for (long bucket = getBucket(time - fuzzMs); bucket <= getBucket(time + fuzzMs); bucket++) {
+                final List<Integer> candidates = byBucket.get(bucket);
+                if (candidates == null) {
+                    continue;
+                }
+                for (Integer index : candidates) {
+                    if (index >= bestIndex) {
+                        break;
+                    }
+                    if (Math.abs(time - times[index]) <= fuzzMs && !alreadyMatched.contains(ids[index])) {
+                        bestIndex = index;
+                        break;
+                    }
+                }
+            }
+            return bestIndex != Integer.MAX_VALUE ? ids[bestIndex] : null;
         }
-        return potentialMatches;
     }
 
     /**
@@ -144,11 +193,10 @@ public class EventMatcher {
      */
     public static Map<String, Integer> matchTrapEventsScopedByTimeAndHost(List<? extends MatchingTrapEventRecord> cpnTraps,
                                                                           List<ESEventDTO> onmsTraps) {
-        // Index the traps by id for quick lookup
-        final Map<String, MatchingTrapEventRecord> cpnTrapsById = cpnTraps.stream()
-                .collect(Collectors.toMap(MatchingTrapEventRecord::getEventId, e -> e));
-        final Map<Integer, ESEventDTO> onmsTrapsById = onmsTraps.stream()
-                .collect(Collectors.toMap(ESEventDTO::getId, e -> e));
+        // Group and index the traps once, the drift is applied when searching
+        final Map<String, List<MatchingTrapEventRecord>> cpnTrapsByType = groupCpnTrapsByType(cpnTraps);
+        final Map<String, TrapIndex> onmsTrapsByType = new HashMap<>();
+        groupOnmsTrapsByType(onmsTraps).forEach((type, traps) -> onmsTrapsByType.put(type, new TrapIndex(type, traps)));
 
         int maxIterations = 10; // limit the number of iterations - we shouldn't hit this, but just to be safe
         double targetSigma = TimeUnit.SECONDS.toMillis(5); // acceptable value of sigma
@@ -158,28 +206,19 @@ public class EventMatcher {
         int iteration = 1;
         boolean didMatchAllTraps;
 
-        Map<String, Integer> cpnEventIdToOnmsEventId;
+        TrapMatches matches;
         do {
             // Match the traps, correcting the timestamps by the average delta
-            cpnEventIdToOnmsEventId = matchTrapEventsScopedByTimeAndHost(cpnTraps, onmsTraps, mu);
+            matches = matchTrapEventsScopedByTimeAndHost(cpnTrapsByType, onmsTrapsByType, mu);
 
-            // Compute the difference in time between the matches
-            final double[] deltas = cpnEventIdToOnmsEventId.entrySet().stream()
-                    .mapToDouble(e -> {
-                        final long cpnTrapTime = cpnTrapsById.get(e.getKey()).getTime().getTime();
-                        final long onmsTrapTime = onmsTrapsById.get(e.getValue()).getTimestamp().getTime();
-                        return (double)(onmsTrapTime - cpnTrapTime);
-                    }).toArray();
-
-            // Compute the mean and standard deviation of the deltas
+            // Use the mean and standard deviation of the differences in time between the matches
             lastMu = mu;
-            mu = (long)Math.floor(mean.evaluate(deltas));
-            sigma = standardDeviation.evaluate(deltas);
+            mu = matches.getMeanDelta();
+            sigma = matches.getStandardDeviationOfDeltas();
 
-            didMatchAllTraps = cpnTraps.size() - cpnEventIdToOnmsEventId.keySet().size() == 0;
+            didMatchAllTraps = cpnTraps.size() - matches.cpnEventIdToOnmsEventId.keySet().size() == 0;
             /* DEBUG
             System.out.printf("Iteration: %d\n", iteration);
-            System.out.printf("Deltas: %s\n", Arrays.toString(deltas));
             System.out.printf("Mu: %d (previously at %d)\n", mu, lastMu);
             System.out.printf("Sigma: %.2f\n", sigma);
             System.out.printf("All matched?: %s\n", didMatchAllTraps);
@@ -190,17 +229,13 @@ public class EventMatcher {
                 && (!didMatchAllTraps || sigma > targetSigma) // while we haven't matched all of the traps AND reached our target sigma
                 && mu != lastMu); // while we're still adjusting the mean
 
-        return Collections.unmodifiableMap(cpnEventIdToOnmsEventId);
+        return Collections.unmodifiableMap(matches.cpnEventIdToOnmsEventId);
     }
 
-    private static Map<String, Integer> matchTrapEventsScopedByTimeAndHost(List<? extends MatchingTrapEventRecord> cpnTraps,
-                                                                          List<ESEventDTO> onmsTraps, long drift) {
+    private static TrapMatches matchTrapEventsScopedByTimeAndHost(Map<String, List<MatchingTrapEventRecord>> cpnTrapsByType,
+                                                                  Map<String, TrapIndex> onmsTrapsByType, long drift) {
         final Set<Integer> alreadyMatchedOnmsEvents = new HashSet<>();
-        // Group the traps by node and sort them by time
-        Map<String, List<MatchingTrapEventRecord>> cpnTrapsByType = groupCpnTrapsByType(cpnTraps);
-        Map<String, List<ESEventDTO>> onmsTrapsByType = groupOnmsTrapsByType(onmsTraps);
-
-        Map<String, Integer> cpnEventIdToOnmsEventId = new HashMap<>();
+        final TrapMatches matches = new TrapMatches();
 
         // Iterate through each list of traps by host
         for (Map.Entry<String, List<MatchingTrapEventRecord>> cpnEntry : cpnTrapsByType.entrySet()) {
@@ -208,25 +243,218 @@ public class EventMatcher {
             String type = cpnEntry.getKey();
             List<MatchingTrapEventRecord> cpnTrapsForOid = cpnEntry.getValue();
             // Find the potential matches by looking up all the Onms traps for the same type
-            List<ESEventDTO> potentialMatches = onmsTrapsByType.get(type);
+            TrapIndex potentialMatches = onmsTrapsByType.get(type);
 
             if (potentialMatches != null) {
+                potentialMatches.reset();
                 for (MatchingTrapEventRecord cpnTrap : cpnTrapsForOid) {
-                    // Remove any Onms events that have already been paired so we don't pair them twice
-                    potentialMatches.removeIf(potential -> alreadyMatchedOnmsEvents.contains(potential.getId()));
                     // Refine the potential matches for this specific instance of the trap
-                    List<ESEventDTO> refinedPotentialMatches = filterMatchesForTrap(cpnTrap, potentialMatches);
+                    final SortedTraps refinedPotentialMatches = potentialMatches.getCandidates(cpnTrap);
+                    if (refinedPotentialMatches == null) {
+                        continue;
+                    }
 
                     // Find the closest matching event (by time delta) within the allowed time range
-                    timeWindowSearch(cpnTrap.getTime().getTime(), refinedPotentialMatches, drift)
-                            .ifPresent(id -> {
-                                cpnEventIdToOnmsEventId.put(cpnTrap.getEventId(), id);
-                                alreadyMatchedOnmsEvents.add(id);
-                            });
+                    final long cpnTrapTime = cpnTrap.getTime().getTime();
+                    final int index = refinedPotentialMatches.timeWindowSearch(cpnTrapTime, drift, alreadyMatchedOnmsEvents);
+                    if (index >= 0) {
+                        final int id = refinedPotentialMatches.ids[index];
+                        matches.add(cpnTrap.getEventId(), id, refinedPotentialMatches.times[index] - cpnTrapTime);
+                        alreadyMatchedOnmsEvents.add(id);
+                    }
                 }
             }
         }
-        return Collections.unmodifiableMap(cpnEventIdToOnmsEventId);
+        return matches;
+    }
+
+    /**
+     * Trap matches along with the running statistics of the differences in time between the matched traps.
+     */
+    private static class TrapMatches {
+        private final Map<String, Integer> cpnEventIdToOnmsEventId = new HashMap<>();
+        private final Map<String, Long> deltasByCpnEventId = new HashMap<>();
+        private long sumOfDeltas = 0;
+        private double sumOfSquaredDeltas = 0;
+
+        private void add(String cpnEventId, Integer onmsEventId, long delta) {
+            cpnEventIdToOnmsEventId.put(cpnEventId, onmsEventId);
+            final Long previousDelta = deltasByCpnEventId.put(cpnEventId, delta);
+            if (previousDelta != null) {
+                // Only the last match for a given CPN event id is kept
+                sumOfDeltas -= previousDelta;
+                sumOfSquaredDeltas -= (double)previousDelta * previousDelta;
+            }
+            sumOfDeltas += delta;
+            sumOfSquaredDeltas += (double)delta * delta;
+        }
+
+        /**
+         * @return the floor of the mean of the deltas, or 0 if there are no matches
+         */
+        private long getMeanDelta() {
+            final int n = deltasByCpnEventId.size();
+            return n > 0 ? Math.floorDiv(sumOfDeltas, n) : 0;
+        }
+
+        /**
+         * @return the population standard deviation of the deltas, or NaN if there are no matches
+         */
+        private double getStandardDeviationOfDeltas() {
+            final int n = deltasByCpnEventId.size();
+            if (n < 1) {
+                return Double.NaN;
+            }
+            final double mean = (double)sumOfDeltas / n;
+            return Math.sqrt(Math.max(0, sumOfSquaredDeltas / n - mean * mean));
+        }
+    }
+
+    /**
+     * OpenNMS traps of a given type, sorted by time.
+     *
+     * Link up/down traps are also partitioned by ifDescr, since these can only match CPN traps on the same port.
+     */
+    private static class TrapIndex {
+        private final boolean isLinkTrap;
+        private final SortedTraps traps;
+        private final Map<String, SortedTraps> trapsByIfDescr = new HashMap<>();
+
+        private TrapIndex(String type, List<ESEventDTO> onmsTraps) {
+            final List<ESEventDTO> sortedTraps = new ArrayList<>(onmsTraps);
+            // Stable sort, traps with the same timestamp keep their relative order
+            sortedTraps.sort(Comparator.comparing(ESEventDTO::getTimestamp));
+            traps = new SortedTraps(sortedTraps);
+
+            isLinkTrap = oid2str(OnmsSnmpConstants.linkDown).equals(type) || oid2str(OnmsSnmpConstants.linkUp).equals(type);
+            if (isLinkTrap) {
+                final String ifDescrOid = oid2str(OnmsSnmpConstants.ifDescr);
+                final Map<String, List<ESEventDTO>> byIfDescr = new HashMap<>();
+                for (ESEventDTO trap : sortedTraps) {
+                    if (trap.getP_oids() == null) {
+                        continue;
+                    }
+                    final Set<String> ifDescrs = new HashSet<>();
+                    for (Map<String, String> oidMap : trap.getP_oids()) {
+                        if (oidMap.get("oid").startsWith(ifDescrOid) && oidMap.get("value") != null) {
+                            ifDescrs.add(oidMap.get("value"));
+                        }
+                    }
+                    ifDescrs.forEach(ifDescr -> byIfDescr.computeIfAbsent(ifDescr, k -> new ArrayList<>()).add(trap));
+                }
+                byIfDescr.forEach((ifDescr, traps) -> trapsByIfDescr.put(ifDescr, new SortedTraps(traps)));
+            }
+        }
+
+        private SortedTraps getCandidates(MatchingTrapEventRecord cpnTrap) {
+            if (!isLinkTrap) {
+                return traps;
+            }
+            // We know we a link up/down trap, extract the port from the location
+            final ModelObject mo = EventMapper.createPortObject(cpnTrap);
+            String ifDescr = mo.getSpecificId(); // the *specific* id of the interface object is the ifDescr!
+            return trapsByIfDescr.get(ifDescr);
+        }
+
+        private void reset() {
+            traps.reset();
+            trapsByIfDescr.values().forEach(SortedTraps::reset);
+        }
+    }
+
+    private static class SortedTraps {
+        private final long[] times;
+        private final int[] ids;
+        // Used to skip over the traps that were already matched, entries point to themselves until the trap is matched
+        private final int[] next;
+
+        private SortedTraps(List<ESEventDTO> traps) {
+            times = new long[traps.size()];
+            ids = new int[traps.size()];
+            next = new int[traps.size()];
+            for (int i = 0; i < traps.size(); i++) {
+                times[i] = traps.get(i).getTimestamp().getTime();
+                ids[i] = traps.get(i).getId();
+            }
+            reset();
+        }
+
+        private void reset() {
+            for (int i = 0; i < next.length; i++) {
+                next[i] = i;
+            }
+        }
+
+        /**
+         * @return the index of the first trap at or after the given index that was not already matched
+         */
+        private int nextUnmatched(int index, Set<Integer> alreadyMatched) {
+            int unmatched = index;
+            while (unmatched < next.length && (next[unmatched] != unmatched || alreadyMatched.contains(ids[unmatched]))) {
+                if (next[unmatched] == unmatched) {
+                    next[unmatched] = unmatched + 1;
+                }
+                unmatched = next[unmatched];
+            }
+            // Point the skipped entries directly to the unmatched trap
+            while (index < unmatched) {
+                final int nextIndex = next[index];
+                next[index] = unmatched;
+                index = nextIndex;
+            }
+            return unmatched;
+        }
+
+        /**
+         * Finds the unmatched trap that is closest in time, stopping at the first candidate
+         * that is not closer than the previous one.
+         *
+         * @return the index of the matching trap, or -1 if there is none
+         */
+        private int timeWindowSearch(long timestamp, long drift, Set<Integer> alreadyMatched) {
+            long previousDelta = Long.MAX_VALUE;
+            int match = -1;
+
+            // Skip directly to the first trap in the window
+            for (int i = nextUnmatched(upperBound(times, timestamp - timeDeltaAllowedMs + drift), alreadyMatched);
+                 i < times.length; i = nextUnmatched(i + 1, alreadyMatched)) {
+                long trapTime = times[i] - drift;
+
+                if (trapTime > (timestamp + timeDeltaAllowedMs)) {
+                    // We've gone past the window, time to stop looking
+                    break;
+                }
+
+                long newDelta = Math.abs(timestamp - trapTime);
+                if (newDelta < previousDelta) {
+                    // This one matches better than the previous one
+                    previousDelta = newDelta;
+                    match = i;
+                } else {
+                    // This one was worse which indicates we already found the best match so we can stop
+                    break;
+                }
+            }
+
+            return match;
+        }
+
+        /**
+         * @return the index of the first element that is strictly greater than the given key
+         */
+        private static int upperBound(long[] values, long key) {
+            int low = 0;
+            int high = values.length;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (values[mid] <= key) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
     }
 
     private static List<GenericSyslogMessage> mapSyslogMessagesFromCpn(List<? extends MatchingSyslogEventRecord> syslogEvents) {
@@ -303,36 +531,6 @@ public class EventMatcher {
         return onmsTrapsByType;
     }
 
-    private static Optional<Integer> timeWindowSearch(long timestamp, List<ESEventDTO> traps, long drift) {
-        long previousDelta = Long.MAX_VALUE;
-        Optional<Integer> match = Optional.empty();
-
-        for (ESEventDTO trap : traps) {
-            long trapTime = trap.getTimestamp().getTime() - drift;
-
-            if (trapTime > (timestamp + timeDeltaAllowedMs)) {
-                // We've gone past the window, time to stop looking
-                break;
-            }
-
-            if (trapTime > (timestamp - timeDeltaAllowedMs)) {
-                // We are in the window
-                long newDelta = Math.abs(timestamp - trapTime);
-
-                if (newDelta < previousDelta) {
-                    // This one matches better than the previous one
-                    previousDelta = newDelta;
-                    match = Optional.of(trap.getId());
-                } else {
-                    // This one was worse which indicates we already found the best match so we can stop
-                    break;
-                }
-            }
-        }
-
-        return match;
-    }
-
     private static String oid2str(OID oid) {
         return "." + oid.toDottedString();
     }
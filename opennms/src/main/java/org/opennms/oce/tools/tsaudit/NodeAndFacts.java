@@ -50,6 +50,7 @@ public class NodeAndFacts {
     private Long numCpnTraps;
     private ZonedDateTime start;
     private ZonedDateTime end;
+    private String failure;
 
     public NodeAndFacts(String cpnHostname) {
         this.cpnHostname = Objects.requireNonNull(cpnHostname);
@@ -144,7 +145,26 @@ public class NodeAndFacts {
         this.end = end;
     }
 
+    /**
+     * Why some of the facts could not be gathered for this node, or null if they all were.
+     */
+    public String getFailure() {
+        return failure;
+    }
+
+    public void setFailure(String failure) {
+        this.failure = failure;
+    }
+
+    public boolean hasFailure() {
+        return failure != null;
+    }
+
     public boolean shouldProcess() {
+        // don't process nodes for which the facts are incomplete
+        if (hasFailure()) {
+            return false;
+        }
         if (!hasOpennmsNode()) {
             return false;
         }
@@ -178,12 +198,13 @@ public class NodeAndFacts {
                 Objects.equals(numOpennmsSyslogs, that.numOpennmsSyslogs) &&
                 Objects.equals(numOpennmsTraps, that.numOpennmsTraps) &&
                 Objects.equals(numCpnSyslogs, that.numCpnSyslogs) &&
-                Objects.equals(numCpnTraps, that.numCpnTraps);
+                Objects.equals(numCpnTraps, that.numCpnTraps) &&
+                Objects.equals(failure, that.failure);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(cpnHostname, opennmsNodeLabel, opennmsNodeId, clockSkewStatus, clockSkew, numOpennmsSyslogs, numOpennmsTraps, numCpnSyslogs, numCpnTraps);
+        return Objects.hash(cpnHostname, opennmsNodeLabel, opennmsNodeId, clockSkewStatus, clockSkew, numOpennmsSyslogs, numOpennmsTraps, numCpnSyslogs, numCpnTraps, failure);
     }
 
     @Override
@@ -198,6 +219,7 @@ public class NodeAndFacts {
                 ", numOpennmsTraps=" + numOpennmsTraps +
                 ", numCpnSyslogs=" + numCpnSyslogs +
                 ", numCpnTraps=" + numCpnTraps +
+                ", failure='" + failure + '\'' +
                 '}';
     }
 }
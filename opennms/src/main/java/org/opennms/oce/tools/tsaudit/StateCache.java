@@ -81,7 +81,7 @@ public class StateCache {
         }
     }
 
-    public boolean findOpennmsNodeInfo(NodeAndFacts nodeAndFacts) {
+    public synchronized boolean findOpennmsNodeInfo(NodeAndFacts nodeAndFacts) {
         String sql = "SELECT opennms_node_label, opennms_node_id FROM node_and_facts WHERE start_ms = ? AND end_ms = ? AND cpn_hostname = ?";
         try (Connection conn = DriverManager.getConnection(url);
              PreparedStatement pstmt  = conn.prepareStatement(sql)){
@@ -107,7 +107,7 @@ public class StateCache {
         }
     }
 
-    public void saveOpennmsNodeInfo(NodeAndFacts nodeAndFacts) {
+    public synchronized void saveOpennmsNodeInfo(NodeAndFacts nodeAndFacts) {
         String sql = "INSERT INTO node_and_facts(start_ms, end_ms, cpn_hostname, opennms_node_label, opennms_node_id) VALUES(?,?,?,?,?)";
         try (Connection conn = DriverManager.getConnection(url);
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
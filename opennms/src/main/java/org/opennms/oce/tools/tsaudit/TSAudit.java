@@ -78,7 +78,7 @@ public class TSAudit {
     public static final List<QueryBuilder> cpnEventExcludes = Arrays.asList(termQuery("description.keyword", "SNMP authentication failure"));
 
     public TSAudit(ESDataProvider esDataProvider, EventClient eventClient, ZonedDateTime start, ZonedDateTime end, List<String> hostnames,
-                   boolean csvOutput, boolean restServerEnabled) {
+                   boolean csvOutput, boolean restServerEnabled, int numThreads, long nodeTimeoutMs) {
         this.esDataProvider = Objects.requireNonNull(esDataProvider);
         this.eventClient = Objects.requireNonNull(eventClient);
 
@@ -98,6 +98,8 @@ public class TSAudit {
                 .setOnmsEntityDao(this.eventClient)
                 .setHostnameSubstringsToFilter(this.hostnameSubstringsToFilter)
                 .setStart(this.start)
+                .setNumThreads(numThreads)
+                .setNodeTimeoutMs(nodeTimeoutMs)
                 .build();
     }
 
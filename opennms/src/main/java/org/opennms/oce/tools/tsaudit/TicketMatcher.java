@@ -29,6 +29,7 @@ import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 import org.elasticsearch.index.query.QueryBuilder;
+import org.opennms.oce.tools.NodeAndFactsGenerator;
 import org.opennms.oce.tools.cpn.ESDataProvider;
 import org.opennms.oce.tools.cpn.EventUtils;
 import org.opennms.oce.tools.cpn.model.EventRecord;
@@ -398,7 +399,8 @@ public class TicketMatcher {
         final AtomicReference<Date> maxTimeRef = new AtomicReference<>(new Date(0));
 
         // Retrieve syslog records for the given host
-        esDataProvider.getSyslogRecordsInRange(start, end, Arrays.asList(matchPhraseQuery("location", nodeAndFacts.getCpnHostname())), cpnEventExcludes, syslogs -> {
+        esDataProvider.getSyslogRecordsInRange(start, end, Arrays.asList(matchPhraseQuery("location", nodeAndFacts.getCpnHostname())), cpnEventExcludes,
+                NodeAndFactsGenerator.CLOCK_SKEW_PROJECTION, syslogs -> {
             for (EventRecord syslog : syslogs) {
                 // Skip clears
                 if (EventUtils.isClear(syslog)) {
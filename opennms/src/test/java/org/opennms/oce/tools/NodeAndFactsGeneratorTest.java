@@ -0,0 +1,246 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.tools;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.elasticsearch.index.query.MatchPhraseQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opennms.oce.tools.cpn.api.EmptyCpnEntityDao;
+import org.opennms.oce.tools.cpn.model.EventRecord;
+import org.opennms.oce.tools.cpn.model.EventSeverity;
+import org.opennms.oce.tools.onms.client.ESEventDTO;
+import org.opennms.oce.tools.onms.client.api.EmptyOnmsEntityDao;
+import org.opennms.oce.tools.tsaudit.NodeAndFacts;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+public class NodeAndFactsGeneratorTest {
+
+    private static final int NUM_NODES = 60;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final ZonedDateTime end = ZonedDateTime.now(ZoneId.systemDefault()).truncatedTo(ChronoUnit.HOURS);
+    private final ZonedDateTime start = end.minusDays(1);
+
+    private final Set<String> hostnames = new LinkedHashSet<>();
+    private final Set<String> processedHostnames = ConcurrentHashMap.newKeySet();
+    private final Set<String> failingHostnames = ConcurrentHashMap.newKeySet();
+    private final Set<String> hangingHostnames = ConcurrentHashMap.newKeySet();
+    private final CountDownLatch hungLookupsDone = new CountDownLatch(1);
+
+    public NodeAndFactsGeneratorTest() {
+        for (int i = 0; i < NUM_NODES; i++) {
+            hostnames.add(String.format("node-%03d", i));
+        }
+    }
+
+    @Test
+    public void canGatherFactsConcurrentlyLikeSequentially() throws IOException {
+        final List<NodeAndFacts> sequential = getGenerator(1, 0).getNodesAndFacts(hostnames);
+        final List<NodeAndFacts> concurrent = getGenerator(8, 0).getNodesAndFacts(hostnames);
+
+        assertThat(sequential, hasSize(NUM_NODES));
+        assertThat(concurrent, equalTo(sequential));
+        assertThat(processedHostnames, equalTo(hostnames));
+
+        // Make sure we actually covered the interesting cases
+        assertThat(sequential.get(0).shouldProcess(), equalTo(true));
+        assertThat(sequential.get(NUM_NODES - 1).hasOpennmsNode(), equalTo(false));
+        assertThat(sequential.stream().anyMatch(n -> n.getClockSkewStatus() != null), equalTo(true));
+    }
+
+    @Test
+    public void canFlagFailedNodesAndCarryOn() throws IOException {
+        final List<NodeAndFacts> expected = getGenerator(1, 0).getNodesAndFacts(hostnames);
+
+        failingHostnames.add("node-003");
+        failingHostnames.add("node-042");
+        final List<NodeAndFacts> nodesAndFacts = getGenerator(4, 0).getNodesAndFacts(hostnames);
+
+        assertThat(nodesAndFacts, hasSize(NUM_NODES));
+        for (NodeAndFacts nodeAndFacts : nodesAndFacts) {
+            if (failingHostnames.contains(nodeAndFacts.getCpnHostname())) {
+                assertThat(nodeAndFacts.getFailure(), containsString(nodeAndFacts.getCpnHostname()));
+                assertThat(nodeAndFacts.hasOpennmsNode(), equalTo(false));
+                assertThat(nodeAndFacts.shouldProcess(), equalTo(false));
+            } else {
+                assertThat(nodeAndFacts.hasFailure(), equalTo(false));
+                assertThat(expected, hasItem(nodeAndFacts));
+            }
+        }
+        assertThat(processedHostnames, equalTo(hostnames));
+    }
+
+    @Test
+    public void canTimeOutSlowNodes() throws Exception {
+        hangingHostnames.add("node-010");
+        final long startedAt = System.currentTimeMillis();
+        final List<NodeAndFacts> nodesAndFacts = getGenerator(4, 500).getNodesAndFacts(hostnames);
+        assertThat(System.currentTimeMillis() - startedAt, lessThan(TimeUnit.SECONDS.toMillis(30)));
+        assertThat(processedHostnames, equalTo(hostnames));
+
+        final NodeAndFacts slowNode = nodesAndFacts.stream()
+                .filter(n -> n.getCpnHostname().equals("node-010"))
+                .findFirst()
+                .get();
+        assertThat(slowNode.getFailure(), containsString("Timed out after 500ms"));
+        assertThat(nodesAndFacts.stream().filter(NodeAndFacts::hasFailure).count(), equalTo(1L));
+
+        // The lookup doesn't stop when interrupted, but its results must not be applied once it completes
+        assertThat(hungLookupsDone.await(30, TimeUnit.SECONDS), equalTo(true));
+        assertThat(slowNode.hasOpennmsNode(), equalTo(false));
+        assertThat(slowNode.getOpennmsNodeLabel(), nullValue());
+    }
+
+    private NodeAndFactsGenerator getGenerator(int numThreads, long nodeTimeoutMs) throws IOException {
+        return NodeAndFactsGenerator.newBuilder()
+                .setCpnEntityDao(new MockCpnEntityDao())
+                .setOnmsEntityDao(new MockOnmsEntityDao())
+                .setStart(start)
+                .setEnd(end)
+                .setNumThreads(numThreads)
+                .setNodeTimeoutMs(nodeTimeoutMs)
+                .setStateCacheFile(temporaryFolder.newFile())
+                .build();
+    }
+
+    private static int getIndex(String hostname) {
+        return Integer.parseInt(hostname.substring("node-".length()));
+    }
+
+    /**
+     * Simulates a round trip to Elasticsearch.
+     */
+    private static void sleep() {
+        try {
+            Thread.sleep(2);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private class MockOnmsEntityDao extends EmptyOnmsEntityDao {
+        @Override
+        public Optional<ESEventDTO> findFirstEventForNodeLabelPrefix(long startMs, long endMs, String nodeLabelPrefix) {
+            sleep();
+            processedHostnames.add(nodeLabelPrefix);
+            if (failingHostnames.contains(nodeLabelPrefix)) {
+                throw new IllegalStateException(nodeLabelPrefix);
+            }
+            if (hangingHostnames.contains(nodeLabelPrefix)) {
+                // Like a pending HTTP request, ignore the interrupts
+                Uninterruptibles.sleepUninterruptibly(2, TimeUnit.SECONDS);
+                hungLookupsDone.countDown();
+            }
+
+            final int idx = getIndex(nodeLabelPrefix);
+            if (idx % 7 == 6) {
+                return Optional.empty();
+            }
+            final ESEventDTO event = new ESEventDTO();
+            event.setNodeId(idx + 1);
+            event.setNodeLabel(nodeLabelPrefix + ".example.org");
+            return Optional.of(event);
+        }
+
+        @Override
+        public long getNumSyslogEvents(long startMs, long endMs, int nodeId) {
+            sleep();
+            return (nodeId - 1) % 3;
+        }
+
+        @Override
+        public long getNumTrapEvents(long startMs, long endMs, int nodeId) {
+            sleep();
+            return (nodeId - 1) % 4;
+        }
+    }
+
+    private class MockCpnEntityDao extends EmptyCpnEntityDao {
+        @Override
+        public long getNumSyslogEvents(ZonedDateTime startTime, ZonedDateTime endTime, String hostname, List<QueryBuilder> excludeQueries) {
+            sleep();
+            return getIndex(hostname) % 5;
+        }
+
+        @Override
+        public long getNumTrapEvents(ZonedDateTime startTime, ZonedDateTime endTime, String hostname, List<QueryBuilder> excludeQueries) {
+            sleep();
+            return getIndex(hostname) % 2;
+        }
+
+        @Override
+        public void getSyslogRecordsInRange(ZonedDateTime startTime, ZonedDateTime endTime, List<QueryBuilder> includeQueries,
+                                            List<QueryBuilder> excludeQueries, Consumer<List<EventRecord>> callback, QueryBuilder... queries) {
+            sleep();
+            final String hostname = (String)((MatchPhraseQueryBuilder)includeQueries.get(0)).value();
+            // Every other node has a clock that is a few minutes off
+            final long skewMs = getIndex(hostname) % 2 == 0 ? TimeUnit.MINUTES.toMillis(5) : 0;
+            final SimpleDateFormat df = new SimpleDateFormat("MMM dd HH:mm:ss.SSS");
+            final List<EventRecord> syslogs = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                final Date time = new Date(startTime.toInstant().toEpochMilli() + TimeUnit.MINUTES.toMillis(5 * i));
+                final String message = "<188>" + i + ": " + df.format(new Date(time.getTime() + skewMs))
+                        + ": %LINK-3-UPDOWN: Interface GigabitEthernet0/" + i + ", changed state to down";
+                syslogs.add(new EventRecord("syslog", EventSeverity.Major, hostname + "-" + i, time, "Link down",
+                        message, hostname, null, null, null, 0, 0));
+            }
+            callback.accept(syslogs);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.tools.onms.client;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.opennms.oce.tools.es.ESClient;
+import org.opennms.oce.tools.es.LocalElasticsearch;
+import org.opennms.oce.tools.onms.alarmdto.AlarmDocumentDTO;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+public class EventClientTest {
+
+    private static final String ALARM_INDEX = "opennms-alarms-2018-11";
+    private static final String EVENT_INDEX = "opennms-events-raw-2018-11";
+
+    @Rule
+    public LocalElasticsearch elasticsearch = new LocalElasticsearch();
+
+    @Before
+    public void setUp() {
+        // Alarm documents are snapshots of the alarms, indexed every time they are updated
+        indexAlarm("a1v1", "{\"id\":1,\"@update_time\":2000,\"last_event\":{\"id\":10}}");
+        indexAlarm("a2v1", "{\"id\":2,\"@update_time\":1000,\"last_event\":{\"id\":10}}");
+        indexAlarm("a1v2", "{\"id\":1,\"@update_time\":3000,\"last_event\":{\"id\":11}}");
+        indexAlarm("s3v1", "{\"id\":3,\"@update_time\":4000,\"situation\":true,\"related_alarm_ids\":[1]}");
+        indexAlarm("s3v2", "{\"id\":3,\"@update_time\":5000,\"situation\":true,\"related_alarm_ids\":[1,2]}");
+        indexAlarm("s4v1", "{\"id\":4,\"@update_time\":4500,\"situation\":true,\"related_alarm_ids\":[2]}");
+    }
+
+    @Test
+    public void canFindEarliestAlarmsForEvents() throws IOException {
+        try (ESClient esClient = new ESClient(elasticsearch.getClusterConfiguration())) {
+            final EventClient eventClient = new EventClient(esClient);
+            final Map<Integer, AlarmDocumentDTO> alarmsByEventId = eventClient.findAlarmsForEventsWithIds(Arrays.asList(10, 11, 12));
+            assertThat(getIds(alarmsByEventId), equalTo(toMap(10, 2, 11, 1)));
+            assertThat(elasticsearch.getNumRequests("search"), equalTo(1));
+
+            // Single lookups only retrieve the earliest document, without scrolling
+            elasticsearch.resetRequestCounts();
+            assertThat(eventClient.findAlarmForEventWithId(10).map(AlarmDocumentDTO::getId), equalTo(Optional.of(2)));
+            assertThat(eventClient.findAlarmForEventWithId(11).map(AlarmDocumentDTO::getId), equalTo(Optional.of(1)));
+            assertThat(eventClient.findAlarmForEventWithId(12), equalTo(Optional.empty()));
+            assertThat(elasticsearch.getNumRequests("search"), equalTo(3));
+            assertThat(elasticsearch.getNumRequests("scroll"), equalTo(0));
+            assertThat(elasticsearch.getNumRequests("clear_scroll"), equalTo(0));
+        }
+    }
+
+    @Test
+    public void canFindEarliestSituationsForAlarms() throws IOException {
+        try (ESClient esClient = new ESClient(elasticsearch.getClusterConfiguration())) {
+            final EventClient eventClient = new EventClient(esClient);
+            final Map<Integer, AlarmDocumentDTO> situationsByAlarmId = eventClient.findSituationsForAlarmsWithIds(Arrays.asList(1, 2, 5));
+            assertThat(getIds(situationsByAlarmId), equalTo(toMap(1, 3, 2, 4)));
+            assertThat(elasticsearch.getNumRequests("search"), equalTo(1));
+
+            elasticsearch.resetRequestCounts();
+            assertThat(eventClient.findSituationForAlarmWithId(1).map(AlarmDocumentDTO::getId), equalTo(Optional.of(3)));
+            assertThat(eventClient.findSituationForAlarmWithId(2).map(AlarmDocumentDTO::getId), equalTo(Optional.of(4)));
+            assertThat(eventClient.findSituationForAlarmWithId(5), equalTo(Optional.empty()));
+            assertThat(elasticsearch.getNumRequests("search"), equalTo(3));
+            assertThat(elasticsearch.getNumRequests("scroll"), equalTo(0));
+        }
+    }
+
+    @Test
+    public void canFindAlarmsWithManySnapshotsInFewPages() throws IOException {
+        // Many more snapshots than the default page size of 10
+        for (int i = 0; i < 50; i++) {
+            indexAlarm("a5v" + i, "{\"id\":5,\"@update_time\":" + (10000 + i) + ",\"last_event\":{\"id\":20}}");
+        }
+        try (ESClient esClient = new ESClient(elasticsearch.getClusterConfiguration())) {
+            final EventClient eventClient = new EventClient(esClient);
+            elasticsearch.resetRequestCounts();
+            final Map<Integer, AlarmDocumentDTO> alarmsByEventId = eventClient.findAlarmsForEventsWithIds(Arrays.asList(10, 20));
+            assertThat(getIds(alarmsByEventId), equalTo(toMap(10, 2, 20, 5)));
+            assertThat(elasticsearch.getNumRequests("search"), equalTo(1));
+            assertThat(elasticsearch.getNumRequests("scroll"), lessThanOrEqualTo(1));
+        }
+    }
+
+    @Test
+    public void canFilterSyslogsOnServer() throws IOException {
+        // Labels that contain the hostname without starting with it must match too, but the case must match
+        final String[] nodeLabels = {"router1", "router1.example.com", "router10", "switch1", "core-router1",
+                "Router1.example", "edge.router1*"};
+        final String[] messages = {"Interface Gi0/1, changed state to down", "Interface Gi0/1, changed state to up",
+                "INTERFACE GI0/1, CHANGED STATE TO DOWN", "Line protocol on Interface Gi0/1, changed state to down"};
+        final long startMs = 1541034000000L;
+        final SimpleDateFormat dateFormat = new SimpleDateFormat(LocalElasticsearch.DATE_FORMAT);
+        int id = 0;
+        for (String nodeLabel : nodeLabels) {
+            for (String message : messages) {
+                final JsonObject event = new JsonObject();
+                event.addProperty("id", id);
+                event.addProperty("nodelabel", nodeLabel);
+                event.addProperty("eventsource", "syslogd");
+                event.addProperty("p_syslogmessage", message);
+                event.addProperty("@timestamp", dateFormat.format(new Date(startMs + id * 1000L)));
+                event.addProperty("eventparms", "a large field that is not mapped");
+                elasticsearch.index(EVENT_INDEX, "eventdata", Integer.toString(id), event);
+                id++;
+            }
+        }
+
+        try (ESClient esClient = new ESClient(elasticsearch.getClusterConfiguration())) {
+            final EventClient eventClient = new EventClient(esClient);
+            final long endMs = startMs + id * 1000L;
+            final List<ESEventDTO> allSyslogs = eventClient.getSyslogEvents(startMs, endMs, Collections.emptyList());
+            assertThat(allSyslogs, hasSize(id));
+            for (String hostname : Arrays.asList("router1", "Router1", "router10", "switch1", "switch2", "router1*", "router?")) {
+                for (String group : Arrays.asList("Interface Gi0/1, changed state to down", "changed state to up", "Gi0/2")) {
+                    final List<Integer> expectedIds = allSyslogs.stream()
+                            .filter(e -> e.getNodeLabel().contains(hostname) && e.getSyslogMessage().contains(group))
+                            .map(ESEventDTO::getId)
+                            .collect(Collectors.toList());
+                    final List<Integer> actualIds = eventClient.getSyslogEvents(startMs, endMs, hostname, group).stream()
+                            .map(ESEventDTO::getId)
+                            .collect(Collectors.toList());
+                    assertThat(hostname + "/" + group, actualIds, equalTo(expectedIds));
+                }
+            }
+        }
+    }
+
+    private void indexAlarm(String id, String json) {
+        elasticsearch.index(ALARM_INDEX, AlarmDocumentDTO.TYPE, id, new JsonParser().parse(json).getAsJsonObject());
+    }
+
+    private static Map<Integer, Integer> getIds(Map<Integer, AlarmDocumentDTO> alarms) {
+        final Map<Integer, Integer> ids = new LinkedHashMap<>();
+        alarms.forEach((k, v) -> ids.put(k, v.getId()));
+        return ids;
+    }
+
+    private static Map<Integer, Integer> toMap(int k1, int v1, int k2, int v2) {
+        final Map<Integer, Integer> map = new LinkedHashMap<>();
+        map.put(k1, v1);
+        map.put(k2, v2);
+        return map;
+    }
+}
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.tools.onms.client;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.arrayContainingInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.annotations.SerializedName;
+
+public class OnmsJsonCodecTest {
+
+    @Test
+    public void canDecodeEveryMappedField() throws IllegalAccessException {
+        final List<String> names = new ArrayList<>();
+        final Map<Field, Object> expectedValues = new LinkedHashMap<>();
+        final JsonObject json = new JsonObject();
+        json.add("unmapped", new JsonParser().parse("[{\"a\":1}]"));
+        int i = 0;
+        for (Field field : ESEventDTO.class.getDeclaredFields()) {
+            final SerializedName name = field.getAnnotation(SerializedName.class);
+            if (name == null) {
+                continue;
+            }
+            field.setAccessible(true);
+            names.add(name.value());
+            // Use a distinct value for every field
+            i++;
+            if (field.getType() == String.class) {
+                json.addProperty(name.value(), "value-" + i);
+                expectedValues.put(field, "value-" + i);
+            } else if (field.getType() == Integer.class) {
+                json.addProperty(name.value(), i);
+                expectedValues.put(field, i);
+            } else if (field.getType() == Date.class) {
+                json.addProperty(name.value(), String.format("2018-11-01T06:00:%02d.000Z", i));
+                expectedValues.put(field, new Date(1541052000000L + i * 1000L));
+            } else if (field.getType() == List.class) {
+                json.add(name.value(), new JsonParser().parse("[{\"oid\":\".1.3.6." + i + "\"}]"));
+                expectedValues.put(field, Collections.singletonList(Collections.singletonMap("oid", ".1.3.6." + i)));
+            } else {
+                throw new IllegalStateException("Unsupported type for " + field);
+            }
+        }
+
+        // Every mapped field is retrieved
+        assertThat(ESEventDTO.FIELDS, arrayContainingInAnyOrder(names.toArray()));
+
+        // And decoded
+        final ESEventDTO event = OnmsJsonCodec.getGson().fromJson(json, ESEventDTO.class);
+        for (Map.Entry<Field, Object> entry : expectedValues.entrySet()) {
+            assertThat(entry.getKey().getName(), entry.getKey().get(event), equalTo(entry.getValue()));
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.tools.onms.match;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.opennms.oce.tools.cpn.EventUtils;
+import org.opennms.oce.tools.cpn.model.EventRecord;
+import org.opennms.oce.tools.cpn.model.EventSeverity;
+import org.opennms.oce.tools.cpn.model.TrapRecord;
+import org.opennms.oce.tools.es.ESClient;
+import org.opennms.oce.tools.es.LocalElasticsearch;
+import org.opennms.oce.tools.onms.client.ESEventDTO;
+import org.opennms.oce.tools.onms.client.EventClient;
+import org.opennms.oce.tools.onms.client.api.EmptyOnmsEntityDao;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+public class WindowedEventMatcherTest {
+
+    private static final String EVENT_INDEX = "opennms-events-raw-2018-11";
+    private static final long BASE_TIME = 1541034000000L;
+    private static final String[] HOSTS = {"router1", "router2", "switch1"};
+    private static final String[] TRAP_TYPE_OIDS = {".1.3.6.1.6.3.1.1.5.3", ".1.3.6.1.6.3.1.1.5.4", ".1.3.6.1.4.1.9.9.41.2.0.1"};
+
+    @Rule
+    public LocalElasticsearch elasticsearch = new LocalElasticsearch();
+
+    private final Random random = new Random(42);
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat(LocalElasticsearch.DATE_FORMAT);
+    private int onmsEventId = 0;
+    private int cpnEventId = 0;
+
+    @Test
+    public void canMatchEventsLikeIndividualLookups() throws IOException {
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        final List<EventRecord> syslogs = new ArrayList<>();
+        final List<TrapRecord> traps = new ArrayList<>();
+        // Two bursts of events, an hour apart, that are short enough to never leave a gap in a window
+        for (long burstStart : new long[]{BASE_TIME, BASE_TIME + TimeUnit.HOURS.toMillis(1)}) {
+            for (int i = 0; i < 20; i++) {
+                final String host = HOSTS[random.nextInt(HOSTS.length)];
+                final long time = burstStart + TimeUnit.SECONDS.toMillis(random.nextInt(120));
+                final String message = "Interface Gi0/" + random.nextInt(4) + ", changed state to " + (random.nextBoolean() ? "up" : "down");
+                syslogs.add(cpnSyslog(host, time, message));
+                // Some of the syslogs have no matches, others have many candidates
+                for (int j = random.nextInt(3); j > 0; j--) {
+                    indexOnmsSyslog(host, time + TimeUnit.SECONDS.toMillis(random.nextInt(5) - 2), message);
+                }
+
+                final String trapTypeOid = TRAP_TYPE_OIDS[random.nextInt(TRAP_TYPE_OIDS.length)];
+                traps.add(cpnTrap(host, time, trapTypeOid));
+                for (int j = random.nextInt(3); j > 0; j--) {
+                    indexOnmsTrap(host, time + TimeUnit.SECONDS.toMillis(random.nextInt(180) - 90), trapTypeOid);
+                }
+            }
+        }
+
+        try (ESClient esClient = new ESClient(elasticsearch.getClusterConfiguration())) {
+            final EventClient eventClient = new EventClient(esClient);
+            final Map<String, Integer> expectedSyslogMatches = new LinkedHashMap<>();
+            for (EventRecord syslog : syslogs) {
+                final Optional<ESEventDTO> event = eventClient.findBestSyslogMessageMatching(syslog.getTime().getTime(),
+                        EventUtils.getNodeLabelFromLocation(syslog.getLocation()), CpnToOnmsEventMatcher.getSubstringToMatch(syslog));
+                event.ifPresent(e -> expectedSyslogMatches.put(syslog.getEventId(), e.getId()));
+            }
+            final Map<String, Integer> expectedTrapMatches = new LinkedHashMap<>();
+            for (TrapRecord trap : traps) {
+                final Optional<ESEventDTO> event = eventClient.findBestTrapMatching(trap.getTime().getTime(),
+                        EventUtils.getNodeLabelFromLocation(trap.getLocation()), trap.getTrapTypeOid());
+                event.ifPresent(e -> expectedTrapMatches.put(trap.getEventId(), e.getId()));
+            }
+            assertThat(expectedSyslogMatches.size(), greaterThan(0));
+            assertThat(expectedTrapMatches.size(), greaterThan(0));
+
+            elasticsearch.resetRequestCounts();
+            final WindowedEventMatcher matcher = new WindowedEventMatcher(eventClient);
+            assertThat(getIds(matcher.matchSyslogs(syslogs)), equalTo(expectedSyslogMatches));
+            assertThat(getIds(matcher.matchTraps(traps)), equalTo(expectedTrapMatches));
+            // One query per host and burst for the syslogs, and the same for the traps
+            assertThat(elasticsearch.getNumRequests("search"), equalTo(2 * HOSTS.length + 2 * HOSTS.length));
+        }
+    }
+
+    @Test
+    public void canMatchSyslogsFromNodeLabelsContainingTheHostname() throws IOException {
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        final EventRecord syslog = cpnSyslog("router1", BASE_TIME, "Interface Gi0/1, changed state to down");
+        indexOnmsSyslog("router2", BASE_TIME, "Interface Gi0/1, changed state to down");
+        indexOnmsSyslog("core-router1.example.org", BASE_TIME + 100, "Interface Gi0/1, changed state to down");
+
+        try (ESClient esClient = new ESClient(elasticsearch.getClusterConfiguration())) {
+            final WindowedEventMatcher matcher = new WindowedEventMatcher(new EventClient(esClient));
+            final Map<String, ESEventDTO> matches = matcher.matchSyslogs(Collections.singletonList(syslog));
+            assertThat(matches.get(syslog.getEventId()).getNodeLabel(), equalTo("core-router1.example.org"));
+        }
+    }
+
+    @Test
+    public void canLimitTheDurationOfTheWindows() throws IOException {
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        final List<TrapRecord> traps = new ArrayList<>();
+        // A steady stream of traps over half an hour, with no gaps between them
+        for (int i = 0; i < 16; i++) {
+            final long time = BASE_TIME + TimeUnit.MINUTES.toMillis(2 * i);
+            traps.add(cpnTrap(HOSTS[0], time, TRAP_TYPE_OIDS[0]));
+            indexOnmsTrap(HOSTS[0], time + TimeUnit.SECONDS.toMillis(random.nextInt(60) - 30), TRAP_TYPE_OIDS[0]);
+        }
+
+        try (ESClient esClient = new ESClient(elasticsearch.getClusterConfiguration())) {
+            final EventClient eventClient = new EventClient(esClient);
+            final Map<String, Integer> expectedTrapMatches = new LinkedHashMap<>();
+            for (TrapRecord trap : traps) {
+                eventClient.findBestTrapMatching(trap.getTime().getTime(), HOSTS[0], trap.getTrapTypeOid())
+                        .ifPresent(e -> expectedTrapMatches.put(trap.getEventId(), e.getId()));
+            }
+            assertThat(expectedTrapMatches.size(), equalTo(traps.size()));
+
+            elasticsearch.resetRequestCounts();
+            final WindowedEventMatcher matcher = new WindowedEventMatcher(eventClient,
+                    WindowedEventMatcher.DEFAULT_MAX_WINDOW_GAP_MS, TimeUnit.MINUTES.toMillis(10));
+            assertThat(getIds(matcher.matchTraps(traps)), equalTo(expectedTrapMatches));
+            // Each window spans at most 10 minutes, so it can hold up to 5 of the traps
+            assertThat(elasticsearch.getNumRequests("search"), equalTo(4));
+        }
+    }
+
+    @Test
+    public void canSplitWindowsOnGaps() throws IOException {
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        // Two pairs of syslogs, with a gap larger than the default between them
+        final List<EventRecord> syslogs = new ArrayList<>();
+        for (long time : new long[]{BASE_TIME, BASE_TIME + TimeUnit.SECONDS.toMillis(30),
+                BASE_TIME + TimeUnit.MINUTES.toMillis(4), BASE_TIME + TimeUnit.MINUTES.toMillis(5)}) {
+            syslogs.add(cpnSyslog(HOSTS[0], time, "Interface Gi0/1, changed state to down"));
+            indexOnmsSyslog(HOSTS[0], time, "Interface Gi0/1, changed state to down");
+        }
+
+        try (ESClient esClient = new ESClient(elasticsearch.getClusterConfiguration())) {
+            elasticsearch.resetRequestCounts();
+            final WindowedEventMatcher matcher = new WindowedEventMatcher(new EventClient(esClient));
+            assertThat(matcher.matchSyslogs(syslogs).size(), equalTo(syslogs.size()));
+            assertThat(elasticsearch.getNumRequests("search"), equalTo(2));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cannotUseGapsLargerThanTheWindows() {
+        new WindowedEventMatcher(new EmptyOnmsEntityDao(), TimeUnit.MINUTES.toMillis(15), TimeUnit.MINUTES.toMillis(10));
+    }
+
+    private EventRecord cpnSyslog(String host, long time, String message) {
+        final String detailedDescription = String.format("%d: %s: %%LINK-3-UPDOWN: %s", cpnEventId, host, message);
+        return new EventRecord("syslog", EventSeverity.Major, Integer.toString(cpnEventId++), new Date(time),
+                "Link down", detailedDescription, host + ":Gi0/1", "1", "1", "", 0, 0);
+    }
+
+    private TrapRecord cpnTrap(String host, long time, String trapTypeOid) {
+        return new TrapRecord(new EventRecord("trap", EventSeverity.Major, Integer.toString(cpnEventId++), new Date(time),
+                "Trap", null, host + "#1", "1", "1", "", 0, 0), "trap", null, "", "", trapTypeOid);
+    }
+
+    private void indexOnmsSyslog(String host, long time, String message) {
+        final JsonObject event = onmsEvent(host, time);
+        event.addProperty("eventsource", "syslogd");
+        event.addProperty("p_syslogmessage", message);
+        elasticsearch.index(EVENT_INDEX, "eventdata", event.get("id").getAsString(), event);
+    }
+
+    private void indexOnmsTrap(String host, long time, String trapTypeOid) {
+        final JsonObject event = onmsEvent(host, time);
+        event.addProperty("eventsource", "trapd");
+        final JsonObject oid = new JsonObject();
+        oid.addProperty("oid", ".1.3.6.1.6.3.1.1.4.1.0");
+        oid.addProperty("value", trapTypeOid);
+        final JsonArray oids = new JsonArray();
+        oids.add(oid);
+        event.add("p_oids", oids);
+        elasticsearch.index(EVENT_INDEX, "eventdata", event.get("id").getAsString(), event);
+    }
+
+    private JsonObject onmsEvent(String host, long time) {
+        final JsonObject event = new JsonObject();
+        event.addProperty("id", onmsEventId++);
+        event.addProperty("nodelabel", host);
+        event.addProperty("@timestamp", dateFormat.format(new Date(time)));
+        return event;
+    }
+
+    private static Map<String, Integer> getIds(Map<String, ESEventDTO> events) {
+        final Map<String, Integer> ids = new LinkedHashMap<>();
+        events.forEach((k, v) -> ids.put(k, v.getId()));
+        return ids;
+    }
+}
@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.tools.onms.model.matchers;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.opennms.oce.tools.common.TrapEvent;
+import org.opennms.oce.tools.onms.model.v1.SnmpTrapAlarmDefinitions;
+import org.opennms.oce.tools.onms.model.v1.SyslogAlarmDefinitions;
+import org.snmp4j.smi.OID;
+
+public class SnmpTrapMatcherIndexTest {
+
+    private static final OID ENTERPRISE_A = new OID(".1.3.6.1.4.1.9.9.41.2");
+    private static final OID ENTERPRISE_B = new OID(".1.3.6.1.4.1.9.9.42.2");
+
+    @Test
+    public void canMatchWildcards() {
+        final SnmpTrapMatcherIndex index = new SnmpTrapMatcherIndex(Arrays.asList(
+                new SnmpTrapEventMatcher(ENTERPRISE_A, 6, 1),
+                new SnmpTrapEventMatcher(null, 2, null),
+                new SnmpTrapEventMatcher(ENTERPRISE_B, null, 7),
+                new SyslogEventSubstringMatcher("Link down")));
+
+        // Exact match
+        assertThat(index.matches(new Trap(ENTERPRISE_A, 6, 1)), equalTo(true));
+        assertThat(index.matches(new Trap(ENTERPRISE_A, 6, 2)), equalTo(false));
+        assertThat(index.matches(new Trap(ENTERPRISE_B, 6, 1)), equalTo(false));
+
+        // Any enterprise and specific
+        assertThat(index.matches(new Trap(null, 2, 0)), equalTo(true));
+        assertThat(index.matches(new Trap(ENTERPRISE_B, 2, 99)), equalTo(true));
+        assertThat(index.matches(new Trap(null, 3, 0)), equalTo(false));
+
+        // Any generic, but the enterprise must be set
+        assertThat(index.matches(new Trap(ENTERPRISE_B, 6, 7)), equalTo(true));
+        assertThat(index.matches(new Trap(ENTERPRISE_B, 0, 7)), equalTo(true));
+        assertThat(index.matches(new Trap(null, 6, 7)), equalTo(false));
+    }
+
+    @Test
+    public void canMatchTheSameTrapsAsTheAlarmDefinitions() {
+        final List<EventMatcher> allDefs = new ArrayList<>();
+        allDefs.addAll(SnmpTrapAlarmDefinitions.DEFS);
+        allDefs.addAll(SyslogAlarmDefinitions.DEFS);
+        final SnmpTrapMatcherIndex index = new SnmpTrapMatcherIndex(allDefs);
+
+        final List<Trap> traps = generateTraps();
+        int numMatched = 0;
+        for (Trap trap : traps) {
+            final boolean expected = allDefs.stream().anyMatch(def -> def.matches(trap));
+            assertThat(trap.toString(), index.matches(trap), equalTo(expected));
+            if (expected) {
+                numMatched++;
+            }
+        }
+        // Make sure we exercised both cases
+        assertThat(numMatched, greaterThan(0));
+        assertThat(traps.size() - numMatched, greaterThan(0));
+    }
+
+    /**
+     * Generates traps from the known definitions, along with variations that
+     * are likely to be close, but not quite the same.
+     */
+    private static List<Trap> generateTraps() {
+        final List<Trap> traps = new ArrayList<>();
+        final EventMatcherVisitor visitor = new EventMatcherVisitor() {
+            @Override
+            public void visitSnmpTrapEventMatcher(SnmpTrapEventMatcher m) {
+                final int generic = m.getGeneric() != null ? m.getGeneric() : 6;
+                final int specific = m.getSpecific() != null ? m.getSpecific() : 0;
+                traps.add(new Trap(m.getEnterprise(), generic, specific));
+                traps.add(new Trap(m.getEnterprise(), generic, specific + 1));
+                traps.add(new Trap(m.getEnterprise(), (generic + 1) % 7, specific));
+                traps.add(new Trap(null, generic, specific));
+                traps.add(new Trap(ENTERPRISE_A, generic, specific));
+                if (m.getEnterprise() != null) {
+                    final OID child = new OID(m.getEnterprise());
+                    child.append(0);
+                    traps.add(new Trap(child, generic, specific));
+                }
+            }
+
+            @Override
+            public void visitSyslogEventSubstringMatcher(SyslogEventSubstringMatcher m) {
+                // pass
+            }
+
+            @Override
+            public void visitSyslogEventRegexMatcher(SyslogEventRegexMatcher m) {
+                // pass
+            }
+        };
+        SnmpTrapAlarmDefinitions.DEFS.forEach(def -> def.visit(visitor));
+        return traps;
+    }
+
+    private static class Trap implements TrapEvent {
+        private final OID enterprise;
+        private final int generic;
+        private final int specific;
+
+        private Trap(OID enterprise, int generic, int specific) {
+            this.enterprise = enterprise;
+            this.generic = generic;
+            this.specific = specific;
+        }
+
+        @Override
+        public String getEventId() {
+            return null;
+        }
+
+        @Override
+        public OID getEnterpriseOid() {
+            return enterprise;
+        }
+
+        @Override
+        public int getGeneric() {
+            return generic;
+        }
+
+        @Override
+        public int getSpecific() {
+            return specific;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Trap[enterprise=%s, generic=%d, specific=%d]", enterprise, generic, specific);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.oce.tools.onms.model.matchers;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+import org.opennms.oce.tools.onms.model.api.AlarmDefinition;
+import org.opennms.oce.tools.onms.model.api.EventDefinition;
+import org.opennms.oce.tools.onms.model.api.SyslogEvent;
+import org.opennms.oce.tools.onms.model.v1.SnmpTrapAlarmDefinitions;
+import org.opennms.oce.tools.onms.model.v1.SyslogAlarmDefinitions;
+
+public class SyslogMatcherIndexTest {
+
+    @Test
+    public void canExtractRequiredLiterals() {
+        assertThat(getRequiredLiteral(".*%LINK-3-UPDOWN\\s*:.*"), equalTo("%LINK-3-UPDOWN"));
+        assertThat(getRequiredLiteral(".*%ETHPORT-5-IF_DOWN\\S+\\s*:.*"), equalTo("%ETHPORT-5-IF_DOWN"));
+        assertThat(getRequiredLiteral(".*%BGP-5-ADJCHANGE:.*Down.*"), equalTo("%BGP-5-ADJCHANGE:"));
+        assertThat(getRequiredLiteral("^Interface \\S+ changed state to down$"), equalTo(" changed state to down"));
+        // Optional and repeated characters
+        assertThat(getRequiredLiteral("abcdx?yz"), equalTo("abcd"));
+        assertThat(getRequiredLiteral("abcdx{0,2}yz"), equalTo("abcd"));
+        assertThat(getRequiredLiteral("abcdx+?yz"), equalTo("abcdx"));
+        // Escaped and character classes
+        assertThat(getRequiredLiteral("\\[a\\]b[cd\\]]efghi"), equalTo("efghi"));
+        assertThat(getRequiredLiteral("\\[a\\]b[]cd]e"), equalTo("[a]b"));
+        // Patterns we don't try to analyze
+        assertThat(getRequiredLiteral("(abc)?def"), equalTo(""));
+        assertThat(getRequiredLiteral("abc|def"), equalTo(""));
+        assertThat(getRequiredLiteral("\\Qabc\\E"), equalTo(""));
+        assertThat(SyslogMatcherIndex.getRequiredLiteral(Pattern.compile("abc", Pattern.CASE_INSENSITIVE)), equalTo(""));
+    }
+
+    @Test
+    public void canFindOverlappingLiterals() {
+        final LiteralAutomaton automaton = new LiteralAutomaton(Arrays.asList("he", "she", "his", "hers", "xyz"));
+        assertThat(automaton.findAll("ushers"), equalTo(bits(0, 1, 3)));
+        assertThat(automaton.findAll("this"), equalTo(bits(2)));
+        assertThat(automaton.findAll("xyxyz"), equalTo(bits(4)));
+        assertThat(automaton.findAll(""), equalTo(bits()));
+    }
+
+    @Test
+    public void canMatchTheSameSyslogsAsTheAlarmDefinitions() {
+        final List<AlarmDefinition> allDefs = new ArrayList<>();
+        allDefs.addAll(SnmpTrapAlarmDefinitions.DEFS);
+        allDefs.addAll(SyslogAlarmDefinitions.DEFS);
+        final SyslogMatcherIndex index = new SyslogMatcherIndex(allDefs);
+
+        final List<SyslogEvent> syslogs = generateSyslogs(1);
+        int numMatched = 0;
+        for (SyslogEvent syslog : syslogs) {
+            final EventDefinition expected = getFirstMatch(allDefs, syslog);
+            assertThat(syslog.getMessage(), index.getFirstMatch(syslog), equalTo(expected));
+            assertThat(syslog.getMessage(), index.matches(syslog), equalTo(allDefs.stream().anyMatch(def -> def.matches(syslog))));
+            if (expected != null) {
+                numMatched++;
+            }
+        }
+        // Make sure we exercised both cases
+        assertThat(numMatched, greaterThan(0));
+        assertThat(syslogs.size() - numMatched, greaterThan(0));
+    }
+
+    private static EventDefinition getFirstMatch(List<AlarmDefinition> alarmDefs, SyslogEvent syslog) {
+        for (AlarmDefinition alarmDef : alarmDefs) {
+            for (EventDefinition eventDef : alarmDef.getEventDefinitions()) {
+                if (eventDef.getMatcher().matches(syslog)) {
+                    return eventDef;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Generates syslog messages using the literals found in the known definitions, along
+     * with variations that are likely to be close, but not quite the same.
+     */
+    private static List<SyslogEvent> generateSyslogs(int numIterations) {
+        final List<String> literals = new ArrayList<>();
+        final EventMatcherVisitor visitor = new EventMatcherVisitor() {
+            @Override
+            public void visitSnmpTrapEventMatcher(SnmpTrapEventMatcher m) {
+                // pass
+            }
+
+            @Override
+            public void visitSyslogEventSubstringMatcher(SyslogEventSubstringMatcher m) {
+                literals.add(m.getSubstring());
+            }
+
+            @Override
+            public void visitSyslogEventRegexMatcher(SyslogEventRegexMatcher m) {
+                literals.add(SyslogMatcherIndex.getRequiredLiteral(m.getPattern()));
+            }
+        };
+        SyslogAlarmDefinitions.DEFS.forEach(def -> def.visit(visitor));
+
+        final List<SyslogEvent> syslogs = new ArrayList<>();
+        for (int i = 0; i < numIterations; i++) {
+            for (String literal : literals) {
+                final String prefix = String.format("<187>%d: router-%d: RP/0/RSP0/CPU0:Jan  7 12:00:%02d.000 EST: ", i, i, i % 60);
+                syslogs.add(new Syslog(prefix + literal + ": Interface GigabitEthernet0/0/0/" + i + ", changed state to Down"));
+                syslogs.add(new Syslog(prefix + literal + " : Neighbor 10.0.0." + i + " Up (VRF: default)"));
+                syslogs.add(new Syslog(prefix + literal + "_X: Interface Ethernet1/" + i + " is down (Link failure)"));
+                syslogs.add(new Syslog(prefix + literal.substring(0, Math.max(0, literal.length() - 1)) + ": Cleared due to " + i));
+                syslogs.add(new Syslog(prefix + literal.replace("%", "") + ": Interface Loopback" + i + ", changed state to Up"));
+            }
+        }
+        return syslogs;
+    }
+
+    private static String getRequiredLiteral(String regex) {
+        return SyslogMatcherIndex.getRequiredLiteral(Pattern.compile(regex));
+    }
+
+    private static BitSet bits(int... indices) {
+        final BitSet bits = new BitSet();
+        for (int index : indices) {
+            bits.set(index);
+        }
+        return bits;
+    }
+
+    private static class Syslog implements SyslogEvent {
+        private final String message;
+
+        private Syslog(String message) {
+            this.message = message;
+        }
+
+        @Override
+        public String getEventId() {
+            return null;
+        }
+
+        @Override
+        public String getMessage() {
+            return message;
+        }
+    }
+}
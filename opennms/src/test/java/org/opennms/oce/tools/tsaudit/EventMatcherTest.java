@@ -33,21 +33,36 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.hasSize;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
+import org.apache.commons.math3.stat.descriptive.moment.Mean;
+import org.apache.commons.math3.stat.descriptive.moment.StandardDeviation;
 import org.junit.Test;
+import org.opennms.oce.tools.cpn.EventUtils;
 import org.opennms.oce.tools.cpn.events.MatchingSyslogEventRecord;
 import org.opennms.oce.tools.cpn.events.MatchingTrapEventRecord;
+import org.opennms.oce.tools.cpn2oce.EventMapper;
 import org.opennms.oce.tools.onms.client.ESEventDTO;
 
 import com.google.common.collect.Lists;
 
 public class EventMatcherTest {
 
+    private static final String LINK_DOWN = ".1.3.6.1.6.3.1.1.5.3";
+    private static final String LINK_UP = ".1.3.6.1.6.3.1.1.5.4";
+
     @Test
     public void canMatchLinkDownTraps() {
         List<MatchingTrapEventRecord> cpnTraps = new ArrayList<>();
@@ -211,6 +226,71 @@ public class EventMatcherTest {
         assertThat(results.values(), hasSize(1));
     }
 
+    @Test
+    public void canMatchLargeSyslogCorpusLikeNestedLoops() throws ExecutionException, InterruptedException {
+        final Random random = new Random(42);
+        final List<MatchingSyslogEventRecord> cpnSyslogs = new ArrayList<>();
+        final List<ESEventDTO> onmsSyslogs = new ArrayList<>();
+        final long[] offsetsMs = {0, 0, 0, 1, -1, 400, -400, 999, -999, 1000, -1000, 1001, -1001, 2500};
+
+        int onmsEventId = 1;
+        for (int i = 0; i < 2000; i++) {
+            // Use a small set of messages and times, so that we get plenty of duplicates
+            final String body = String.format("%%LINK-3-UPDOWN: Interface GigabitEthernet0/%d, changed state to down", random.nextInt(20));
+            final String syslogMsg = String.format("<187>%d: Jul 17 04:%02d:%02d.%03d: %s", i, random.nextInt(3),
+                    random.nextInt(60), random.nextInt(2) * 500, body);
+            cpnSyslogs.add(new MatchingSyslogEventRecordImpl(Integer.toString(i), syslogMsg, "testhost"));
+
+            final Date date = SyslogParser.parse(syslogMsg).getDate();
+            final int numOnmsSyslogs = random.nextInt(3);
+            for (int j = 0; j < numOnmsSyslogs; j++) {
+                final ESEventDTO e = new ESEventDTO();
+                e.setId(onmsEventId++);
+                e.setNodeLabel("testhost");
+                e.setSyslogMessage(random.nextInt(10) == 0 ? body + " (different)" : body);
+                e.setTimestamp(new Date(date.getTime() + offsetsMs[random.nextInt(offsetsMs.length)]));
+                onmsSyslogs.add(e);
+            }
+        }
+        Collections.shuffle(onmsSyslogs, random);
+
+        final Map<String, Integer> expected = matchSyslogEventsWithNestedLoops(cpnSyslogs, onmsSyslogs);
+        final Map<String, Integer> actual = EventMatcher.matchSyslogEventsScopedByTimeAndHost(cpnSyslogs, onmsSyslogs);
+        assertThat(actual, equalTo(expected));
+        assertThat(actual.size() > 500, equalTo(true));
+    }
+
+    /**
+     * Reference implementation that compares every CPN syslog against every OpenNMS syslog.
+     */
+    private static Map<String, Integer> matchSyslogEventsWithNestedLoops(List<MatchingSyslogEventRecord> cpnSyslogs, List<ESEventDTO> onmsSyslogs) {
+        final List<GenericSyslogMessage> genericOnmsSyslogs = onmsSyslogs.stream()
+                .map(e -> GenericSyslogMessage.fromOnms(e.getId(), e.getNodeLabel(), e.getSyslogMessage(), e.getTimestamp()))
+                .collect(Collectors.toList());
+        final Set<Integer> alreadyMatchedOnmsEvents = new HashSet<>();
+        final Map<String, Integer> cpnEventIdToOnmsEventId = new HashMap<>();
+        for (MatchingSyslogEventRecord cpnSyslogRecord : cpnSyslogs) {
+            final GenericSyslogMessage cpnSyslog = GenericSyslogMessage.fromCpn(cpnSyslogRecord.getEventId(),
+                    EventUtils.getNodeLabelFromLocation(cpnSyslogRecord.getLocation()), cpnSyslogRecord.getDetailedDescription());
+            Optional<GenericSyslogMessage> match = genericOnmsSyslogs.stream()
+                    .filter(candidate -> !alreadyMatchedOnmsEvents.contains(Integer.parseInt(candidate.getId()))
+                            && cpnSyslog.equalsIgnoringHost(candidate))
+                    .findFirst();
+            if (!match.isPresent()) {
+                match = genericOnmsSyslogs.stream()
+                        .filter(candidate -> !alreadyMatchedOnmsEvents.contains(Integer.parseInt(candidate.getId()))
+                                && cpnSyslog.equalsIgnoringHostFuzzyDate(candidate, EventMatcher.syslogDateFuzzMs))
+                        .findFirst();
+            }
+            match.ifPresent(onmsSyslog -> {
+                final Integer onmsId = Integer.parseInt(onmsSyslog.getId());
+                cpnEventIdToOnmsEventId.put(cpnSyslog.getId(), onmsId);
+                alreadyMatchedOnmsEvents.add(onmsId);
+            });
+        }
+        return cpnEventIdToOnmsEventId;
+    }
+
     private static MatchingTrapEventRecord createCpnLinkUpTrap(int id, long timestamp, String ifDescr) {
         String host = "testhost";
         String location = String.format("%s: %s", host, ifDescr);
@@ -256,6 +336,176 @@ public class EventMatcherTest {
         }
     }
 
+    @Test
+    public void canMatchManyTrapsWithDrift() {
+        final List<MatchingTrapEventRecord> cpnTraps = new ArrayList<>();
+        final List<ESEventDTO> onmsTraps = new ArrayList<>();
+        final long start = 1546916400000L;
+        for (int i = 1; i <= 20000; i++) {
+            final String ifDescr = "Ethernet1/" + (i % 10);
+            cpnTraps.add(createCpnLinkUpTrap(i, start + i * 1000L, ifDescr));
+            // OpenNMS is consistently 57 seconds ahead
+            onmsTraps.add(createOnmsLinkUpTrap(i, start + i * 1000L + 57000L, ifDescr));
+        }
+
+        Map<String, Integer> matchedTraps = EventMatcher.matchTrapEventsScopedByTimeAndHost(cpnTraps, onmsTraps);
+        assertThat(matchedTraps.keySet(), hasSize(cpnTraps.size()));
+        for (Map.Entry<String,Integer> e : matchedTraps.entrySet()) {
+            assertThat(e.getKey(), equalTo(e.getValue().toString()));
+        }
+    }
+
+    @Test
+    public void canMatchRandomTrapsLikeLinearSearch() {
+        final String[] trapTypes = {".1.3.6.1.6.3.1.1.5.3", ".1.3.6.1.6.3.1.1.5.4", ".1.3.6.1.4.1.9.9.41.2.0.1", ".1.3.6.1.4.1.9.9.43.2.0.1"};
+        final long start = 1546916400000L;
+        for (long seed = 1; seed <= 20; seed++) {
+            final Random random = new Random(seed);
+            final List<MatchingTrapEventRecord> cpnTraps = new ArrayList<>();
+            final List<ESEventDTO> onmsTraps = new ArrayList<>();
+            // OpenNMS lags behind by a different amount in every run, so that the drift needs to be corrected
+            final long drift = random.nextInt(240000) - 120000;
+            int onmsId = 1;
+            for (int i = 1; i <= 1000; i++) {
+                final String trapType = trapTypes[random.nextInt(trapTypes.length)];
+                final String ifDescr = "Ethernet1/" + random.nextInt(8);
+                // Use whole seconds in a narrow range, so that there are plenty of ties and dense regions
+                final long time = start + TimeUnit.SECONDS.toMillis(random.nextInt(3600));
+                cpnTraps.add(createCpnTrap(i, time, trapType, ifDescr));
+                for (int j = random.nextInt(4); j > 0; j--) {
+                    // Mostly close to the expected time, with the occasional outlier
+                    final long jitter = random.nextInt(10) == 0 ? random.nextInt(600000) - 300000 : (long)(random.nextGaussian() * 3000);
+                    // Some of the traps are on a different port
+                    final String onmsIfDescr = random.nextInt(10) == 0 ? "Ethernet2/" + random.nextInt(8) : ifDescr;
+                    onmsTraps.add(createOnmsTrap(onmsId++, time + drift + jitter, trapType, onmsIfDescr));
+                }
+            }
+            // OpenNMS traps are retrieved sorted by time
+            onmsTraps.sort(Comparator.comparing(ESEventDTO::getTimestamp));
+
+            final Map<String, Integer> expected = matchTrapEventsWithLinearSearch(cpnTraps, onmsTraps);
+            final Map<String, Integer> actual = EventMatcher.matchTrapEventsScopedByTimeAndHost(cpnTraps, onmsTraps);
+            assertThat("seed " + seed, actual, equalTo(expected));
+            assertThat(actual.size() > 500, equalTo(true));
+        }
+    }
+
+    @Test
+    public void canMatchTrapsAtTheEdgesOfTheWindowLikeLinearSearch() {
+        final long start = 1546916400000L;
+        final List<MatchingTrapEventRecord> cpnTraps = Lists.newArrayList(
+                createCpnTrap(1, start, trapTypeOidForTest(1), "Ethernet1/1"),
+                createCpnTrap(2, start, trapTypeOidForTest(2), "Ethernet1/1"));
+        // The start of the window is exclusive and the end is inclusive
+        final List<ESEventDTO> onmsTraps = Lists.newArrayList(
+                createOnmsTrap(1, start - TimeUnit.SECONDS.toMillis(120), trapTypeOidForTest(1), "Ethernet1/1"),
+                createOnmsTrap(2, start + TimeUnit.SECONDS.toMillis(120), trapTypeOidForTest(2), "Ethernet1/1"));
+
+        final Map<String, Integer> expected = matchTrapEventsWithLinearSearch(cpnTraps, onmsTraps);
+        assertThat(expected, equalTo(Collections.singletonMap("2", 2)));
+        assertThat(EventMatcher.matchTrapEventsScopedByTimeAndHost(cpnTraps, onmsTraps), equalTo(expected));
+    }
+
+    private static String trapTypeOidForTest(int i) {
+        return ".1.3.6.1.4.1.9.9.41.2.0." + i;
+    }
+
+    /**
+     * Reference implementation that scans all of the remaining OpenNMS traps for every CPN trap,
+     * and recomputes the mean and standard deviation of all of the deltas on every iteration.
+     */
+    private static Map<String, Integer> matchTrapEventsWithLinearSearch(List<MatchingTrapEventRecord> cpnTraps, List<ESEventDTO> onmsTraps) {
+        final Map<String, MatchingTrapEventRecord> cpnTrapsById = cpnTraps.stream()
+                .collect(Collectors.toMap(MatchingTrapEventRecord::getEventId, e -> e));
+        final Map<Integer, ESEventDTO> onmsTrapsById = onmsTraps.stream()
+                .collect(Collectors.toMap(ESEventDTO::getId, e -> e));
+
+        double sigma;
+        long mu = 0;
+        long lastMu;
+        int iteration = 1;
+        boolean didMatchAllTraps;
+        Map<String, Integer> cpnEventIdToOnmsEventId;
+        do {
+            cpnEventIdToOnmsEventId = matchTrapEventsWithLinearSearch(cpnTraps, onmsTraps, mu);
+            final double[] deltas = cpnEventIdToOnmsEventId.entrySet().stream()
+                    .mapToDouble(e -> (double)(onmsTrapsById.get(e.getValue()).getTimestamp().getTime()
+                            - cpnTrapsById.get(e.getKey()).getTime().getTime()))
+                    .toArray();
+            lastMu = mu;
+            mu = (long)Math.floor(new Mean().evaluate(deltas));
+            sigma = new StandardDeviation(false).evaluate(deltas);
+            didMatchAllTraps = cpnTraps.size() == cpnEventIdToOnmsEventId.size();
+            iteration++;
+        } while (iteration <= 10 && (!didMatchAllTraps || sigma > TimeUnit.SECONDS.toMillis(5)) && mu != lastMu);
+        return cpnEventIdToOnmsEventId;
+    }
+
+    private static Map<String, Integer> matchTrapEventsWithLinearSearch(List<MatchingTrapEventRecord> cpnTraps, List<ESEventDTO> onmsTraps, long drift) {
+        final long timeDeltaAllowedMs = TimeUnit.SECONDS.toMillis(120);
+        final Set<Integer> alreadyMatchedOnmsEvents = new HashSet<>();
+        final Map<String, List<MatchingTrapEventRecord>> cpnTrapsByType = new HashMap<>();
+        cpnTraps.forEach(t -> cpnTrapsByType.computeIfAbsent(t.getTrapTypeOid(), k -> new ArrayList<>()).add(t));
+        final Map<String, List<ESEventDTO>> onmsTrapsByType = new HashMap<>();
+        onmsTraps.forEach(t -> onmsTrapsByType.computeIfAbsent(t.getTrapTypeOid().get(), k -> new ArrayList<>()).add(t));
+
+        final Map<String, Integer> cpnEventIdToOnmsEventId = new HashMap<>();
+        for (Map.Entry<String, List<MatchingTrapEventRecord>> cpnEntry : cpnTrapsByType.entrySet()) {
+            final List<ESEventDTO> potentialMatches = onmsTrapsByType.get(cpnEntry.getKey());
+            if (potentialMatches == null) {
+                continue;
+            }
+            for (MatchingTrapEventRecord cpnTrap : cpnEntry.getValue()) {
+                potentialMatches.removeIf(potential -> alreadyMatchedOnmsEvents.contains(potential.getId()));
+                List<ESEventDTO> refinedPotentialMatches = potentialMatches;
+                if (LINK_DOWN.equals(cpnTrap.getTrapTypeOid()) || LINK_UP.equals(cpnTrap.getTrapTypeOid())) {
+                    final String ifDescr = EventMapper.createPortObject(cpnTrap).getSpecificId();
+                    refinedPotentialMatches = potentialMatches.stream()
+                            .filter(e -> e.getP_oids().stream()
+                                    .anyMatch(oidMap -> oidMap.get("oid").startsWith(".1.3.6.1.2.1.2.2.1.2") && oidMap.get("value").equals(ifDescr)))
+                            .collect(Collectors.toList());
+                }
+
+                final long timestamp = cpnTrap.getTime().getTime();
+                long previousDelta = Long.MAX_VALUE;
+                Integer match = null;
+                for (ESEventDTO trap : refinedPotentialMatches) {
+                    final long trapTime = trap.getTimestamp().getTime() - drift;
+                    if (trapTime > timestamp + timeDeltaAllowedMs) {
+                        break;
+                    }
+                    if (trapTime > timestamp - timeDeltaAllowedMs) {
+                        final long newDelta = Math.abs(timestamp - trapTime);
+                        if (newDelta < previousDelta) {
+                            previousDelta = newDelta;
+                            match = trap.getId();
+                        } else {
+                            break;
+                        }
+                    }
+                }
+                if (match != null) {
+                    cpnEventIdToOnmsEventId.put(cpnTrap.getEventId(), match);
+                    alreadyMatchedOnmsEvents.add(match);
+                }
+            }
+        }
+        return cpnEventIdToOnmsEventId;
+    }
+
+    private static MatchingTrapEventRecord createCpnTrap(int id, long timestamp, String trapType, String ifDescr) {
+        return new ImplMatchingTrapEventRecord(Integer.toString(id), String.format("testhost: %s", ifDescr), new Date(timestamp), trapType);
+    }
+
+    private static ESEventDTO createOnmsTrap(int id, long timestamp, String trapType, String ifDescr) {
+        final ESEventDTO event = new ESEventDTO();
+        event.setId(id);
+        event.setTimestamp(new Date(timestamp));
+        setTrapTypeOid(event, trapType);
+        setIfDescrOid(event, 1, ifDescr);
+        return event;
+    }
+
     private static void setTrapTypeOid(ESEventDTO event, String trapTypeOid) {
         if (event.getP_oids() != null) {
             event.getP_oids().clear();